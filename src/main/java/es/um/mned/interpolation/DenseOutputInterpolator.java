@@ -0,0 +1,70 @@
+package es.um.mned.interpolation;
+
+/**
+ * Continuous extension of one step of a method:
+ * y(t+theta*h) = y(t) + theta*a_1 + theta^2*a_2 + ... + theta^k*a_k, with theta in [0,1].
+ * The coefficients come from the stages of the step, so evaluating it
+ * costs no evaluation of the derivative.
+ */
+public class DenseOutputInterpolator implements StateFunction {
+
+    private double mTime, mStep;
+    private double[] mState;
+    private double[] mCoefficients; // a_j[i] at (j-1)*dimension + i
+    private int mDegree;
+
+    /**
+     * @param time the time at the start of the step
+     * @param step the size of the step
+     * @param state the state at the start of the step
+     * @param coefficients a_1..a_k one after the other, each of the length of the state
+     */
+    public DenseOutputInterpolator(double time, double step, double[] state, double[] coefficients) {
+        mTime = time;
+        mStep = step;
+        mState = state;
+        mCoefficients = coefficients;
+        mDegree = coefficients.length / state.length;
+    }
+
+    /**
+     * Moves the interpolator to another step, whose state and coefficients have
+     * been written into the arrays given to the constructor
+     * @param time the time at the start of the step
+     * @param step the size of the step
+     */
+    public void setStep(double time, double step) {
+        mTime = time;
+        mStep = step;
+    }
+
+    public double getState(double time, int index) {
+        double theta = (time - mTime) / mStep;
+        int dim = mState.length;
+        double value = 0;
+        for (int j = mDegree - 1; j >= 0; j--) {
+            value = (value + mCoefficients[j * dim + index]) * theta;
+        }
+        return mState[index] + value;
+    }
+
+    public double[] getState(double time) {
+        double[] state = new double[mState.length];
+        getState(time, state);
+        return state;
+    }
+
+    @Override
+    public void getState(double time, double[] state) {
+        double theta = (time - mTime) / mStep;
+        int dim = mState.length;
+        for (int i = 0; i < dim; i++) {
+            double value = 0;
+            for (int j = mDegree - 1; j >= 0; j--) {
+                value = (value + mCoefficients[j * dim + i]) * theta;
+            }
+            state[i] = mState[i] + value;
+        }
+    }
+
+}
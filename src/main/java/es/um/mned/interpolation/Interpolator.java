@@ -2,12 +2,12 @@ package es.um.mned.interpolation;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Arrays;
 
 public class Interpolator implements StateFunction {
 
     private double[] times;
-    private double[][] coeffs;
+    private double[] coeffs; // Newton coefficient i of component h at i*dim + h
+    private int[] first; // first position of the time of each value
     private int dim;
     private int n;
 
@@ -19,59 +19,120 @@ public class Interpolator implements StateFunction {
             n += al.length;
         }
 
-        times = new double[n];
-        {
-            int i=0;
-            for(Double point : m.keySet()) {
-                for(int k=0; k < m.get(point).length; ++k)
-                    times[i++] = point.doubleValue();
+        double[] nodes = new double[n];
+        double[] values = new double[n*dim];
+        int i=0;
+        for(Map.Entry<Double, double[][]> entry : m.entrySet()) {
+            double time = entry.getKey().doubleValue();
+            for(double[] value : entry.getValue()) {
+                nodes[i] = time;
+                System.arraycopy(value, 0, values, i*dim, dim);
+                i++;
             }
         }
+        times = nodes;
+        coeffs = new double[n*dim];
+        first = new int[n];
+        build(values);
+    }
+
+    /**
+     * Creates the Hermite interpolator of some values given in primitive arrays.
+     * A time repeated k times carries the state and its first k-1 derivatives, in
+     * that order: for instance times {t0, t0, t1} with values {x(t0), x'(t0), x(t1)}.
+     * Repeated times must be consecutive. The arrays are copied, so they can be reused.
+     * @param n number of values
+     * @param times time of each value
+     * @param values the values one after the other, each of length dim
+     * @param dim length of the state
+     */
+    public Interpolator(int n, double[] times, double[] values, int dim) {
+        this(n, dim);
+        set(n, times, values);
+    }
+
+    /**
+     * Creates an empty interpolator, to be built with set
+     * @param n number of values it will usually be built with
+     * @param dim length of the state
+     */
+    public Interpolator(int n, int dim) {
+        this.dim = dim;
+        times = new double[n];
+        coeffs = new double[n*dim];
+        first = new int[n];
+    }
 
-        double[][][] dd = new double[n][n][dim];
+    /**
+     * Builds the interpolator again with other values, see Interpolator(int, double[], double[], int).
+     * Its arrays are reused, and only grow if there are more values than before.
+     * @param n number of values
+     * @param times time of each value
+     * @param values the values one after the other, each of length dim
+     */
+    public void set(int n, double[] times, double[] values) {
+        if (n > first.length) {
+            this.times = new double[n];
+            coeffs = new double[n*dim];
+            first = new int[n];
+        }
+        this.n = n;
+        System.arraycopy(times, 0, this.times, 0, n);
+        build(values);
+    }
 
-        for(int i=0; i<n; ++i) {
-            dd[0][i] = m.get(times[i])[0];
+    // Newton divided differences computed in place, one level after the other
+    private void build(double[] values) {
+        for(int j=0; j<n; ++j) {
+            first[j] = j > 0 && times[j] == times[j-1] ? first[j-1] : j;
+            System.arraycopy(values, first[j]*dim, coeffs, j*dim, dim); // the state at that time
         }
 
-        coeffs = new double[n][dim];
         double factorial = 1;
         for(int i=1; i<n; ++i) {
             factorial *= i;
-            for(int j=i; j<n; ++j) {
-                if(times[j] == times[j-i])
+            // downwards, so position j-1 still holds the previous level
+            for(int j=n-1; j>=i; --j) {
+                int row = j*dim;
+                if(times[j] == times[j-i]) {
+                    int derivative = (first[j]+i)*dim;
                     for(int h=0; h<dim; ++h)
-                        dd[i][j][h] = m.get(times[j])[i][h] / factorial;
-                else
+                        coeffs[row+h] = values[derivative+h] / factorial;
+                } else {
+                    double dt = times[j]-times[j-i];
                     for(int h=0; h<dim; ++h)
-                        dd[i][j][h] = (dd[i-1][j][h]-dd[i-1][j-1][h]) / (times[j]-times[j-i]);
+                        coeffs[row+h] = (coeffs[row+h]-coeffs[row-dim+h]) / dt;
+                }
             }
         }
-
-        for(int i=0; i<n; ++i)
-        	System.arraycopy(dd[i][i], 0, coeffs[i], 0, dim);
     }
 
     public double getState(double t, int index) {
-        double ans = coeffs[0][index];
+        double ans = coeffs[index];
         double aux = 1.;
         for(int i=1; i<n; ++i) {
             aux *= (t - times[i-1]);
-            ans += aux * coeffs[i][index];
+            ans += aux * coeffs[i*dim + index];
         }
         return ans;
     }
 
     public double[] getState(double t) {
-        double[] ans = Arrays.copyOf(coeffs[0], dim);
+        double[] ans = new double[dim];
+        getState(t, ans);
+        return ans;
+    }
+
+    @Override
+    public void getState(double t, double[] ans) {
+        System.arraycopy(coeffs, 0, ans, 0, dim);
         double aux = 1.;
         
         for(int i=1; i<n; ++i) {
         	aux *= (t - times[i-1]);
         	for(int h=0; h<dim; ++h)
-                ans[h] += aux * coeffs[i][h];
+                ans[h] += aux * coeffs[i*dim + h];
         }
-        return ans;
     }
     
     public static void main(String[] args) {
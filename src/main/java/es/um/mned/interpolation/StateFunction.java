@@ -10,4 +10,13 @@ public interface StateFunction {
 
     public double getState(double time, int index);
     
+    /**
+     * Writes the state at a given time into an array, without creating a new one
+     * @param time the given time
+     * @param state array of the length of the state to write into
+     */
+    public default void getState(double time, double[] state) {
+        for (int i=0; i<state.length; i++) state[i] = getState(time, i);
+    }
+    
 }
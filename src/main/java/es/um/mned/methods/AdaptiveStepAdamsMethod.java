@@ -0,0 +1,397 @@
+package es.um.mned.methods;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Adams methods of variable step and order 1 to 12, in PECE mode, as STEP of
+ * Shampine and Gordon. The history is kept as modified divided differences of
+ * the derivative, phi, which are valid for any sequence of steps, so the step
+ * changes without restarting and each step costs 2 evaluations: one at the
+ * predicted point and one at the corrected point. The errors that the orders
+ * k-2, k-1 and k would have made are estimated at each step, and k+1 when the
+ * last steps were constant, and the order of least error is taken.
+ * In the first phase the order is raised and the step doubled at each step,
+ * until one of the estimates says it should not, so no starting method is needed.
+ * <p>
+ * The step and the order are chosen together by the method, so the step size
+ * controller of AdaptiveStepMethod is not used. The error norm is, and as the
+ * method starts with order 1, tight tolerances want one on the error of each step,
+ * such as new ErrorNorm(ErrorNorm.Type.RMS, atol, rtol), rather than per unit step.
+ * The dense output is the interpolating polynomial of the step just taken, as
+ * INTRP of Shampine and Gordon, so it costs no evaluations.
+ */
+public class AdaptiveStepAdamsMethod extends AdaptiveStepMethod {
+
+	public static final int MAX_ORDER = 12;
+
+	private static final double[] ONE = { 1 }; // the polynomial g_1
+	// Error constants of the orders 1 to 13, the first entry is not used
+	private static final double[] GSTR = { 0, 0.500, 0.0833, 0.0417, 0.0264, 0.0188, 0.0143,
+			0.0114, 0.00936, 0.00789, 0.00679, 0.00592, 0.00524, 0.00468 };
+
+	// Arrays as in STEP, from 1, so their first entry is not used
+	private final double[][] mPhi = new double[MAX_ORDER+3][]; // modified divided differences
+	private final double[] mPsi = new double[MAX_ORDER+1]; // mPsi[i] is the sum of the last i steps
+	private final double[] mAlpha = new double[MAX_ORDER+1], mBeta = new double[MAX_ORDER+1];
+	private final double[] mSig = new double[MAX_ORDER+2];
+	private final double[] mV = new double[MAX_ORDER+2], mW = new double[MAX_ORDER+2];
+	private final double[] mG = new double[MAX_ORDER+2];
+	private final double[][] mPolynomials = new double[MAX_ORDER+2][MAX_ORDER+2]; // of the dense output
+	private final double[] mPredicted, mDerivative, mWork, mStart, mEndState;
+	private final double[] mDenseOutput;
+	private int mMaxOrder = MAX_ORDER;
+	private int mOrder = 1; // k
+	private int mOldOrder; // order of the last step taken
+	private int mConstantSteps; // number of steps taken with the current step, up to mOldOrder+1
+	private double mOldStep; // last step taken
+	private boolean mPhase1; // raising the order and doubling the step at each step
+	private double mEndTime = Double.NaN; // time of the last step, where the differences are
+
+	/**
+	 * Initializes the method for a given InitialValueProblem
+	 * @param InitialValueProblem problem
+	 * @param step the initial step. If negative, we'd solve backwards in time
+	 */
+	public AdaptiveStepAdamsMethod(
+			InitialValueProblem problem,
+			double step,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		super(problem, step, MAX_ORDER, tolerance, minStep, event);
+		for (int i=1; i<mPhi.length; i++) mPhi[i] = problem.getInitialState();
+		mPredicted = problem.getInitialState();
+		mDerivative = problem.getInitialState();
+		mWork = problem.getInitialState();
+		mStart = problem.getInitialState();
+		mEndState = problem.getInitialState();
+		mDenseOutput = new double[(MAX_ORDER+1)*mPredicted.length];
+		mG[1] = 1;
+		mG[2] = 0.5;
+		mSig[1] = 1;
+	}
+
+	/**
+	 * Initializes the method for a given InitialValueProblem, estimating the
+	 * initial step from the problem when solving starts
+	 * @param InitialValueProblem problem
+	 */
+	public AdaptiveStepAdamsMethod(
+			InitialValueProblem problem,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
+	}
+
+	/**
+	 * @return the order the method is using now
+	 */
+	@Override
+	public int getOrder() {
+		return mOrder;
+	}
+
+	@Override
+	protected int getErrorOrder() {
+		return mOrder;
+	}
+
+	public int getMaxOrder() {
+		return mMaxOrder;
+	}
+
+	/**
+	 * Limits the order
+	 * @param maxOrder the largest order, from 1 to 12
+	 */
+	public void setMaxOrder(int maxOrder) {
+		if (maxOrder < 1 || maxOrder > MAX_ORDER)
+			throw new IllegalArgumentException("The order must be between 1 and " + MAX_ORDER);
+		mMaxOrder = maxOrder;
+		mEndTime = Double.NaN; // start again
+	}
+
+	@Override
+	protected double[] getDenseOutput() {
+		return mDenseOutput;
+	}
+
+	/**
+	 * Adams PECE step of variable order, with as many tries as needed to pass the error test
+	 * @param deltaTime the step to take, ignored as the method uses its own
+	 * @param time the current time
+	 * @param state the current state
+	 * @return the value of time of the step taken, state will contain the updated state
+	 * @throws ConvergenceException
+	 */
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		if (time != mEndTime || !Arrays.equals(state, mEndState)) start(time, state);
+		int dim = state.length, failures = 0;
+		ErrorNorm norm = getErrorNorm();
+		while (isStepAllowed(time)) {
+			double h = mCurrentStep, absH = Math.abs(h);
+			int k = mOrder;
+			setCoefficients(h);
+			predict(k);
+			for (int i=0; i<dim; i++) mPredicted[i] = state[i] + h * mPredicted[i];
+			evaluateDerivative(time + h, mPredicted, mDerivative);
+			// Errors of the orders k-2, k-1 and k
+			double[] phi1 = mPhi[1];
+			for (int i=0; i<dim; i++) mWork[i] = mDerivative[i] - phi1[i];
+			double ratio = norm.ratio(mWork, state, mPredicted, h);
+			double error = absH * (mG[k] - mG[k+1]) * ratio;
+			double errorK = absH * mSig[k+1] * GSTR[k] * ratio;
+			double errorKm1 = 0, errorKm2 = 0;
+			if (k >= 2) errorKm1 = absH * mSig[k] * GSTR[k-1] * differenceRatio(mPhi[k], state, h);
+			if (k >= 3) errorKm2 = absH * mSig[k-1] * GSTR[k-2] * differenceRatio(mPhi[k-1], state, h);
+			int newOrder = k;
+			if (k >= 3 && Math.max(errorKm1, errorKm2) <= errorK) newOrder = k-1;
+			if (k == 2 && errorKm1 <= 0.5 * errorK) newOrder = k-1;
+
+			if (error <= 1) {
+				mOldOrder = k;
+				mOldStep = h;
+				System.arraycopy(state, 0, mStart, 0, dim);
+				// Correct and evaluate
+				double coefficient = h * mG[k+1];
+				for (int i=0; i<dim; i++) state[i] = mPredicted[i] + coefficient * (mDerivative[i] - phi1[i]);
+				time += h;
+				evaluateDerivative(time, state, mDerivative);
+				updateDifferences(k);
+				denseOutput(h, mStart, state);
+				mEndTime = time;
+				System.arraycopy(state, 0, mEndState, 0, dim);
+				prepareNextStep(h, state, errorK, errorKm1, newOrder);
+				return time;
+			}
+			// Restores the differences and reduces the step, to order 1 from the third failure
+			mStatistics.addRejectedStep();
+			mPhase1 = false;
+			restore(k, h);
+			double factor = 0.5;
+			if (++failures >= 3) {
+				if (failures > 3 && errorK > 2) factor = Math.pow(0.5 / errorK, 1.0 / exponent(1));
+				newOrder = 1;
+			}
+			mCurrentStep = h * factor;
+			mOrder = newOrder;
+		}
+		throw new ConvergenceException("Adaptative Adams Method did not converge.");
+	}
+
+	// Starts with order 1 from a point, with a step small enough for it as STEP does
+	private void start(double time, double[] state) {
+		evaluateStartDerivative(time, state, mPhi[1]);
+		Arrays.fill(mPhi[2], 0);
+		double size = getErrorNorm().norm(mPhi[1], state, state);
+		if (size > 0) {
+			double step = 0.25 * Math.pow(size, -1.0 / exponent(1));
+			if (Math.abs(mCurrentStep) > step) mCurrentStep = Math.copySign(step, mCurrentStep);
+		}
+		mOrder = 1;
+		mOldOrder = 0;
+		mConstantSteps = 0;
+		mOldStep = 0;
+		mPhase1 = true;
+		mEndTime = time;
+		System.arraycopy(state, 0, mEndState, 0, state.length);
+	}
+
+	// Coefficients of the formulas for the step h (block 1 of STEP)
+	private void setCoefficients(double h) {
+		int k = mOrder;
+		if (h != mOldStep) mConstantSteps = 0;
+		if (mConstantSteps <= mOldOrder) mConstantSteps++;
+		int ns = mConstantSteps;
+		if (k < ns) return; // all of them are those of the last step
+		// alpha, beta, psi and sigma that change
+		mBeta[ns] = 1;
+		mAlpha[ns] = 1.0 / ns;
+		double sum = h * ns;
+		mSig[ns+1] = 1;
+		for (int i=ns+1; i<=k; i++) {
+			double previous = mPsi[i-1];
+			mPsi[i-1] = sum;
+			mBeta[i] = mBeta[i-1] * mPsi[i-1] / previous;
+			sum = previous + h;
+			mAlpha[i] = h / sum;
+			mSig[i+1] = i * mAlpha[i] * mSig[i];
+		}
+		mPsi[k] = sum;
+		// g, computed in w from v
+		if (ns == 1) {
+			for (int q=1; q<=k; q++) mW[q] = mV[q] = 1.0 / (q * (q+1));
+		}
+		else {
+			if (k > mOldOrder) { // the order was raised, update the diagonal of v
+				mV[k] = 1.0 / (k * (k+1));
+				for (int j=1; j<=ns-2; j++) {
+					int i = k-j;
+					mV[i] -= mAlpha[j+1] * mV[i+1];
+				}
+			}
+			double alpha = mAlpha[ns];
+			for (int q=1; q<=k+1-ns; q++) {
+				mV[q] -= alpha * mV[q+1];
+				mW[q] = mV[q];
+			}
+			mG[ns+1] = mW[1];
+		}
+		for (int i=ns+2; i<=k+1; i++) {
+			double alpha = mAlpha[i-1];
+			for (int q=1; q<=k+2-i; q++) mW[q] -= alpha * mW[q+1];
+			mG[i] = mW[1];
+		}
+	}
+
+	// Predicted differences phi*, and the predicted increment per unit step in mPredicted
+	private void predict(int k) {
+		int ns = mConstantSteps;
+		for (int i=ns+1; i<=k; i++) {
+			double beta = mBeta[i];
+			double[] phi = mPhi[i];
+			for (int l=0; l<phi.length; l++) phi[l] *= beta;
+		}
+		System.arraycopy(mPhi[k+1], 0, mPhi[k+2], 0, mPredicted.length);
+		Arrays.fill(mPhi[k+1], 0);
+		Arrays.fill(mPredicted, 0);
+		for (int i=k; i>=1; i--) {
+			double g = mG[i];
+			double[] phi = mPhi[i], next = mPhi[i+1];
+			for (int l=0; l<phi.length; l++) {
+				mPredicted[l] += g * phi[l];
+				phi[l] += next[l];
+			}
+		}
+	}
+
+	// Undoes the prediction after a failed step
+	private void restore(int k, double h) {
+		for (int i=1; i<=k; i++) {
+			double inverse = 1 / mBeta[i];
+			double[] phi = mPhi[i], next = mPhi[i+1];
+			for (int l=0; l<phi.length; l++) phi[l] = inverse * (phi[l] - next[l]);
+		}
+		for (int i=2; i<=k; i++) mPsi[i-1] = mPsi[i] - h;
+	}
+
+	// Differences for the next step from the derivative at the new point
+	private void updateDifferences(int k) {
+		double[] phi1 = mPhi[1], newest = mPhi[k+1], last = mPhi[k+2];
+		for (int l=0; l<newest.length; l++) {
+			newest[l] = mDerivative[l] - phi1[l];
+			last[l] = newest[l] - last[l];
+		}
+		for (int i=1; i<=k; i++) {
+			double[] phi = mPhi[i];
+			for (int l=0; l<phi.length; l++) phi[l] += newest[l];
+		}
+	}
+
+	// Ratio of phi + (f(p) - phi_1) to the tolerance
+	private double differenceRatio(double[] phi, double[] state, double h) {
+		double[] phi1 = mPhi[1];
+		for (int l=0; l<mWork.length; l++) mWork[l] = phi[l] + mDerivative[l] - phi1[l];
+		return getErrorNorm().ratio(mWork, state, mPredicted, h);
+	}
+
+	// Order and step of the next step (end of block 4 of STEP)
+	private void prepareNextStep(double h, double[] state, double errorK, double errorKm1, int newOrder) {
+		int k = mOrder;
+		double absH = Math.abs(h);
+		if (newOrder == k-1 || k == mMaxOrder) mPhase1 = false;
+		double error = errorK;
+		if (mPhase1) {
+			mOrder = k+1;
+		}
+		else if (newOrder == k-1) {
+			mOrder = k-1;
+			error = errorKm1;
+		}
+		else if (k+1 <= mConstantSteps && k < mMaxOrder) {
+			// the error of order k+1 is only reliable after constant steps
+			double errorKp1 = absH * GSTR[k+1] * getErrorNorm().ratio(mPhi[k+2], mStart, state, h);
+			if (k == 1) {
+				if (errorKp1 < 0.5 * errorK) {
+					mOrder = 2;
+					error = errorKp1;
+				}
+			}
+			else if (errorKm1 <= Math.min(errorK, errorKp1)) {
+				mOrder = k-1;
+				error = errorKm1;
+			}
+			else if (errorKp1 < errorK) {
+				mOrder = k+1;
+				error = errorKp1;
+			}
+		}
+		int order = mOrder;
+		double step = 2 * h;
+		if (!mPhase1 && 0.5 < error * Math.pow(2, exponent(order))) {
+			step = h;
+			if (0.5 < error) {
+				double r = Math.pow(0.5 / error, 1.0 / exponent(order));
+				step = h * Math.max(0.5, Math.min(0.9, r));
+			}
+		}
+		mCurrentStep = step;
+	}
+
+	// Exponent of the step in the ratio of the error of a given order
+	private int exponent(int order) {
+		return getErrorNorm().isPerUnitStep() ? order : order+1;
+	}
+
+	// Coefficients of the step just taken in powers of theta, from the interpolating
+	// polynomial of INTRP, y(t+s) = y + s*sum g_j(s)*phi_j with s = (theta-1)*h,
+	// corrected linearly to start at the given state
+	private void denseOutput(double h, double[] start, double[] end) {
+		int kInterpolation = mOldOrder + 1, dim = end.length;
+		Arrays.fill(mDenseOutput, 0);
+		addDenseTerm(ONE, 1, h, mPhi[1]);
+		// g_j = w_1 after j-1 updates w_i <- gamma*w_i - eta*w_(i+1), with w_i = 1/i at the start
+		double[][] w = mPolynomials;
+		for (int i=1; i<=kInterpolation; i++) {
+			Arrays.fill(w[i], 0);
+			w[i][0] = 1.0 / i;
+		}
+		double term = 0;
+		for (int j=2; j<=kInterpolation; j++) {
+			double psi = mPsi[j-1];
+			// gamma = (s + term)/psi = gamma0 + b*theta and eta = s/psi = -b + b*theta
+			double b = h / psi, gamma0 = (term - h) / psi;
+			for (int i=1; i<=kInterpolation+1-j; i++) {
+				double[] current = w[i], next = w[i+1];
+				for (int d=j-1; d>=0; d--) {
+					double shifted = d > 0 ? current[d-1] - next[d-1] : 0;
+					current[d] = gamma0 * current[d] + b * next[d] + b * shifted;
+				}
+			}
+			addDenseTerm(w[1], j, h, mPhi[j]);
+			term = psi;
+		}
+		for (int l=0; l<dim; l++) mDenseOutput[l] += end[l] - start[l];
+	}
+
+	// Adds (theta-1)*h*g(theta)*phi, with g of degree one less than the given one, to
+	// the dense output. The constant term goes with the linear one
+	private void addDenseTerm(double[] g, int degree, double h, double[] phi) {
+		int dim = phi.length;
+		for (int d=0; d<=degree; d++) {
+			double coefficient = h * ((d > 0 ? g[d-1] : 0) - (d < degree ? g[d] : 0));
+			if (coefficient == 0) continue;
+			int offset = d == 0 ? 0 : (d-1)*dim;
+			for (int l=0; l<dim; l++) mDenseOutput[offset+l] += coefficient * phi[l];
+		}
+	}
+
+}
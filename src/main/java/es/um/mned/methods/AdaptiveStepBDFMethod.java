@@ -0,0 +1,496 @@
+package es.um.mned.methods;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.FiniteDifferenceJacobian;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * BDF methods of variable step and order 1 to 5, for stiff problems, as in
+ * CVODE (Hindmarsh et al.). The history is kept as a Nordsieck array
+ * <pre>
+ *   z_j = h^j * y^(j)(t_n) / j!,  j = 0..q
+ * </pre>
+ * so changing the step only rescales it, and no restart is needed. Each step
+ * predicts with the Taylor series of the array, corrects solving the BDF equation
+ * of fixed leading coefficient with the simplified Newton method, and estimates
+ * its local error from the correction. Every q+1 steps the errors the orders q-1
+ * and q+1 would have made are estimated too, and the order that allows the
+ * largest next step is taken.
+ * <p>
+ * The step and the order are chosen together by the method, so the step size
+ * controller of AdaptiveStepMethod is not used. The error norm is, and by default
+ * it is new ErrorNorm(ErrorNorm.Type.RMS, tol, tol), per step: per unit step, the
+ * first steps of order one would have to be of the order of the tolerance, and at
+ * tight tolerances their corrections would be below round-off.
+ * The Jacobian and I - gamma*J are stored as the problem allows (see MatrixType),
+ * and the matrix is only factored again when the step or the order change.
+ * The dense output is the interpolating polynomial of the Nordsieck array.
+ */
+public class AdaptiveStepBDFMethod extends AdaptiveStepMethod {
+
+	public static final int MAX_ORDER = 5;
+
+	private static final double BIAS1 = 6, BIAS2 = 6, BIAS3 = 10, ADDON = 1e-6;
+	private static final double THRESHOLD = 1.5; // smallest increase of the step worth rescaling
+	private static final double ETA_MAX_FIRST = 10000, ETA_MAX = 10, ETA_MAX_FAILED = 0.2;
+	private static final double ETA_MIN = 0.1, ETA_CONVERGENCE_FAILURE = 0.25;
+	private static final int MAX_ERROR_FAILURES = 7, ORDER_REDUCTION_FAILURES = 3;
+	private static final int MAX_CONVERGENCE_FAILURES = 10, LONG_WAIT = 10;
+	private static final double NEWTON_COEFFICIENT = 0.1; // of the tolerance of the corrector
+
+	private final ImplicitSolver mSolver;
+	private final double[][] mZ = new double[MAX_ORDER+1][]; // Nordsieck array, mZ[MAX_ORDER] keeps a correction if q < MAX_ORDER
+	private final double[] mL = new double[MAX_ORDER+1]; // coefficients of the correction
+	private final double[] mTau = new double[MAX_ORDER+2]; // mTau[i] is the i-th last step
+	private final double[] mTq = new double[6]; // error constants, as in CVODE
+	private final double[] mCorrection, mNewState, mScale, mAux, mStart;
+	private final double[] mDenseOutput;
+	private int mMaxOrder = MAX_ORDER;
+	private int mOrder = 1; // q
+	private int mOrderWait; // steps before the order may change
+	private double mScaledStep; // step with which mZ is scaled
+	private double mEtaMax, mSavedTq5;
+	private double mEndTime = Double.NaN; // time of mZ[0]
+	private long mSteps;
+
+	/**
+	 * Initializes the method for a given InitialValueProblem
+	 * @param InitialValueProblem problem
+	 * @param step the initial step. If negative, we'd solve backwards in time
+	 */
+	public AdaptiveStepBDFMethod(
+			InitialValueProblem problem,
+			double step,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		super(problem, step, MAX_ORDER, tolerance, minStep, event);
+		mSolver = new ImplicitSolver(problem, mStatistics);
+		mSolver.setSimplifiedNewton(true);
+		mSolver.getSimplifiedNewton().setFullNewtonFallback(false);
+		for (int j=0; j<mZ.length; j++) mZ[j] = problem.getInitialState();
+		mCorrection = problem.getInitialState();
+		mNewState = problem.getInitialState();
+		mScale = problem.getInitialState();
+		mAux = problem.getInitialState();
+		mStart = problem.getInitialState();
+		mDenseOutput = new double[MAX_ORDER*mCorrection.length];
+	}
+
+	/**
+	 * Initializes the method for a given InitialValueProblem, estimating the
+	 * initial step from the problem when solving starts
+	 * @param InitialValueProblem problem
+	 */
+	public AdaptiveStepBDFMethod(
+			InitialValueProblem problem,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
+	}
+
+	/**
+	 * The error norm used until another one is set with setErrorNorm, the RMS one
+	 * per step with the tolerance as absolute and relative tolerance
+	 * @param tolerance the tolerance of the method
+	 * @return the norm
+	 */
+	@Override
+	protected ErrorNorm defaultErrorNorm(double tolerance) {
+		return new ErrorNorm(ErrorNorm.Type.RMS, tolerance, tolerance);
+	}
+
+	/**
+	 * @return the order the method is using now
+	 */
+	@Override
+	public int getOrder() {
+		return mOrder;
+	}
+
+	@Override
+	protected int getErrorOrder() {
+		return mOrder;
+	}
+
+	public int getMaxOrder() {
+		return mMaxOrder;
+	}
+
+	/**
+	 * Limits the order, for instance to 2 for problems with eigenvalues close to
+	 * the imaginary axis, where the higher orders are not stable
+	 * @param maxOrder the largest order, from 1 to 5
+	 */
+	public void setMaxOrder(int maxOrder) {
+		if (maxOrder < 1 || maxOrder > MAX_ORDER)
+			throw new IllegalArgumentException("The order must be between 1 and " + MAX_ORDER);
+		mMaxOrder = maxOrder;
+		mEndTime = Double.NaN; // start again
+	}
+
+	/**
+	 * Changes how the matrices are stored and factored, chosen from the sparsity pattern of the problem by default
+	 * @param type the storage, BANDED and SPARSE need the problem to have a sparsity pattern
+	 */
+	public void setMatrixType(MatrixType type) {
+		mSolver.setMatrixType(type);
+	}
+
+	public MatrixType getMatrixType() {
+		return mSolver.getMatrixType();
+	}
+
+	/**
+	 * Chooses how to get the Jacobian of problems that give it
+	 * @param finiteDifferences true to approximate it by finite differences even if the problem gives it
+	 */
+	public void setFiniteDifferenceJacobian(boolean finiteDifferences) {
+		mSolver.setFiniteDifferences(finiteDifferences);
+	}
+
+	/**
+	 * @return the finite differences that approximate the Jacobian, null if that of the problem is used
+	 */
+	public FiniteDifferenceJacobian getFiniteDifferenceJacobian() {
+		return mSolver.getFiniteDifferences();
+	}
+
+	/**
+	 * @return the simplified Newton method that solves the corrector, with its counters
+	 */
+	public SimplifiedNewton getSimplifiedNewton() {
+		return mSolver.getSimplifiedNewton();
+	}
+
+	@Override
+	protected double[] getDenseOutput() {
+		return mDenseOutput;
+	}
+
+	/**
+	 * BDF step of variable order, with as many tries as needed to pass the error test
+	 * @param deltaTime the step to take, ignored as the method uses its own
+	 * @param time the current time
+	 * @param state the current state
+	 * @return the value of time of the step taken, state will contain the updated state
+	 * @throws ConvergenceException
+	 */
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		if (time != mEndTime || !Arrays.equals(state, mZ[0])) start(time, state);
+		System.arraycopy(state, 0, mStart, 0, state.length);
+		int errorFailures = 0, convergenceFailures = 0;
+		while (true) {
+			if (!isStepAllowed(time))
+				throw new ConvergenceException("Adaptative BDF Method did not converge.");
+			double h = mCurrentStep;
+			predict();
+			setCoefficients();
+			double gamma = h / mL[1];
+			// Corrector: y - z0 - gamma*(f(t+h, y) - z1/h) = 0
+			double[] z0 = mZ[0], z1 = mZ[1];
+			// The corrections are measured per step even with a norm per unit step,
+			// whose tolerance times |h| may be below round-off
+			ErrorNorm norm = getErrorNorm();
+			for (int i=0; i<state.length; i++) {
+				mSolver.equation.constant[i] = z0[i] - gamma * z1[i] / h;
+				mNewState[i] = z0[i];
+				mScale[i] = norm.scale(i, z0[i]);
+			}
+			try {
+				mSolver.solve(time + h, gamma, mNewState, NEWTON_COEFFICIENT / mTq[2], mScale);
+			}
+			catch (ConvergenceException e) {
+				restore();
+				if (++convergenceFailures == MAX_CONVERGENCE_FAILURES) throw e;
+				mStatistics.addRejectedStep();
+				mEtaMax = 1;
+				rescale(Math.max(ETA_CONVERGENCE_FAILURE, minimumEta()));
+				continue;
+			}
+			for (int i=0; i<state.length; i++) mCorrection[i] = mNewState[i] - z0[i];
+			double ratio = mTq[2] * norm.ratio(mCorrection, state, mNewState, h);
+			if (ratio > 1) {
+				restore();
+				mStatistics.addRejectedStep();
+				if (++errorFailures == MAX_ERROR_FAILURES)
+					throw new ConvergenceException("Adaptative BDF Method did not pass the error test.");
+				errorTestFailed(errorFailures, ratio, time);
+				continue;
+			}
+			completeStep(h);
+			denseOutput(state);
+			time += h;
+			mEndTime = time;
+			prepareNextStep(ratio);
+			System.arraycopy(mZ[0], 0, state, 0, state.length);
+			return time;
+		}
+	}
+
+	// Starts with order 1 from a point
+	private void start(double time, double[] state) {
+		double h = mCurrentStep;
+		System.arraycopy(state, 0, mZ[0], 0, state.length);
+		evaluateStartDerivative(time, state, mZ[1]);
+		for (int i=0; i<state.length; i++) mZ[1][i] *= h;
+		mOrder = 1;
+		mOrderWait = 2;
+		mScaledStep = h;
+		Arrays.fill(mTau, 0);
+		mEtaMax = ETA_MAX_FIRST;
+		mSavedTq5 = 0;
+		mSteps = 0;
+		mEndTime = time;
+	}
+
+	// Taylor series of the array to the end of the step: z <- z*Pascal
+	private void predict() {
+		for (int k=1; k<=mOrder; k++) {
+			for (int j=mOrder; j>=k; j--) {
+				double[] previous = mZ[j-1], current = mZ[j];
+				for (int i=0; i<previous.length; i++) previous[i] += current[i];
+			}
+		}
+	}
+
+	// Undoes the prediction
+	private void restore() {
+		for (int k=1; k<=mOrder; k++) {
+			for (int j=mOrder; j>=k; j--) {
+				double[] previous = mZ[j-1], current = mZ[j];
+				for (int i=0; i<previous.length; i++) previous[i] -= current[i];
+			}
+		}
+	}
+
+	// Coefficients l of the correction and error constants tq for the current
+	// order and step history (cvSetBDF and cvSetTqBDF)
+	private void setCoefficients() {
+		int q = mOrder;
+		double h = mCurrentStep;
+		double[] l = mL;
+		Arrays.fill(l, 0);
+		l[0] = l[1] = 1;
+		double xiInverse = 1, xiStarInverse = 1, alpha0 = -1, alpha0Hat = -1, hSum = h;
+		if (q > 1) {
+			for (int j=2; j<q; j++) {
+				hSum += mTau[j-1];
+				xiInverse = h / hSum;
+				alpha0 -= 1.0/j;
+				for (int i=j; i>=1; i--) l[i] += l[i-1] * xiInverse;
+			}
+			alpha0 -= 1.0/q;
+			xiStarInverse = -l[1] - alpha0;
+			hSum += mTau[q-1];
+			xiInverse = h / hSum;
+			alpha0Hat = -l[1] - xiInverse;
+			for (int i=q; i>=1; i--) l[i] += l[i-1] * xiStarInverse;
+		}
+		double a1 = 1 - alpha0Hat + alpha0;
+		double a2 = 1 + q * a1;
+		mTq[2] = Math.abs(a1 / (alpha0 * a2));
+		mTq[5] = Math.abs(a2 * xiStarInverse / (l[q] * xiInverse));
+		if (mOrderWait == 1) { // constants to estimate the errors of orders q-1 and q+1
+			if (q > 1) {
+				double c = xiStarInverse / l[q];
+				double a3 = alpha0 + 1.0/q;
+				double a4 = alpha0Hat + xiInverse;
+				mTq[1] = Math.abs(c * (1 - a4 + a3) / a3);
+			}
+			else mTq[1] = 1;
+			hSum += mTau[q];
+			xiInverse = h / hSum;
+			double a5 = alpha0 - 1.0/(q+1);
+			double a6 = alpha0Hat - xiInverse;
+			mTq[3] = Math.abs(((1 - a6 + a5) / a2) / (xiInverse * (q+2) * a5));
+		}
+	}
+
+	// Applies the correction and updates the history of steps
+	private void completeStep(double h) {
+		int q = mOrder;
+		mSteps++;
+		for (int i=q; i>=2; i--) mTau[i] = mTau[i-1];
+		if (q == 1 && mSteps > 1) mTau[2] = mTau[1];
+		mTau[1] = h;
+		for (int j=0; j<=q; j++) {
+			double[] z = mZ[j];
+			double l = mL[j];
+			for (int i=0; i<z.length; i++) z[i] += l * mCorrection[i];
+		}
+		mOrderWait--;
+		if (mOrderWait == 1 && q != mMaxOrder) { // keep the correction to estimate the error of order q+1
+			System.arraycopy(mCorrection, 0, mZ[MAX_ORDER], 0, mCorrection.length);
+			mSavedTq5 = mTq[5];
+		}
+	}
+
+	// Chooses the step and order of the next step
+	private void prepareNextStep(double ratio) {
+		int q = mOrder;
+		if (mEtaMax == 1) { // after a failure, keep the step for a while
+			mOrderWait = Math.max(mOrderWait, 2);
+			mEtaMax = ETA_MAX;
+			return;
+		}
+		double eta = 1 / (Math.pow(BIAS2 * ratio, 1.0 / exponent(q)) + ADDON);
+		int newOrder = q;
+		if (mOrderWait == 0) {
+			mOrderWait = 2;
+			double etaLower = 0, etaHigher = 0;
+			if (q > 1) {
+				double lower = mTq[1] * getErrorNorm().ratio(mZ[q], mStart, mZ[0], mCurrentStep);
+				etaLower = 1 / (Math.pow(BIAS1 * lower, 1.0 / exponent(q-1)) + ADDON);
+			}
+			if (q < mMaxOrder && mSavedTq5 != 0) {
+				double factor = (mTq[5] / mSavedTq5) * Math.pow(mCurrentStep / mTau[2], q+1);
+				double[] saved = mZ[MAX_ORDER];
+				for (int i=0; i<mAux.length; i++) mAux[i] = mCorrection[i] - factor * saved[i];
+				double higher = mTq[3] * getErrorNorm().ratio(mAux, mStart, mZ[0], mCurrentStep);
+				etaHigher = 1 / (Math.pow(BIAS3 * higher, 1.0 / exponent(q+1)) + ADDON);
+			}
+			if (etaLower > Math.max(eta, etaHigher)) {
+				eta = etaLower;
+				newOrder = q-1;
+			}
+			else if (etaHigher > eta) {
+				eta = etaHigher;
+				newOrder = q+1;
+				System.arraycopy(mCorrection, 0, mZ[MAX_ORDER], 0, mCorrection.length);
+			}
+		}
+		if (eta < THRESHOLD) {
+			eta = 1;
+			newOrder = q;
+		}
+		else eta = Math.min(eta, mEtaMax);
+		mEtaMax = ETA_MAX;
+		if (newOrder > q) increaseOrder();
+		else if (newOrder < q) decreaseOrder();
+		if (eta != 1) rescale(eta);
+	}
+
+	// Exponent of the step in the ratio of the error of a given order
+	private int exponent(int order) {
+		return getErrorNorm().isPerUnitStep() ? order : order+1;
+	}
+
+	// Reduces the step after an error test failure, and the order after several
+	private void errorTestFailed(int failures, double ratio, double time) {
+		mEtaMax = 1;
+		if (failures <= ORDER_REDUCTION_FAILURES) {
+			double eta = 1 / (Math.pow(BIAS2 * ratio, 1.0 / exponent(mOrder)) + ADDON);
+			eta = Math.max(ETA_MIN, Math.max(eta, minimumEta()));
+			if (failures >= 2) eta = Math.min(eta, ETA_MAX_FAILED);
+			rescale(eta);
+		}
+		else if (mOrder > 1) {
+			decreaseOrder();
+			rescale(Math.max(ETA_MIN, minimumEta()));
+		}
+		else { // order 1, start the array again from the derivative
+			mCurrentStep *= Math.max(ETA_MIN, minimumEta());
+			mScaledStep = mCurrentStep;
+			mOrderWait = LONG_WAIT;
+			evaluateDerivative(time, mZ[0], mZ[1]);
+			for (int i=0; i<mZ[1].length; i++) mZ[1][i] *= mCurrentStep;
+		}
+	}
+
+	private double minimumEta() {
+		return mMinimumStepAllowed / Math.abs(mCurrentStep);
+	}
+
+	// Changes the step to eta times the current one, rescaling the array
+	private void rescale(double eta) {
+		double factor = eta;
+		for (int j=1; j<=mOrder; j++) {
+			double[] z = mZ[j];
+			for (int i=0; i<z.length; i++) z[i] *= factor;
+			factor *= eta;
+		}
+		mCurrentStep = mScaledStep * eta;
+		mScaledStep = mCurrentStep;
+	}
+
+	// Adds z_(q+1) from the last correction, kept in mZ[MAX_ORDER] (cvIncreaseBDF)
+	private void increaseOrder() {
+		int q = mOrder;
+		Arrays.fill(mL, 0);
+		double[] l = mL;
+		l[2] = 1;
+		double alpha1 = 1, product = 1, xiOld = 1, alpha0 = -1, hSum = mScaledStep;
+		for (int j=1; j<q; j++) {
+			hSum += mTau[j+1];
+			double xi = hSum / mScaledStep;
+			product *= xi;
+			alpha0 -= 1.0/(j+1);
+			alpha1 += 1/xi;
+			for (int i=j+2; i>=2; i--) l[i] = l[i]*xiOld + l[i-1];
+			xiOld = xi;
+		}
+		double a1 = (-alpha0 - alpha1) / product;
+		double[] saved = mZ[MAX_ORDER], newest = mZ[q+1];
+		for (int i=0; i<newest.length; i++) newest[i] = a1 * saved[i];
+		for (int j=2; j<=q; j++) {
+			double[] z = mZ[j];
+			for (int i=0; i<z.length; i++) z[i] += l[j] * newest[i];
+		}
+		mOrder = q+1;
+		mOrderWait = mOrder+1;
+	}
+
+	// Drops z_q, correcting the lower terms (cvDecreaseBDF)
+	private void decreaseOrder() {
+		int q = mOrder;
+		if (q > 2) {
+			Arrays.fill(mL, 0);
+			double[] l = mL;
+			l[2] = 1;
+			double hSum = 0;
+			for (int j=1; j<=q-2; j++) {
+				hSum += mTau[j];
+				double xi = hSum / mScaledStep;
+				for (int i=j+2; i>=2; i--) l[i] = l[i]*xi + l[i-1];
+			}
+			double[] last = mZ[q];
+			for (int j=2; j<q; j++) {
+				double[] z = mZ[j];
+				for (int i=0; i<z.length; i++) z[i] -= l[j] * last[i];
+			}
+		}
+		mOrder = q-1;
+		mOrderWait = mOrder+1;
+	}
+
+	// Coefficients of the step just taken in powers of theta, from y(t_n + s*h) =
+	// sum z_j*s^j with s = theta-1, corrected linearly to start at the given state
+	private void denseOutput(double[] start) {
+		int q = mOrder, dim = start.length;
+		Arrays.fill(mDenseOutput, 0);
+		for (int i=0; i<dim; i++) {
+			double constant = 0;
+			for (int j=0; j<=q; j++) {
+				double z = mZ[j][i];
+				// (theta-1)^j = sum over k of C(j,k) theta^k (-1)^(j-k)
+				double binomial = 1;
+				for (int k=0; k<=j; k++) {
+					double term = ((j-k) % 2 == 0 ? z : -z) * binomial;
+					if (k == 0) constant += term;
+					else mDenseOutput[(k-1)*dim+i] += term;
+					binomial = binomial * (j-k) / (k+1);
+				}
+			}
+			mDenseOutput[i] += constant - start[i];
+		}
+	}
+
+}
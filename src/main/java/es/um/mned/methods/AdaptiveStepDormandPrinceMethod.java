@@ -0,0 +1,208 @@
+package es.um.mned.methods;
+
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Dormand-Prince 5(4) method. Advances with the fifth order solution and
+ * uses the embedded fourth order one to estimate the error. The last stage
+ * is evaluated at the new point, so it is the first stage of the next step
+ * (first same as last) and an accepted step costs 6 evaluations.
+ * It has a free fourth order dense output.
+ * <p>
+ * As in DOPRI5, each accepted step also estimates h*|lambda|, with lambda the
+ * dominant eigenvalue of the Jacobian, from its last two stages, which are both
+ * evaluated at the end of the step. Values above 3.25, the boundary of the
+ * stability region, mean that stability and not accuracy limits the step.
+ */
+public class AdaptiveStepDormandPrinceMethod extends AdaptiveStepMethod {
+	private static final double
+		C2 = 1.0/5.0, C3 = 3.0/10.0, C4 = 4.0/5.0, C5 = 8.0/9.0,
+		A21 = 1.0/5.0,
+		A31 = 3.0/40.0, A32 = 9.0/40.0,
+		A41 = 44.0/45.0, A42 = -56.0/15.0, A43 = 32.0/9.0,
+		A51 = 19372.0/6561.0, A52 = -25360.0/2187.0, A53 = 64448.0/6561.0, A54 = -212.0/729.0,
+		A61 = 9017.0/3168.0, A62 = -355.0/33.0, A63 = 46732.0/5247.0, A64 = 49.0/176.0, A65 = -5103.0/18656.0,
+		A71 = 35.0/384.0, A73 = 500.0/1113.0, A74 = 125.0/192.0, A75 = -2187.0/6784.0, A76 = 11.0/84.0,
+		// difference between the fifth and the fourth order weights
+		E1 = 71.0/57600.0, E3 = -71.0/16695.0, E4 = 71.0/1920.0, E5 = -17253.0/339200.0, E6 = 22.0/525.0, E7 = -1.0/40.0,
+		// dense output
+		D1 = -12715105075.0/11282082432.0, D3 = 87487479700.0/32700410799.0, D4 = -10690763975.0/1880347072.0,
+		D5 = 701980252875.0/199316789632.0, D6 = -1453857185.0/822651844.0, D7 = 69997945.0/29380423.0;
+
+    private double[] mRK5;
+    private double[] mAux;
+    private double[] mError;
+    private double[] mK1, mK2, mK3, mK4, mK5, mK6, mK7;
+    private double[] mDenseOutput;
+    private double mStiffness; // h*|lambda| of the last step accepted
+
+    /**
+     * Initializes the method for a given InitialValueProblem
+     * @param InitialValueProblem problem
+     * @param step the fixed step to take. If negative, we'd solve backwards in time
+     */
+    public AdaptiveStepDormandPrinceMethod(
+    		InitialValueProblem problem,
+    		double step,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        super(problem,step, tolerance, minStep, event);
+
+        mRK5 = problem.getInitialState();
+        mAux = problem.getInitialState();
+        mError = problem.getInitialState();
+        mK1 = problem.getInitialState();
+        mK2 = problem.getInitialState();
+        mK3 = problem.getInitialState();
+        mK4 = problem.getInitialState();
+        mK5 = problem.getInitialState();
+        mK6 = problem.getInitialState();
+        mDenseOutput = new double[4*mK1.length];
+    }
+
+    /**
+     * Initializes the method for a given InitialValueProblem, estimating the
+     * initial step from the problem when solving starts
+     * @param InitialValueProblem problem
+     */
+    public AdaptiveStepDormandPrinceMethod(
+    		InitialValueProblem problem,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
+    }
+
+
+    @Override
+    public int getOrder() {
+    	return 5;
+    }
+
+    /**
+     * Dormand-Prince method implementation
+     * @param deltaTime the step to take
+     * @param time the current time
+     * @param state the current state
+     * @return the value of time of the step taken, state will contain the updated state
+     * @throws ConvergenceException
+     */
+    public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+        evaluateStartDerivative(time, state, mK1);
+        while (isStepAllowed(time)) {
+            double ratio = oneStep(time, state);
+
+            if (ratio < 1) {
+                mStiffness = stiffness();
+                denseOutput(state);
+                for (int i=0; i<state.length; i++) {
+                    state[i] = mRK5[i];
+                }
+                time += mCurrentStep;
+                // Adapt step
+                adaptAcceptedStep(ratio);
+                return time;
+            }
+            // Try a new smaller step
+            adaptRejectedStep(ratio);
+        }
+        throw new ConvergenceException("Adaptative Dormand-Prince Method did not converge.");
+    }
+
+    @Override
+    protected double[] getDenseOutput() {
+    	return mDenseOutput;
+    }
+
+    /**
+     * Estimate of h*|lambda| for the last step accepted, with lambda the dominant
+     * eigenvalue of the Jacobian. The step is limited by stability above about 3.25.
+     * @return the estimate, 0 if no step has been taken
+     */
+    public double getStiffnessEstimate() {
+    	return mStiffness;
+    }
+
+    // h*|lambda| from the last two stages, both at time+h: ||k7-k6|| / ||y1-y6||
+    private double stiffness() {
+        double numerator = 0, denominator = 0;
+        for (int i=0; i<mRK5.length; i++) {
+            double df = mK7[i] - mK6[i], dy = mRK5[i] - mAux[i];
+            numerator += df * df;
+            denominator += dy * dy;
+        }
+        return denominator > 0 ? Math.abs(mCurrentStep) * Math.sqrt(numerator / denominator) : 0;
+    }
+
+    /**
+     * Dormand-Prince step from the current state with derivative mK1. Leaves the
+     * new state in mRK5 and its derivative in mK7
+     * @param time the current time
+     * @param state the current state
+     * @return the ratio of the error of the step to the tolerance
+     */
+    private double oneStep(double time, double[] state) {
+        double h = mCurrentStep;
+        double[] k1 = mK1, k2 = mK2, k3 = mK3, k4 = mK4, k5 = mK5, k6 = mK6;
+        for (int i=0; i<state.length; i++) {
+            mAux[i] = state[i] + h * A21 * k1[i];
+        }
+        evaluateDerivative(time+C2*h, mAux, k2);
+
+        for (int i=0; i<state.length; i++) {
+            mAux[i] = state[i] + h * (A31 * k1[i] + A32 * k2[i]);
+        }
+        evaluateDerivative(time+C3*h, mAux, k3);
+
+        for (int i=0; i<state.length; i++) {
+            mAux[i] = state[i] + h * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+        }
+        evaluateDerivative(time+C4*h, mAux, k4);
+
+        for (int i=0; i<state.length; i++) {
+            mAux[i] = state[i] + h * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+        }
+        evaluateDerivative(time+C5*h, mAux, k5);
+
+        for (int i=0; i<state.length; i++) {
+            mAux[i] = state[i] + h * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+        }
+        evaluateDerivative(time+h, mAux, k6);
+
+        for (int i=0; i<state.length; i++) {
+            mRK5[i] = state[i] + h * (A71 * k1[i] + A73 * k3[i] + A74 * k4[i] + A75 * k5[i] + A76 * k6[i]);
+        }
+        double[] k7 = mK7 = evaluateEndDerivative(time+h, mRK5);
+
+        for (int i=0; i<state.length; i++) {
+            mError[i] = h * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7 * k7[i]);
+        }
+        return errorRatio(mError, state, mRK5);
+    }
+
+    // Fourth order continuous extension of the step just accepted, in powers of theta
+    private void denseOutput(double[] state) {
+        double h = mCurrentStep;
+        int dim = state.length;
+        double[] k1 = mK1, k3 = mK3, k4 = mK4, k5 = mK5, k6 = mK6, k7 = mK7;
+        for (int i=0; i<dim; i++) {
+            double r2 = mRK5[i] - state[i];
+            double r3 = h * k1[i] - r2;
+            double r4 = r2 - h * k7[i] - r3;
+            double r5 = h * (D1 * k1[i] + D3 * k3[i] + D4 * k4[i] + D5 * k5[i] + D6 * k6[i] + D7 * k7[i]);
+            // y0 + theta (r2 + (1-theta) (r3 + theta (r4 + (1-theta) r5)))
+            mDenseOutput[i] = r2 + r3;
+            mDenseOutput[dim+i] = -r3 + r4 + r5;
+            mDenseOutput[2*dim+i] = -r4 - 2*r5;
+            mDenseOutput[3*dim+i] = r5;
+        }
+    }
+
+}
@@ -7,9 +7,14 @@ import es.um.mned.ode.Event;
 import es.um.mned.ode.InitialValueProblem;
 
 public class AdaptiveStepEulerMethod extends AdaptiveStepMethod {
+    private static final double MAX_Q = 4.;
+	private static final double MIN_Q = 0.1;
+	private static final double SAFETY = 0.84;
 	
     private double[] mHalfStepState;
     private double[] mFullStepState; 
+    private double[] mDerivative;
+    private double[] mError;
     
     /**
      * Initializes the method for a given InitialValueProblem
@@ -24,15 +29,37 @@ public class AdaptiveStepEulerMethod extends AdaptiveStepMethod {
     		Optional<Event> event
     		) {
         super(problem, step, tolerance, minStep, event);
+        setStepSizeController(new IntegralStepSizeController(SAFETY, MIN_Q, MAX_Q));
         
         mHalfStepState = problem.getInitialState();
         mFullStepState = problem.getInitialState();
+        mDerivative = problem.getInitialState();
+        mError = problem.getInitialState();
+    }
+
+    /**
+     * Initializes the method for a given InitialValueProblem, estimating the
+     * initial step from the problem when solving starts
+     * @param InitialValueProblem problem
+     */
+    public AdaptiveStepEulerMethod(
+    		InitialValueProblem problem,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
     }
     
     @Override
     public int getOrder() {
     	return 1;
     }
+    
+    @Override
+    protected int getErrorOrder() {
+    	return 1;
+    }
 
     /**
      * Extrapolated Euler method implementation
@@ -43,40 +70,34 @@ public class AdaptiveStepEulerMethod extends AdaptiveStepMethod {
      * @throws ConvergenceException 
      */
     public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
-        while (Math.abs(mCurrentStep)>=mMinimumStepAllowed) {
-            double[] derivative = mProblem.getDerivative(time, state);
+        while (isStepAllowed(time)) {
+            double[] derivative = mDerivative;
+            evaluateDerivative(time, state, derivative);
             double halfStep = mCurrentStep/2;
             for (int i=0; i<state.length; i++) {
                 mHalfStepState[i] = state[i] + halfStep     * derivative[i];
                 mFullStepState[i] = state[i] + mCurrentStep * derivative[i];
             }
-            derivative = mProblem.getDerivative(time+halfStep, mHalfStepState);
-            double error = 0;
+            evaluateDerivative(time+halfStep, mHalfStepState, derivative);
             for (int i=0; i<state.length; i++) {
                 mHalfStepState[i] += halfStep * derivative[i];
-                double errorInIndex = mHalfStepState[i]-mFullStepState[i];
-                error += errorInIndex*errorInIndex;
+                mError[i] = mHalfStepState[i]-mFullStepState[i];
             }
-            error = Math.sqrt(error);
-            if (error<mTolerance*Math.abs(mCurrentStep)) {
+            double ratio = errorRatio(mError, state, mHalfStepState);
+            if (ratio < 1) {
                 for (int i=0; i<state.length; i++) {
                     //state[i] = mHalfStepState[i]; 
                     state[i] = 2*mHalfStepState[i] - mFullStepState[i];
                 }
                 time += mCurrentStep;
                 // Adapt step
-                if (error<1.0e-10) mCurrentStep = 2*mCurrentStep;
-                else {
-                    double q = 0.84*(mTolerance*Math.abs(mCurrentStep))/error;
-                    mCurrentStep *= q;
-                }
-                //System.out.println ("ACCEPTED: t = "+time+ " New step is "+mCurrentStep+ " error = "+error);
+                adaptAcceptedStep(ratio);
+                //System.out.println ("ACCEPTED: t = "+time+ " New step is "+mCurrentStep+ " ratio = "+ratio);
                 return time;
             }
             // Try a new smaller step
-            double q = 0.84*(mTolerance*Math.abs(mCurrentStep))/error;
-            mCurrentStep *= q;
-//            System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " error = "+error);
+            adaptRejectedStep(ratio);
+//            System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " ratio = "+ratio);
         }
         throw new ConvergenceException("Adaptative Euler Method did not converge.");
 //        // Was not able to reach tolerance before going below mMinimumStepAllowed
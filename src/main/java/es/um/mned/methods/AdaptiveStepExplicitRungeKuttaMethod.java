@@ -0,0 +1,115 @@
+package es.um.mned.methods;
+
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Adaptive step explicit Runge-Kutta method given by a Butcher tableau with an
+ * embedded solution. Advances with the solution of the tableau, and the difference
+ * with the embedded one estimates the error. If the tableau has no continuous
+ * extension, the dense output is the cubic Hermite one.
+ */
+public class AdaptiveStepExplicitRungeKuttaMethod extends AdaptiveStepMethod {
+    private ButcherTableau mTableau;
+    private ExplicitRungeKuttaEngine mEngine;
+    private double[] mNewState;
+    private double[] mDenseOutput;
+
+    /**
+     * Initializes the method for a given InitialValueProblem
+     * @param InitialValueProblem problem
+     * @param step the fixed step to take. If negative, we'd solve backwards in time
+     * @param tableau the method, which must have an embedded solution, for instance ButcherTableau.DORMAND_PRINCE_54
+     */
+    public AdaptiveStepExplicitRungeKuttaMethod(
+    		InitialValueProblem problem,
+    		double step,
+    		ButcherTableau tableau,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        super(problem, step, tableau.getOrder(), tolerance, minStep, event);
+        if (!tableau.hasEmbedded())
+        	throw new IllegalArgumentException(tableau.getName() + " has no embedded solution to estimate the error");
+        mTableau = tableau;
+        mNewState = problem.getInitialState();
+        mEngine = new ExplicitRungeKuttaEngine(tableau, this, mNewState);
+        int degree = tableau.hasDenseOutput() ? tableau.getDenseDegree() : 3;
+        mDenseOutput = new double[degree*mNewState.length];
+    }
+
+    /**
+     * Initializes the method for a given InitialValueProblem, estimating the
+     * initial step from the problem when solving starts
+     * @param InitialValueProblem problem
+     * @param tableau the method, which must have an embedded solution
+     */
+    public AdaptiveStepExplicitRungeKuttaMethod(
+    		InitialValueProblem problem,
+    		ButcherTableau tableau,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        this(problem, AUTOMATIC_STEP, tableau, tolerance, minStep, event);
+    }
+
+    @Override
+    public int getOrder() {
+    	return mTableau.getOrder();
+    }
+
+    public ButcherTableau getTableau() {
+    	return mTableau;
+    }
+
+    /**
+     * Embedded Runge-Kutta method implementation
+     * @param deltaTime the step to take
+     * @param time the current time
+     * @param state the current state
+     * @return the value of time of the step taken, state will contain the updated state
+     * @throws ConvergenceException
+     */
+    public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+        mEngine.start(time, state);
+        while (isStepAllowed(time)) {
+            mEngine.step(time, state, mCurrentStep, mNewState);
+            double ratio = errorRatio(mEngine.error(mCurrentStep), state, mNewState);
+
+            if (ratio < 1) {
+                if (mTableau.hasDenseOutput())
+                    mEngine.denseOutput(mCurrentStep, mDenseOutput);
+                else {
+                    // the derivative at the end is the first stage of the next step
+                    double[] endDerivative = mTableau.isFsal() ? mEngine.stage(mTableau.getStages()-1)
+                    		: evaluateEndDerivative(time+mCurrentStep, mNewState);
+                    hermiteDenseOutput(mCurrentStep, state, mNewState, mEngine.stage(0), endDerivative, mDenseOutput);
+                }
+                System.arraycopy(mNewState, 0, state, 0, state.length);
+                time += mCurrentStep;
+                // Adapt step
+                adaptAcceptedStep(ratio);
+                return time;
+            }
+            // Try a new smaller step
+            adaptRejectedStep(ratio);
+        }
+        throw new ConvergenceException("Adaptative " + mTableau.getName() + " Method did not converge.");
+    }
+
+    @Override
+    protected int getErrorOrder() {
+    	return Math.min(mTableau.getOrder(), mTableau.getEmbeddedOrder());
+    }
+
+    @Override
+    protected double[] getDenseOutput() {
+    	return mDenseOutput;
+    }
+
+}
@@ -10,10 +10,20 @@ import es.um.mned.ode.NumericalSolutionPoint;
 abstract public class AdaptiveStepMethod extends FixedStepMethod {
 	
 	private final double DEFAULT_TOL = 1e-4;
+	private static final double MIN_STEP_ULPS = 16; // smallest step, in units in the last place of the time
+	
+	/**
+	 * Step to give to the constructors to have the initial step estimated from
+	 * the problem when solving starts
+	 */
+	public static final double AUTOMATIC_STEP = 0;
  
     protected double mTolerance;
     protected double mCurrentStep;
-    protected double mMinimumStepAllowed; // Non-convergence minimum
+    protected double mMinimumStepAllowed; // Non-convergence minimum given, 0 if none
+    private StepSizeController mController;
+    private ErrorNorm mErrorNorm;
+    private boolean mDefaultErrorNorm;
 
     public AdaptiveStepMethod(
     		InitialValueProblem problem,
@@ -23,21 +33,231 @@ abstract public class AdaptiveStepMethod extends FixedStepMethod {
     		Optional<Event> event
     		) {
         super(problem,step, event);
+        initStepControl(step, tol, minStep);
+    }
+    
+    /**
+     * Initializes the method for a given InitialValueProblem, for subclasses whose
+     * order is not known until their constructor has run
+     * @param order the order of the method
+     */
+    protected AdaptiveStepMethod(
+    		InitialValueProblem problem,
+    		double step,
+    		int order,
+    		Optional<Double> tol,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        super(problem,step, order, event);
+        initStepControl(step, tol, minStep);
+    }
+    
+    private void initStepControl(double step, Optional<Double> tol, Optional<Double> minStep) {
         mCurrentStep = step;
-        mMinimumStepAllowed = Math.abs(minStep.orElse(step / 1.0e6));
+        mMinimumStepAllowed = Math.abs(minStep.orElse(0.0));
         mTolerance = tol.orElse(DEFAULT_TOL);
+        mController = new IntegralStepSizeController();
+        mErrorNorm = defaultErrorNorm(mTolerance);
+        mDefaultErrorNorm = true;
+    }
+    
+    /**
+     * The error norm used until another one is set with setErrorNorm, the one
+     * per unit step with the tolerance. Called from the constructor, so it should
+     * only depend on the tolerance.
+     * @param tolerance the tolerance of the method
+     * @return the norm
+     */
+    protected ErrorNorm defaultErrorNorm(double tolerance) {
+    	return ErrorNorm.perUnitStep(tolerance);
+    }
+    
+    /**
+     * Whether the current step is large enough to go on trying it: not below the
+     * minimum step given, if any, and large enough to advance the time by more
+     * than round-off
+     * @param time the current time
+     * @return true if the step may be tried
+     */
+    protected boolean isStepAllowed(double time) {
+    	double step = Math.abs(mCurrentStep);
+    	return step >= mMinimumStepAllowed && step >= MIN_STEP_ULPS * Math.ulp(time);
+    }
+    
+    /**
+     * Estimates the initial step from the problem, as Hairer and Wanner do:
+     * an Euler step of size h0 = 0.01*|y0|/|f0| gives an estimate of the second
+     * derivative, and the step is the one for which the terms of order p+1 are
+     * about 0.01 (in units of the scales of the error norm), but no more than
+     * 100*h0. The derivative at the start is kept for the first step.
+     * @param time the initial time
+     * @param state the initial state
+     * @param direction 1 to solve forwards in time, -1 backwards
+     * @param maxStep the largest step to return
+     * @return the step, with the sign of the direction
+     */
+    protected double estimateInitialStep(double time, double[] state, double direction, double maxStep) {
+    	int dim = state.length;
+    	double[] f0 = evaluateEndDerivative(time, state).clone();
+    	double d0 = 0, d1 = 0;
+    	for (int i=0; i<dim; i++) {
+    		double scale = mErrorNorm.scale(i, state[i]);
+    		d0 += (state[i]/scale) * (state[i]/scale);
+    		d1 += (f0[i]/scale) * (f0[i]/scale);
+    	}
+    	d0 = Math.sqrt(d0/dim);
+    	d1 = Math.sqrt(d1/dim);
+    	double h0 = (d0 < 1.0e-5 || d1 < 1.0e-5) ? 1.0e-6 : 0.01 * d0/d1;
+    	h0 = Math.min(h0, maxStep);
+    	// Explicit Euler step
+    	double[] y1 = new double[dim], f1 = new double[dim];
+    	for (int i=0; i<dim; i++) y1[i] = state[i] + direction * h0 * f0[i];
+    	evaluateDerivative(time + direction * h0, y1, f1);
+    	double d2 = 0;
+    	for (int i=0; i<dim; i++) {
+    		double scale = mErrorNorm.scale(i, state[i]);
+    		double difference = (f1[i] - f0[i]) / scale;
+    		d2 += difference * difference;
+    	}
+    	d2 = Math.sqrt(d2/dim) / h0;
+    	double d = Math.max(d1, d2);
+    	double h1 = (d <= 1.0e-15) ? Math.max(1.0e-6, h0 * 1.0e-3)
+    			: Math.pow(0.01/d, 1.0/(getErrorOrder()+1));
+    	return direction * Math.min(Math.min(100 * h0, h1), maxStep);
+    }
+    
+    // Estimates the initial step if none was given, towards a time to reach
+    private void chooseInitialStep(double targetTime) {
+    	NumericalSolutionPoint start = getSolution().getLastPoint();
+    	double span = targetTime - start.getTime();
+    	double direction = (span < 0) ? -1 : 1;
+    	double maxStep = (span == 0 || Double.isInfinite(span)) ? Double.MAX_VALUE : Math.abs(span);
+    	mCurrentStep = estimateInitialStep(start.getTime(), start.getState(), direction, maxStep);
+    	setStep(mCurrentStep);
+    }
+    
+    /**
+     * Exponent k such that the error per unit step estimated by the method behaves
+     * like step^k, for the step size controller
+     * @return k, one less than the order by default
+     */
+    protected int getErrorOrder() {
+    	return Math.max(1, getOrder()-1);
     }
     
+    /**
+     * Exponent of the step in the ratio of the error to the tolerance: the error
+     * order for the norm per unit step, and one more for the norms per step
+     * @return the exponent, for the step size controller
+     */
+    protected int getRatioOrder() {
+    	return mErrorNorm.isPerUnitStep() ? getErrorOrder() : getErrorOrder()+1;
+    }
+    
+    /**
+     * Changes how the step is adapted. The controller is reset.
+     * @param controller the new step size controller
+     */
+    public void setStepSizeController(StepSizeController controller) {
+    	controller.reset();
+    	mController = controller;
+    }
+    
+    public StepSizeController getStepSizeController() {
+    	return mController;
+    }
+    
+    /**
+     * Changes how the error of the steps is measured, for instance to give
+     * tolerances per component
+     * @param norm the new error norm
+     */
+    public void setErrorNorm(ErrorNorm norm) {
+    	norm.checkDimension(mProblem.getInitialState().length);
+    	mErrorNorm = norm;
+    	mDefaultErrorNorm = false;
+    }
+    
+    public ErrorNorm getErrorNorm() {
+    	return mErrorNorm;
+    }
+    
+    /**
+     * Ratio of the error of a step with the current step to the tolerance
+     * @param error the estimate of the local error of each component
+     * @param start the state at the start of the step
+     * @param end the state at the end of the step
+     * @return the ratio, the step is accepted if below 1
+     */
+    protected double errorRatio(double[] error, double[] start, double[] end) {
+    	return mErrorNorm.ratio(error, start, end, mCurrentStep);
+    }
+    
+    /**
+     * Adapts the current step after a step with it has been accepted
+     * @param ratio the ratio of the error of the step to the tolerance
+     */
+    protected void adaptAcceptedStep(double ratio) {
+    	mCurrentStep *= mController.accepted(ratio, getRatioOrder());
+    }
+    
+    /**
+     * Counts the rejection of a step with the current step and reduces it
+     * @param ratio the ratio of the error of the step to the tolerance
+     */
+    protected void adaptRejectedStep(double ratio) {
+    	mStatistics.addRejectedStep();
+    	mCurrentStep *= mController.rejected(ratio, getRatioOrder());
+    }
+    
+    /**
+     * Cubic Hermite dense output of a step from the states and derivatives at both ends
+     * @param step the size of the step
+     * @param startState the state at the start of the step
+     * @param endState the state at the end of the step
+     * @param startDerivative the derivative at the start of the step
+     * @param endDerivative the derivative at the end of the step
+     * @param denseOutput array of length three times the state to write the coefficients
+     */
+    protected static void hermiteDenseOutput(double step, double[] startState, double[] endState,
+    		double[] startDerivative, double[] endDerivative, double[] denseOutput) {
+    	int dim = startState.length;
+    	for (int i=0; i<dim; i++) {
+    		double delta = endState[i] - startState[i];
+    		double f0 = step * startDerivative[i], f1 = step * endDerivative[i];
+    		denseOutput[i] = f0;
+    		denseOutput[dim+i] = 3*delta - 2*f0 - f1;
+    		denseOutput[2*dim+i] = -2*delta + f0 + f1;
+    	}
+    }
+    
+    /**
+     * Changes the tolerance. The error norm is the default one with it,
+     * unless another norm was set with setErrorNorm.
+     */
     public void setTolerance(double tolerance) {
         mTolerance = tolerance;
+        if (mDefaultErrorNorm) mErrorNorm = defaultErrorNorm(tolerance);
     }
 
     public double getTolerance() {
         return mTolerance;
     }
     
+    @Override
+    protected double solveUpTo(double maxTime) throws ConvergenceException {
+        if (mCurrentStep == AUTOMATIC_STEP) chooseInitialStep(maxTime);
+        return super.solveUpTo(maxTime);
+    }
+    
+    /**
+     * Steps the problem to one step after the time last reached by step. The step
+     * is the one given, or the estimate of the initial step if none was given.
+     */
     @Override
     public NumericalSolutionPoint step() throws ConvergenceException {
+        if (mCurrentStep == AUTOMATIC_STEP) chooseInitialStep(Double.POSITIVE_INFINITY);
         currentUserTime += getStep();
         double time = solveUpTo(currentUserTime);
         if(time == Double.NaN) return null;
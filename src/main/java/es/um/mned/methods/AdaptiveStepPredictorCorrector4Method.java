@@ -9,13 +9,17 @@ import es.um.mned.ode.InitialValueProblem;
 public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
     private static final double MAX_Q = 4.;
 	private static final double MIN_Q = 0.1;
+	private static final double SAFETY = 1.5*Math.pow(19.0/270.0, 0.25); // the factor was 1.5*(tolerance*|step|/norm)^(1/4)
 
 	public static final int sSTEPS = 4;
 
 
     protected boolean mMustRestart = true;
     protected double[] mPredictorState, mCorrectorState;
+    protected double[] mError;
     protected double[] mAuxState; // Required by the RK starter
+    protected double[] mK2, mK3, mK4; // Required by the RK starter
+    protected double[] mDerivativeIp1;
     protected double[]   mTimes       = new double[sSTEPS-1];   // Times taken at restart
     protected double[][] mStates      = new double[sSTEPS-1][]; // ordered 2 = (i-2), 1 = (i-1) , 0 = i
     protected double[][] mDerivatives = new double[sSTEPS][];   // ordered 3 = (i-3), 2 = (i-2), 1 = (i-1) , 0 = i
@@ -37,22 +41,48 @@ public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
     		Optional<Event> event
     		) {
         super(problem,step, tolerance, minStep, event);
+        setStepSizeController(new IntegralStepSizeController(SAFETY, MIN_Q, MAX_Q));
         
         
         mPredictorState = problem.getInitialState();
         mCorrectorState = problem.getInitialState();
+        mError = problem.getInitialState();
         for (int i=0; i<mStates.length; i++) mStates[i] = problem.getInitialState();
         mAuxState = problem.getInitialState();
+        mK2 = problem.getInitialState();
+        mK3 = problem.getInitialState();
+        mK4 = problem.getInitialState();
+        mDerivativeIp1 = problem.getInitialState();
+        for (int i=0; i<mDerivatives.length; i++) mDerivatives[i] = problem.getInitialState();
         // ------
         dim = problem.getInitialState().length;
         queue = new double[sSTEPS-1][dim];
     }
+
+    /**
+     * Initializes the method for a given InitialValueProblem, estimating the
+     * initial step from the problem when solving starts
+     * @param InitialValueProblem problem
+     */
+    public AdaptiveStepPredictorCorrector4Method(
+    		InitialValueProblem problem,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
+    }
     
     
     @Override
     public int getOrder() {
     	return 4;
     }
+    
+    @Override
+    protected int getErrorOrder() {
+    	return 4;
+    }
 
     /**
      * Extrapolated Euler method implementation
@@ -68,7 +98,7 @@ public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
             return time + deltaTime;
         }
         // GENERATE NEW POINTS
-        while (Math.abs(mCurrentStep)>=mMinimumStepAllowed) {
+        while (isStepAllowed(time)) {
             double h24 = mCurrentStep/24.0;
             double currentTime=time;
             double[] currentState=state;
@@ -78,25 +108,22 @@ public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
                 currentState = mStates[0];
             }
             // Predictor: 4-steps Adams-Bashford
-            mDerivatives[0] = mProblem.getDerivative(currentTime, currentState);
+            evaluateDerivative(currentTime, currentState, mDerivatives[0]);
             for  (int i=0; i<state.length; i++) {
                 mPredictorState[i] = currentState[i] + h24 * ( 55*mDerivatives[0][i] - 59*mDerivatives[1][i] + 37*mDerivatives[2][i] -9*mDerivatives[3][i]);
             }
             // Corrector: 3-steps Adams-Moulton 
-            double[] derivativeIp1 = mProblem.getDerivative(currentTime+mCurrentStep, mPredictorState);
+            double[] derivativeIp1 = mDerivativeIp1;
+            evaluateDerivative(currentTime+mCurrentStep, mPredictorState, derivativeIp1);
             for (int i=0; i<state.length; i++) {
                 mCorrectorState[i] = currentState[i] + h24 * ( 9*derivativeIp1[i] + 19*mDerivatives[0][i] -5*mDerivatives[1][i] + mDerivatives[2][i]);
             }
             // CALCULATE ERROR
-            double norm = 0;
             for (int i=0; i<state.length; i++) {
-                double diffInIndex = mCorrectorState[i]-mPredictorState[i];
-                norm += diffInIndex*diffInIndex;
+                mError[i] = 19.0 * (mCorrectorState[i]-mPredictorState[i]) / 270.0;
             }
-            norm = Math.sqrt(norm);
-            double error = 19.0 * norm / 270.0;
-            double maxErrorAllowed = mTolerance * Math.abs(mCurrentStep);
-            if (error < maxErrorAllowed) { // ACCEPT
+            double ratio = errorRatio(mError, currentState, mCorrectorState);
+            if (ratio < 1) { // ACCEPT
                 time = currentTime + mCurrentStep;
                 
                 if (mMustRestart) { // return the first one of the 4, queue the rest.
@@ -109,20 +136,16 @@ public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
                     System.arraycopy(mCorrectorState, 0, state, 0, state.length);
                 }
                 
-                if (error < maxErrorAllowed*0.1) { // error is really small --> adapt step
-                    if (norm < 1.0e-16) { // Prevent division by zero
-                        mCurrentStep = 2 * mCurrentStep;
-                    } 
-                    else {
-                        double q = 1.5*Math.pow(maxErrorAllowed/norm, 0.25);
-                        q = Math.min(MAX_Q, q); // Do not grow too much
-                        //System.out.print ("ACCEPTED: t = "+time+ " Old step is "+mCurrentStep+ " error = "+error);
-                        mCurrentStep *= q;
-                        //System.out.println ("  New step is "+mCurrentStep+" state= "+state[0]);
-                    }   
+                // The controller sees every accepted step, but changing the step
+                // means restarting, so it is only done when the error is really small
+                double q = getStepSizeController().accepted(ratio, getRatioOrder());
+                if (ratio < 0.1) { // error is really small --> adapt step
+                    //System.out.print ("ACCEPTED: t = "+time+ " Old step is "+mCurrentStep+ " ratio = "+ratio);
+                    mCurrentStep *= q;
+                    //System.out.println ("  New step is "+mCurrentStep+" state= "+state[0]);
                     mMustRestart = true;
                 } else {
-                    //System.out.println ("ACCEPTED: t = "+time+ " with step "+mCurrentStep+ " error = "+error);
+                    //System.out.println ("ACCEPTED: t = "+time+ " with step "+mCurrentStep+ " ratio = "+ratio);
                     for (int i=mDerivatives.length-1; i>0; i--) // Prepare next step
                         System.arraycopy(mDerivatives[i-1],0,mDerivatives[i],0,state.length);
                     mMustRestart = false;
@@ -130,10 +153,8 @@ public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
                 return time;
             }
             // Try a new smaller step
-            double q = 1.5*Math.pow(maxErrorAllowed/norm, 0.25);
-            q = Math.max(q, MIN_Q); // Do not shrink too much
-            mCurrentStep *= q;
-            //System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " error = "+error);
+            adaptRejectedStep(ratio);
+            //System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " ratio = "+ratio);
             mMustRestart = true;
         }
         throw new ConvergenceException("Adaptative Predictor Corrector Method did not converge.");
@@ -143,13 +164,13 @@ public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
 
     protected void restartMethod(double time, double[] state) {
         //System.out.println ("Restarting RK: t = "+time+ " with step "+mCurrentStep+" state= "+state[0]);
-        mDerivatives[3] = mProblem.getDerivative(time, state);
+        evaluateDerivative(time, state, mDerivatives[3]);
         mTimes[2] = rungeKuttaStep(mCurrentStep, time, state, mStates[2], mDerivatives[3]);
         
-        mDerivatives[2] = mProblem.getDerivative(mTimes[2], mStates[2]);
+        evaluateDerivative(mTimes[2], mStates[2], mDerivatives[2]);
         mTimes[1] = rungeKuttaStep(mCurrentStep, mTimes[2], mStates[2], mStates[1], mDerivatives[2]);
         
-        mDerivatives[1] = mProblem.getDerivative(mTimes[1], mStates[1]);
+        evaluateDerivative(mTimes[1], mStates[1], mDerivatives[1]);
         mTimes[0] = rungeKuttaStep(mCurrentStep, mTimes[1], mStates[1], mStates[0], mDerivatives[1]);
         // Yes, one could write this using a for loop...
     }
@@ -157,18 +178,19 @@ public class AdaptiveStepPredictorCorrector4Method extends AdaptiveStepMethod {
     
     protected double rungeKuttaStep(double deltaTime, double time, double[] state, double[] newState, double[] k1) {
         double h2 = deltaTime/2.0;
+        double[] k2 = mK2, k3 = mK3, k4 = mK4;
         for (int i=0; i<state.length; i++) {
             mAuxState[i] = state[i] + h2 * k1[i];
         }
-        double[] k2 = mProblem.getDerivative(time+h2, mAuxState);
+        evaluateDerivative(time+h2, mAuxState, k2);
         for (int i=0; i<state.length; i++) {
             mAuxState[i] = state[i] + h2 * k2[i];
         }
-        double[] k3 = mProblem.getDerivative(time+h2, mAuxState);
+        evaluateDerivative(time+h2, mAuxState, k3);
         for (int i=0; i<state.length; i++) {
             mAuxState[i] = state[i] + deltaTime * k3[i];
         }
-        double[] k4 = mProblem.getDerivative(time+deltaTime, mAuxState);
+        evaluateDerivative(time+deltaTime, mAuxState, k4);
         double h6 = deltaTime/6;
         for (int i=0; i<state.length; i++) {
             newState[i] = state[i] + h6 * (k1[i]+2*k2[i]+2*k3[i]+k4[i]);
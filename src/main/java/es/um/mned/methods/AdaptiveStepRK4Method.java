@@ -9,10 +9,15 @@ import es.um.mned.ode.InitialValueProblem;
 public class AdaptiveStepRK4Method extends AdaptiveStepMethod {
     private static final double MAX_Q = 4.;
 	private static final double MIN_Q = 0.1;
+	private static final double SAFETY = Math.pow(0.5, 0.25); // aims at half the tolerance
 	
     private double[] mHalfStepState;
     private double[] mHalfStepCompleteState;
     private double[] mFullStepState; 
+    private double[] mK1, mK2, mK3, mK4;
+    private double[] mStartDerivative;
+    private double[] mError;
+    private double[] mDenseOutput;
     
     /**
      * Initializes the method for a given InitialValueProblem
@@ -27,10 +32,32 @@ public class AdaptiveStepRK4Method extends AdaptiveStepMethod {
     		Optional<Event> event
     		) {
         super(problem,step, tolerance, minStep, event);
+        setStepSizeController(new IntegralStepSizeController(SAFETY, MIN_Q, MAX_Q));
         
         mHalfStepState = problem.getInitialState();
         mHalfStepCompleteState = problem.getInitialState();
         mFullStepState = problem.getInitialState();
+        mK1 = problem.getInitialState();
+        mK2 = problem.getInitialState();
+        mK3 = problem.getInitialState();
+        mK4 = problem.getInitialState();
+        mStartDerivative = problem.getInitialState();
+        mError = problem.getInitialState();
+        mDenseOutput = new double[3*mK1.length];
+    }
+
+    /**
+     * Initializes the method for a given InitialValueProblem, estimating the
+     * initial step from the problem when solving starts
+     * @param InitialValueProblem problem
+     */
+    public AdaptiveStepRK4Method(
+    		InitialValueProblem problem,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
     }
     
     
@@ -38,6 +65,11 @@ public class AdaptiveStepRK4Method extends AdaptiveStepMethod {
     public int getOrder() {
     	return 1;
     }
+    
+    @Override
+    protected int getErrorOrder() {
+    	return 4;
+    }
 
     /**
      * Extrapolated Euler method implementation
@@ -48,39 +80,36 @@ public class AdaptiveStepRK4Method extends AdaptiveStepMethod {
      * @throws ConvergenceException 
      */
     public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
-        while (Math.abs(mCurrentStep) >= mMinimumStepAllowed) {
+        // the full step and the first half step start with the same derivative
+        evaluateStartDerivative(time, state, mStartDerivative);
+        while (isStepAllowed(time)) {
             double halfStep = mCurrentStep/2;
-            oneStep(mCurrentStep, time,          state,          mFullStepState);
-            oneStep(halfStep,     time,          state,          mHalfStepState);
-            oneStep(halfStep,     time+halfStep, mHalfStepState, mHalfStepCompleteState);
+            oneStep(mCurrentStep, time,          state,          mStartDerivative, mFullStepState);
+            oneStep(halfStep,     time,          state,          mStartDerivative, mHalfStepState);
+            evaluateDerivative(time+halfStep, mHalfStepState, mK1);
+            oneStep(halfStep,     time+halfStep, mHalfStepState, mK1,              mHalfStepCompleteState);
             
-            double error = 0;
             for (int i=0; i<state.length; i++) {
-                double errorInIndex = mHalfStepCompleteState[i]-mFullStepState[i];
-                error += errorInIndex*errorInIndex;
+                mError[i] = 16.0*(mHalfStepCompleteState[i]-mFullStepState[i])/15.0;
             }
-            error = 16.0*Math.sqrt(error)/15.0;
-            if (error<mTolerance*Math.abs(mCurrentStep)) {
+            double ratio = errorRatio(mError, state, mHalfStepCompleteState);
+            if (ratio < 1) {
                 for (int i=0; i<state.length; i++) {
                     //state[i] = mHalfStepCompleteState[i]; 
-                    state[i] = (16.0*mHalfStepCompleteState[i] - mFullStepState[i])/15.0;
+                    mFullStepState[i] = (16.0*mHalfStepCompleteState[i] - mFullStepState[i])/15.0;
                 }
+                double[] endDerivative = evaluateEndDerivative(time+mCurrentStep, mFullStepState);
+                hermiteDenseOutput(mCurrentStep, state, mFullStepState, mStartDerivative, endDerivative, mDenseOutput);
+                System.arraycopy(mFullStepState, 0, state, 0, state.length);
                 time += mCurrentStep;
                 // Adapt step
-                if (error<1.0e-10) mCurrentStep = 2*mCurrentStep;
-                else {
-                    double q = Math.pow((mTolerance*Math.abs(mCurrentStep))/(2.0*error),0.25);
-                    q = Math.min(MAX_Q, Math.max(q, MIN_Q));
-                    mCurrentStep *= q;
-                }
-                //System.out.println ("ACCEPTED: t = "+time+ " New step is "+mCurrentStep+ " error = "+error);
+                adaptAcceptedStep(ratio);
+                //System.out.println ("ACCEPTED: t = "+time+ " New step is "+mCurrentStep+ " ratio = "+ratio);
                 return time;
             }
             // Try a new smaller step
-            double q = Math.pow((mTolerance*Math.abs(mCurrentStep))/(2.0*error),0.25);
-            q = Math.min(MAX_Q, Math.max(q, MIN_Q));
-            mCurrentStep *= q;
-            // System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " error = "+error);
+            adaptRejectedStep(ratio);
+            // System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " ratio = "+ratio);
         }
         throw new ConvergenceException("Adaptative Runge-Kutta 4 Method did not converge.");
 //        // Was not able to reach tolerance before going below mMinimumStepAllowed
@@ -89,28 +118,34 @@ public class AdaptiveStepRK4Method extends AdaptiveStepMethod {
     
     
     
+    @Override
+    protected double[] getDenseOutput() {
+    	return mDenseOutput;
+    }
+    
     /**
      * RK4 method implementation
      * @param deltaTime the step to take
      * @param time the current time
      * @param state the current state
+     * @param k1 the derivative at the current state
      * @return the value of time of the step taken, state will contain the updated state
      */
-    private double oneStep(double deltaTime, double time, double[] state, double[] finalState) {
+    private double oneStep(double deltaTime, double time, double[] state, double[] k1, double[] finalState) {
         double h2 = deltaTime/2.0;
-        double[] k1 = mProblem.getDerivative(time, state);
+        double[] k2 = mK2, k3 = mK3, k4 = mK4;
         for (int i=0; i<state.length; i++) {
             finalState[i] = state[i] + h2 * k1[i];
         }
-        double[] k2 = mProblem.getDerivative(time+h2, finalState);
+        evaluateDerivative(time+h2, finalState, k2);
         for (int i=0; i<state.length; i++) {
             finalState[i] = state[i] + h2 * k2[i];
         }
-        double[] k3 = mProblem.getDerivative(time+h2, finalState);
+        evaluateDerivative(time+h2, finalState, k3);
         for (int i=0; i<state.length; i++) {
             finalState[i] = state[i] + deltaTime * k3[i];
         }
-        double[] k4 = mProblem.getDerivative(time+deltaTime, finalState);
+        evaluateDerivative(time+deltaTime, finalState, k4);
         h2 = deltaTime/6;
         for (int i=0; i<state.length; i++) {
             finalState[i] = state[i] + h2 * (k1[i]+2*k2[i]+2*k3[i]+k4[i]);
@@ -9,10 +9,14 @@ import es.um.mned.ode.InitialValueProblem;
 public class AdaptiveStepRKFehlbergMethod extends AdaptiveStepMethod {
     private static final double MAX_Q = 4.;
 	private static final double MIN_Q = 0.1;
+	private static final double SAFETY = Math.pow(0.5, 0.25); // aims at half the tolerance
 	
     private double[] mRK4; 
     private double[] mRK5; 
     private double[] mAux; 
+    private double[] mError;
+    private double[] mK1, mK2, mK3, mK4, mK5, mK6;
+    private double[] mDenseOutput;
     
     /**
      * Initializes the method for a given InitialValueProblem
@@ -27,10 +31,33 @@ public class AdaptiveStepRKFehlbergMethod extends AdaptiveStepMethod {
     		Optional<Event> event
     		) {
         super(problem,step, tolerance, minStep, event);
+        setStepSizeController(new IntegralStepSizeController(SAFETY, MIN_Q, MAX_Q));
         
         mRK4 = problem.getInitialState();
         mRK5 = problem.getInitialState();
         mAux = problem.getInitialState();
+        mError = problem.getInitialState();
+        mK1 = problem.getInitialState();
+        mK2 = problem.getInitialState();
+        mK3 = problem.getInitialState();
+        mK4 = problem.getInitialState();
+        mK5 = problem.getInitialState();
+        mK6 = problem.getInitialState();
+        mDenseOutput = new double[4*mK1.length];
+    }
+
+    /**
+     * Initializes the method for a given InitialValueProblem, estimating the
+     * initial step from the problem when solving starts
+     * @param InitialValueProblem problem
+     */
+    public AdaptiveStepRKFehlbergMethod(
+    		InitialValueProblem problem,
+    		Optional<Double> tolerance,
+    		Optional<Double> minStep,
+    		Optional<Event> event
+    		) {
+        this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
     }
     
     
@@ -48,36 +75,29 @@ public class AdaptiveStepRKFehlbergMethod extends AdaptiveStepMethod {
      * @throws ConvergenceException 
      */
     public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
-        double[] k1 = mProblem.getDerivative(time, state);
-        while (Math.abs(mCurrentStep)>=mMinimumStepAllowed) {
-            oneStep(time, state, k1);
+        evaluateStartDerivative(time, state, mK1);
+        while (isStepAllowed(time)) {
+            oneStep(time, state, mK1);
             
-            double error = 0;
             for (int i=0; i<state.length; i++) {
-                double errorInIndex = mRK5[i]-mRK4[i];
-                error += errorInIndex*errorInIndex;
+                mError[i] = mRK5[i]-mRK4[i];
             }
-            error = Math.sqrt(error);
-            if (error<mTolerance*Math.abs(mCurrentStep)) {
+            double ratio = errorRatio(mError, state, mRK5);
+            if (ratio < 1) {
+                double[] endDerivative = evaluateEndDerivative(time+mCurrentStep, mRK5);
+                denseOutput(endDerivative);
                 for (int i=0; i<state.length; i++) {
                     state[i] = mRK5[i];
                 }
                 time += mCurrentStep;
                 // Adapt step
-                if (error<1.0e-10) mCurrentStep = 2*mCurrentStep;
-                else {
-                    double q = Math.pow((mTolerance*Math.abs(mCurrentStep))/(2.0*error),0.25);
-                    q = Math.min(MAX_Q, Math.max(q, MIN_Q));
-                    mCurrentStep *= q;
-                }
-                //System.out.println ("ACCEPTED: t = "+time+ " New step is "+mCurrentStep+ " error = "+error);
+                adaptAcceptedStep(ratio);
+                //System.out.println ("ACCEPTED: t = "+time+ " New step is "+mCurrentStep+ " ratio = "+ratio);
                 return time;
             }
             // Try a new smaller step
-            double q = Math.pow((mTolerance*Math.abs(mCurrentStep))/(2.0*error),0.25);
-            q = Math.min(MAX_Q, Math.max(q, MIN_Q));
-            mCurrentStep *= q;
-            //System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " error = "+error);
+            adaptRejectedStep(ratio);
+            //System.out.println ("REJECTED: t = "+time+ " New step is "+mCurrentStep+ " ratio = "+ratio);
         }
         throw new ConvergenceException("Adaptative Runge-Kutta-Fehlberg Method did not converge.");
 //        // Was not able to reach tolerance before going below mMinimumStepAllowed
@@ -86,6 +106,32 @@ public class AdaptiveStepRKFehlbergMethod extends AdaptiveStepMethod {
     
     
     
+    @Override
+    protected double[] getDenseOutput() {
+    	return mDenseOutput;
+    }
+    
+    /**
+     * Continuous extension of order 4 from the stages and the derivative at the end
+     * of the step, which is the first stage of the next one. It takes the fifth order
+     * solution at the end, and its derivative is that of the problem at both ends
+     * @param k7 the derivative at the end of the step
+     */
+    private void denseOutput(double[] k7) {
+        double h = mCurrentStep;
+        double[] k1 = mK1, k3 = mK3, k4 = mK4, k5 = mK5, k6 = mK6;
+        int dim = k1.length;
+        for (int i=0; i<dim; i++) {
+            mDenseOutput[i] = h * k1[i];
+            mDenseOutput[dim+i] = h * (-71.0/30.0 * k1[i] + 1664.0/475.0 * k3[i] - 15379.0/3135.0 * k4[i]
+                    + 54.0/25.0 * k5[i] + 6.0/55.0 * k6[i] + 3.0/2.0 * k7[i]);
+            mDenseOutput[2*dim+i] = h * (298.0/135.0 * k1[i] - 3328.0/675.0 * k3[i] + 17576.0/1485.0 * k4[i]
+                    - 126.0/25.0 * k5[i] - 4.0/55.0 * k6[i] - 4.0 * k7[i]);
+            mDenseOutput[3*dim+i] = h * (-13.0/18.0 * k1[i] + 1664.0/855.0 * k3[i] - 2197.0/342.0 * k4[i]
+                    + 27.0/10.0 * k5[i] + 5.0/2.0 * k7[i]);
+        }
+    }
+    
     /** Runge-Kutta-Fehlberg method implementation
      * @param time the current time
      * @param state the current state
@@ -93,30 +139,31 @@ public class AdaptiveStepRKFehlbergMethod extends AdaptiveStepMethod {
      * @return the value of time of the step taken, state will contain the updated state
      */
     private void oneStep(double time, double[] state, double[] k1) {
+        double[] k2 = mK2, k3 = mK3, k4 = mK4, k5 = mK5, k6 = mK6;
         for (int i=0; i<state.length; i++) {
             mAux[i] = state[i] + mCurrentStep * (1.0/4.0 * k1[i]);
         }
-        double[] k2 = mProblem.getDerivative(time+mCurrentStep/4.0, mAux);
+        evaluateDerivative(time+mCurrentStep/4.0, mAux, k2);
         
         for (int i=0; i<state.length; i++) {
             mAux[i] = state[i] + mCurrentStep * (3.0/32.0 * k1[i] + 9.0/32.0 * k2[i]);
         }
-        double[] k3 = mProblem.getDerivative(time+3.0/8.0*mCurrentStep, mAux);
+        evaluateDerivative(time+3.0/8.0*mCurrentStep, mAux, k3);
         
         for (int i=0; i<state.length; i++) {
             mAux[i] = state[i] + mCurrentStep * (1932.0/2197.0 * k1[i] - 7200.0/2197.0 * k2[i] + 7296.0/2197.0 * k3[i]);
         }
-        double[] k4 = mProblem.getDerivative(time+12.0/13.0*mCurrentStep, mAux);
+        evaluateDerivative(time+12.0/13.0*mCurrentStep, mAux, k4);
 
         for (int i=0; i<state.length; i++) {
             mAux[i] = state[i] + mCurrentStep * (439.0/216.0 * k1[i] - 8.0 * k2[i] + 3680.0/513.0 * k3[i] - 845.0/4104.0 * k4[i]);
         }
-        double[] k5 = mProblem.getDerivative(time+mCurrentStep, mAux);
+        evaluateDerivative(time+mCurrentStep, mAux, k5);
 
         for (int i=0; i<state.length; i++) {
             mAux[i] = state[i] + mCurrentStep * ( - 8.0/27.0 * k1[i] + 2.0 * k2[i] - 3544.0/2565.0 * k3[i] + 1859.0/4104.0 * k4[i] - 11.0/40.0 * k5[i]);
         }
-        double[] k6 = mProblem.getDerivative(time+1.0/2.0*mCurrentStep, mAux);
+        evaluateDerivative(time+1.0/2.0*mCurrentStep, mAux, k6);
 
         for (int i=0; i<state.length; i++) {
             mRK4[i] = state[i] + mCurrentStep  * (25.0/216.0 * k1[i] + 1408.0/ 2565.0 * k3[i] + 2197.0 / 4104.0 * k4[i] - 1.0/5.0 * k5[i]);
@@ -0,0 +1,356 @@
+package es.um.mned.methods;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.FiniteDifferenceJacobian;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Radau IIA method of 3 stages and order 5, with adaptive step, for very stiff
+ * problems, as RADAU5 of Hairer and Wanner. It is L-stable, so unlike the BDF of
+ * high order it is stable for stiff modes close to the imaginary axis.
+ * <p>
+ * The stage increments Z = (Z1, Z2, Z3) solve Z = h*(A x I)F(Z). The simplified
+ * Newton iterations are done on W = (T^-1 x I)Z, with T the eigenvectors of A^-1,
+ * which has a real eigenvalue gamma and a complex pair alpha +- i*beta: the
+ * 3N x 3N system splits into a real system with gamma/h*I - J and a complex one
+ * with (alpha + i*beta)/h*I - J, so each step factors one real and one complex
+ * N x N matrix, in the storage of MatrixType, and only if the step or the
+ * Jacobian changed. The Jacobian is kept between steps while the iterations
+ * converge fast. The iterations start from the collocation polynomial of the
+ * previous step, which is also the dense output.
+ * <p>
+ * The error is estimated as in RADAU5, with an embedded solution of order 3
+ * filtered through the real matrix, so that it stays bounded for stiff components.
+ */
+public class AdaptiveStepRadauIIAMethod extends AdaptiveStepMethod {
+
+	private static final double SQ6 = Math.sqrt(6);
+	private static final double C1 = (4 - SQ6) / 10, C2 = (4 + SQ6) / 10;
+	// Eigenvalues of A^-1 and its eigenvectors T, with T^-1
+	private static final double GAMMA = 3.6378342527444957, ALPHA = 2.6810828736277521, BETA = 3.0504301992474105;
+	private static final double T11 = 9.1232394870892942792e-02, T12 = -0.14125529502095420843, T13 = -3.0029194105147424492e-02;
+	private static final double T21 = 0.24171793270710701896, T22 = 0.20412935229379993199, T23 = 0.38294211275726193779;
+	private static final double T31 = 0.96604818261509293619, T32 = 1, T33 = 0;
+	private static final double TI11 = 4.3255798900631553510, TI12 = 0.33919925181580986954, TI13 = 0.54177053993587487119;
+	private static final double TI21 = -4.1787185915519047273, TI22 = -0.32768282076106238708, TI23 = 0.47662355450055045196;
+	private static final double TI31 = -0.50287263494578687595, TI32 = 2.5719269498556054292, TI33 = -0.59603920482822492497;
+	// Weights of the stage increments in the error estimate, divided by h
+	private static final double DD1 = -(13 + 7*SQ6) / 3, DD2 = (-13 + 7*SQ6) / 3, DD3 = -1.0 / 3;
+	// Collocation polynomial through (0, 0), (c1, Z1), (c2, Z2), (1, Z3): the
+	// coefficient of theta^(k+1) is sum over i of DENSE[k][i]*Z_(i+1)
+	private static final double[][] DENSE = new double[3][3];
+
+	static {
+		double[] nodes = { C1, C2, 1 };
+		for (int i=0; i<3; i++) {
+			double a = nodes[(i+1) % 3], b = nodes[(i+2) % 3], c = nodes[i];
+			double denominator = c * (c - a) * (c - b);
+			DENSE[0][i] = a * b / denominator;
+			DENSE[1][i] = -(a + b) / denominator;
+			DENSE[2][i] = 1 / denominator;
+		}
+	}
+
+	private static final int MAX_NEWTON_ITERATIONS = 7;
+	private static final double THETA_JACOBIAN = 0.001; // slower rates evaluate a new Jacobian
+	private static final double HOLD_MIN = 1, HOLD_MAX = 1.2; // keep the step, and the factorizations, if it would change by this
+	private static final double DIVERGENCE_FACTOR = 0.5;
+
+	private final ImplicitSolver mSolver;
+	private final double[] mZ1, mZ2, mZ3, mW1, mW2, mW3, mF1, mF2, mF3;
+	private final double[] mDerivative, mPoint, mScale, mNewState, mError;
+	private final double[] mDenseOutput, mEndState;
+	private double mEndTime = Double.NaN; // end of the last step, where its dense output ends
+	private double mLastStep; // of the last step
+	private double mFactoredStep = Double.NaN; // step of the factorizations, NaN if there are none
+	private boolean mNeedJacobian = true;
+	private double mFacCon = 1; // theta/(1-theta) of the last iterations, to stop at the first one
+	private double mTheta; // rate of the last iterations
+
+	/**
+	 * Initializes the method for a given InitialValueProblem
+	 * @param InitialValueProblem problem
+	 * @param step the initial step. If negative, we'd solve backwards in time
+	 */
+	public AdaptiveStepRadauIIAMethod(
+			InitialValueProblem problem,
+			double step,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		super(problem, step, 5, tolerance, minStep, event);
+		mSolver = new ImplicitSolver(problem, mStatistics);
+		mZ1 = problem.getInitialState();
+		mZ2 = problem.getInitialState();
+		mZ3 = problem.getInitialState();
+		mW1 = problem.getInitialState();
+		mW2 = problem.getInitialState();
+		mW3 = problem.getInitialState();
+		mF1 = problem.getInitialState();
+		mF2 = problem.getInitialState();
+		mF3 = problem.getInitialState();
+		mDerivative = problem.getInitialState();
+		mPoint = problem.getInitialState();
+		mScale = problem.getInitialState();
+		mNewState = problem.getInitialState();
+		mError = problem.getInitialState();
+		mEndState = problem.getInitialState();
+		mDenseOutput = new double[3*mZ1.length];
+	}
+
+	/**
+	 * Initializes the method for a given InitialValueProblem, estimating the
+	 * initial step from the problem when solving starts
+	 * @param InitialValueProblem problem
+	 */
+	public AdaptiveStepRadauIIAMethod(
+			InitialValueProblem problem,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
+	}
+
+	@Override
+	public int getOrder() {
+		return 5;
+	}
+
+	@Override
+	protected int getErrorOrder() {
+		return 3;
+	}
+
+	/**
+	 * Changes how the matrices are stored and factored, chosen from the sparsity pattern of the problem by default
+	 * @param type the storage, BANDED and SPARSE need the problem to have a sparsity pattern
+	 */
+	public void setMatrixType(MatrixType type) {
+		mSolver.setMatrixType(type);
+		mNeedJacobian = true;
+	}
+
+	public MatrixType getMatrixType() {
+		return mSolver.getMatrixType();
+	}
+
+	/**
+	 * Chooses how to get the Jacobian of problems that give it
+	 * @param finiteDifferences true to approximate it by finite differences even if the problem gives it
+	 */
+	public void setFiniteDifferenceJacobian(boolean finiteDifferences) {
+		mSolver.setFiniteDifferences(finiteDifferences);
+		mNeedJacobian = true;
+	}
+
+	/**
+	 * @return the finite differences that approximate the Jacobian, null if that of the problem is used
+	 */
+	public FiniteDifferenceJacobian getFiniteDifferenceJacobian() {
+		return mSolver.getFiniteDifferences();
+	}
+
+	@Override
+	protected double[] getDenseOutput() {
+		return mDenseOutput;
+	}
+
+	/**
+	 * Radau IIA step, with as many tries as needed for the iterations to converge
+	 * and the step to pass the error test
+	 * @param deltaTime the step to take
+	 * @param time the current time
+	 * @param state the current state
+	 * @return the value of time of the step taken, state will contain the updated state
+	 * @throws ConvergenceException
+	 */
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		int dim = state.length;
+		boolean continuing = time == mEndTime && Arrays.equals(state, mEndState);
+		evaluateStartDerivative(time, state, mDerivative);
+		boolean freshJacobian = false;
+		if (mNeedJacobian || !continuing) {
+			mSolver.evaluateJacobian(time, state, mDerivative);
+			mFactoredStep = Double.NaN;
+			mNeedJacobian = false;
+			freshJacobian = true;
+		}
+		ErrorNorm norm = getErrorNorm();
+		boolean rejected = false;
+		while (isStepAllowed(time)) {
+			double h = mCurrentStep;
+			if (h != mFactoredStep && !factor(h)) {
+				mStatistics.addRejectedStep();
+				mCurrentStep *= DIVERGENCE_FACTOR;
+				continue;
+			}
+			double perStep = norm.isPerUnitStep() ? Math.abs(h) : 1;
+			for (int i=0; i<dim; i++) mScale[i] = norm.scale(i, state[i]) * perStep;
+			startingValues(continuing, h, dim);
+			double factor = solveStages(time, state, h);
+			if (factor != 0) { // the iterations failed
+				mStatistics.addRejectedStep();
+				if (!freshJacobian) {
+					mSolver.evaluateJacobian(time, state, mDerivative);
+					freshJacobian = true;
+				}
+				mFactoredStep = Double.NaN;
+				mCurrentStep *= factor;
+				continue;
+			}
+			for (int i=0; i<dim; i++) mNewState[i] = state[i] + mZ3[i];
+			double ratio = estimateError(time, state, h, !continuing || rejected);
+
+			if (ratio < 1) {
+				denseOutput(dim);
+				mNeedJacobian = mTheta > THETA_JACOBIAN;
+				System.arraycopy(mNewState, 0, state, 0, dim);
+				time += h;
+				mEndTime = time;
+				System.arraycopy(state, 0, mEndState, 0, dim);
+				mLastStep = h;
+				adaptAcceptedStep(ratio);
+				double change = mCurrentStep / h;
+				if (rejected && change > 1) mCurrentStep = h;
+				else if (!mNeedJacobian && change >= HOLD_MIN && change <= HOLD_MAX) mCurrentStep = h;
+				return time;
+			}
+			adaptRejectedStep(ratio);
+			rejected = true;
+		}
+		throw new ConvergenceException("Adaptative Radau IIA Method did not converge.");
+	}
+
+	// Factors the real and the complex matrices for a step, returns false if one is singular
+	private boolean factor(double h) {
+		mFactoredStep = Double.NaN;
+		// gamma/h*I - J = gamma/h*(I - h/gamma*J), and the same with alpha + i*beta
+		double size = ALPHA*ALPHA + BETA*BETA;
+		if (!mSolver.factor(h / GAMMA) || !mSolver.factorComplex(h*ALPHA / size, -h*BETA / size)) return false;
+		mFactoredStep = h;
+		return true;
+	}
+
+	// Extrapolates the collocation polynomial of the previous step, or starts from 0
+	private void startingValues(boolean continuing, double h, int dim) {
+		if (!continuing) {
+			Arrays.fill(mZ1, 0);
+			Arrays.fill(mZ2, 0);
+			Arrays.fill(mZ3, 0);
+		}
+		else {
+			double ratio = h / mLastStep;
+			double s1 = 1 + C1*ratio, s2 = 1 + C2*ratio, s3 = 1 + ratio;
+			for (int i=0; i<dim; i++) {
+				double a1 = mDenseOutput[i], a2 = mDenseOutput[dim+i], a3 = mDenseOutput[2*dim+i];
+				double end = a1 + a2 + a3;
+				mZ1[i] = s1*(a1 + s1*(a2 + s1*a3)) - end;
+				mZ2[i] = s2*(a1 + s2*(a2 + s2*a3)) - end;
+				mZ3[i] = s3*(a1 + s3*(a2 + s3*a3)) - end;
+			}
+		}
+		for (int i=0; i<dim; i++) {
+			double z1 = mZ1[i], z2 = mZ2[i], z3 = mZ3[i];
+			mW1[i] = TI11*z1 + TI12*z2 + TI13*z3;
+			mW2[i] = TI21*z1 + TI22*z2 + TI23*z3;
+			mW3[i] = TI31*z1 + TI32*z2 + TI33*z3;
+		}
+	}
+
+	// Simplified Newton iterations for the stage increments, as in RADAU5. Returns
+	// 0 if they converge, or else the factor to reduce the step
+	private double solveStages(double time, double[] state, double h) {
+		int dim = state.length;
+		double tolerance = Math.max(10 * Math.ulp(1.0) / mTolerance, Math.min(0.03, Math.sqrt(mTolerance)));
+		double size = ALPHA*ALPHA + BETA*BETA;
+		double gRe = h*ALPHA / size, gIm = -h*BETA / size; // h/(alpha + i*beta)
+		mFacCon = Math.pow(Math.max(mFacCon, Math.ulp(1.0)), 0.8);
+		mTheta = THETA_JACOBIAN;
+		double previousChange = 0, previousRate = 0;
+		for (int it = 0; it < MAX_NEWTON_ITERATIONS; it++) {
+			mStatistics.addNewtonIteration();
+			for (int i=0; i<dim; i++) mPoint[i] = state[i] + mZ1[i];
+			evaluateDerivative(time + C1*h, mPoint, mF1);
+			for (int i=0; i<dim; i++) mPoint[i] = state[i] + mZ2[i];
+			evaluateDerivative(time + C2*h, mPoint, mF2);
+			for (int i=0; i<dim; i++) mPoint[i] = state[i] + mZ3[i];
+			evaluateDerivative(time + h, mPoint, mF3);
+			for (int i=0; i<dim; i++) {
+				double f1 = mF1[i], f2 = mF2[i], f3 = mF3[i];
+				double r1 = TI11*f1 + TI12*f2 + TI13*f3 - GAMMA/h * mW1[i];
+				double r2 = TI21*f1 + TI22*f2 + TI23*f3 - (ALPHA*mW2[i] - BETA*mW3[i]) / h;
+				double r3 = TI31*f1 + TI32*f2 + TI33*f3 - (BETA*mW2[i] + ALPHA*mW3[i]) / h;
+				// times h/gamma and h/(alpha + i*beta), for the factored I - g*J
+				mF1[i] = r1 * h / GAMMA;
+				mF2[i] = gRe*r2 - gIm*r3;
+				mF3[i] = gRe*r3 + gIm*r2;
+			}
+			mSolver.solveLinear(mF1);
+			mSolver.solveLinearComplex(mF2, mF3);
+			double change = 0;
+			for (int i=0; i<dim; i++) {
+				double d1 = mF1[i] / mScale[i], d2 = mF2[i] / mScale[i], d3 = mF3[i] / mScale[i];
+				change += d1*d1 + d2*d2 + d3*d3;
+			}
+			change = Math.sqrt(change / (3*dim));
+			if (it > 0) {
+				double rate = change / previousChange;
+				mTheta = (it == 1) ? rate : Math.sqrt(rate * previousRate);
+				previousRate = rate;
+				if (!(mTheta < 0.99)) return DIVERGENCE_FACTOR;
+				mFacCon = mTheta / (1 - mTheta);
+				int left = MAX_NEWTON_ITERATIONS - 1 - it;
+				double predicted = mFacCon * change * Math.pow(mTheta, left) / tolerance;
+				if (predicted >= 1) { // would not converge in time
+					double quotient = Math.max(1e-4, Math.min(20, predicted));
+					return 0.8 * Math.pow(quotient, -1.0 / (4 + left));
+				}
+			}
+			previousChange = Math.max(change, Math.ulp(1.0));
+			for (int i=0; i<dim; i++) {
+				double w1 = mW1[i] += mF1[i], w2 = mW2[i] += mF2[i], w3 = mW3[i] += mF3[i];
+				mZ1[i] = T11*w1 + T12*w2 + T13*w3;
+				mZ2[i] = T21*w1 + T22*w2 + T23*w3;
+				mZ3[i] = T31*w1 + T32*w2 + T33*w3;
+			}
+			if (mFacCon * change <= tolerance) return 0;
+		}
+		return DIVERGENCE_FACTOR;
+	}
+
+	// Error of the step, filtered by (I - h/gamma*J)^-1. If it fails the test at the
+	// first step or after a rejection, it is improved with one more evaluation
+	private double estimateError(double time, double[] state, double h, boolean improve) {
+		int dim = state.length;
+		double dd1 = DD1 / h, dd2 = DD2 / h, dd3 = DD3 / h;
+		for (int i=0; i<dim; i++) {
+			mF1[i] = dd1*mZ1[i] + dd2*mZ2[i] + dd3*mZ3[i];
+			mError[i] = (mDerivative[i] + mF1[i]) * h / GAMMA;
+		}
+		mSolver.solveLinear(mError);
+		double ratio = errorRatio(mError, state, mNewState);
+		if (ratio >= 1 && improve) {
+			for (int i=0; i<dim; i++) mPoint[i] = state[i] + mError[i];
+			evaluateDerivative(time, mPoint, mF2);
+			for (int i=0; i<dim; i++) mError[i] = (mF2[i] + mF1[i]) * h / GAMMA;
+			mSolver.solveLinear(mError);
+			ratio = errorRatio(mError, state, mNewState);
+		}
+		return ratio;
+	}
+
+	// Coefficients of the collocation polynomial in powers of theta
+	private void denseOutput(int dim) {
+		for (int k=0; k<3; k++) {
+			double[] row = DENSE[k];
+			for (int i=0; i<dim; i++) mDenseOutput[k*dim+i] = row[0]*mZ1[i] + row[1]*mZ2[i] + row[2]*mZ3[i];
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package es.um.mned.methods;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.FiniteDifferenceJacobian;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Adaptive step Rosenbrock method given by a RosenbrockTableau, for stiff
+ * problems. Each step evaluates the Jacobian once, given by the problem if it is
+ * an ExtendedInitialValueProblem or approximated by finite differences, and
+ * factors I - h*gamma*J once: the stages are then linear solves with it, with no
+ * Newton iterations. A rejected step keeps the Jacobian and only factors again.
+ * The derivative with respect to the time is approximated by finite differences,
+ * with one more evaluation per step, unless the problem is declared autonomous.
+ * If the tableau has no continuous extension, the dense output is the cubic
+ * Hermite one.
+ */
+public class AdaptiveStepRosenbrockMethod extends AdaptiveStepMethod {
+
+	private static final double SINGULAR_STEP_FACTOR = 0.5;
+
+	private final RosenbrockTableau mTableau;
+	private final ImplicitSolver mSolver;
+	private final double[][] mStages;
+	private final double[] mDerivative, mTimeDerivative, mPoint, mEvaluation, mNewState, mError;
+	private final double[] mDenseOutput;
+	private boolean mAutonomous = false;
+
+	/**
+	 * Initializes the method for a given InitialValueProblem
+	 * @param InitialValueProblem problem
+	 * @param step the initial step. If negative, we'd solve backwards in time
+	 * @param tableau the method, for instance RosenbrockTableau.RODAS4
+	 */
+	public AdaptiveStepRosenbrockMethod(
+			InitialValueProblem problem,
+			double step,
+			RosenbrockTableau tableau,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		super(problem, step, tableau.getOrder(), tolerance, minStep, event);
+		mTableau = tableau;
+		mSolver = new ImplicitSolver(problem, mStatistics);
+		mStages = new double[tableau.getStages()][];
+		for (int i=0; i<mStages.length; i++) mStages[i] = problem.getInitialState();
+		mDerivative = problem.getInitialState();
+		mTimeDerivative = problem.getInitialState();
+		mPoint = problem.getInitialState();
+		mEvaluation = problem.getInitialState();
+		mNewState = problem.getInitialState();
+		mError = problem.getInitialState();
+		int degree = tableau.hasDenseOutput() ? tableau.getDenseDegree() : 3;
+		mDenseOutput = new double[degree*mNewState.length];
+	}
+
+	/**
+	 * Initializes the method for a given InitialValueProblem, estimating the
+	 * initial step from the problem when solving starts
+	 * @param InitialValueProblem problem
+	 * @param tableau the method
+	 */
+	public AdaptiveStepRosenbrockMethod(
+			InitialValueProblem problem,
+			RosenbrockTableau tableau,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		this(problem, AUTOMATIC_STEP, tableau, tolerance, minStep, event);
+	}
+
+	@Override
+	public int getOrder() {
+		return mTableau.getOrder();
+	}
+
+	public RosenbrockTableau getTableau() {
+		return mTableau;
+	}
+
+	/**
+	 * Declares whether the derivative of the problem depends on the time. If it
+	 * does not, its derivative with respect to the time is not approximated
+	 * @param autonomous true if f(t, y) does not depend on t
+	 */
+	public void setAutonomous(boolean autonomous) {
+		mAutonomous = autonomous;
+	}
+
+	public boolean isAutonomous() {
+		return mAutonomous;
+	}
+
+	/**
+	 * Changes how the matrices are stored and factored, chosen from the sparsity pattern of the problem by default
+	 * @param type the storage, BANDED and SPARSE need the problem to have a sparsity pattern
+	 */
+	public void setMatrixType(MatrixType type) {
+		mSolver.setMatrixType(type);
+	}
+
+	public MatrixType getMatrixType() {
+		return mSolver.getMatrixType();
+	}
+
+	/**
+	 * Chooses how to get the Jacobian of problems that give it
+	 * @param finiteDifferences true to approximate it by finite differences even if the problem gives it
+	 */
+	public void setFiniteDifferenceJacobian(boolean finiteDifferences) {
+		mSolver.setFiniteDifferences(finiteDifferences);
+	}
+
+	/**
+	 * @return the finite differences that approximate the Jacobian, null if that of the problem is used
+	 */
+	public FiniteDifferenceJacobian getFiniteDifferenceJacobian() {
+		return mSolver.getFiniteDifferences();
+	}
+
+	/**
+	 * Rosenbrock step, with as many tries as needed to pass the error test
+	 * @param deltaTime the step to take
+	 * @param time the current time
+	 * @param state the current state
+	 * @return the value of time of the step taken, state will contain the updated state
+	 * @throws ConvergenceException
+	 */
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		int dim = state.length, stages = mTableau.getStages();
+		double gamma = mTableau.getGamma();
+		evaluateStartDerivative(time, state, mDerivative);
+		if (!mAutonomous) {
+			// df/dt by forward differences, as in Hairer's RODAS
+			double delta = Math.sqrt(Math.ulp(1.0) * Math.max(1e-5, Math.abs(time)));
+			evaluateDerivative(time + delta, state, mTimeDerivative);
+			for (int i=0; i<dim; i++) mTimeDerivative[i] = (mTimeDerivative[i] - mDerivative[i]) / delta;
+		}
+		mSolver.evaluateJacobian(time, state, mDerivative);
+		while (isStepAllowed(time)) {
+			double h = mCurrentStep;
+			if (!mSolver.factor(h * gamma)) {
+				mStatistics.addRejectedStep();
+				mCurrentStep *= SINGULAR_STEP_FACTOR;
+				continue;
+			}
+			for (int s=0; s<stages; s++) {
+				// the right hand side times h*gamma: h*gamma*f + gamma*sum c_sj U_j + gamma*gamma_s*h^2*df/dt
+				double[] stage = mStages[s];
+				if (s == 0) System.arraycopy(mDerivative, 0, stage, 0, dim);
+				else if (!mTableau.reusesEvaluation(s)) {
+					System.arraycopy(state, 0, mPoint, 0, dim);
+					for (int j=0; j<s; j++) {
+						double a = mTableau.getA(s, j);
+						if (a == 0) continue;
+						double[] previous = mStages[j];
+						for (int i=0; i<dim; i++) mPoint[i] += a * previous[i];
+					}
+					evaluateDerivative(time + mTableau.getAlpha(s) * h, mPoint, stage);
+				}
+				else System.arraycopy(mEvaluation, 0, stage, 0, dim);
+				System.arraycopy(stage, 0, mEvaluation, 0, dim); // for a stage that reuses it
+				for (int i=0; i<dim; i++) stage[i] *= h * gamma;
+				for (int j=0; j<s; j++) {
+					double c = gamma * mTableau.getC(s, j);
+					if (c == 0) continue;
+					double[] previous = mStages[j];
+					for (int i=0; i<dim; i++) stage[i] += c * previous[i];
+				}
+				double timeCoefficient = gamma * mTableau.getGamma(s) * h * h;
+				if (!mAutonomous && timeCoefficient != 0)
+					for (int i=0; i<dim; i++) stage[i] += timeCoefficient * mTimeDerivative[i];
+				mSolver.solveLinear(stage);
+			}
+			System.arraycopy(state, 0, mNewState, 0, dim);
+			Arrays.fill(mError, 0);
+			for (int j=0; j<stages; j++) {
+				double m = mTableau.getM(j), e = mTableau.getE(j);
+				double[] stage = mStages[j];
+				for (int i=0; i<dim; i++) {
+					mNewState[i] += m * stage[i];
+					mError[i] += e * stage[i];
+				}
+			}
+			double ratio = errorRatio(mError, state, mNewState);
+
+			if (ratio < 1) {
+				if (mTableau.hasDenseOutput()) denseOutput(dim);
+				else hermiteDenseOutput(h, state, mNewState, mDerivative,
+						evaluateEndDerivative(time + h, mNewState), mDenseOutput);
+				System.arraycopy(mNewState, 0, state, 0, dim);
+				time += h;
+				adaptAcceptedStep(ratio);
+				return time;
+			}
+			adaptRejectedStep(ratio);
+		}
+		throw new ConvergenceException("Adaptative " + mTableau.getName() + " Method did not converge.");
+	}
+
+	// Coefficients of the continuous extension of the tableau
+	private void denseOutput(int dim) {
+		int degree = mTableau.getDenseDegree();
+		Arrays.fill(mDenseOutput, 0);
+		for (int j=0; j<mStages.length; j++) {
+			double[] stage = mStages[j];
+			for (int p=0; p<degree; p++) {
+				double weight = mTableau.getDense(j, p);
+				if (weight == 0) continue;
+				for (int i=0; i<dim; i++) mDenseOutput[p*dim+i] += weight * stage[i];
+			}
+		}
+	}
+
+	@Override
+	protected int getErrorOrder() {
+		return Math.min(mTableau.getOrder(), mTableau.getEmbeddedOrder());
+	}
+
+	@Override
+	protected double[] getDenseOutput() {
+		return mDenseOutput;
+	}
+
+}
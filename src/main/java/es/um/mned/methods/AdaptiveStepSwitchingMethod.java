@@ -0,0 +1,215 @@
+package es.um.mned.methods;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Method that detects stiffness and switches between an explicit and an implicit
+ * method, in the manner of LSODA, for problems that may turn stiff, or stop being
+ * so, as they are solved. It starts with Dormand-Prince, which needs no Jacobian,
+ * and estimates h*|lambda| at each step for free from its last stages. After 15
+ * steps mostly limited by stability it switches to the Rosenbrock method RODAS4.
+ * While stiff, the dominant eigenvalue is estimated every few steps by a short
+ * power iteration with differences of the derivative, and the method switches
+ * back to Dormand-Prince when it could take the current step well inside its
+ * stability region.
+ * <p>
+ * Both methods are one step methods, so a switch needs no restart: the new one
+ * goes on from the last point with the last step. All the steps go to the same
+ * NumericalSolution, with the dense output of the method that took them.
+ */
+public class AdaptiveStepSwitchingMethod extends AdaptiveStepMethod {
+
+	private static final double STABILITY_BOUNDARY = 3.25; // of Dormand-Prince along the negative real axis
+	private static final int STIFF_STEPS = 15; // limited by stability to switch to the implicit method
+	private static final int NON_STIFF_STEPS = 6; // not limited by stability to forget those
+	private static final int CHECK_INTERVAL = 10; // implicit steps between the estimates of the eigenvalue
+	private static final int POWER_ITERATIONS = 4;
+	private static final double SWITCH_BACK = 0.5; // fraction of the stability boundary to switch back
+
+	private final AdaptiveStepDormandPrinceMethod mNonStiff;
+	private final AdaptiveStepRosenbrockMethod mStiff;
+	private AdaptiveStepMethod mActive;
+	private final double[] mDenseOutput, mStart, mVector, mPoint, mDerivative;
+	private int mStiffSteps, mNonStiffSteps; // consecutive explicit steps limited, or not, by stability
+	private int mStepsSinceCheck;
+	private int mSwitches;
+
+	/**
+	 * Initializes the method for a given InitialValueProblem
+	 * @param InitialValueProblem problem
+	 * @param step the initial step. If negative, we'd solve backwards in time
+	 */
+	public AdaptiveStepSwitchingMethod(
+			InitialValueProblem problem,
+			double step,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		super(problem, step, 5, tolerance, minStep, event);
+		mNonStiff = new AdaptiveStepDormandPrinceMethod(problem, step, tolerance, minStep, Optional.empty());
+		mStiff = new AdaptiveStepRosenbrockMethod(problem, step, RosenbrockTableau.RODAS4, tolerance, minStep, Optional.empty());
+		mActive = mNonStiff;
+		mStart = problem.getInitialState();
+		mVector = problem.getInitialState();
+		mPoint = problem.getInitialState();
+		mDerivative = problem.getInitialState();
+		int degree = Math.max(mNonStiff.getDenseOutput().length, mStiff.getDenseOutput().length) / mStart.length;
+		mDenseOutput = new double[degree*mStart.length];
+	}
+
+	/**
+	 * Initializes the method for a given InitialValueProblem, estimating the
+	 * initial step from the problem when solving starts
+	 * @param InitialValueProblem problem
+	 */
+	public AdaptiveStepSwitchingMethod(
+			InitialValueProblem problem,
+			Optional<Double> tolerance,
+			Optional<Double> minStep,
+			Optional<Event> event
+			) {
+		this(problem, AUTOMATIC_STEP, tolerance, minStep, event);
+	}
+
+	@Override
+	public int getOrder() {
+		return mActive.getOrder();
+	}
+
+	/**
+	 * @return the explicit method, used while the problem is not stiff
+	 */
+	public AdaptiveStepDormandPrinceMethod getNonStiffMethod() {
+		return mNonStiff;
+	}
+
+	/**
+	 * @return the implicit method, used while the problem is stiff. It may be
+	 * configured, for instance with setAutonomous or setMatrixType
+	 */
+	public AdaptiveStepRosenbrockMethod getStiffMethod() {
+		return mStiff;
+	}
+
+	/**
+	 * @return whether the problem is considered stiff at the last point
+	 */
+	public boolean isStiff() {
+		return mActive == mStiff;
+	}
+
+	/**
+	 * @return the number of switches between the methods so far
+	 */
+	public int getSwitches() {
+		return mSwitches;
+	}
+
+	@Override
+	public void setErrorNorm(ErrorNorm norm) {
+		super.setErrorNorm(norm);
+		mNonStiff.setErrorNorm(norm);
+		mStiff.setErrorNorm(norm);
+	}
+
+	@Override
+	public void setTolerance(double tolerance) {
+		super.setTolerance(tolerance);
+		mNonStiff.setTolerance(tolerance);
+		mStiff.setTolerance(tolerance);
+	}
+
+	@Override
+	protected double[] getDenseOutput() {
+		return mDenseOutput;
+	}
+
+	/**
+	 * Step of the method for the current stiffness, which is then checked
+	 * @param deltaTime the step to take
+	 * @param time the current time
+	 * @param state the current state
+	 * @return the value of time of the step taken, state will contain the updated state
+	 * @throws ConvergenceException
+	 */
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		AdaptiveStepMethod method = mActive;
+		System.arraycopy(state, 0, mStart, 0, state.length);
+		method.mCurrentStep = mCurrentStep;
+		double newTime;
+		try {
+			newTime = method.doStep(deltaTime, time, state);
+		} finally {
+			mCurrentStep = method.mCurrentStep;
+			mStatistics.merge(method.getStatistics());
+			method.getStatistics().reset();
+		}
+		double[] denseOutput = method.getDenseOutput();
+		System.arraycopy(denseOutput, 0, mDenseOutput, 0, denseOutput.length);
+		Arrays.fill(mDenseOutput, denseOutput.length, mDenseOutput.length, 0);
+		if (method == mNonStiff) checkStiffness(state);
+		else checkNonStiffness(newTime, state);
+		return newTime;
+	}
+
+	// Counts the explicit steps limited by stability, and switches after enough of them
+	private void checkStiffness(double[] state) {
+		if (mNonStiff.getStiffnessEstimate() > STABILITY_BOUNDARY) {
+			mNonStiffSteps = 0;
+			if (++mStiffSteps < STIFF_STEPS) return;
+			// the stiff components are what is left of the last step
+			for (int i=0; i<state.length; i++) mVector[i] = state[i] - mStart[i];
+			mStiffSteps = 0;
+			mStepsSinceCheck = 0;
+			mActive = mStiff;
+			mSwitches++;
+		}
+		else if (++mNonStiffSteps >= NON_STIFF_STEPS) mStiffSteps = 0;
+	}
+
+	// Every few implicit steps, switches back if the explicit method is stable with the next step
+	private void checkNonStiffness(double time, double[] state) {
+		if (++mStepsSinceCheck < CHECK_INTERVAL) return;
+		mStepsSinceCheck = 0;
+		double radius = spectralRadius(time, state);
+		if (Math.abs(mCurrentStep) * radius <= SWITCH_BACK * STABILITY_BOUNDARY) {
+			mNonStiffSteps = 0;
+			mStiffSteps = 0;
+			mActive = mNonStiff;
+			mSwitches++;
+		}
+	}
+
+	// Power iteration with J*v ~ (f(y + v) - f(y)), from the last vector, for |lambda|
+	private double spectralRadius(double time, double[] state) {
+		int dim = state.length;
+		evaluateDerivative(time, state, mDerivative);
+		double size = Math.sqrt(Math.ulp(1.0)) * Math.max(norm(state), 1e-10);
+		double radius = 0;
+		for (int k=0; k<POWER_ITERATIONS; k++) {
+			double vectorNorm = norm(mVector);
+			if (vectorNorm == 0) { // start again from the state, or from ones
+				for (int i=0; i<dim; i++) mVector[i] = state[i] != 0 ? state[i] : 1;
+				vectorNorm = norm(mVector);
+			}
+			for (int i=0; i<dim; i++) mPoint[i] = state[i] + mVector[i] * size / vectorNorm;
+			evaluateDerivative(time, mPoint, mVector);
+			for (int i=0; i<dim; i++) mVector[i] -= mDerivative[i];
+			radius = norm(mVector) / size;
+		}
+		return radius;
+	}
+
+	private static double norm(double[] vector) {
+		double sum = 0;
+		for (double value : vector) sum += value * value;
+		return Math.sqrt(sum);
+	}
+
+}
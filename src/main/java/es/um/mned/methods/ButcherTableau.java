@@ -0,0 +1,299 @@
+package es.um.mned.methods;
+
+/**
+ * Butcher tableau of an explicit Runge-Kutta method: the nodes c, the strictly
+ * lower triangular matrix A, the weights b of the solution that advances and,
+ * optionally, the weights of an embedded solution to estimate the error and the
+ * weights of a continuous extension. With it a new method is only data for
+ * FixedStepExplicitRungeKuttaMethod and AdaptiveStepExplicitRungeKuttaMethod.
+ * The nonzero coefficients of each row are kept apart, so the zeros of the
+ * tableau cost nothing when stepping.
+ */
+public class ButcherTableau {
+
+	/** Euler method, order 1 */
+	public static final ButcherTableau EULER = new ButcherTableau("Euler", 1,
+			new double[] { 0 },
+			new double[][] { {} },
+			new double[] { 1 },
+			null, 0,
+			new double[][] { { 1 } });
+
+	/** Modified Euler (Heun) method, order 2, with a quadratic continuous extension */
+	public static final ButcherTableau MODIFIED_EULER = new ButcherTableau("Modified Euler", 2,
+			new double[] { 0, 1 },
+			new double[][] { {}, { 1 } },
+			new double[] { 1.0/2.0, 1.0/2.0 },
+			null, 0,
+			new double[][] { { 1, -1.0/2.0 }, { 0, 1.0/2.0 } });
+
+	/** Classical Runge-Kutta 4 method, with a cubic continuous extension */
+	public static final ButcherTableau RUNGE_KUTTA_4 = new ButcherTableau("Runge-Kutta 4", 4,
+			new double[] { 0, 1.0/2.0, 1.0/2.0, 1 },
+			new double[][] { {}, { 1.0/2.0 }, { 0, 1.0/2.0 }, { 0, 0, 1 } },
+			new double[] { 1.0/6.0, 1.0/3.0, 1.0/3.0, 1.0/6.0 },
+			null, 0,
+			new double[][] {
+				{ 1, -3.0/2.0, 2.0/3.0 },
+				{ 0, 1, -2.0/3.0 },
+				{ 0, 1, -2.0/3.0 },
+				{ 0, -1.0/2.0, 2.0/3.0 } });
+
+	/** Runge-Kutta-Fehlberg 4(5), advancing with the fifth order solution */
+	public static final ButcherTableau FEHLBERG_45 = new ButcherTableau("Runge-Kutta-Fehlberg 4(5)", 5,
+			new double[] { 0, 1.0/4.0, 3.0/8.0, 12.0/13.0, 1, 1.0/2.0 },
+			new double[][] {
+				{},
+				{ 1.0/4.0 },
+				{ 3.0/32.0, 9.0/32.0 },
+				{ 1932.0/2197.0, -7200.0/2197.0, 7296.0/2197.0 },
+				{ 439.0/216.0, -8.0, 3680.0/513.0, -845.0/4104.0 },
+				{ -8.0/27.0, 2.0, -3544.0/2565.0, 1859.0/4104.0, -11.0/40.0 } },
+			new double[] { 16.0/135.0, 0, 6656.0/12825.0, 28561.0/56430.0, -9.0/50.0, 2.0/55.0 },
+			new double[] { 25.0/216.0, 0, 1408.0/2565.0, 2197.0/4104.0, -1.0/5.0, 0 }, 4,
+			null);
+
+	/** Dormand-Prince 5(4), first same as last, with a fourth order continuous extension */
+	public static final ButcherTableau DORMAND_PRINCE_54;
+
+	static {
+		double[] b = { 35.0/384.0, 0, 500.0/1113.0, 125.0/192.0, -2187.0/6784.0, 11.0/84.0, 0 };
+		double[] d = { -12715105075.0/11282082432.0, 0, 87487479700.0/32700410799.0, -10690763975.0/1880347072.0,
+				701980252875.0/199316789632.0, -1453857185.0/822651844.0, 69997945.0/29380423.0 };
+		// Hairer's form y0 + theta (r2 + (1-theta) (r3 + theta (r4 + (1-theta) r5))),
+		// with r5 = h sum d_j k_j, expanded in powers of theta
+		double[][] dense = new double[7][];
+		for (int j=0; j<7; j++) {
+			double first = (j == 0) ? 1 : 0, last = (j == 6) ? 1 : 0;
+			dense[j] = new double[] { first, 3*b[j] + d[j] - 2*first - last, -2*b[j] - 2*d[j] + first + last, d[j] };
+		}
+		DORMAND_PRINCE_54 = new ButcherTableau("Dormand-Prince 5(4)", 5,
+				new double[] { 0, 1.0/5.0, 3.0/10.0, 4.0/5.0, 8.0/9.0, 1, 1 },
+				new double[][] {
+					{},
+					{ 1.0/5.0 },
+					{ 3.0/40.0, 9.0/40.0 },
+					{ 44.0/45.0, -56.0/15.0, 32.0/9.0 },
+					{ 19372.0/6561.0, -25360.0/2187.0, 64448.0/6561.0, -212.0/729.0 },
+					{ 9017.0/3168.0, -355.0/33.0, 46732.0/5247.0, 49.0/176.0, -5103.0/18656.0 },
+					{ 35.0/384.0, 0, 500.0/1113.0, 125.0/192.0, -2187.0/6784.0, 11.0/84.0 } },
+				b,
+				new double[] { 5179.0/57600.0, 0, 7571.0/16695.0, 393.0/640.0, -92097.0/339200.0, 187.0/2100.0, 1.0/40.0 }, 4,
+				dense);
+	}
+
+	private final String mName;
+	private final int mOrder, mEmbeddedOrder;
+	private final double[] mC;
+	private final double[][] mA;
+	private final double[] mB;
+	private final double[] mBHat;
+	private final double[][] mDense;
+	private final boolean mFsal;
+	// nonzero coefficients of each row of A, of b and of b-bHat
+	private final int[][] mAIndex;
+	private final double[][] mACoefficients;
+	private final int[] mBIndex, mErrorIndex;
+	private final double[] mBCoefficients, mErrorCoefficients;
+	// stages with some nonzero weight in the dense output, and their weights a power after the other
+	private final int[] mDenseStages;
+	private final double[] mDenseWeights;
+
+	/**
+	 * Creates a tableau
+	 * @param name the name of the method
+	 * @param order the order of the solution that advances
+	 * @param c the nodes, c[0] must be 0
+	 * @param a the rows of A, row i with (at most) i coefficients
+	 * @param b the weights of the solution that advances
+	 * @param bHat the weights of the embedded solution, null if there is none
+	 * @param embeddedOrder the order of the embedded solution
+	 * @param dense for each stage, the coefficients of theta, theta^2, ... of its weight
+	 * in the continuous extension, null if there is none
+	 */
+	public ButcherTableau(String name, int order, double[] c, double[][] a, double[] b,
+			double[] bHat, int embeddedOrder, double[][] dense) {
+		int stages = c.length;
+		if (stages == 0 || a.length != stages || b.length != stages || (bHat != null && bHat.length != stages))
+			throw new IllegalArgumentException("The nodes, A and the weights of " + name + " must have the same number of stages");
+		if (c[0] != 0)
+			throw new IllegalArgumentException("The first node of an explicit method must be 0");
+		for (int i=0; i<stages; i++)
+			if (a[i].length > i)
+				throw new IllegalArgumentException("Row " + i + " of A of an explicit method must have at most " + i + " coefficients");
+		mName = name;
+		mOrder = order;
+		mEmbeddedOrder = embeddedOrder;
+		mC = c.clone();
+		mA = new double[stages][];
+		for (int i=0; i<stages; i++) mA[i] = a[i].clone();
+		mB = b.clone();
+		mBHat = (bHat == null) ? null : bHat.clone();
+
+		mAIndex = new int[stages][];
+		mACoefficients = new double[stages][];
+		for (int i=0; i<stages; i++) {
+			mAIndex[i] = nonzeroIndices(mA[i]);
+			mACoefficients[i] = nonzeroValues(mA[i], mAIndex[i]);
+		}
+		mBIndex = nonzeroIndices(mB);
+		mBCoefficients = nonzeroValues(mB, mBIndex);
+		if (mBHat != null) {
+			double[] error = new double[stages];
+			for (int i=0; i<stages; i++) error[i] = mB[i] - mBHat[i];
+			mErrorIndex = nonzeroIndices(error);
+			mErrorCoefficients = nonzeroValues(error, mErrorIndex);
+		}
+		else {
+			mErrorIndex = null;
+			mErrorCoefficients = null;
+		}
+
+		if (dense != null) {
+			if (dense.length != stages)
+				throw new IllegalArgumentException("The continuous extension of " + name + " must have a row per stage");
+			int degree = 0;
+			for (double[] row : dense) degree = Math.max(degree, row.length);
+			mDense = new double[stages][degree];
+			for (int i=0; i<stages; i++) System.arraycopy(dense[i], 0, mDense[i], 0, dense[i].length);
+			double[] norms = new double[stages];
+			for (int i=0; i<stages; i++)
+				for (double weight : mDense[i]) norms[i] += Math.abs(weight);
+			mDenseStages = nonzeroIndices(norms);
+			mDenseWeights = new double[degree*mDenseStages.length];
+			for (int p=0, w=0; p<degree; p++)
+				for (int j=0; j<mDenseStages.length; j++) mDenseWeights[w++] = mDense[mDenseStages[j]][p];
+		}
+		else {
+			mDense = null;
+			mDenseStages = null;
+			mDenseWeights = null;
+		}
+
+		// First same as last: the last stage is evaluated at the new solution
+		boolean fsal = stages > 1 && c[stages-1] == 1;
+		for (int j=0; fsal && j<stages; j++)
+			fsal = mB[j] == ((j < mA[stages-1].length) ? mA[stages-1][j] : 0);
+		mFsal = fsal;
+	}
+
+	private static int[] nonzeroIndices(double[] values) {
+		int count = 0;
+		for (double value : values) if (value != 0) count++;
+		int[] indices = new int[count];
+		count = 0;
+		for (int i=0; i<values.length; i++) if (values[i] != 0) indices[count++] = i;
+		return indices;
+	}
+
+	private static double[] nonzeroValues(double[] values, int[] indices) {
+		double[] nonzero = new double[indices.length];
+		for (int i=0; i<indices.length; i++) nonzero[i] = values[indices[i]];
+		return nonzero;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * @return the order of the solution that advances
+	 */
+	public int getOrder() {
+		return mOrder;
+	}
+
+	/**
+	 * @return the order of the embedded solution, 0 if there is none
+	 */
+	public int getEmbeddedOrder() {
+		return mBHat == null ? 0 : mEmbeddedOrder;
+	}
+
+	public int getStages() {
+		return mC.length;
+	}
+
+	public double getC(int i) {
+		return mC[i];
+	}
+
+	public double getA(int i, int j) {
+		return (j < mA[i].length) ? mA[i][j] : 0;
+	}
+
+	public double getB(int i) {
+		return mB[i];
+	}
+
+	/**
+	 * @return whether the tableau has an embedded solution to estimate the error
+	 */
+	public boolean hasEmbedded() {
+		return mBHat != null;
+	}
+
+	/**
+	 * @return whether the tableau has a continuous extension
+	 */
+	public boolean hasDenseOutput() {
+		return mDense != null;
+	}
+
+	/**
+	 * @return the degree in theta of the continuous extension, 0 if there is none
+	 */
+	public int getDenseDegree() {
+		return mDense == null ? 0 : mDense[0].length;
+	}
+
+	/**
+	 * First same as last: the last stage is the derivative at the new solution,
+	 * so it is the first stage of the next step
+	 * @return whether the tableau is first same as last
+	 */
+	public boolean isFsal() {
+		return mFsal;
+	}
+
+	// Nonzero coefficients, for the engine
+
+	int[] aIndex(int i) {
+		return mAIndex[i];
+	}
+
+	double[] aCoefficients(int i) {
+		return mACoefficients[i];
+	}
+
+	int[] bIndex() {
+		return mBIndex;
+	}
+
+	double[] bCoefficients() {
+		return mBCoefficients;
+	}
+
+	int[] errorIndex() {
+		return mErrorIndex;
+	}
+
+	double[] errorCoefficients() {
+		return mErrorCoefficients;
+	}
+
+	int[] denseStages() {
+		return mDenseStages;
+	}
+
+	double[] denseWeights() {
+		return mDenseWeights;
+	}
+
+	@Override
+	public String toString() {
+		return mName + " (" + getStages() + " stages, order " + mOrder
+				+ (hasEmbedded() ? "(" + mEmbeddedOrder + ")" : "") + (mFsal ? ", FSAL" : "") + ")";
+	}
+
+}
@@ -0,0 +1,168 @@
+package es.um.mned.methods;
+
+/**
+ * Measures the local error of a step of an AdaptiveStepMethod against the
+ * tolerances, as a ratio that is below 1 when the step is accepted.
+ * Each component i of the error is weighted by its scale
+ * <pre>
+ *   sc_i = atol_i + rtol_i * max(|y0_i|, |y1_i|)
+ * </pre>
+ * with y0 and y1 the states at both ends of the step, and the weighted errors are
+ * combined with one of the norms of Type. Components of very different sizes are
+ * so each controlled to their own scale, instead of all of them to the step the
+ * largest one needs.
+ * The tolerances may be given per component or as a single value for all of them.
+ */
+public class ErrorNorm {
+
+	public enum Type {
+		/**
+		 * Euclidean norm of the weighted error divided by |step|, the error per unit
+		 * step of the original methods. ErrorNorm.perUnitStep(tolerance) is the
+		 * criterion error < tolerance*|step| they used
+		 */
+		EUCLIDEAN_PER_UNIT_STEP,
+		/**
+		 * Root mean square of the weighted error, as in Hairer and Wanner's codes
+		 */
+		RMS,
+		/**
+		 * Largest weighted error of the components
+		 */
+		MAX
+	}
+
+	private final Type mType;
+	private final double[] mAbsolute, mRelative;
+
+	/**
+	 * The criterion of the original methods, error < tolerance*|step| with the
+	 * Euclidean norm of the unweighted error
+	 * @param tolerance the absolute tolerance per unit step
+	 * @return the norm
+	 */
+	public static ErrorNorm perUnitStep(double tolerance) {
+		return new ErrorNorm(Type.EUCLIDEAN_PER_UNIT_STEP, tolerance, 0);
+	}
+
+	/**
+	 * Creates a norm with the same tolerances for all the components
+	 * @param type how to combine the weighted errors
+	 * @param absolute absolute tolerance
+	 * @param relative relative tolerance
+	 */
+	public ErrorNorm(Type type, double absolute, double relative) {
+		this(type, new double[] { absolute }, new double[] { relative });
+	}
+
+	/**
+	 * Creates a norm with tolerances per component
+	 * @param type how to combine the weighted errors
+	 * @param absolute absolute tolerances, one per component or a single one for all
+	 * @param relative relative tolerances, one per component or a single one for all
+	 */
+	public ErrorNorm(Type type, double[] absolute, double[] relative) {
+		if (absolute.length == 0 || relative.length == 0)
+			throw new IllegalArgumentException("The tolerances can not be empty");
+		for (int i=0; i<Math.max(absolute.length, relative.length); i++) {
+			double atol = absolute[Math.min(i, absolute.length-1)];
+			double rtol = relative[Math.min(i, relative.length-1)];
+			if (atol < 0 || rtol < 0 || atol + rtol <= 0)
+				throw new IllegalArgumentException("The tolerances must be non negative, and not both zero");
+		}
+		mType = type;
+		mAbsolute = absolute.clone();
+		mRelative = relative.clone();
+	}
+
+	/**
+	 * Checks that the tolerances fit a state of the given dimension
+	 * @param dimension the dimension of the state
+	 */
+	public void checkDimension(int dimension) {
+		if ((mAbsolute.length != 1 && mAbsolute.length != dimension)
+				|| (mRelative.length != 1 && mRelative.length != dimension))
+			throw new IllegalArgumentException("The tolerances must have one value or one per component, "
+					+ dimension + " in this problem");
+	}
+
+	public Type getType() {
+		return mType;
+	}
+
+	/**
+	 * @return whether the ratio is that of the error per unit step, rather than per step
+	 */
+	public boolean isPerUnitStep() {
+		return mType == Type.EUCLIDEAN_PER_UNIT_STEP;
+	}
+
+	public double getAbsoluteTolerance(int i) {
+		return mAbsolute.length == 1 ? mAbsolute[0] : mAbsolute[i];
+	}
+
+	public double getRelativeTolerance(int i) {
+		return mRelative.length == 1 ? mRelative[0] : mRelative[i];
+	}
+
+	/**
+	 * Scale of a component of the state
+	 * @param i the index of the component
+	 * @param value the size of the component
+	 * @return atol_i + rtol_i*|value|
+	 */
+	public double scale(int i, double value) {
+		return getAbsoluteTolerance(i) + getRelativeTolerance(i) * Math.abs(value);
+	}
+
+	/**
+	 * Norm of the weighted error of a step, without dividing by the step for the
+	 * norm per unit step
+	 * @param error the estimate of the local error of each component
+	 * @param start the state at the start of the step
+	 * @param end the state at the end of the step
+	 * @return the norm
+	 */
+	public double norm(double[] error, double[] start, double[] end) {
+		double norm = 0;
+		for (int i=0; i<error.length; i++) {
+			double weighted = error[i] / scale(i, Math.max(Math.abs(start[i]), Math.abs(end[i])));
+			if (mType == Type.MAX) norm = Math.max(norm, Math.abs(weighted));
+			else norm += weighted * weighted;
+		}
+		switch (mType) {
+			case RMS : return Math.sqrt(norm/error.length);
+			case MAX : return norm;
+			default : return Math.sqrt(norm);
+		}
+	}
+
+	/**
+	 * Ratio of the error to the tolerance, from a norm computed with norm()
+	 * @param norm the norm of the weighted error
+	 * @param step the step taken
+	 * @return the ratio, below 1 if the step is accepted
+	 */
+	public double ratio(double norm, double step) {
+		return isPerUnitStep() ? norm / Math.abs(step) : norm;
+	}
+
+	/**
+	 * Ratio of the error of a step to the tolerance
+	 * @param error the estimate of the local error of each component
+	 * @param start the state at the start of the step
+	 * @param end the state at the end of the step
+	 * @param step the step taken
+	 * @return the ratio, below 1 if the step is accepted
+	 */
+	public double ratio(double[] error, double[] start, double[] end, double step) {
+		return ratio(norm(error, start, end), step);
+	}
+
+	@Override
+	public String toString() {
+		return mType + " norm, atol = " + java.util.Arrays.toString(mAbsolute)
+			+ ", rtol = " + java.util.Arrays.toString(mRelative);
+	}
+
+}
@@ -0,0 +1,302 @@
+package es.um.mned.methods;
+
+/**
+ * Steps an explicit Runge-Kutta method given by its ButcherTableau, for
+ * FixedStepExplicitRungeKuttaMethod and AdaptiveStepExplicitRungeKuttaMethod.
+ * All the stages are allocated once, and only the nonzero coefficients of the
+ * tableau are visited. Each combination of stages is a single pass over the
+ * state, written out for up to six stages, and for tableaus of up to four
+ * stages with a cubic dense output at most, the new solution and the dense
+ * output are computed together, as the hand written methods do.
+ */
+final class ExplicitRungeKuttaEngine {
+
+	private final FixedStepMethod mMethod; // evaluates the derivatives
+	private final double[][] mK; // the stages
+	private final double[] mAux, mZero;
+	private final int mLast; // the stage at the new solution, if first same as last
+	private final int mExplicitStages; // evaluated in step, all but the last if first same as last
+	private final double[] mC;
+	// the stages with nonzero coefficients in each row of A, in b, in b-bHat and in each power
+	// of theta of the dense output, and those coefficients
+	private final double[][][] mARows, mDenseRows;
+	private final double[][] mBRows, mErrorRows;
+	private final double[][] mACoefficients, mDenseWeights;
+	private final double[] mBCoefficients, mErrorCoefficients;
+	// if b and the dense output use at most four stages and the degree is at most three: those
+	// stages, padded with zeros, and the weights of the new solution and of each power of theta,
+	// four each, so the new solution and the dense output are computed in a single pass
+	private final double[][] mFusedRows;
+	private final double[] mFusedWeights, mFusedDense;
+	private final int mDegree;
+
+	/**
+	 * @param tableau the method
+	 * @param method the method evaluating the derivatives, so they are counted
+	 * @param state an array of the dimension of the problem
+	 */
+	ExplicitRungeKuttaEngine(ButcherTableau tableau, FixedStepMethod method, double[] state) {
+		mMethod = method;
+		int stages = tableau.getStages();
+		mK = new double[stages][];
+		for (int j=0; j<stages; j++) mK[j] = state.clone();
+		mAux = state.clone();
+		mZero = new double[state.length];
+		mLast = stages-1;
+		mExplicitStages = tableau.isFsal() ? stages-1 : stages;
+		mC = new double[stages];
+		mARows = new double[stages][][];
+		mACoefficients = new double[stages][];
+		for (int s=0; s<stages; s++) {
+			mC[s] = tableau.getC(s);
+			mARows[s] = rows(tableau.aIndex(s));
+			mACoefficients[s] = tableau.aCoefficients(s);
+		}
+		mBRows = rows(tableau.bIndex());
+		mBCoefficients = tableau.bCoefficients();
+		mErrorRows = tableau.hasEmbedded() ? rows(tableau.errorIndex()) : null;
+		mErrorCoefficients = tableau.hasEmbedded() ? tableau.errorCoefficients() : null;
+		int degree = tableau.getDenseDegree();
+		mDenseRows = new double[degree][][];
+		mDenseWeights = new double[degree][];
+		if (degree > 0) {
+			int[] denseStages = tableau.denseStages();
+			double[] weights = tableau.denseWeights();
+			for (int p=0; p<degree; p++) {
+				int count = 0;
+				for (int j=0; j<denseStages.length; j++) if (weights[p*denseStages.length+j] != 0) count++;
+				mDenseRows[p] = new double[count][];
+				mDenseWeights[p] = new double[count];
+				for (int j=0, n=0; j<denseStages.length; j++) {
+					double weight = weights[p*denseStages.length+j];
+					if (weight == 0) continue;
+					mDenseRows[p][n] = mK[denseStages[j]];
+					mDenseWeights[p][n++] = weight;
+				}
+			}
+		}
+		mDegree = degree;
+		int[] fused = fusedStages(tableau);
+		if (fused != null) {
+			mFusedRows = new double[4][];
+			mFusedWeights = new double[16];
+			int[] denseStages = tableau.denseStages();
+			double[] weights = tableau.denseWeights();
+			for (int j=0; j<4; j++) {
+				if (j >= fused.length) {
+					mFusedRows[j] = mZero;
+					continue;
+				}
+				mFusedRows[j] = mK[fused[j]];
+				mFusedWeights[j] = tableau.getB(fused[j]);
+				for (int d=0; d<denseStages.length; d++) {
+					if (denseStages[d] != fused[j]) continue;
+					for (int p=0; p<degree; p++) mFusedWeights[4*(p+1)+j] = weights[p*denseStages.length+d];
+				}
+			}
+			mFusedDense = degree < 3 ? new double[3*state.length] : null;
+		}
+		else {
+			mFusedRows = null;
+			mFusedWeights = null;
+			mFusedDense = null;
+		}
+	}
+
+	// The stages used by b or by the dense output, if the single pass can compute them
+	private static int[] fusedStages(ButcherTableau tableau) {
+		int degree = tableau.getDenseDegree();
+		if (degree < 1 || degree > 3) return null;
+		boolean[] used = new boolean[tableau.getStages()];
+		for (int j : tableau.bIndex()) used[j] = true;
+		for (int j : tableau.denseStages()) used[j] = true;
+		// the last stage of a first same as last tableau is only known after the new solution
+		if (tableau.isFsal() && used[used.length-1]) return null;
+		int count = 0;
+		for (boolean u : used) if (u) count++;
+		if (count > 4) return null;
+		int[] stages = new int[count];
+		for (int j=0, n=0; j<used.length; j++) if (used[j]) stages[n++] = j;
+		return stages;
+	}
+
+	private double[][] rows(int[] indices) {
+		double[][] rows = new double[indices.length][];
+		for (int j=0; j<indices.length; j++) rows[j] = mK[indices[j]];
+		return rows;
+	}
+
+	/**
+	 * Evaluates the first stage, reusing the derivative at the end of the previous
+	 * step if it was evaluated
+	 * @param time the current time
+	 * @param state the current state
+	 */
+	void start(double time, double[] state) {
+		mMethod.evaluateStartDerivative(time, state, mK[0]);
+	}
+
+	/**
+	 * Evaluates the rest of the stages and the new solution. The first stage must
+	 * have been evaluated at the same time and state by start
+	 * @param time the current time
+	 * @param state the current state
+	 * @param h the step to take
+	 * @param newState the array where the new solution is written, which may be state itself
+	 */
+	void step(double time, double[] state, double h, double[] newState) {
+		step(time, state, h, newState, null);
+	}
+
+	/**
+	 * Evaluates the rest of the stages, the new solution and, if an array is given,
+	 * the dense output of the step, see denseOutput
+	 * @param time the current time
+	 * @param state the current state
+	 * @param h the step to take
+	 * @param newState the array where the new solution is written, which may be state itself
+	 * @param denseOutput the array where the dense output is written, or null
+	 */
+	void step(double time, double[] state, double h, double[] newState, double[] denseOutput) {
+		double[][] k = mK;
+		for (int s=1; s<mExplicitStages; s++) {
+			combine(state, h, mARows[s], mACoefficients[s], mAux, 0);
+			mMethod.evaluateDerivative(time + mC[s]*h, mAux, k[s]);
+		}
+		if (denseOutput != null && mFusedRows != null) {
+			double[] dense = mFusedDense == null ? denseOutput : mFusedDense;
+			fusedCombine(state, h, newState, dense);
+			if (dense != denseOutput) System.arraycopy(dense, 0, denseOutput, 0, mDegree*state.length);
+		}
+		else combine(state, h, mBRows, mBCoefficients, newState, 0);
+		if (mExplicitStages == mLast) {
+			double[] last = mMethod.evaluateEndDerivative(time+h, newState);
+			System.arraycopy(last, 0, k[mLast], 0, last.length);
+		}
+		// The dense output may use the last stage, so it goes after it
+		if (denseOutput != null && mFusedRows == null) denseOutput(h, denseOutput);
+	}
+
+	// The new solution and the three powers of the dense output in one pass, as the
+	// hand written methods of four stages do
+	private void fusedCombine(double[] state, double h, double[] newState, double[] dense) {
+		double[][] rows = mFusedRows;
+		double[] k0 = rows[0], k1 = rows[1], k2 = rows[2], k3 = rows[3];
+		double[] w = mFusedWeights;
+		double b0 = h*w[0], b1 = h*w[1], b2 = h*w[2], b3 = h*w[3];
+		double p0 = h*w[4], p1 = h*w[5], p2 = h*w[6], p3 = h*w[7];
+		double q0 = h*w[8], q1 = h*w[9], q2 = h*w[10], q3 = h*w[11];
+		double r0 = h*w[12], r1 = h*w[13], r2 = h*w[14], r3 = h*w[15];
+		int dim = state.length;
+		for (int i=0; i<dim; i++) {
+			double v0 = k0[i], v1 = k1[i], v2 = k2[i], v3 = k3[i];
+			newState[i] = state[i] + b0*v0 + b1*v1 + b2*v2 + b3*v3;
+			dense[i] = p0*v0 + p1*v1 + p2*v2 + p3*v3;
+			dense[dim+i] = q0*v0 + q1*v1 + q2*v2 + q3*v3;
+			dense[2*dim+i] = r0*v0 + r1*v1 + r2*v2 + r3*v3;
+		}
+	}
+
+	// result[offset..] = state + h sum_j coefficients[j] rows[j] in one pass over the state.
+	// Each case is a small method of its own so that the compiler inlines them all.
+	private static void combine(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		switch (rows.length) {
+		case 0: System.arraycopy(state, 0, result, offset, state.length); return;
+		case 1: combine1(state, h, rows, coefficients, result, offset); return;
+		case 2: combine2(state, h, rows, coefficients, result, offset); return;
+		case 3: combine3(state, h, rows, coefficients, result, offset); return;
+		case 4: combine4(state, h, rows, coefficients, result, offset); return;
+		case 5: combine5(state, h, rows, coefficients, result, offset); return;
+		case 6: combine6(state, h, rows, coefficients, result, offset); return;
+		default: combineN(state, h, rows, coefficients, result, offset);
+		}
+	}
+
+	private static void combine1(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		double[] k0 = rows[0];
+		double c0 = h*coefficients[0];
+		for (int i=0; i<state.length; i++) result[offset+i] = state[i] + c0*k0[i];
+	}
+
+	private static void combine2(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		double[] k0 = rows[0], k1 = rows[1];
+		double c0 = h*coefficients[0], c1 = h*coefficients[1];
+		for (int i=0; i<state.length; i++) result[offset+i] = state[i] + c0*k0[i] + c1*k1[i];
+	}
+
+	private static void combine3(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		double[] k0 = rows[0], k1 = rows[1], k2 = rows[2];
+		double c0 = h*coefficients[0], c1 = h*coefficients[1], c2 = h*coefficients[2];
+		for (int i=0; i<state.length; i++) result[offset+i] = state[i] + c0*k0[i] + c1*k1[i] + c2*k2[i];
+	}
+
+	private static void combine4(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		double[] k0 = rows[0], k1 = rows[1], k2 = rows[2], k3 = rows[3];
+		double c0 = h*coefficients[0], c1 = h*coefficients[1], c2 = h*coefficients[2], c3 = h*coefficients[3];
+		for (int i=0; i<state.length; i++)
+			result[offset+i] = state[i] + c0*k0[i] + c1*k1[i] + c2*k2[i] + c3*k3[i];
+	}
+
+	private static void combine5(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		double[] k0 = rows[0], k1 = rows[1], k2 = rows[2], k3 = rows[3], k4 = rows[4];
+		double c0 = h*coefficients[0], c1 = h*coefficients[1], c2 = h*coefficients[2], c3 = h*coefficients[3],
+				c4 = h*coefficients[4];
+		for (int i=0; i<state.length; i++)
+			result[offset+i] = state[i] + c0*k0[i] + c1*k1[i] + c2*k2[i] + c3*k3[i] + c4*k4[i];
+	}
+
+	private static void combine6(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		double[] k0 = rows[0], k1 = rows[1], k2 = rows[2], k3 = rows[3], k4 = rows[4], k5 = rows[5];
+		double c0 = h*coefficients[0], c1 = h*coefficients[1], c2 = h*coefficients[2], c3 = h*coefficients[3],
+				c4 = h*coefficients[4], c5 = h*coefficients[5];
+		for (int i=0; i<state.length; i++)
+			result[offset+i] = state[i] + c0*k0[i] + c1*k1[i] + c2*k2[i] + c3*k3[i] + c4*k4[i] + c5*k5[i];
+	}
+
+	private static void combineN(double[] state, double h, double[][] rows, double[] coefficients,
+			double[] result, int offset) {
+		int terms = rows.length;
+		for (int i=0; i<state.length; i++) {
+			double sum = 0;
+			for (int j=0; j<terms; j++) sum += coefficients[j] * rows[j][i];
+			result[offset+i] = state[i] + h*sum;
+		}
+	}
+
+	/**
+	 * Difference between the solution and the embedded one
+	 * @param h the step taken
+	 * @return the estimate of the error of each component, valid until the next step
+	 */
+	double[] error(double h) {
+		combine(mZero, h, mErrorRows, mErrorCoefficients, mAux, 0);
+		return mAux;
+	}
+
+	/**
+	 * Coefficients of the continuous extension of the step just taken, in powers of theta
+	 * @param h the step taken
+	 * @param denseOutput array of length the degree times the state to write them
+	 */
+	void denseOutput(double h, double[] denseOutput) {
+		int dim = mAux.length;
+		for (int p=0; p<mDenseRows.length; p++)
+			combine(mZero, h, mDenseRows[p], mDenseWeights[p], denseOutput, p*dim);
+	}
+
+	/**
+	 * @param j the index of the stage
+	 * @return the stage, valid until the next step
+	 */
+	double[] stage(int j) {
+		return mK[j];
+	}
+
+}
@@ -20,6 +20,7 @@ public class FixedStepAdamsBashford4Method extends FixedStepMethod {
     protected int lastStep=0;
     protected double[] auxState;
     protected double[] derivativeIm3,derivativeIm2,derivativeIm1, derivativeI;
+    protected double[] k2, k3, k4; // Required by the RK starter
     
     public FixedStepAdamsBashford4Method(
     		InitialValueProblem problem,
@@ -27,6 +28,13 @@ public class FixedStepAdamsBashford4Method extends FixedStepMethod {
     		Optional<Event> event) {
         super(problem, step, event);
         auxState = problem.getInitialState();
+        derivativeIm3 = problem.getInitialState();
+        derivativeIm2 = problem.getInitialState();
+        derivativeIm1 = problem.getInitialState();
+        derivativeI = problem.getInitialState();
+        k2 = problem.getInitialState();
+        k3 = problem.getInitialState();
+        k4 = problem.getInitialState();
     }
     
     @Override
@@ -38,22 +46,22 @@ public class FixedStepAdamsBashford4Method extends FixedStepMethod {
     public double doStep(double deltaTime, double time, double[] state) {
         switch(lastStep) {
             case 0 : 
-                derivativeIm3 = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeIm3);
                 time = rungeKuttaStep(deltaTime, time, state, derivativeIm3); 
                 lastStep++;
                 break;
             case 1 : 
-                derivativeIm2 = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeIm2);
                 time = rungeKuttaStep(deltaTime, time, state, derivativeIm2); 
                 lastStep++;
                 break;
             case 2 : 
-                derivativeIm1 = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeIm1);
                 time = rungeKuttaStep(deltaTime, time, state, derivativeIm1); 
                 lastStep++;
                 break;
             default :
-                derivativeI = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeI);
                 time = adamsBashfordStep(deltaTime, time, state, state);
                 System.arraycopy(derivativeIm2,0,derivativeIm3,0,derivativeIm2.length);
                 System.arraycopy(derivativeIm1,0,derivativeIm2,0,derivativeIm2.length);
@@ -89,15 +97,15 @@ public class FixedStepAdamsBashford4Method extends FixedStepMethod {
         for (int i=0; i<state.length; i++) {
             auxState[i] = state[i] + h2 * k1[i];
         }
-        double[] k2 = mProblem.getDerivative(time+h2, auxState);
+        evaluateDerivative(time+h2, auxState, k2);
         for (int i=0; i<state.length; i++) {
             auxState[i] = state[i] + h2 * k2[i];
         }
-        double[] k3 = mProblem.getDerivative(time+h2, auxState);
+        evaluateDerivative(time+h2, auxState, k3);
         for (int i=0; i<state.length; i++) {
             auxState[i] = state[i] + deltaTime * k3[i];
         }
-        double[] k4 = mProblem.getDerivative(time+deltaTime, auxState);
+        evaluateDerivative(time+deltaTime, auxState, k4);
         double h6 = deltaTime/6;
         for (int i=0; i<state.length; i++) {
             state[i] += h6 * (k1[i]+2*k2[i]+2*k3[i]+k4[i]);
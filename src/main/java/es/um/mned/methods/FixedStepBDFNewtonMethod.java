@@ -0,0 +1,125 @@
+package es.um.mned.methods;
+
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Backward differentiation formulas of orders 2 to 6,
+ * w_(i+1) + a_0*w_i + a_1*w_(i-1) + ... = b*h*f(t_(i+1), w_(i+1)),
+ * solving for w_(i+1) with Newton's method. The first steps are taken with the
+ * trapezoidal method. Works for problems of any dimension.
+ */
+public class FixedStepBDFNewtonMethod extends FixedStepImplicitMethod {
+	
+	/*
+	 * ========================================
+	 * Attributes
+	 * ========================================
+	 */
+	double[][] states; // w_{i}, w_{i-1}, ...
+	double[] a; // a[i]*w_{i}, a[i-1]* w_{i-1}, ...
+	double b;
+    int order;
+    int startSteps;
+	
+	/*
+	 * ========================================
+	 * Constructors
+	 * ========================================
+	 */
+
+	/**
+	 * @param problem InitialValueProblem, its Jacobian is approximated if it does not give it
+	 * @param order Order of the BDF method, between 2 and 6. Order 1 is 
+	 * 	implemented elsewhere (Backwards Euler)
+	 * @param step Size of the steps to take
+	 * @param tolerance Tolerance for Newton method to solve the equation
+	 */
+	public FixedStepBDFNewtonMethod(
+            InitialValueProblem problem,
+            int order,
+            double step,
+            Optional<Event> event
+            ) {
+
+		super(problem, step, event);
+
+        this.order = order;
+        startSteps = order - 1;
+
+        double[] a;
+        double b;
+        switch(order) {
+            case 2:
+                a = new double[] {-4./3., 1./3.};
+                b = 2./3.;
+                break;
+            case 3:
+                a = new double[] {-18./11., 9./11., -2./11.};
+                b = 6./11.;
+                break;
+            case 4:
+                a = new double[] {-48./25., 36./25., -16./25., 3./25.};
+                b = 12./25.;
+                break;
+            case 5:
+                a = new double[] {-300./137., 300./137., -200./137., 75./137., -12./137.};
+                b = 60./137.;
+                break;
+            case 6:
+                a = new double[] {-360./147., 450./147., -400./147., 225./147., -72./147., 10./147.};
+                b = 60./147.;
+                break;
+            default:
+            	throw new IllegalArgumentException("Order not available.");
+        }
+		this.a = a;
+		this.b = b;
+		states = new double[a.length][];
+		for (int i=0; i<states.length; i++) states[i] = problem.getInitialState();
+		/*
+		 * this kills BDFs of order > 3, but I don't have better implicit methods.
+		 * if I had them I would initialize the first points inside the switch.
+		 * Notice that order 3 still works well because error in each trapezoidal step has O(h^3) error.
+		 * I don't think it's a good idea to use RK methods, as it would lead to issues with rigid problems.
+		 */
+	}
+	
+	/*
+	 * ========================================
+	 * Step, order and tol
+	 * ========================================
+	 */
+
+	@Override
+    public int getOrder() {
+    	return order;
+    }
+
+	@Override
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+        if(startSteps > 0) { // method start
+        	System.arraycopy(state, 0, states[--startSteps], 0, state.length);
+        	trapezoidalStep(deltaTime, time, state);
+            return time+deltaTime;
+        }
+
+        double[] oldest = states[states.length - 1];
+        for(int i = states.length - 1; i>0; --i)
+            states[i] = states[i-1];
+        states[0] = oldest;
+        System.arraycopy(state, 0, states[0], 0, state.length);
+        for (int j=0; j<state.length; j++) {
+        	double sum = 0;
+        	for (int i=0; i<a.length; i++) sum -= a[i] * states[i][j];
+        	mEquation.constant[j] = sum;
+        }
+		
+		solveImplicitEquation(time+deltaTime, b * deltaTime, state);
+        return time+deltaTime;
+	}
+
+}
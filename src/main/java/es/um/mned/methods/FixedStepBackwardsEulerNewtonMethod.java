@@ -0,0 +1,43 @@
+package es.um.mned.methods;
+
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Backwards Euler method, w_(i+1) = w_i + h*f(t_(i+1), w_(i+1)), solving for
+ * w_(i+1) with Newton's method. Works for problems of any dimension.
+ */
+public class FixedStepBackwardsEulerNewtonMethod extends FixedStepImplicitMethod {
+	
+	/*
+	 * ========================================
+	 * Constructors
+	 * ========================================
+	 */
+
+	public FixedStepBackwardsEulerNewtonMethod(InitialValueProblem problem, double step, Optional<Event> event) {
+		super(problem, step, event);
+	}
+	
+	/*
+	 * ========================================
+	 * Step, order and tol
+	 * ========================================
+	 */
+
+    @Override
+    public int getOrder() {
+    	return 1;
+    }
+
+	@Override
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		System.arraycopy(state, 0, mEquation.constant, 0, state.length);
+		solveImplicitEquation(time+deltaTime, deltaTime, state);
+        return time+deltaTime;
+	}
+
+}
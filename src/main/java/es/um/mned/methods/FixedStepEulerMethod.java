@@ -5,16 +5,16 @@
  */
 package es.um.mned.methods;
 
-import java.util.Iterator;
 import java.util.Optional;
 
 import es.um.mned.ode.ConvergenceException;
 import es.um.mned.ode.Event;
 import es.um.mned.ode.InitialValueProblem;
 import es.um.mned.ode.NumericalSolution;
-import es.um.mned.ode.NumericalSolutionPoint;
+import es.um.mned.ode.SolutionCursor;
 
 public class FixedStepEulerMethod extends FixedStepMethod {
+    private double[] mDerivative;
     
     /**
      * Initializes the method for a given InitialValueProblem
@@ -23,6 +23,7 @@ public class FixedStepEulerMethod extends FixedStepMethod {
      */
     public FixedStepEulerMethod(InitialValueProblem problem, double step, Optional<Event> event) {
         super(problem,step, event);
+        mDerivative = problem.getInitialState();
     }
     
     @Override
@@ -38,27 +39,27 @@ public class FixedStepEulerMethod extends FixedStepMethod {
      * @return the value of time of the step taken, state will contain the updated state
      */
     public double doStep(double deltaTime, double time, double[] state) {
-        double[] derivative = mProblem.getDerivative(time, state);
+        evaluateDerivative(time, state, mDerivative);
         for (int i=0; i<state.length; i++) {
-            state[i] = state[i] + deltaTime * derivative[i];
+            state[i] = state[i] + deltaTime * mDerivative[i];
         }
         return time+deltaTime;
     }
         
     static public NumericalSolution extrapolate (NumericalSolution fullStep, NumericalSolution halfStep) {
         NumericalSolution extrapolatedSolution = NumericalSolution.createExtrapolationSol(fullStep);
-        Iterator<NumericalSolutionPoint> iteratorFull = fullStep.iterator();
-        Iterator<NumericalSolutionPoint> iteratorHalf = halfStep.iterator();
-        while (iteratorFull.hasNext() && iteratorHalf.hasNext()) {
-            NumericalSolutionPoint pointFull = iteratorFull.next();
-            double[] stateFull = pointFull.getState();
-            double[] stateHalf = iteratorHalf.next().getState();
-            for (int i=0; i<stateFull.length; i++) {
-                stateFull[i] = (2*stateHalf[i]-stateFull[i]); // Reuse stateFull array
+        SolutionCursor cursorFull = fullStep.cursor();
+        SolutionCursor cursorHalf = halfStep.cursor();
+        double[] extrapolatedState = new double[fullStep.getDimension()];
+        while (cursorFull.hasNext() && cursorHalf.hasNext()) {
+            cursorFull.next();
+            cursorHalf.next();
+            for (int i=0; i<extrapolatedState.length; i++) {
+                extrapolatedState[i] = (2*cursorHalf.get(i)-cursorFull.get(i));
             }
-            extrapolatedSolution.add(pointFull.getTime(), stateFull);
-            if (!iteratorHalf.hasNext()) return extrapolatedSolution;
-            iteratorHalf.next();
+            extrapolatedSolution.add(cursorFull.time(), extrapolatedState, null);
+            if (!cursorHalf.hasNext()) return extrapolatedSolution;
+            cursorHalf.next();
         }
         return extrapolatedSolution;
     }
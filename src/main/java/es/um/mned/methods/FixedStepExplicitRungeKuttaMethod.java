@@ -0,0 +1,62 @@
+package es.um.mned.methods;
+
+import java.util.Optional;
+
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Fixed step explicit Runge-Kutta method given by its Butcher tableau
+ */
+public class FixedStepExplicitRungeKuttaMethod extends FixedStepMethod {
+
+    private ButcherTableau mTableau;
+    private ExplicitRungeKuttaEngine mEngine;
+    private double[] mDenseOutput;
+
+    /**
+     * Initializes the method for a given InitialValueProblem
+     * @param InitialValueProblem problem
+     * @param step the fixed step to take. If negative, we'd solve backwards in time
+     * @param tableau the method, for instance ButcherTableau.RUNGE_KUTTA_4
+     */
+    public FixedStepExplicitRungeKuttaMethod(
+    		InitialValueProblem problem,
+    		double step,
+    		ButcherTableau tableau,
+    		Optional<Event> event) {
+        super(problem, step, tableau.getOrder(), event);
+        mTableau = tableau;
+        double[] state = problem.getInitialState();
+        mEngine = new ExplicitRungeKuttaEngine(tableau, this, state);
+        if (tableau.hasDenseOutput()) mDenseOutput = new double[tableau.getDenseDegree()*state.length];
+    }
+
+    @Override
+    public int getOrder() {
+    	return mTableau.getOrder();
+    }
+
+    public ButcherTableau getTableau() {
+    	return mTableau;
+    }
+
+    /**
+     * Runge-Kutta method implementation
+     * @param deltaTime the step to take
+     * @param time the current time
+     * @param state the current state
+     * @return the value of time of the step taken, state will contain the updated state
+     */
+    public double doStep(double deltaTime, double time, double[] state) {
+        mEngine.start(time, state);
+        mEngine.step(time, state, deltaTime, state, mDenseOutput);
+        return time+deltaTime;
+    }
+
+    @Override
+    protected double[] getDenseOutput() {
+    	return mDenseOutput;
+    }
+
+}
@@ -0,0 +1,115 @@
+package es.um.mned.methods;
+
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.FiniteDifferenceJacobian;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Base of the fixed step implicit methods, which solve at each step an equation
+ * w - c - gamma*f(t, w) = 0 for the new state w. The equation is solved with
+ * Newton's method, evaluating the Jacobian and factoring in every iteration, or,
+ * after setSimplifiedNewton(true), with the simplified Newton method, which
+ * keeps them from step to step. The Jacobian is the one of the problem if it is
+ * an ExtendedInitialValueProblem, otherwise it is approximated by finite
+ * differences, with as few evaluations as the sparsity pattern of the problem allows.
+ * The Jacobian and I - gamma*J are stored and factored as dense matrices, or, for
+ * problems with a sparsity pattern, as banded or sparse ones, so that memory and
+ * time grow with the non zeros instead of the square of the dimension.
+ */
+abstract public class FixedStepImplicitMethod extends FixedStepMethod {
+
+	ImplicitEquation mEquation;
+	private final ImplicitSolver mSolver;
+	private double[] mDerivative; // workspace of the trapezoidal step
+	double tolerance = 0.0; // This will use Newton's default tol
+
+	public FixedStepImplicitMethod(InitialValueProblem problem, double step, Optional<Event> event) {
+		super(problem, step, event);
+		mSolver = new ImplicitSolver(problem, mStatistics);
+		mEquation = mSolver.equation;
+		mDerivative = problem.getInitialState();
+	}
+
+	/**
+	 * Set tolerance for Newton method (advanced users)
+	 * @param tolerance
+	 */
+	public void setNewtonTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Chooses how to get the Jacobian of problems that give it
+	 * @param finiteDifferences true to approximate it by finite differences even if the problem gives it
+	 */
+	public void setFiniteDifferenceJacobian(boolean finiteDifferences) {
+		mSolver.setFiniteDifferences(finiteDifferences);
+	}
+
+	/**
+	 * @return the finite differences that approximate the Jacobian, null if that of the problem is used
+	 */
+	public FiniteDifferenceJacobian getFiniteDifferenceJacobian() {
+		return mSolver.getFiniteDifferences();
+	}
+
+	/**
+	 * Changes how the matrices are stored and factored, chosen from the sparsity
+	 * pattern of the problem by default: dense if it has none, banded if its band
+	 * is not much larger than the pattern, sparse otherwise
+	 * @param type the storage, BANDED and SPARSE need the problem to have a sparsity pattern
+	 */
+	public void setMatrixType(MatrixType type) {
+		mSolver.setMatrixType(type);
+	}
+
+	public MatrixType getMatrixType() {
+		return mSolver.getMatrixType();
+	}
+
+	/**
+	 * Chooses between the simplified Newton method and the full one
+	 * @param simplified true to keep the Jacobian and its factorization between steps
+	 */
+	public void setSimplifiedNewton(boolean simplified) {
+		mSolver.setSimplifiedNewton(simplified);
+	}
+
+	/**
+	 * @return the simplified Newton method used, with its counters, or null if full Newton is used
+	 */
+	public SimplifiedNewton getSimplifiedNewton() {
+		return mSolver.getSimplifiedNewton();
+	}
+
+	/**
+	 * Solves w - c - gamma*f(time, w) = 0, with c in mEquation.constant
+	 * @param time the time of the new state
+	 * @param gamma the step times the coefficient of the method
+	 * @param state the starting point, overwritten with the new state
+	 * @throws ConvergenceException
+	 */
+	protected void solveImplicitEquation(double time, double gamma, double[] state) throws ConvergenceException {
+		mSolver.solve(time, gamma, state, tolerance, null);
+	}
+
+	/**
+	 * Trapezoidal step, w_(i+1) = w_i + h/2*(f(t_i, w_i) + f(t_(i+1), w_(i+1)))
+	 * @param deltaTime the step to take
+	 * @param time the current time
+	 * @param state the current state, overwritten with the new one
+	 * @throws ConvergenceException
+	 */
+	protected void trapezoidalStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		evaluateDerivative(time, state, mDerivative);
+		double h2 = deltaTime / 2.;
+		for (int i=0; i<state.length; i++) {
+			mEquation.constant[i] = state[i] + h2 * mDerivative[i];
+		}
+		solveImplicitEquation(time+deltaTime, h2, state);
+	}
+
+}
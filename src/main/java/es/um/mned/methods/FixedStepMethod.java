@@ -1,11 +1,14 @@
 package es.um.mned.methods;
 
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Optional;
 
 import es.um.mned.ode.InitialValueProblem;
 import es.um.mned.ode.NumericalSolution;
 import es.um.mned.ode.NumericalSolutionPoint;
+import es.um.mned.ode.SolutionCursor;
+import es.um.mned.ode.SolutionSink;
+import es.um.mned.ode.SolverStatistics;
 import es.um.mned.ode.ConvergenceException;
 import es.um.mned.ode.Event;
 import es.um.mned.interpolation.StateFunction;
@@ -20,20 +23,20 @@ abstract public class FixedStepMethod {
      * @return 
      */
     static public double maxHalfStepError (NumericalSolution fullStep, NumericalSolution halfStep) {
-        Iterator<NumericalSolutionPoint> iteratorFull = fullStep.iterator();
-        Iterator<NumericalSolutionPoint> iteratorHalf = halfStep.iterator();
+        SolutionCursor cursorFull = fullStep.cursor();
+        SolutionCursor cursorHalf = halfStep.cursor();
         double maxError = 0;
-        while (iteratorFull.hasNext() && iteratorHalf.hasNext()) {
-            double[] stateFull = iteratorFull.next().getState();
-            double[] stateHalf = iteratorHalf.next().getState();
+        while (cursorFull.hasNext() && cursorHalf.hasNext()) {
+            cursorFull.next();
+            cursorHalf.next();
             double estimatedError = 0;
-            for (int i=0; i<stateFull.length; i++) {
-                double estimatedErrorInI = Math.abs(stateHalf[i]-stateFull[i]); 
+            for (int i=0; i<cursorFull.dimension(); i++) {
+                double estimatedErrorInI = Math.abs(cursorHalf.get(i)-cursorFull.get(i)); 
                 estimatedError = Math.max(estimatedError,estimatedErrorInI);
             }
             maxError = Math.max(maxError, estimatedError);
-            if (!iteratorHalf.hasNext()) return maxError;
-            iteratorHalf.next();
+            if (!cursorHalf.hasNext()) return maxError;
+            cursorHalf.next();
         }
         return maxError;
     }
@@ -41,8 +44,15 @@ abstract public class FixedStepMethod {
     private double mStep;
     private NumericalSolution mSolution;
     private Event event = null;
+    private SolutionCursor mCursor; // reads the stored points without copying them
+    private double[] mEventState1, mEventState2; // states read by checkEvent
+    private double[] mState; // working state of solveUpTo and step
+    private SolutionSink mSink = null; // receives the accepted points while streaming
+    private double mEndTime = Double.NaN; // last point where the derivative was evaluated by evaluateEndDerivative
+    private double[] mEndState, mEndDerivative;
 	protected double currentUserTime;
     protected InitialValueProblem mProblem;
+    protected SolverStatistics mStatistics;
     
     /**
      * Initializes the method for a given InitialValueProblem
@@ -57,9 +67,40 @@ abstract public class FixedStepMethod {
     		) {
     	mProblem = problem;
         mStep = step;
+        init(getOrder(), event);
+    }
+    
+    /**
+     * Initializes the method for a given InitialValueProblem, for subclasses whose
+     * order is not known until their constructor has run
+     * @param InitialValueProblem problem 
+     * @param step the fixed step to take. If negative, we'd solve backwards in time
+     * @param order the order of the method
+     */
+    protected FixedStepMethod(
+    		InitialValueProblem problem,
+    		double step,
+    		int order,
+    		Optional<Event> event
+    		) {
+    	mProblem = problem;
+        mStep = step;
+        init(order, event);
+    }
+    
+    private void init(int order, Optional<Event> event) {
+        InitialValueProblem problem = mProblem;
         currentUserTime = problem.getInitialTime();
-        mSolution = new NumericalSolution(problem, getOrder());
+        mStatistics = new SolverStatistics();
+        mSolution = new NumericalSolution(problem, order);
+        mSolution.setStatistics(mStatistics);
         this.event = event.orElse(null);
+        mCursor = mSolution.cursor();
+        mEventState1 = problem.getInitialState();
+        mEventState2 = problem.getInitialState();
+        mState = problem.getInitialState();
+        mEndState = problem.getInitialState();
+        mEndDerivative = problem.getInitialState();
     }
     
     abstract public int getOrder();
@@ -74,6 +115,63 @@ abstract public class FixedStepMethod {
      */
     abstract public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException;
     
+    /**
+     * Evaluates the derivative of the problem to advance the solution,
+     * counting it in the statistics of this solve
+     * @param time the given time
+     * @param state the given state
+     * @param derivative the array where the value of the derivative is written
+     */
+    protected void evaluateDerivative(double time, double[] state, double[] derivative) {
+    	mStatistics.addStepEvaluation();
+    	mProblem.getDerivative(time, state, derivative);
+    }
+    
+    /**
+     * Evaluates the derivative at the start of a step. If the step starts where the
+     * previous one ended, the derivative computed there is reused (first same as last)
+     * @param time the given time
+     * @param state the given state
+     * @param derivative the array where the value of the derivative is written
+     */
+    protected void evaluateStartDerivative(double time, double[] state, double[] derivative) {
+    	if (time == mEndTime && Arrays.equals(state, mEndState))
+    		System.arraycopy(mEndDerivative, 0, derivative, 0, derivative.length);
+    	else
+    		evaluateDerivative(time, state, derivative);
+    }
+    
+    /**
+     * Evaluates the derivative at the end of a step, to be reused by the next one
+     * @param time the time at the end of the step
+     * @param state the state at the end of the step
+     * @return the derivative, valid until the next call
+     */
+    protected double[] evaluateEndDerivative(double time, double[] state) {
+    	evaluateDerivative(time, state, mEndDerivative);
+    	System.arraycopy(state, 0, mEndState, 0, state.length);
+    	mEndTime = time;
+    	return mEndDerivative;
+    }
+    
+    /**
+     * Dense output of the step just taken by doStep, if the method has one:
+     * the coefficients a_1..a_k of y(t+theta*h) = y(t) + theta*a_1 + ... + theta^k*a_k,
+     * one after the other, each of the length of the state
+     * @return the coefficients, or null if the method has no dense output
+     */
+    protected double[] getDenseOutput() {
+    	return null;
+    }
+    
+    /**
+     * Get the work done so far by this method
+     * @return the statistics of this solve
+     */
+    public SolverStatistics getStatistics() {
+    	return mStatistics;
+    }
+    
     /**
      * Get the step
      * @return the initial step given
@@ -82,6 +180,14 @@ abstract public class FixedStepMethod {
         return mStep;
     }
     
+    /**
+     * Changes the step, for methods that choose it themselves
+     * @param step the new step. If negative, we'd solve backwards in time
+     */
+    protected void setStep(double step) {
+        mStep = step;
+    }
+    
     public Event getEvent() {
 		return event;
 	}
@@ -95,19 +201,20 @@ abstract public class FixedStepMethod {
     private static class EventStateFunction implements StateFunction {
         private StateFunction interpolator;
         private Event event;
+        private SolverStatistics statistics;
 
-        public EventStateFunction(StateFunction interpolator, Event event) {
+        public EventStateFunction(StateFunction interpolator, Event event, SolverStatistics statistics) {
             this.interpolator = interpolator;
             this.event = event;
+            this.statistics = statistics;
         }
         
         public double[] getState(double t) {
-            return new double[] {
-                event.crossFunction(t, interpolator.getState(t))
-            };
+            return new double[] { getState(t, 0) };
         }
 
         public double getState(double t, int index) {
+            statistics.addEventEvaluation();
             return event.crossFunction(t, interpolator.getState(t));
         }
     }
@@ -118,20 +225,22 @@ abstract public class FixedStepMethod {
         int size = mSolution.getSize();
         if(size <= 1) return false;
 
-        NumericalSolutionPoint p1 = mSolution.get(size-2);
-        NumericalSolutionPoint p2 = mSolution.get(size-1);
-        
-        
+        double t1 = mCursor.moveTo(size-2).time();
+        mCursor.copyInto(mEventState1);
+        double t2 = mCursor.moveTo(size-1).time();
+        mCursor.copyInto(mEventState2);
 
-        if(event.crossFunction(p1.getTime(), p1.getState())
-                * event.crossFunction(p2.getTime(), p2.getState()) <= 0) {
+        mStatistics.addEventEvaluation();
+        mStatistics.addEventEvaluation();
+        if(event.crossFunction(t1, mEventState1)
+                * event.crossFunction(t2, mEventState2) <= 0) {
         	
         	StateFunction interpolator = mSolution.getInterpolator(size-1);
 
             double zero = BisectionMethod.findZero(
-                    new EventStateFunction(interpolator, event),
-                    p1.getTime(),
-                    p2.getTime(),
+                    new EventStateFunction(interpolator, event, mStatistics),
+                    t1,
+                    t2,
                     event.getTolerance(),
                     0
                     );
@@ -141,15 +250,22 @@ abstract public class FixedStepMethod {
         return false;
     }
 
+    // Stores an accepted point and passes it to the sink, if any
+    private void accept(double time, double[] state) {
+        mSolution.add(time, state, getDenseOutput());
+        if (mSink != null) mSink.accept(time, state);
+    }
+
     protected double solveUpTo(double maxTime) throws ConvergenceException {
-        NumericalSolutionPoint lastPoint = mSolution.getLastPoint();
-        double time = lastPoint.getTime();
-        double[] state = lastPoint.getState();
+        mCursor.moveTo(mSolution.getSize()-1);
+        double time = mCursor.time();
+        double[] state = mCursor.copyInto(mState);
         if (mStep > 0) {
             while (time < maxTime) {
                 time = doStep(mStep,time,state);
                 if (Double.isNaN(time)) return Double.NaN;
-                mSolution.add(time, state);
+                mStatistics.addAcceptedStep();
+                accept(time, state);
                 if(checkEvent() && event.stopCondition())
                 	break;
             }
@@ -158,7 +274,8 @@ abstract public class FixedStepMethod {
             while (time > maxTime) {
                 time = doStep(mStep,time,state);
                 if (Double.isNaN(time)) return Double.NaN;
-                mSolution.add(time, state);
+                mStatistics.addAcceptedStep();
+                accept(time, state);
                 if(checkEvent() && event.stopCondition())
                 	break;
             }
@@ -174,18 +291,18 @@ abstract public class FixedStepMethod {
     public NumericalSolutionPoint step() throws ConvergenceException {
     	currentUserTime += mStep;
     	
-        NumericalSolutionPoint lastPoint = mSolution.getLastPoint();
-        double time = lastPoint.getTime();
-        double[] state = lastPoint.getState();
+        mCursor.moveTo(mSolution.getSize()-1);
+        double time = mCursor.time();
+        double[] state = mCursor.copyInto(mState);
         time = doStep(mStep,time,state);
         
         if (Double.isNaN(time)) return null;
         
-        
-        NumericalSolutionPoint point = mSolution.add(time, state);
+        mStatistics.addAcceptedStep();
+        accept(time, state);
         checkEvent(); // No need to check if blocking
         
-        return point;
+        return mSolution.getLastPoint();
     }
     
     /**
@@ -201,6 +318,27 @@ abstract public class FixedStepMethod {
         return mSolution;
     }
     
+    /**
+     * Iteratively steps the problem until time equals or exceeds finalTime, passing
+     * each accepted point to a sink instead of keeping it. From then on the solution
+     * keeps only the last few points that events and interpolation need, so memory
+     * does not grow with finalTime. The starting point is not passed to the sink.
+     * @param finalTime the time which we want to reach or exceed
+     * @param sink receives every point computed
+     * @return the solution, with only its last points
+     * @throws ConvergenceException 
+     */
+    public NumericalSolution solve(double finalTime, SolutionSink sink) throws ConvergenceException {
+        int window = Math.max(2, (getOrder()+2)/2) + 1;
+        mSolution.keepLast(window);
+        mSink = sink;
+        try {
+        	return solve(finalTime);
+        } finally {
+        	mSink = null;
+        }
+    }
+    
     /**
      * Gets the solution computed so far
      * @return an instance of NumericalSolution
@@ -14,6 +14,7 @@ import es.um.mned.ode.InitialValueProblem;
 public class FixedStepModifiedEulerMethod extends FixedStepMethod {
     
     private double[] auxState;
+    private double[] derivative, derivative2;
 
     /**
      * Initializes the method for a given InitialValueProblem
@@ -27,6 +28,8 @@ public class FixedStepModifiedEulerMethod extends FixedStepMethod {
     		Optional<Event> event) {
         super(problem, step, event);
         auxState = problem.getInitialState();
+        derivative = problem.getInitialState();
+        derivative2 = problem.getInitialState();
     }
 
     @Override
@@ -43,11 +46,11 @@ public class FixedStepModifiedEulerMethod extends FixedStepMethod {
      */
     public double doStep(double deltaTime, double time, double[] state) {
         double h2 = deltaTime/2.0;
-        double[] derivative = mProblem.getDerivative(time, state);
+        evaluateDerivative(time, state, derivative);
         for (int i=0; i<state.length; i++) {
             auxState[i] = state[i] + deltaTime * derivative[i];
         }
-        double[] derivative2 = mProblem.getDerivative(time+deltaTime, auxState);
+        evaluateDerivative(time+deltaTime, auxState, derivative2);
         for (int i=0; i<state.length; i++) {
             state[i] += h2 * (derivative[i]+derivative2[i]);
         }
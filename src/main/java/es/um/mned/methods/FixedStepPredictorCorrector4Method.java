@@ -13,6 +13,7 @@ import es.um.mned.ode.InitialValueProblem;
  */
 public class FixedStepPredictorCorrector4Method extends FixedStepAdamsBashford4Method {
     protected double[] predictorState;
+    protected double[] derivativeIp1;
     
     /**
      * Initializes the method for a given InitialValueProblem
@@ -22,27 +23,28 @@ public class FixedStepPredictorCorrector4Method extends FixedStepAdamsBashford4M
     public FixedStepPredictorCorrector4Method(InitialValueProblem problem, double step, Optional<Event> event) {
         super(problem, step, event);
         predictorState = problem.getInitialState();
+        derivativeIp1 = problem.getInitialState();
     }
     
     public double doStep(double deltaTime, double time, double[] state) {
         switch(lastStep) {
             case 0 : 
-                derivativeIm3 = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeIm3);
                 time = super.rungeKuttaStep(deltaTime, time, state, derivativeIm3); 
                 lastStep++;
                 break;
             case 1 : 
-                derivativeIm2 = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeIm2);
                 time = super.rungeKuttaStep(deltaTime, time, state, derivativeIm2); 
                 lastStep++;
                 break;
             case 2 : 
-                derivativeIm1 = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeIm1);
                 time = super.rungeKuttaStep(deltaTime, time, state, derivativeIm1); 
                 lastStep++;
                 break;
             default :
-                derivativeI = mProblem.getDerivative(time, state);
+                evaluateDerivative(time, state, derivativeI);
                 adamsBashfordStep(deltaTime, time, state, predictorState);
                 time = adamsMoultonStep(deltaTime, time, state, state);
                 System.arraycopy(derivativeIm2,0,derivativeIm3,0,derivativeIm2.length);
@@ -61,7 +63,7 @@ public class FixedStepPredictorCorrector4Method extends FixedStepAdamsBashford4M
      * @return the value of time of the step taken, state will contain the updated state
      */
     public double adamsMoultonStep(double deltaTime, double time, double[] state, double[] newState) {
-        double[] derivativeIp1 = mProblem.getDerivative(time, predictorState);
+        evaluateDerivative(time, predictorState, derivativeIp1);
         double h24 = deltaTime/24.0;
         for (int i=0; i<state.length; i++) {
             newState[i] = state[i] + h24 * ( 9*derivativeIp1[i] + 19*derivativeI[i] -5*derivativeIm1[i] + derivativeIm2[i]);
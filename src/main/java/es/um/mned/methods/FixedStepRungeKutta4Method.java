@@ -13,6 +13,8 @@ import es.um.mned.ode.InitialValueProblem;
  */
 public class FixedStepRungeKutta4Method extends FixedStepMethod {
     protected double[] auxState;
+    protected double[] k1, k2, k3, k4;
+    protected double[] denseOutput;
     
     /**
      * Initializes the method for a given InitialValueProblem
@@ -22,6 +24,11 @@ public class FixedStepRungeKutta4Method extends FixedStepMethod {
     public FixedStepRungeKutta4Method(InitialValueProblem problem, double step, Optional<Event> event) {
         super(problem,step, event);
         auxState = problem.getInitialState();
+        k1 = problem.getInitialState();
+        k2 = problem.getInitialState();
+        k3 = problem.getInitialState();
+        k4 = problem.getInitialState();
+        denseOutput = new double[3*k1.length];
     }
     
     @Override
@@ -38,24 +45,34 @@ public class FixedStepRungeKutta4Method extends FixedStepMethod {
      */
     public double doStep(double deltaTime, double time, double[] state) {
         double h2 = deltaTime/2.0;
-        double[] k1 = mProblem.getDerivative(time, state);
+        evaluateDerivative(time, state, k1);
         for (int i=0; i<state.length; i++) {
             auxState[i] = state[i] + h2 * k1[i];
         }
-        double[] k2 = mProblem.getDerivative(time+h2, auxState);
+        evaluateDerivative(time+h2, auxState, k2);
         for (int i=0; i<state.length; i++) {
             auxState[i] = state[i] + h2 * k2[i];
         }
-        double[] k3 = mProblem.getDerivative(time+h2, auxState);
+        evaluateDerivative(time+h2, auxState, k3);
         for (int i=0; i<state.length; i++) {
             auxState[i] = state[i] + deltaTime * k3[i];
         }
-        double[] k4 = mProblem.getDerivative(time+deltaTime, auxState);
+        evaluateDerivative(time+deltaTime, auxState, k4);
         double h6 = deltaTime/6;
-        for (int i=0; i<state.length; i++) {
+        int dim = state.length;
+        for (int i=0; i<dim; i++) {
             state[i] += h6 * (k1[i]+2*k2[i]+2*k3[i]+k4[i]);
+            // Third order continuous extension from the same stages
+            denseOutput[i] = deltaTime * k1[i];
+            denseOutput[dim+i] = deltaTime * (-1.5*k1[i] + k2[i] + k3[i] - 0.5*k4[i]);
+            denseOutput[2*dim+i] = deltaTime * 2.0/3.0 * (k1[i] - k2[i] - k3[i] + k4[i]);
         }
         return time+deltaTime;
     }
+    
+    @Override
+    protected double[] getDenseOutput() {
+    	return denseOutput;
+    }
         
 }
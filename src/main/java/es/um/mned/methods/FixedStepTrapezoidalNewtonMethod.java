@@ -0,0 +1,42 @@
+package es.um.mned.methods;
+
+import java.util.Optional;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.Event;
+import es.um.mned.ode.InitialValueProblem;
+
+/**
+ * Trapezoidal method, w_(i+1) = w_i + h/2*(f(t_i, w_i) + f(t_(i+1), w_(i+1))),
+ * solving for w_(i+1) with Newton's method. Works for problems of any dimension.
+ */
+public class FixedStepTrapezoidalNewtonMethod extends FixedStepImplicitMethod {
+	
+	/*
+	 * ========================================
+	 * Constructors
+	 * ========================================
+	 */
+
+	public FixedStepTrapezoidalNewtonMethod(InitialValueProblem problem, double step, Optional<Event> event) {
+		super(problem, step, event);
+	}
+	
+	/*
+	 * ========================================
+	 * Step, order and tol
+	 * ========================================
+	 */
+
+	@Override
+    public int getOrder() {
+    	return 2;
+    }
+
+	@Override
+	public double doStep(double deltaTime, double time, double[] state) throws ConvergenceException {
+		trapezoidalStep(deltaTime, time, state);
+        return time+deltaTime;
+	}
+
+}
@@ -0,0 +1,136 @@
+package es.um.mned.methods;
+
+import java.util.Arrays;
+
+import es.um.mned.ode.ExtendedInitialValueProblem;
+import es.um.mned.ode.FiniteDifferenceJacobian;
+import es.um.mned.ode.InitialValueProblem;
+import es.um.mned.ode.SolverStatistics;
+import es.um.mned.ode.SparseMatrix;
+import es.um.mned.ode.SparsityPattern;
+
+/**
+ * The equation the implicit methods solve at each step for the new state w,
+ * <pre>
+ *   w - c - gamma * f(t, w) = 0
+ * </pre>
+ * with c a combination of the known states and derivatives and gamma the step
+ * times a coefficient of the method. Its Jacobian is I - gamma*J, J that of f,
+ * given by the problem if it is an ExtendedInitialValueProblem, or approximated
+ * by finite differences using the sparsity pattern of the problem. J is written
+ * into the dense, banded or sparse storage of an IterationMatrix.
+ */
+class ImplicitEquation {
+
+	double time; // time of the new state
+	double gamma;
+	final double[] constant;
+	private final InitialValueProblem mProblem;
+	private final SolverStatistics mStatistics;
+	private final double[] mDerivative; // Newton workspace
+	private final SparsityPattern mPattern; // of the Jacobian, null if dense
+	private FiniteDifferenceJacobian mFiniteDifferences; // null to use the Jacobian of the problem
+	private final double[] mLastPoint; // where mDerivative was evaluated, to reuse it for finite differences
+	private double mLastTime = Double.NaN;
+
+	ImplicitEquation(InitialValueProblem problem, SparsityPattern pattern, SolverStatistics statistics) {
+		mProblem = problem;
+		mPattern = pattern;
+		mStatistics = statistics;
+		constant = problem.getInitialState();
+		mDerivative = problem.getInitialState();
+		mLastPoint = problem.getInitialState();
+		if (!(problem instanceof ExtendedInitialValueProblem)) setFiniteDifferences(true);
+	}
+
+	/**
+	 * Chooses between the Jacobian of the problem and finite differences
+	 * @param finiteDifferences true to approximate the Jacobian
+	 */
+	void setFiniteDifferences(boolean finiteDifferences) {
+		if (!finiteDifferences && !(mProblem instanceof ExtendedInitialValueProblem))
+			throw new IllegalArgumentException("The problem does not give its Jacobian");
+		if (!finiteDifferences) mFiniteDifferences = null;
+		else if (mFiniteDifferences == null)
+			mFiniteDifferences = new FiniteDifferenceJacobian(mProblem, mPattern);
+	}
+
+	/**
+	 * @return the finite differences used for the Jacobian, null if that of the problem is used
+	 */
+	FiniteDifferenceJacobian getFiniteDifferences() {
+		return mFiniteDifferences;
+	}
+
+	/**
+	 * Evaluates the left hand side of the equation
+	 * @param w the state
+	 * @param value the array to write w - c - gamma*f(t, w) into
+	 */
+	void getValue(double[] w, double[] value) {
+		mStatistics.addStepEvaluation();
+		mProblem.getDerivative(time, w, mDerivative);
+		if (mFiniteDifferences != null) {
+			System.arraycopy(w, 0, mLastPoint, 0, w.length);
+			mLastTime = time;
+		}
+		for (int i=0; i<w.length; i++) {
+			value[i] = w[i] - constant[i] - gamma * mDerivative[i];
+		}
+	}
+
+	/**
+	 * Gives f at a point of the current time, already evaluated, so that the finite
+	 * differences of the next Jacobian there reuse it
+	 * @param w the state
+	 * @param derivative f(time, w)
+	 */
+	void setDerivative(double[] w, double[] derivative) {
+		if (mFiniteDifferences == null) return;
+		System.arraycopy(derivative, 0, mDerivative, 0, derivative.length);
+		System.arraycopy(w, 0, mLastPoint, 0, w.length);
+		mLastTime = time;
+	}
+
+	/**
+	 * Writes the Jacobian J of f, rather than that of the equation
+	 * @param w the state
+	 * @param jacobian square matrix to write J into
+	 */
+	void getProblemJacobian(double[] w, double[][] jacobian) {
+		mStatistics.addJacobianEvaluation();
+		if (mFiniteDifferences == null) {
+			((ExtendedInitialValueProblem) mProblem).getJacobian(time, w, jacobian);
+			return;
+		}
+		long evaluations = mFiniteDifferences.getEvaluations();
+		mFiniteDifferences.compute(time, w, knownDerivative(w), jacobian);
+		countEvaluations(evaluations);
+	}
+
+	/**
+	 * Writes the Jacobian J of f into a sparse matrix
+	 * @param w the state
+	 * @param jacobian matrix with the sparsity pattern of the problem, with all its entries 0
+	 */
+	void getProblemJacobian(double[] w, SparseMatrix jacobian) {
+		mStatistics.addJacobianEvaluation();
+		if (mFiniteDifferences == null) {
+			((ExtendedInitialValueProblem) mProblem).getJacobian(time, w, jacobian);
+			return;
+		}
+		long evaluations = mFiniteDifferences.getEvaluations();
+		mFiniteDifferences.compute(time, w, knownDerivative(w), jacobian);
+		countEvaluations(evaluations);
+	}
+
+	// Newton asks for the Jacobian where it has just evaluated f
+	private double[] knownDerivative(double[] w) {
+		return time == mLastTime && Arrays.equals(w, mLastPoint) ? mDerivative : null;
+	}
+
+	private void countEvaluations(long before) {
+		for (long k = mFiniteDifferences.getEvaluations() - before; k > 0; k--) mStatistics.addStepEvaluation();
+	}
+
+}
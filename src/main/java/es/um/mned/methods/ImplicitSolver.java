@@ -0,0 +1,127 @@
+package es.um.mned.methods;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.FiniteDifferenceJacobian;
+import es.um.mned.ode.InitialValueProblem;
+import es.um.mned.ode.SolverStatistics;
+import es.um.mned.ode.SparsityPattern;
+
+/**
+ * What the implicit methods, of fixed or adaptive step, share to solve the
+ * equations w - c - gamma*f(t, w) = 0 of their steps: the equation, the matrix
+ * that stores and factors the Jacobian, and either full Newton or the
+ * simplified Newton method. The linearly implicit methods only use the matrix.
+ */
+class ImplicitSolver {
+
+	final ImplicitEquation equation;
+	private final InitialValueProblem mProblem;
+	private final SparsityPattern mPattern; // of the Jacobian, null if dense
+	private final SolverStatistics mStatistics;
+	private MatrixType mMatrixType;
+	private IterationMatrix mMatrix;
+	private SimplifiedNewton mSimplifiedNewton; // null to use full Newton
+
+	ImplicitSolver(InitialValueProblem problem, SolverStatistics statistics) {
+		mProblem = problem;
+		mPattern = problem.getSparsityPattern();
+		mStatistics = statistics;
+		equation = new ImplicitEquation(problem, mPattern, statistics);
+		setMatrixType(IterationMatrix.choose(problem.getInitialState().length, mPattern));
+	}
+
+	void setMatrixType(MatrixType type) {
+		mMatrix = IterationMatrix.create(type, mProblem.getInitialState().length, mPattern);
+		mMatrixType = type;
+		if (mSimplifiedNewton != null) mSimplifiedNewton.setMatrix(mMatrix);
+	}
+
+	MatrixType getMatrixType() {
+		return mMatrixType;
+	}
+
+	void setFiniteDifferences(boolean finiteDifferences) {
+		equation.setFiniteDifferences(finiteDifferences);
+		if (mSimplifiedNewton != null) mSimplifiedNewton.reset();
+	}
+
+	FiniteDifferenceJacobian getFiniteDifferences() {
+		return equation.getFiniteDifferences();
+	}
+
+	void setSimplifiedNewton(boolean simplified) {
+		if (!simplified) mSimplifiedNewton = null;
+		else if (mSimplifiedNewton == null)
+			mSimplifiedNewton = new SimplifiedNewton(mMatrix, mProblem.getInitialState().length);
+	}
+
+	SimplifiedNewton getSimplifiedNewton() {
+		return mSimplifiedNewton;
+	}
+
+	/**
+	 * Evaluates and keeps the Jacobian at a point, for the linearly implicit
+	 * methods, which factor I - gamma*J with it and solve their stages directly
+	 * @param time the time
+	 * @param state the state
+	 * @param derivative f(time, state), which finite differences reuse
+	 */
+	void evaluateJacobian(double time, double[] state, double[] derivative) {
+		equation.time = time;
+		equation.setDerivative(state, derivative);
+		mMatrix.evaluateJacobian(equation, state);
+	}
+
+	/**
+	 * Factors I - gamma*J with the Jacobian last evaluated
+	 * @return false if the matrix is singular
+	 */
+	boolean factor(double gamma) {
+		mStatistics.addLUDecomposition();
+		return mMatrix.factor(gamma);
+	}
+
+	/**
+	 * Solves with the matrix last factored
+	 * @param b the right hand side, overwritten with the solution
+	 */
+	void solveLinear(double[] b) {
+		mMatrix.solve(b);
+	}
+
+	/**
+	 * Factors I - (gammaRe + i*gammaIm)*J with the Jacobian last evaluated,
+	 * keeping the real factorization
+	 * @return false if the matrix is singular
+	 */
+	boolean factorComplex(double gammaRe, double gammaIm) {
+		mStatistics.addLUDecomposition();
+		return mMatrix.factorComplex(gammaRe, gammaIm);
+	}
+
+	/**
+	 * Solves with the complex matrix last factored
+	 * @param re the real part of the right hand side, overwritten with that of the solution
+	 * @param im the imaginary part of the right hand side, overwritten with that of the solution
+	 */
+	void solveLinearComplex(double[] re, double[] im) {
+		mMatrix.solveComplex(re, im);
+	}
+
+	/**
+	 * Solves w - c - gamma*f(time, w) = 0, with c in equation.constant
+	 * @param time the time of the new state
+	 * @param gamma the step times the coefficient of the method
+	 * @param state the starting point, overwritten with the new state
+	 * @param tol the tolerance for the corrections, the default one if 0
+	 * @param scale the scale of each component of the corrections, null for none
+	 * @throws ConvergenceException
+	 */
+	void solve(double time, double gamma, double[] state, double tol, double[] scale) throws ConvergenceException {
+		equation.time = time;
+		equation.gamma = gamma;
+		if (mSimplifiedNewton != null) mSimplifiedNewton.solve(equation, state, tol, scale, mStatistics);
+		else mMatrix.solveNewton(equation, state, tol, scale, mStatistics);
+	}
+
+}
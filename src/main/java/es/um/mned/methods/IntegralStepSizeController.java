@@ -0,0 +1,26 @@
+package es.um.mned.methods;
+
+/**
+ * Classic step size control: the next step only depends on the error of the
+ * last one, safety * r^(-1/k)
+ */
+public class IntegralStepSizeController extends StepSizeController {
+
+	public static final double DEFAULT_SAFETY = 0.9;
+	public static final double DEFAULT_MIN_FACTOR = 0.1;
+	public static final double DEFAULT_MAX_FACTOR = 4.;
+
+	public IntegralStepSizeController() {
+		this(DEFAULT_SAFETY, DEFAULT_MIN_FACTOR, DEFAULT_MAX_FACTOR);
+	}
+
+	/**
+	 * @param safety factor below 1 to aim a bit below the tolerance
+	 * @param minFactor smallest factor the step is scaled by
+	 * @param maxFactor largest factor the step is scaled by
+	 */
+	public IntegralStepSizeController(double safety, double minFactor, double maxFactor) {
+		super(1, 0, 0, safety, minFactor, maxFactor, false);
+	}
+
+}
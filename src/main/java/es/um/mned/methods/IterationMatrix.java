@@ -0,0 +1,318 @@
+package es.um.mned.methods;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.SolverStatistics;
+import es.um.mned.ode.SparseMatrix;
+import es.um.mned.ode.SparsityPattern;
+import es.um.mned.utils.BandedLUDecomposition;
+import es.um.mned.utils.ComplexBandedLUDecomposition;
+import es.um.mned.utils.ComplexLUDecomposition;
+import es.um.mned.utils.ComplexSparseLUDecomposition;
+import es.um.mned.utils.LUDecomposition;
+import es.um.mned.utils.SparseLUDecomposition;
+
+/**
+ * The Jacobian J of the problem and the factorization of I - gamma*J used to
+ * solve the equations of the implicit methods, stored as a dense, banded or
+ * sparse matrix. The Jacobian is kept until it is evaluated again, so that the
+ * matrix can be factored again for other values of gamma. Gamma may also be
+ * complex, for the Radau IIA methods, and then a second, complex, factorization
+ * is kept; its storage is only created when first used.
+ */
+abstract class IterationMatrix {
+
+	private static final double DEFAULT_TOL = 1e-8;
+	private static final int MAX_IT = 30;
+
+	private final double[] mValue; // Newton workspace
+
+	IterationMatrix(int dimension) {
+		mValue = new double[dimension];
+	}
+
+	/**
+	 * The storage that suits a pattern: dense if there is none, banded if the
+	 * band holds few more entries than the pattern, sparse otherwise
+	 * @param dimension the dimension of the problem
+	 * @param pattern the sparsity pattern of the Jacobian, null if dense
+	 * @return the type of matrix
+	 */
+	static MatrixType choose(int dimension, SparsityPattern pattern) {
+		if (pattern == null) return MatrixType.DENSE;
+		int lower = pattern.getLowerBandwidth(), upper = pattern.getUpperBandwidth();
+		if ((long) (2*lower + upper + 1) * dimension <= 2L * pattern.withDiagonal().getNonZeros())
+			return MatrixType.BANDED;
+		return MatrixType.SPARSE;
+	}
+
+	/**
+	 * @param type the storage
+	 * @param dimension the dimension of the problem
+	 * @param pattern the sparsity pattern of the Jacobian, needed by banded and sparse matrices
+	 * @return the matrix
+	 */
+	static IterationMatrix create(MatrixType type, int dimension, SparsityPattern pattern) {
+		if (type != MatrixType.DENSE && pattern == null)
+			throw new IllegalArgumentException(type + " matrices need the sparsity pattern of the problem");
+		switch (type) {
+			case BANDED : return new Banded(pattern);
+			case SPARSE : return new Sparse(pattern);
+			default : return new Dense(dimension);
+		}
+	}
+
+	/**
+	 * Evaluates and keeps the Jacobian of the problem
+	 * @param equation the equation, which gives the Jacobian
+	 * @param w the state
+	 */
+	abstract void evaluateJacobian(ImplicitEquation equation, double[] w);
+
+	/**
+	 * Factors I - gamma*J with the Jacobian last evaluated
+	 * @param gamma the coefficient
+	 * @return false if the matrix is singular
+	 */
+	abstract boolean factor(double gamma);
+
+	/**
+	 * Solves with the matrix last factored
+	 * @param b the right hand side, overwritten with the solution
+	 */
+	abstract void solve(double[] b);
+
+	/**
+	 * Factors I - (gammaRe + i*gammaIm)*J with the Jacobian last evaluated,
+	 * keeping the real factorization
+	 * @return false if the matrix is singular
+	 */
+	abstract boolean factorComplex(double gammaRe, double gammaIm);
+
+	/**
+	 * Solves with the complex matrix last factored
+	 * @param re the real part of the right hand side, overwritten with that of the solution
+	 * @param im the imaginary part of the right hand side, overwritten with that of the solution
+	 */
+	abstract void solveComplex(double[] re, double[] im);
+
+	/**
+	 * Solves the equation with Newton's method, evaluating the Jacobian and
+	 * factoring in every iteration, until all the components of the correction
+	 * are below the tolerance
+	 * @param equation the equation, with its time, gamma and constant set
+	 * @param w the starting point, overwritten with the solution
+	 * @param tol the tolerance, the default one if 0
+	 * @param scale the scale of each component of the correction, null for none
+	 * @param statistics where to count the iterations and decompositions
+	 * @throws ConvergenceException if the matrix is singular or the method does not converge
+	 */
+	void solveNewton(ImplicitEquation equation, double[] w, double tol, double[] scale, SolverStatistics statistics)
+			throws ConvergenceException {
+		if (tol == 0.0) tol = DEFAULT_TOL;
+		for (int it = 0; it < MAX_IT; ++it) {
+			statistics.addNewtonIteration();
+			equation.getValue(w, mValue);
+			evaluateJacobian(equation, w);
+			statistics.addLUDecomposition();
+			if (!factor(equation.gamma))
+				throw new ConvergenceException("Newton method found a singular Jacobian.");
+			solve(mValue);
+			double change = 0;
+			for (int i=0; i<w.length; i++) {
+				w[i] -= mValue[i];
+				change = Math.max(change, Math.abs(scale == null ? mValue[i] : mValue[i] / scale[i]));
+			}
+			if (change < tol) return;
+		}
+		throw new ConvergenceException("Newton method did not converge.");
+	}
+
+	static class Dense extends IterationMatrix {
+
+		private final double[][] mJacobian, mMatrix;
+		private final LUDecomposition mLU;
+		private double[][] mComplexRe, mComplexIm;
+		private ComplexLUDecomposition mComplexLU;
+
+		Dense(int dimension) {
+			super(dimension);
+			mJacobian = new double[dimension][dimension];
+			mMatrix = new double[dimension][dimension];
+			mLU = new LUDecomposition(dimension);
+		}
+
+		@Override
+		void evaluateJacobian(ImplicitEquation equation, double[] w) {
+			equation.getProblemJacobian(w, mJacobian);
+		}
+
+		@Override
+		boolean factor(double gamma) {
+			int dim = mMatrix.length;
+			for (int i=0; i<dim; i++) {
+				double[] row = mMatrix[i], jacobianRow = mJacobian[i];
+				for (int j=0; j<dim; j++) row[j] = -gamma * jacobianRow[j];
+				row[i] += 1;
+			}
+			return mLU.factor(mMatrix);
+		}
+
+		@Override
+		void solve(double[] b) {
+			mLU.solve(b);
+		}
+
+		@Override
+		boolean factorComplex(double gammaRe, double gammaIm) {
+			int dim = mMatrix.length;
+			if (mComplexLU == null) {
+				mComplexRe = new double[dim][dim];
+				mComplexIm = new double[dim][dim];
+				mComplexLU = new ComplexLUDecomposition(dim);
+			}
+			for (int i=0; i<dim; i++) {
+				double[] re = mComplexRe[i], im = mComplexIm[i], jacobianRow = mJacobian[i];
+				for (int j=0; j<dim; j++) {
+					re[j] = -gammaRe * jacobianRow[j];
+					im[j] = -gammaIm * jacobianRow[j];
+				}
+				re[i] += 1;
+			}
+			return mComplexLU.factor(mComplexRe, mComplexIm);
+		}
+
+		@Override
+		void solveComplex(double[] re, double[] im) {
+			mComplexLU.solve(re, im);
+		}
+
+	}
+
+	static class Banded extends IterationMatrix {
+
+		private final SparseMatrix mJacobian;
+		private final BandedLUDecomposition mLU;
+		private ComplexBandedLUDecomposition mComplexLU;
+
+		Banded(SparsityPattern pattern) {
+			super(pattern.getDimension());
+			mJacobian = new SparseMatrix(pattern);
+			mLU = new BandedLUDecomposition(pattern.getDimension(),
+					pattern.getLowerBandwidth(), pattern.getUpperBandwidth());
+		}
+
+		@Override
+		void evaluateJacobian(ImplicitEquation equation, double[] w) {
+			mJacobian.clear();
+			equation.getProblemJacobian(w, mJacobian);
+		}
+
+		@Override
+		boolean factor(double gamma) {
+			int[] rowStart = mJacobian.getRowStart(), columns = mJacobian.getColumns();
+			double[] values = mJacobian.getValues();
+			mLU.clear();
+			for (int i=0; i<mLU.getDimension(); i++) {
+				for (int k=rowStart[i]; k<rowStart[i+1]; k++) mLU.set(i, columns[k], -gamma * values[k]);
+				mLU.add(i, i, 1);
+			}
+			return mLU.factor();
+		}
+
+		@Override
+		void solve(double[] b) {
+			mLU.solve(b);
+		}
+
+		@Override
+		boolean factorComplex(double gammaRe, double gammaIm) {
+			if (mComplexLU == null) mComplexLU = new ComplexBandedLUDecomposition(mLU.getDimension(),
+					mLU.getLowerBandwidth(), mLU.getUpperBandwidth());
+			int[] rowStart = mJacobian.getRowStart(), columns = mJacobian.getColumns();
+			double[] values = mJacobian.getValues();
+			mComplexLU.clear();
+			for (int i=0; i<mLU.getDimension(); i++) {
+				for (int k=rowStart[i]; k<rowStart[i+1]; k++)
+					mComplexLU.set(i, columns[k], -gammaRe * values[k], -gammaIm * values[k]);
+				mComplexLU.add(i, i, 1, 0);
+			}
+			return mComplexLU.factor();
+		}
+
+		@Override
+		void solveComplex(double[] re, double[] im) {
+			mComplexLU.solve(re, im);
+		}
+
+	}
+
+	static class Sparse extends IterationMatrix {
+
+		private final SparseMatrix mJacobian, mMatrix;
+		private final int[] mDiagonal; // position of the diagonal in mMatrix
+		private final int[] mJacobianPosition; // position of each entry of mJacobian in mMatrix
+		private final SparseLUDecomposition mLU;
+		private SparseMatrix mMatrixIm; // imaginary part of the complex matrix, mMatrix holding the real one
+		private ComplexSparseLUDecomposition mComplexLU;
+
+		Sparse(SparsityPattern pattern) {
+			super(pattern.getDimension());
+			int n = pattern.getDimension();
+			mJacobian = new SparseMatrix(pattern);
+			mMatrix = new SparseMatrix(pattern.withDiagonal());
+			mDiagonal = new int[n];
+			for (int i=0; i<n; i++) mDiagonal[i] = mMatrix.indexOf(i, i);
+			mJacobianPosition = new int[pattern.getNonZeros()];
+			int[] rowStart = mJacobian.getRowStart(), columns = mJacobian.getColumns();
+			for (int i=0; i<n; i++) {
+				for (int k=rowStart[i]; k<rowStart[i+1]; k++) mJacobianPosition[k] = mMatrix.indexOf(i, columns[k]);
+			}
+			mLU = new SparseLUDecomposition(mMatrix.getPattern());
+		}
+
+		@Override
+		void evaluateJacobian(ImplicitEquation equation, double[] w) {
+			mJacobian.clear();
+			equation.getProblemJacobian(w, mJacobian);
+		}
+
+		@Override
+		boolean factor(double gamma) {
+			double[] values = mJacobian.getValues(), matrix = mMatrix.getValues();
+			mMatrix.clear();
+			for (int k=0; k<values.length; k++) matrix[mJacobianPosition[k]] = -gamma * values[k];
+			for (int position : mDiagonal) matrix[position] += 1;
+			return mLU.factor(mMatrix);
+		}
+
+		@Override
+		void solve(double[] b) {
+			mLU.solve(b);
+		}
+
+		@Override
+		boolean factorComplex(double gammaRe, double gammaIm) {
+			if (mComplexLU == null) {
+				mMatrixIm = new SparseMatrix(mMatrix.getPattern());
+				mComplexLU = new ComplexSparseLUDecomposition(mLU);
+			}
+			// mMatrix is free once the real matrix is factored, the decomposition copies it
+			double[] values = mJacobian.getValues(), re = mMatrix.getValues(), im = mMatrixIm.getValues();
+			mMatrix.clear();
+			mMatrixIm.clear();
+			for (int k=0; k<values.length; k++) {
+				re[mJacobianPosition[k]] = -gammaRe * values[k];
+				im[mJacobianPosition[k]] = -gammaIm * values[k];
+			}
+			for (int position : mDiagonal) re[position] += 1;
+			return mComplexLU.factor(mMatrix, mMatrixIm);
+		}
+
+		@Override
+		void solveComplex(double[] re, double[] im) {
+			mComplexLU.solve(re, im);
+		}
+
+	}
+
+}
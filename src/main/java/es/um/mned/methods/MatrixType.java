@@ -0,0 +1,19 @@
+package es.um.mned.methods;
+
+/**
+ * How the implicit methods store and factor the Jacobian and I - gamma*J
+ */
+public enum MatrixType {
+	/**
+	 * Dense matrix and LU with partial pivoting, the choice for problems without sparsity pattern
+	 */
+	DENSE,
+	/**
+	 * Band of the sparsity pattern and banded LU with partial pivoting
+	 */
+	BANDED,
+	/**
+	 * Compressed sparse rows and sparse LU, with its symbolic analysis done once
+	 */
+	SPARSE
+}
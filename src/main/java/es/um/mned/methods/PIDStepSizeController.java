@@ -0,0 +1,40 @@
+package es.um.mned.methods;
+
+/**
+ * Soderlind's proportional-integral-derivative step size control, a filter of
+ * the errors of the last three steps. The default coefficients are those of his
+ * H312PID filter, (1/18, 1/9, 1/18), which gives a smooth sequence of steps.
+ */
+public class PIDStepSizeController extends StepSizeController {
+
+	public static final double DEFAULT_BETA1 = 1.0/18.0;
+	public static final double DEFAULT_BETA2 = 1.0/9.0;
+	public static final double DEFAULT_BETA3 = 1.0/18.0;
+
+	public PIDStepSizeController() {
+		this(IntegralStepSizeController.DEFAULT_SAFETY, 0.2, 5.);
+	}
+
+	/**
+	 * @param safety factor below 1 to aim a bit below the tolerance
+	 * @param minFactor smallest factor the step is scaled by
+	 * @param maxFactor largest factor the step is scaled by
+	 */
+	public PIDStepSizeController(double safety, double minFactor, double maxFactor) {
+		this(DEFAULT_BETA1, DEFAULT_BETA2, DEFAULT_BETA3, safety, minFactor, maxFactor);
+	}
+
+	/**
+	 * @param beta1 exponent (times k) of the ratio of the last step
+	 * @param beta2 exponent (times k) of the ratio of the step before
+	 * @param beta3 exponent (times k) of the ratio of the step before that
+	 * @param safety factor below 1 to aim a bit below the tolerance
+	 * @param minFactor smallest factor the step is scaled by
+	 * @param maxFactor largest factor the step is scaled by
+	 */
+	public PIDStepSizeController(double beta1, double beta2, double beta3,
+			double safety, double minFactor, double maxFactor) {
+		super(beta1, beta2, beta3, safety, minFactor, maxFactor, true);
+	}
+
+}
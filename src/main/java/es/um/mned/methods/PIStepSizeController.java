@@ -0,0 +1,40 @@
+package es.um.mned.methods;
+
+/**
+ * Gustafsson's proportional-integral step size control,
+ * (rho/r_n)^(0.7/k) * (rho/r_(n-1))^(-0.4/k) with rho = safety^k, as in
+ * StepSizeController, that is safety^0.3 * r_n^(-0.7/k) * r_(n-1)^(0.4/k).
+ * The safety factor enters through both exponents so that a constant ratio rho
+ * keeps the step. Taking into account how the error changed damps the
+ * oscillations of the step of the classic control, and so the rejections they cause.
+ */
+public class PIStepSizeController extends StepSizeController {
+
+	public static final double DEFAULT_BETA1 = 0.7;
+	public static final double DEFAULT_BETA2 = -0.4;
+
+	public PIStepSizeController() {
+		this(IntegralStepSizeController.DEFAULT_SAFETY, 0.2, 5.);
+	}
+
+	/**
+	 * @param safety factor below 1 to aim a bit below the tolerance
+	 * @param minFactor smallest factor the step is scaled by
+	 * @param maxFactor largest factor the step is scaled by
+	 */
+	public PIStepSizeController(double safety, double minFactor, double maxFactor) {
+		this(DEFAULT_BETA1, DEFAULT_BETA2, safety, minFactor, maxFactor);
+	}
+
+	/**
+	 * @param beta1 exponent (times k) of the ratio of the last step
+	 * @param beta2 exponent (times k) of the ratio of the step before
+	 * @param safety factor below 1 to aim a bit below the tolerance
+	 * @param minFactor smallest factor the step is scaled by
+	 * @param maxFactor largest factor the step is scaled by
+	 */
+	public PIStepSizeController(double beta1, double beta2, double safety, double minFactor, double maxFactor) {
+		super(beta1, beta2, 0, safety, minFactor, maxFactor, true);
+	}
+
+}
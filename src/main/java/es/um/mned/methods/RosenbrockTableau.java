@@ -0,0 +1,225 @@
+package es.um.mned.methods;
+
+/**
+ * Coefficients of a Rosenbrock (linearly implicit) method with an embedded
+ * solution, in the form of Hairer and Wanner that needs no products with the
+ * Jacobian: the stages U_i solve
+ * <pre>
+ *   (I/(h*gamma) - J) U_i = f(t + alpha_i*h, y + sum_j a_ij U_j) + sum_j c_ij/h U_j + gamma_i*h*df/dt
+ * </pre>
+ * for j &lt; i, the new state is y + sum m_i U_i and sum e_i U_i estimates its error.
+ * All the stages share the matrix, so each step factors it once.
+ */
+public class RosenbrockTableau {
+
+	/**
+	 * ROS3P of Lang and Verwer, order 3, A-stable and without order reduction for
+	 * parabolic problems. The third stage reuses the evaluation of the second, so on
+	 * linear problems the three stages span only two directions, and the embedded
+	 * solution of order 2 of Lang and Verwer has the same stability function as the
+	 * method: its error estimate is zero there. A fourth stage at the new state, which
+	 * does not change it, gives instead the embedded solution y1 - U4 of order 2,
+	 * with c_4j such that U4 = O(h^3), as in RODAS. The continuous extension, of
+	 * order 2, is built from the stages: the cubic Hermite one multiplies the
+	 * derivatives by h, and on stiff components they are not small
+	 */
+	public static final RosenbrockTableau ROS3P = new RosenbrockTableau("ROS3P", 3, 2,
+			0.7886751345948129,
+			new double[] { 0, 1, 1, 1 },
+			new double[][] { {}, { 1.267949192431123 }, { 1.267949192431123, 0 },
+				{ 2, 0.5773502691896258, 0.4226497308103742 } },
+			new double[][] { {}, { -1.607695154586736 }, { -3.464101615137755, -1.732050807568877 },
+				{ -0.8452994616207485, 0, 0.3094010767585031 } },
+			new double[] { 0.7886751345948129, -0.2113248654051871, -1.077350269189626, 0 },
+			new double[] { 2, 0.5773502691896258, 0.4226497308103742, 0 },
+			new double[] { 0, 0, 0, 1 },
+			new double[][] { { 2.845299461620748, -0.8452994616207485 }, { 0, 0.5773502691896258 },
+				{ 1.154700538379252, -0.7320508075688772 }, { 0, 0 } });
+
+	/**
+	 * RODAS4 of Hairer and Wanner, order 4 with an embedded solution of order 3,
+	 * L-stable and stiffly accurate, with a cubic continuous extension
+	 */
+	public static final RosenbrockTableau RODAS4;
+
+	static {
+		double[] m = { 1.221224509226641, 6.019134481288629, 12.53708332932087, -0.6878860361058950, 1, 1 };
+		double[] d2 = { 10.12623508344586, -7.487995877610167, -34.80091861555747, -7.992771707568823, 1.025137723295662, 0 };
+		double[] d3 = { -0.6762803392801253, 6.087714651680015, 16.43084320892478, 24.76722511418386, -6.594389125716872, 0 };
+		// Hairer's y0*(1-theta) + theta*(y1 + (1-theta)*(D2 + theta*D3)), with
+		// D2, D3 the sums of d2_j U_j and d3_j U_j, expanded in powers of theta
+		double[][] dense = new double[6][];
+		for (int j=0; j<6; j++) dense[j] = new double[] { m[j] + d2[j], d3[j] - d2[j], -d3[j] };
+		RODAS4 = new RosenbrockTableau("RODAS4", 4, 3,
+				0.25,
+				new double[] { 0, 0.386, 0.21, 0.63, 1, 1 },
+				new double[][] {
+					{},
+					{ 1.544 },
+					{ 0.9466785280815826, 0.2557011698983284 },
+					{ 3.314825187068521, 2.896124015972201, 0.9986419139977817 },
+					{ 1.221224509226641, 6.019134481288629, 12.53708332932087, -0.6878860361058950 },
+					{ 1.221224509226641, 6.019134481288629, 12.53708332932087, -0.6878860361058950, 1 } },
+				new double[][] {
+					{},
+					{ -5.6688 },
+					{ -2.430093356833875, -0.2063599157091915 },
+					{ -0.1073529058151375, -9.594562251023355, -20.47028614809616 },
+					{ 7.496443313967647, -10.24680431464352, -33.99990352819905, 11.70890893206160 },
+					{ 8.083246795921522, -7.981132988064893, -31.52159432874371, 16.31930543123136, -6.058818238834054 } },
+				new double[] { 0.25, -0.1043, 0.1035, -0.0362, 0, 0 },
+				m,
+				new double[] { 0, 0, 0, 0, 0, 1 },
+				dense);
+	}
+
+	private final String mName;
+	private final int mOrder, mEmbeddedOrder;
+	private final double mGamma;
+	private final double[] mAlpha, mGammas, mM, mE;
+	private final double[][] mA, mC, mDense;
+	private final boolean[] mReusesEvaluation;
+
+	/**
+	 * Creates a tableau
+	 * @param name the name of the method
+	 * @param order the order of the solution that advances
+	 * @param embeddedOrder the order of the embedded solution
+	 * @param gamma the diagonal coefficient
+	 * @param alpha the nodes, alpha[0] must be 0
+	 * @param a the rows of a, row i with (at most) i coefficients
+	 * @param c the rows of c, row i with (at most) i coefficients
+	 * @param gammas the coefficients of the derivative with respect to the time
+	 * @param m the weights of the solution that advances
+	 * @param e the weights of the error, m minus those of the embedded solution
+	 * @param dense for each stage, the coefficients of theta, theta^2, ... of its weight
+	 * in the continuous extension, null if there is none
+	 */
+	public RosenbrockTableau(String name, int order, int embeddedOrder, double gamma, double[] alpha,
+			double[][] a, double[][] c, double[] gammas, double[] m, double[] e, double[][] dense) {
+		int stages = alpha.length;
+		if (stages == 0 || a.length != stages || c.length != stages || gammas.length != stages
+				|| m.length != stages || e.length != stages || (dense != null && dense.length != stages))
+			throw new IllegalArgumentException("The coefficients of " + name + " must have the same number of stages");
+		if (alpha[0] != 0)
+			throw new IllegalArgumentException("The first node of a Rosenbrock method must be 0");
+		for (int i=0; i<stages; i++)
+			if (a[i].length > i || c[i].length > i)
+				throw new IllegalArgumentException("Row " + i + " of a and c must have at most " + i + " coefficients");
+		mName = name;
+		mOrder = order;
+		mEmbeddedOrder = embeddedOrder;
+		mGamma = gamma;
+		mAlpha = alpha.clone();
+		mA = new double[stages][];
+		mC = new double[stages][];
+		for (int i=0; i<stages; i++) {
+			mA[i] = a[i].clone();
+			mC[i] = c[i].clone();
+		}
+		mGammas = gammas.clone();
+		mM = m.clone();
+		mE = e.clone();
+		if (dense != null) {
+			int degree = 0;
+			for (double[] row : dense) degree = Math.max(degree, row.length);
+			mDense = new double[stages][degree];
+			for (int i=0; i<stages; i++) System.arraycopy(dense[i], 0, mDense[i], 0, dense[i].length);
+		}
+		else mDense = null;
+		// A stage evaluated at the point of the previous one reuses its evaluation
+		mReusesEvaluation = new boolean[stages];
+		for (int i=1; i<stages; i++) {
+			boolean same = alpha[i] == alpha[i-1];
+			for (int j=0; same && j<i; j++) same = getA(i, j) == getA(i-1, j);
+			mReusesEvaluation[i] = same;
+		}
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * @return the order of the solution that advances
+	 */
+	public int getOrder() {
+		return mOrder;
+	}
+
+	/**
+	 * @return the order of the embedded solution
+	 */
+	public int getEmbeddedOrder() {
+		return mEmbeddedOrder;
+	}
+
+	public int getStages() {
+		return mAlpha.length;
+	}
+
+	public double getGamma() {
+		return mGamma;
+	}
+
+	public double getAlpha(int i) {
+		return mAlpha[i];
+	}
+
+	public double getA(int i, int j) {
+		return (j < mA[i].length) ? mA[i][j] : 0;
+	}
+
+	public double getC(int i, int j) {
+		return (j < mC[i].length) ? mC[i][j] : 0;
+	}
+
+	public double getGamma(int i) {
+		return mGammas[i];
+	}
+
+	public double getM(int i) {
+		return mM[i];
+	}
+
+	public double getE(int i) {
+		return mE[i];
+	}
+
+	/**
+	 * @return whether the tableau has a continuous extension
+	 */
+	public boolean hasDenseOutput() {
+		return mDense != null;
+	}
+
+	/**
+	 * @return the degree in theta of the continuous extension, 0 if there is none
+	 */
+	public int getDenseDegree() {
+		return mDense == null ? 0 : mDense[0].length;
+	}
+
+	/**
+	 * @param i the stage
+	 * @param power the power of theta minus one
+	 * @return the weight of the stage in that coefficient of the continuous extension
+	 */
+	public double getDense(int i, int power) {
+		return mDense[i][power];
+	}
+
+	/**
+	 * @param i the stage
+	 * @return whether the stage is evaluated at the same time and state as the previous one
+	 */
+	public boolean reusesEvaluation(int i) {
+		return mReusesEvaluation[i];
+	}
+
+	@Override
+	public String toString() {
+		return mName + " (" + getStages() + " stages, order " + mOrder + "(" + mEmbeddedOrder + "))";
+	}
+
+}
@@ -0,0 +1,238 @@
+package es.um.mned.methods;
+
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.SolverStatistics;
+
+/**
+ * Simplified (modified) Newton method for the equation w - c - gamma*f(t, w) = 0
+ * of the implicit methods. All the iterations use the same matrix I - gamma*J,
+ * and both the Jacobian J and the LU decomposition of the matrix are kept from
+ * one step to the next:
+ * <ul>
+ * <li>the matrix is factored again only when gamma changes,</li>
+ * <li>the Jacobian is evaluated again when the iterations converge slower than
+ * the maximum rate, for the next step, or when they fail to converge, and
+ * then the step is solved again from its start,</li>
+ * <li>if they fail even with a Jacobian evaluated at the start of the step, the
+ * step is solved with full Newton, as a method of fixed step can not reduce it.</li>
+ * </ul>
+ * The iterations converge linearly instead of quadratically, but each of them
+ * only evaluates f and solves with the factors already computed. As they converge
+ * with a rate theta, they stop when both the correction and theta/(1-theta) times
+ * it, the estimate of the error left, are below the tolerance, so at least two
+ * are done. Full Newton usually leaves an error far below its tolerance, so the
+ * simplified method may need a tighter one to give the same solution.
+ * It shares the IterationMatrix, dense, banded or sparse, of its method.
+ * Methods of variable step may prefer to reduce the step rather than falling
+ * back to full Newton (setFullNewtonFallback).
+ */
+public class SimplifiedNewton {
+
+	private static final double DEFAULT_TOL = 1e-8;
+	public static final double DEFAULT_MAX_RATE = 0.5;
+	private static final int MAX_IT = 10;
+
+	private IterationMatrix mMatrix;
+	private final double[] mValue, mStart;
+	private double mMaxRate = DEFAULT_MAX_RATE;
+	private boolean mFullNewtonFallback = true;
+	private boolean mHaveJacobian;
+	private double mFactoredGamma = Double.NaN;
+
+	private long mSolves, mIterations, mJacobianEvaluations, mFactorizations;
+	private long mSlowConvergences, mFailures, mFullNewtonSolves;
+
+	/**
+	 * @param matrix the matrix that keeps the Jacobian and the factorization
+	 * @param dimension the dimension of the problem
+	 */
+	SimplifiedNewton(IterationMatrix matrix, int dimension) {
+		mMatrix = matrix;
+		mValue = new double[dimension];
+		mStart = new double[dimension];
+	}
+
+	/**
+	 * Changes the matrix used, forgetting the Jacobian
+	 * @param matrix the new matrix
+	 */
+	void setMatrix(IterationMatrix matrix) {
+		mMatrix = matrix;
+		reset();
+	}
+
+	/**
+	 * Solves the equation of a step
+	 * @param equation the equation, with its time, gamma and constant set
+	 * @param w the starting point, overwritten with the solution
+	 * @param tol the tolerance for the error of the solution, the default one if 0
+	 * @param scale the scale of each component, the error being measured as max |error_i|/scale_i, null for none
+	 * @param statistics where to count the iterations and decompositions
+	 * @throws ConvergenceException if full Newton does not converge either, or if
+	 * the iterations fail with a new Jacobian and there is no fallback to full Newton
+	 */
+	void solve(ImplicitEquation equation, double[] w, double tol, double[] scale, SolverStatistics statistics)
+			throws ConvergenceException {
+		if (tol == 0.0) tol = DEFAULT_TOL;
+		mSolves++;
+		System.arraycopy(w, 0, mStart, 0, w.length);
+		boolean freshJacobian = false;
+		while (true) {
+			if (!mHaveJacobian) {
+				mMatrix.evaluateJacobian(equation, w);
+				mJacobianEvaluations++;
+				mHaveJacobian = freshJacobian = true;
+				mFactoredGamma = Double.NaN;
+			}
+			boolean factored = equation.gamma == mFactoredGamma || factor(equation.gamma, statistics);
+			if (factored && iterate(equation, w, tol, scale, statistics)) return;
+			mFailures++;
+			mHaveJacobian = false;
+			System.arraycopy(mStart, 0, w, 0, w.length);
+			if (freshJacobian) break;
+			// The Jacobian may be too old, try again with a new one
+		}
+		if (!mFullNewtonFallback) throw new ConvergenceException("Simplified Newton method did not converge.");
+		mFullNewtonSolves++;
+		mMatrix.solveNewton(equation, w, tol, scale, statistics);
+	}
+
+	// Factors I - gamma*J, returns false if singular
+	private boolean factor(double gamma, SolverStatistics statistics) {
+		mFactorizations++;
+		statistics.addLUDecomposition();
+		if (mMatrix.factor(gamma)) {
+			mFactoredGamma = gamma;
+			return true;
+		}
+		mFactoredGamma = Double.NaN;
+		return false;
+	}
+
+	// Iterates with the factored matrix, returns false if it diverges or does not converge
+	private boolean iterate(ImplicitEquation equation, double[] w, double tol, double[] scale,
+			SolverStatistics statistics) {
+		double previous = Double.NaN;
+		for (int it = 0; it < MAX_IT; ++it) {
+			statistics.addNewtonIteration();
+			mIterations++;
+			equation.getValue(w, mValue);
+			mMatrix.solve(mValue);
+			double change = 0;
+			boolean moved = false;
+			for (int i=0; i<w.length; i++) {
+				double corrected = w[i] - mValue[i];
+				moved |= corrected != w[i];
+				w[i] = corrected;
+				change = Math.max(change, Math.abs(scale == null ? mValue[i] : mValue[i] / scale[i]));
+			}
+			if (!moved) return true; // the corrections are below the round-off of w, no iteration can do better
+			if (it > 0) {
+				double rate = change / previous;
+				if (rate >= 1) return false;
+				if (change < tol && change * rate < tol * (1 - rate)) {
+					if (rate > mMaxRate) { // converging slowly, use a new Jacobian in the next step
+						mSlowConvergences++;
+						mHaveJacobian = false;
+					}
+					return true;
+				}
+			}
+			previous = change;
+		}
+		return false;
+	}
+
+	/**
+	 * Forgets the Jacobian and the factorization, so that the next step evaluates
+	 * them again, for instance if the problem has changed
+	 */
+	public void reset() {
+		mHaveJacobian = false;
+		mFactoredGamma = Double.NaN;
+	}
+
+	public double getMaxRate() {
+		return mMaxRate;
+	}
+
+	/**
+	 * Changes the largest convergence rate, |correction|/|previous correction|,
+	 * with which the Jacobian is kept for the next step
+	 * @param maxRate the rate, in (0,1)
+	 */
+	public void setMaxRate(double maxRate) {
+		mMaxRate = maxRate;
+	}
+
+	/**
+	 * Chooses what to do when the iterations fail even with a new Jacobian: solve
+	 * with full Newton, the default, or throw a ConvergenceException so that the
+	 * method reduces its step
+	 * @param fallback true to fall back to full Newton
+	 */
+	public void setFullNewtonFallback(boolean fallback) {
+		mFullNewtonFallback = fallback;
+	}
+
+	/**
+	 * @return number of equations solved
+	 */
+	public long getSolves() {
+		return mSolves;
+	}
+
+	/**
+	 * @return number of iterations, each one an evaluation of f and a solve with the factors
+	 */
+	public long getIterations() {
+		return mIterations;
+	}
+
+	/**
+	 * @return number of times the Jacobian was evaluated
+	 */
+	public long getJacobianEvaluations() {
+		return mJacobianEvaluations;
+	}
+
+	/**
+	 * @return number of LU decompositions of the matrix I - gamma*J
+	 */
+	public long getFactorizations() {
+		return mFactorizations;
+	}
+
+	/**
+	 * @return number of solves that converged slower than the maximum rate, so
+	 * that the Jacobian was evaluated again for the next one
+	 */
+	public long getSlowConvergences() {
+		return mSlowConvergences;
+	}
+
+	/**
+	 * @return number of times the iterations failed and were started again, with
+	 * a new Jacobian or with full Newton
+	 */
+	public long getFailures() {
+		return mFailures;
+	}
+
+	/**
+	 * @return number of steps solved with full Newton, as the simplified method
+	 * did not converge even with a new Jacobian
+	 */
+	public long getFullNewtonSolves() {
+		return mFullNewtonSolves;
+	}
+
+	@Override
+	public String toString() {
+		return "Simplified Newton: solves = " + mSolves + ", iterations = " + mIterations
+			+ ", Jacobians = " + mJacobianEvaluations + ", factorizations = " + mFactorizations
+			+ ", slow convergences = " + mSlowConvergences + ", failures = " + mFailures
+			+ ", full Newton solves = " + mFullNewtonSolves;
+	}
+
+}
@@ -0,0 +1,184 @@
+package es.um.mned.methods;
+
+/**
+ * Chooses the next step of an AdaptiveStepMethod from the error of the steps
+ * taken. The error enters as the ratio r of the ErrorNorm of the method, so a step
+ * is accepted when r < 1, and when r behaves like step^k the next step is the
+ * current one times
+ * <pre>
+ *   (rho/r_n)^(beta1/k) * (rho/r_(n-1))^(beta2/k) * (rho/r_(n-2))^(beta3/k),  rho = safety^k
+ * </pre>
+ * with r_n the ratio of the last accepted step and r_(n-1), r_(n-2) those of the
+ * two before, a digital filter of the error as in Soderlind's step size control.
+ * For any coefficients, a constant ratio rho keeps the step, so all of them aim at
+ * the same error, and with coefficients (1,0,0) the factor is safety*r^(-1/k).
+ * The factor is kept within [minFactor, maxFactor]. After a rejection only the
+ * last error is used, and the step is not grown.
+ * IntegralStepSizeController, PIStepSizeController and PIDStepSizeController
+ * give the usual choices of the coefficients.
+ */
+public class StepSizeController {
+
+	private static final double MIN_RATIO = 1e-10; // so that a zero error does not make a zero factor
+
+	private final double mBeta1, mBeta2, mBeta3;
+	private double mSafety, mMinFactor, mMaxFactor;
+	private boolean mHoldAfterRejection; // not to grow the step accepted after a rejection
+	private double mRatio1, mRatio2; // ratios of the two steps accepted before the last one
+	private boolean mLastRejected;
+
+	private long mAccepted, mRejected, mRepeatedRejections, mConsecutive, mMaxConsecutive;
+
+	/**
+	 * Creates a controller
+	 * @param beta1 exponent (times k) of the ratio of the last step
+	 * @param beta2 exponent (times k) of the ratio of the step before
+	 * @param beta3 exponent (times k) of the ratio of the step before that
+	 * @param safety factor below 1 to aim a bit below the tolerance
+	 * @param minFactor smallest factor the step is scaled by
+	 * @param maxFactor largest factor the step is scaled by
+	 * @param holdAfterRejection whether not to grow the step accepted right after a rejection
+	 */
+	public StepSizeController(double beta1, double beta2, double beta3,
+			double safety, double minFactor, double maxFactor, boolean holdAfterRejection) {
+		if (minFactor <= 0 || minFactor > 1 || maxFactor < 1)
+			throw new IllegalArgumentException("The step factors must be 0 < minFactor <= 1 <= maxFactor");
+		mBeta1 = beta1;
+		mBeta2 = beta2;
+		mBeta3 = beta3;
+		mSafety = safety;
+		mMinFactor = minFactor;
+		mMaxFactor = maxFactor;
+		mHoldAfterRejection = holdAfterRejection;
+		reset();
+	}
+
+	/**
+	 * Forgets the errors of previous steps and the statistics
+	 */
+	public void reset() {
+		mRatio1 = mRatio2 = Double.NaN;
+		mLastRejected = false;
+		mAccepted = mRejected = mRepeatedRejections = mConsecutive = mMaxConsecutive = 0;
+	}
+
+	/**
+	 * Factor to scale the step by after it has been accepted
+	 * @param ratio ratio of the error of the step to the tolerance, below 1
+	 * @param errorOrder k, the ratio behaves like step^k
+	 * @return the factor
+	 */
+	public double accepted(double ratio, int errorOrder) {
+		ratio = Math.max(ratio, MIN_RATIO);
+		double target = Math.pow(mSafety, errorOrder);
+		// the steps before the first ones behave as if on target
+		double ratio1 = Double.isNaN(mRatio1) ? target : mRatio1;
+		double ratio2 = Double.isNaN(mRatio2) ? target : mRatio2;
+		double factor = (mBeta1 == 1) ? mSafety * Math.pow(ratio, -1.0/errorOrder) // the same, in fewer operations
+				: Math.pow(target/ratio, mBeta1/errorOrder);
+		if (mBeta2 != 0) factor *= Math.pow(target/ratio1, mBeta2/errorOrder);
+		if (mBeta3 != 0) factor *= Math.pow(target/ratio2, mBeta3/errorOrder);
+		factor = Math.min(mMaxFactor, Math.max(factor, mMinFactor));
+		if (mLastRejected && mHoldAfterRejection) factor = Math.min(1.0, factor);
+		mRatio2 = mRatio1;
+		mRatio1 = ratio;
+		mLastRejected = false;
+		mConsecutive = 0;
+		mAccepted++;
+		return factor;
+	}
+
+	/**
+	 * Factor to scale the step by after it has been rejected
+	 * @param ratio ratio of the error of the step to the tolerance, 1 or above
+	 * @param errorOrder k, the ratio behaves like step^k
+	 * @return the factor, at most 1
+	 */
+	public double rejected(double ratio, int errorOrder) {
+		if (mLastRejected) mRepeatedRejections++;
+		mLastRejected = true;
+		mRejected++;
+		mMaxConsecutive = Math.max(mMaxConsecutive, ++mConsecutive);
+		double factor = mSafety * Math.pow(ratio, -1.0/errorOrder);
+		return Math.min(1.0, Math.max(factor, mMinFactor));
+	}
+
+	public double getSafety() {
+		return mSafety;
+	}
+
+	public void setSafety(double safety) {
+		mSafety = safety;
+	}
+
+	public double getMinFactor() {
+		return mMinFactor;
+	}
+
+	public double getMaxFactor() {
+		return mMaxFactor;
+	}
+
+	/**
+	 * Changes the range of the factor the step is scaled by
+	 * @param minFactor smallest factor, in (0,1]
+	 * @param maxFactor largest factor, at least 1
+	 */
+	public void setFactorRange(double minFactor, double maxFactor) {
+		if (minFactor <= 0 || minFactor > 1 || maxFactor < 1)
+			throw new IllegalArgumentException("The step factors must be 0 < minFactor <= 1 <= maxFactor");
+		mMinFactor = minFactor;
+		mMaxFactor = maxFactor;
+	}
+
+	public boolean isHoldAfterRejection() {
+		return mHoldAfterRejection;
+	}
+
+	public void setHoldAfterRejection(boolean hold) {
+		mHoldAfterRejection = hold;
+	}
+
+	/**
+	 * @return number of steps accepted since the last reset
+	 */
+	public long getAcceptedSteps() {
+		return mAccepted;
+	}
+
+	/**
+	 * @return number of steps rejected since the last reset
+	 */
+	public long getRejectedSteps() {
+		return mRejected;
+	}
+
+	/**
+	 * @return number of rejections that followed another rejection of the same step
+	 */
+	public long getRepeatedRejections() {
+		return mRepeatedRejections;
+	}
+
+	/**
+	 * @return the largest number of rejections of a single step
+	 */
+	public long getMaxConsecutiveRejections() {
+		return mMaxConsecutive;
+	}
+
+	/**
+	 * @return fraction of the steps tried that were rejected
+	 */
+	public double getRejectionRate() {
+		long tried = mAccepted + mRejected;
+		return tried == 0 ? 0 : (double) mRejected / tried;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": accepted = " + mAccepted + ", rejected = " + mRejected
+			+ ", repeated rejections = " + mRepeatedRejections + ", max consecutive rejections = " + mMaxConsecutive;
+	}
+
+}
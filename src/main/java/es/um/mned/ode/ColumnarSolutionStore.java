@@ -0,0 +1,147 @@
+package es.um.mned.ode;
+
+import java.util.Arrays;
+
+/**
+ * Primitive storage for the points of a NumericalSolution.
+ * Times are kept in a growable double array and states in a single flat
+ * double array, so no object is created per point.
+ * The states can be laid out row-major (one state after the other, best
+ * to read whole states) or column-major (one component after the other,
+ * best to scan a single component).
+ */
+public class ColumnarSolutionStore implements SolutionStore {
+
+	public enum Layout { ROW_MAJOR, COLUMN_MAJOR }
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int dimension;
+	private final Layout layout;
+	private double[] times;
+	private double[] states;
+	private int size;
+	private int capacity;
+
+	/**
+	 * Creates an empty store
+	 * @param dimension length of the states to store
+	 * @param layout how states are laid out in memory
+	 */
+	public ColumnarSolutionStore(int dimension, Layout layout) {
+		this.dimension = dimension;
+		this.layout = layout;
+		capacity = INITIAL_CAPACITY;
+		times = new double[capacity];
+		states = new double[capacity * dimension];
+		size = 0;
+	}
+
+	/**
+	 * Appends a point. The state is copied.
+	 * @param time the time of the point
+	 * @param state the state of the point
+	 */
+	@Override
+	public void add(double time, double[] state) {
+		if (size == capacity) grow();
+		times[size] = time;
+		if (layout == Layout.ROW_MAJOR) {
+			System.arraycopy(state, 0, states, size * dimension, dimension);
+		} else {
+			for (int i = 0; i < dimension; i++)
+				states[i * capacity + size] = state[i];
+		}
+		size++;
+	}
+
+	private void grow() {
+		int newCapacity = capacity + (capacity >> 1);
+		times = Arrays.copyOf(times, newCapacity);
+		if (layout == Layout.ROW_MAJOR) {
+			states = Arrays.copyOf(states, newCapacity * dimension);
+		} else { // each column moves to its new offset
+			double[] newStates = new double[newCapacity * dimension];
+			for (int i = 0; i < dimension; i++)
+				System.arraycopy(states, i * capacity, newStates, i * newCapacity, size);
+			states = newStates;
+		}
+		capacity = newCapacity;
+	}
+
+	/**
+	 * @return number of points stored
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return length of each state
+	 */
+	@Override
+	public int dimension() {
+		return dimension;
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @param point position of the point, between 0 and size()-1
+	 * @return time of the point
+	 */
+	@Override
+	public double getTime(int point) {
+		return times[point];
+	}
+
+	/**
+	 * @param point position of the point, between 0 and size()-1
+	 * @param index component of the state, between 0 and dimension()-1
+	 * @return that component of the state of the point
+	 */
+	@Override
+	public double getState(int point, int index) {
+		if (layout == Layout.ROW_MAJOR) return states[point * dimension + index];
+		return states[index * capacity + point];
+	}
+
+	/**
+	 * Copies the state of a point into a given array
+	 * @param point position of the point, between 0 and size()-1
+	 * @param state array of length at least dimension() to write into
+	 */
+	@Override
+	public void copyState(int point, double[] state) {
+		if (layout == Layout.ROW_MAJOR) {
+			System.arraycopy(states, point * dimension, state, 0, dimension);
+		} else {
+			for (int i = 0; i < dimension; i++)
+				state[i] = states[i * capacity + point];
+		}
+	}
+
+	@Override
+	public SolutionStore newStore(int dimension) {
+		return new ColumnarSolutionStore(dimension, layout);
+	}
+
+	/**
+	 * Creates a copy of this store with another layout
+	 * @param layout the layout of the copy
+	 * @return new store with the same points
+	 */
+	public ColumnarSolutionStore withLayout(Layout layout) {
+		ColumnarSolutionStore copy = new ColumnarSolutionStore(dimension, layout);
+		double[] state = new double[dimension];
+		for (int i = 0; i < size; i++) {
+			copyState(i, state);
+			copy.add(times[i], state);
+		}
+		return copy;
+	}
+
+}
@@ -1,11 +1,78 @@
 package es.um.mned.ode;
 
+/**
+ * InitialValueProblem that also gives the partial derivatives of f with respect
+ * to the state, for the implicit methods. One-dimensional problems may just
+ * implement getDerivativeDY, problems of any dimension implement getJacobian.
+ * Problems that return a pattern from getSparsityPattern are solved with banded or
+ * sparse matrices. By default their Jacobian is still computed by the dense
+ * getJacobian and copied; large problems implement the getJacobian that writes a
+ * SparseMatrix, and the implicit methods then never create a dense matrix.
+ */
 public abstract class ExtendedInitialValueProblem extends InitialValueProblem {
-	
+
+	private double[][] mDenseJacobian; // for the default sparse Jacobian
+
 	public ExtendedInitialValueProblem(double t0, double[] x0) {
 		super(t0, x0);
 	}
 
-	public abstract double[] getDerivativeDY(double time, double[] state);
-	
+	/**
+	 * Partial derivative of f with respect to Y of a one-dimensional problem
+	 * @param time the given time
+	 * @param state the given state
+	 * @return array with the value of the partial derivative
+	 */
+	public double[] getDerivativeDY(double time, double[] state) {
+		throw new UnsupportedOperationException("getDerivativeDY is only given by one-dimensional problems, use getJacobian");
+	}
+
+	/**
+	 * Computes the partial derivative of f with respect to Y into a given array.
+	 * The default implementation bridges to {@link #getDerivativeDY(double, double[])}.
+	 * @param time the given time
+	 * @param state the given state
+	 * @param derivative the array where the value of the partial derivative is written
+	 */
+	public void getDerivativeDY(double time, double[] state, double[] derivative) {
+		double[] value = getDerivativeDY(time, state);
+		System.arraycopy(value, 0, derivative, 0, derivative.length);
+	}
+
+	/**
+	 * Computes the Jacobian matrix of f with respect to Y into a given matrix,
+	 * jacobian[i][j] being the derivative of f_i with respect to y_j.
+	 * The default implementation bridges to {@link #getDerivativeDY(double, double[], double[])}
+	 * for one-dimensional problems, the others must override it.
+	 * @param time the given time
+	 * @param state the given state
+	 * @param jacobian square matrix of the dimension of the state to write into
+	 */
+	public void getJacobian(double time, double[] state, double[][] jacobian) {
+		if (state.length != 1)
+			throw new UnsupportedOperationException(getClass().getSimpleName() + " does not give its Jacobian");
+		getDerivativeDY(time, state, jacobian[0]);
+	}
+
+	/**
+	 * Computes the Jacobian matrix of f with respect to Y into a sparse matrix with
+	 * the pattern of {@link #getSparsityPattern()}. The default implementation copies
+	 * the entries of the pattern from {@link #getJacobian(double, double[], double[][])},
+	 * into a dense matrix kept for the next calls, so large problems should override it.
+	 * @param time the given time
+	 * @param state the given state
+	 * @param jacobian the matrix to write into, entries of the pattern not written keep their value
+	 */
+	public void getJacobian(double time, double[] state, SparseMatrix jacobian) {
+		int dimension = state.length;
+		if (mDenseJacobian == null) mDenseJacobian = new double[dimension][dimension];
+		getJacobian(time, state, mDenseJacobian);
+		int[] rowStart = jacobian.getRowStart(), columns = jacobian.getColumns();
+		double[] values = jacobian.getValues();
+		for (int i=0; i<dimension; i++) {
+			double[] row = mDenseJacobian[i];
+			for (int k=rowStart[i]; k<rowStart[i+1]; k++) values[k] = row[columns[k]];
+		}
+	}
+
 }
@@ -0,0 +1,136 @@
+package es.um.mned.ode;
+
+import java.util.Arrays;
+
+/**
+ * Approximates the Jacobian matrix of the derivative of an InitialValueProblem
+ * by forward differences, for the problems that do not give it. Column j is
+ * (f(t, y + delta_j*e_j) - f(t, y)) / delta_j, with delta_j = sqrt(eps*max(1e-5, |y_j|)).
+ * Without a sparsity pattern this takes one evaluation of the derivative per
+ * column. With one, all the columns of a group of the pattern are perturbed at
+ * once, and it takes one evaluation per group.
+ */
+public class FiniteDifferenceJacobian {
+
+	private static final double EPSILON = Math.ulp(1.0);
+	private static final double MIN_SCALE = 1e-5;
+
+	private final InitialValueProblem mProblem;
+	private final SparsityPattern mPattern; // null if dense
+	private final int[][] mGroups;
+	private final double[] mState, mDerivative, mPerturbed, mDeltas;
+	private long mEvaluations;
+
+	/**
+	 * @param problem the problem
+	 * @param pattern the sparsity pattern of its Jacobian, or null if it is dense or not known
+	 */
+	public FiniteDifferenceJacobian(InitialValueProblem problem, SparsityPattern pattern) {
+		mProblem = problem;
+		int dimension = problem.getInitialState().length;
+		if (pattern != null && pattern.getDimension() != dimension)
+			throw new IllegalArgumentException("The sparsity pattern must be of dimension " + dimension);
+		mPattern = pattern;
+		if (pattern != null) mGroups = pattern.getColumnGroups();
+		else {
+			mGroups = new int[dimension][];
+			for (int j=0; j<dimension; j++) mGroups[j] = new int[] { j };
+		}
+		mState = problem.getInitialState();
+		mDerivative = problem.getInitialState();
+		mPerturbed = problem.getInitialState();
+		mDeltas = problem.getInitialState();
+	}
+
+	/**
+	 * @return the sparsity pattern used, null if the Jacobian is taken as dense
+	 */
+	public SparsityPattern getPattern() {
+		return mPattern;
+	}
+
+	/**
+	 * @return the number of evaluations of the derivative each Jacobian takes, besides f(t, y)
+	 */
+	public int getEvaluationsPerJacobian() {
+		return mGroups.length;
+	}
+
+	/**
+	 * @return the number of evaluations of the derivative made so far
+	 */
+	public long getEvaluations() {
+		return mEvaluations;
+	}
+
+	/**
+	 * Approximates the Jacobian at a point
+	 * @param time the time
+	 * @param state the state
+	 * @param derivative f(time, state) if already known, null to evaluate it
+	 * @param jacobian square matrix to write the Jacobian into. Entries outside the pattern are set to 0
+	 */
+	public void compute(double time, double[] state, double[] derivative, double[][] jacobian) {
+		int n = state.length;
+		if (derivative == null) {
+			derivative = mDerivative;
+			evaluate(time, state, derivative);
+		}
+		System.arraycopy(state, 0, mState, 0, n);
+		if (mPattern != null) for (double[] row : jacobian) Arrays.fill(row, 0);
+		for (int[] group : mGroups) {
+			for (int j : group) {
+				double delta = Math.sqrt(EPSILON * Math.max(MIN_SCALE, Math.abs(state[j])));
+				mState[j] = state[j] + delta;
+				mDeltas[j] = mState[j] - state[j]; // the increment actually represented
+			}
+			evaluate(time, mState, mPerturbed);
+			for (int j : group) {
+				double delta = mDeltas[j];
+				if (mPattern == null) {
+					for (int i=0; i<n; i++) jacobian[i][j] = (mPerturbed[i] - derivative[i]) / delta;
+				}
+				else {
+					for (int i : mPattern.getColumn(j)) jacobian[i][j] = (mPerturbed[i] - derivative[i]) / delta;
+				}
+				mState[j] = state[j];
+			}
+		}
+	}
+
+	/**
+	 * Approximates the Jacobian at a point into a sparse matrix, which needs a sparsity pattern
+	 * @param time the time
+	 * @param state the state
+	 * @param derivative f(time, state) if already known, null to evaluate it
+	 * @param jacobian the matrix to write the Jacobian into, with the pattern of this approximation
+	 */
+	public void compute(double time, double[] state, double[] derivative, SparseMatrix jacobian) {
+		if (mPattern == null || jacobian.getPattern() != mPattern)
+			throw new IllegalArgumentException("The matrix must have the sparsity pattern of the approximation");
+		if (derivative == null) {
+			derivative = mDerivative;
+			evaluate(time, state, derivative);
+		}
+		System.arraycopy(state, 0, mState, 0, state.length);
+		for (int[] group : mGroups) {
+			for (int j : group) {
+				double delta = Math.sqrt(EPSILON * Math.max(MIN_SCALE, Math.abs(state[j])));
+				mState[j] = state[j] + delta;
+				mDeltas[j] = mState[j] - state[j];
+			}
+			evaluate(time, mState, mPerturbed);
+			for (int j : group) {
+				double delta = mDeltas[j];
+				for (int i : mPattern.getColumn(j)) jacobian.set(i, j, (mPerturbed[i] - derivative[i]) / delta);
+				mState[j] = state[j];
+			}
+		}
+	}
+
+	private void evaluate(double time, double[] state, double[] derivative) {
+		mEvaluations++;
+		mProblem.getDerivative(time, state, derivative);
+	}
+
+}
@@ -1,6 +1,7 @@
 package es.um.mned.ode;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Interface for an InitialValueProblem of Ordinary Differential Equations
@@ -11,12 +12,12 @@ import java.util.Arrays;
 public abstract class InitialValueProblem {
 	double t0;
 	double[] x0;
-	int evaluationCounter;
+	LongAdder evaluationCounter; // shared by every solve of this problem, whatever the thread
     
     public InitialValueProblem(double t0, double[] x0) {
 		this.t0 = t0;
 		this.x0 = x0;
-		evaluationCounter = 0;
+		evaluationCounter = new LongAdder();
 	}
 
 	/**
@@ -43,16 +44,47 @@ public abstract class InitialValueProblem {
      */
     public abstract double[] getDerivative(double time, double[] state);
     
+    /**
+     * Computes the derivative f(t,Y(t)) that defines the ODE into a given array.
+     * Methods call this version in their inner loops, so problems that care about
+     * performance should override it and write the derivative without allocating.
+     * The default implementation bridges to {@link #getDerivative(double, double[])}.
+     * @param time the given time
+     * @param state the given state
+     * @param derivative the array where the value of the derivative is written,
+     * it must not be the same array as state
+     */
+    public void getDerivative(double time, double[] state, double[] derivative) {
+    	double[] value = getDerivative(time, state);
+    	System.arraycopy(value, 0, derivative, 0, derivative.length);
+    }
+    
+    /**
+     * The structure of the Jacobian of the derivative, for the implicit methods.
+     * Problems with a sparse or banded Jacobian should override it, so that
+     * approximating it by finite differences takes a few evaluations instead of
+     * one per component, and so that it is stored and factored as a sparse or
+     * banded matrix instead of a dense one. The methods ask for it once.
+     * @return the pattern, null if the Jacobian is dense or its structure is not known
+     */
+    public SparsityPattern getSparsityPattern() {
+    	return null;
+    }
+    
+    /**
+     * Counts one evaluation of the derivative for this problem. The count adds up
+     * all solves of the problem, see SolverStatistics for the work of a single solve.
+     */
     public void addToEvaluationCounter() {
-    	evaluationCounter++;
+    	evaluationCounter.increment();
     }
     
-    public int getEvaluationCounter() {
-    	return evaluationCounter;
+    public long getEvaluationCounter() {
+    	return evaluationCounter.sum();
     }
     
     public void resetEvaluationCounter() {
-    	evaluationCounter = 0;
+    	evaluationCounter.reset();
     }
     
 }
@@ -0,0 +1,212 @@
+package es.um.mned.ode;
+
+import java.util.Arrays;
+
+import es.um.mned.interpolation.StateFunction;
+
+/**
+ * Bounded cache of the interpolators of a NumericalSolution, keyed by the
+ * index of their interval.
+ * When it is full, the entry to evict is chosen with the CLOCK policy: a hand
+ * goes round the entries, giving a second chance to those used since it last
+ * passed and evicting the first one that was not. Keys are looked up in an
+ * open addressing table of primitive ints, so lookups do not box.
+ */
+public class InterpolatorCache {
+
+	private int capacity;
+	private int[] keys; // key of each entry
+	private StateFunction[] values; // interpolator of each entry
+	private boolean[] used; // whether each entry was used since the hand passed
+	private int size;
+	private int hand;
+	private int[] table; // entry + 1 of each key, 0 if free
+	private int mask;
+
+	private long hits, misses, evictions;
+
+	/**
+	 * Creates an empty cache
+	 * @param capacity maximum number of interpolators kept
+	 */
+	public InterpolatorCache(int capacity) {
+		setCapacity(capacity);
+	}
+
+	/**
+	 * Changes the maximum number of interpolators kept. The cache is emptied.
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("The cache must keep at least one interpolator");
+		this.capacity = capacity;
+		keys = new int[capacity];
+		values = new StateFunction[capacity];
+		used = new boolean[capacity];
+		int tableSize = Integer.highestOneBit(capacity) * 4; // load factor at most 1/2
+		table = new int[tableSize];
+		mask = tableSize - 1;
+		size = 0;
+		hand = 0;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of interpolators kept
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param key index of the interval
+	 * @return the interpolator of the interval, null if it is not kept
+	 */
+	public StateFunction get(int key) {
+		int entry = find(key);
+		if (entry < 0) {
+			misses++;
+			return null;
+		}
+		hits++;
+		used[entry] = true;
+		return values[entry];
+	}
+
+	/**
+	 * Keeps the interpolator of an interval, evicting another one if the cache is full
+	 * @param key index of the interval
+	 * @param value the interpolator
+	 */
+	public void put(int key, StateFunction value) {
+		int entry = find(key);
+		if (entry < 0) {
+			if (size < capacity) {
+				entry = size++;
+			} else {
+				entry = nextVictim();
+				unlink(keys[entry]);
+				evictions++;
+			}
+			keys[entry] = key;
+			link(key, entry);
+		}
+		values[entry] = value;
+		used[entry] = true;
+	}
+
+	/**
+	 * Removes the interpolator of an interval, if kept
+	 * @param key index of the interval
+	 */
+	public void remove(int key) {
+		int entry = find(key);
+		if (entry >= 0) removeEntry(entry);
+	}
+
+	/**
+	 * Removes the interpolators of all intervals before a given one
+	 * @param key index of the first interval to keep
+	 */
+	public void removeBelow(int key) {
+		for (int entry = size - 1; entry >= 0; entry--)
+			if (keys[entry] < key) removeEntry(entry);
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		hand = 0;
+	}
+
+	/**
+	 * @return number of lookups that found the interpolator
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that did not find the interpolator
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of interpolators evicted to make room for others
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "Interpolators kept = " + size + "/" + capacity
+			+ ", hits = " + hits + ", misses = " + misses + ", evictions = " + evictions;
+	}
+
+	// CLOCK: clears the used mark of entries until one without it is found
+	private int nextVictim() {
+		while (used[hand]) {
+			used[hand] = false;
+			hand = (hand + 1) % size;
+		}
+		int victim = hand;
+		hand = (hand + 1) % size;
+		return victim;
+	}
+
+	// Moves the last entry into the place of the removed one, so entries stay packed
+	private void removeEntry(int entry) {
+		unlink(keys[entry]);
+		int last = --size;
+		if (entry != last) {
+			unlink(keys[last]);
+			keys[entry] = keys[last];
+			values[entry] = values[last];
+			used[entry] = used[last];
+			link(keys[entry], entry);
+		}
+		values[last] = null;
+		if (hand >= size) hand = 0;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int find(int key) {
+		for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask)
+			if (keys[table[slot] - 1] == key) return table[slot] - 1;
+		return -1;
+	}
+
+	private void link(int key, int entry) {
+		int slot = hash(key) & mask;
+		while (table[slot] != 0) slot = (slot + 1) & mask;
+		table[slot] = entry + 1;
+	}
+
+	// Frees the slot of a key and shifts back the keys that probed past it
+	private void unlink(int key) {
+		int slot = hash(key) & mask;
+		while (keys[table[slot] - 1] != key) slot = (slot + 1) & mask;
+		int free = slot;
+		for (slot = (slot + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int home = hash(keys[table[slot] - 1]) & mask;
+			// move it back if its home is not in the cyclic range (free, slot]
+			if (((slot - home) & mask) >= ((slot - free) & mask)) {
+				table[free] = table[slot];
+				free = slot;
+			}
+		}
+		table[free] = 0;
+	}
+
+}
@@ -2,18 +2,27 @@ package es.um.mned.ode;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
-import java.util.HashMap;
 
 import es.um.mned.interpolation.StateFunction;
 import es.um.mned.interpolation.Interpolator;
+import es.um.mned.interpolation.DenseOutputInterpolator;
+import es.um.mned.ode.ColumnarSolutionStore.Layout;
 
 public class NumericalSolution implements StateFunction{
+	private static final int DEFAULT_INTERPOLATORS = 256;
+	private static final int MIN_PARALLEL_BLOCK = 1024; // times resampled by each thread, at least
+	
 	private InitialValueProblem ivp;
-    private ArrayList<NumericalSolutionPoint> pointList;
-    private HashMap<Integer, StateFunction> interpolators;
+    private SolutionStore store; // created on the first add if null
+    private SolutionStore denseStore; // dense output of the step ending at each point, null if none
+    private Layout layout = Layout.ROW_MAJOR;
+    private InterpolatorCache interpolators;
     private int order;
+    private SolverStatistics statistics = new SolverStatistics();
+    private final InterpolatorBuilder builder = new InterpolatorBuilder();
     
     /*
      * ==================================================
@@ -39,8 +48,7 @@ public class NumericalSolution implements StateFunction{
 	 * Private constructor for the previous one
 	 */
 	private NumericalSolution() {
-		pointList = new ArrayList<>();
-		interpolators = new HashMap<>();
+		interpolators = new InterpolatorCache(DEFAULT_INTERPOLATORS);
 	}
     
     /**
@@ -48,11 +56,20 @@ public class NumericalSolution implements StateFunction{
      * @param problem the InitialValueProblem being solved
      */
     public NumericalSolution(InitialValueProblem problem, int order) {
+    	this(problem, order, Layout.ROW_MAJOR);
+    }
+    
+    /**
+     * Creates a NumericalSolution with the initial condition as first point
+     * @param problem the InitialValueProblem being solved
+     * @param layout how states are laid out in the store
+     */
+    public NumericalSolution(InitialValueProblem problem, int order, Layout layout) {
     	this();
     	ivp = problem;
-    	interpolators = new HashMap<>();
-        pointList.add(new NumericalSolutionPoint(problem.getInitialTime(),problem.getInitialState()));
-        this.order = order;
+    	this.layout = layout;
+    	this.order = order;
+    	add(problem.getInitialTime(), problem.getInitialState(), null);
     }
 
     /*
@@ -62,24 +79,54 @@ public class NumericalSolution implements StateFunction{
      */
     
 	/**
-     * Adds a solution point
+     * Adds a solution point. The state is copied into the store.
+     * The solvers use add(time, state, denseOutput), which creates no point.
      * 
      * @param time the time of the point to add: t
      * @param state the state: Y(t)
-     * @return  the newly added NumericalSolutionPoint if successful, null if failed
+     * @return a point with a copy of the values added
      */
     public NumericalSolutionPoint add(double time, double[] state) {
-        NumericalSolutionPoint point = new NumericalSolutionPoint(time,state);
-        if (pointList.add(point)) return point;
-        return null;
+    	add(time, state, null);
+    	return new NumericalSolutionPoint(time, state);
+    }
+    
+	/**
+     * Adds a solution point with the dense output of the step that reached it,
+     * see DenseOutputInterpolator. Interpolating within that step will then need
+     * no evaluation of the derivative. The dense output is used only if every
+     * step has one.
+     * 
+     * @param time the time of the point to add: t
+     * @param state the state: Y(t)
+     * @param denseOutput coefficients a_1..a_k of the step, one after the other, or null
+     */
+    public void add(double time, double[] state, double[] denseOutput) {
+    	if (store == null) store = new ColumnarSolutionStore(state.length, layout);
+    	if (denseOutput == null || (denseStore == null && store.size() != 1)
+    			|| (denseStore != null && denseStore.dimension() != denseOutput.length)) {
+    		denseStore = null; // some step has no dense output, interpolate as usual
+    	} else {
+    		if (denseStore == null) { // first step, the initial point has no step
+    			denseStore = store.newStore(denseOutput.length);
+    			denseStore.add(store.getTime(0), new double[denseOutput.length]);
+    		}
+    		denseStore.add(time, denseOutput);
+    	}
+        int kept = store.size();
+        store.add(time, state);
+        if (store.size() == kept) interpolators.clear(); // a window forgot a point, the others moved
     }
 
     /**
+     * Creates a point object with a copy of the stored values
      * @param index
      * @return point at position index
      */
     public NumericalSolutionPoint get(int index) {
-    	return pointList.get(index);
+    	if (index < getFirstIndex() || index >= getSize())
+    		throw new IndexOutOfBoundsException("Index: "+index+", Size: "+getSize());
+    	return new NumericalSolutionPoint(store, index);
     }
     
     /**
@@ -87,7 +134,87 @@ public class NumericalSolution implements StateFunction{
      * @return 
      */
     public NumericalSolutionPoint getLastPoint() { 
-        return pointList.get(pointList.size()-1);
+        return get(getSize()-1);
+    }
+    
+    /**
+     * @param index
+     * @return time of the point at position index
+     */
+    public double getTime(int index) {
+    	return store.getTime(index);
+    }
+    
+    /**
+     * Changes how states are laid out in memory. Existing points are moved to the new layout.
+     * Row-major is best to read whole states, column-major to scan single components.
+     * @param layout
+     */
+    public void setLayout(Layout layout) {
+    	this.layout = layout;
+    	if (store instanceof ColumnarSolutionStore && ((ColumnarSolutionStore) store).getLayout() != layout)
+    		store = ((ColumnarSolutionStore) store).withLayout(layout);
+    }
+    
+    public Layout getLayout() {
+    	return layout;
+    }
+    
+    /**
+     * Changes where the points are kept, for instance to an OffHeapSolutionStore
+     * for trajectories that do not fit in the heap. Existing points are copied
+     * into the new store, which should be empty. The interpolation does not change.
+     * @param newStore
+     */
+    public void setStore(SolutionStore newStore) {
+    	if (store != null) {
+    		if (newStore.dimension() != store.dimension())
+    			throw new IllegalArgumentException("The store has dimension "+newStore.dimension()
+    				+", the solution has dimension "+store.dimension());
+    		if (store.first() > 0 || (store instanceof WindowSolutionStore && ((WindowSolutionStore) store).hasForgottenPoints()))
+    			throw new IllegalStateException("The solution has already forgotten its first points");
+    		copyPoints(store, newStore);
+    		if (denseStore != null) {
+    			SolutionStore newDenseStore = newStore.newStore(denseStore.dimension());
+    			copyPoints(denseStore, newDenseStore);
+    			denseStore = newDenseStore;
+    		}
+    	}
+    	store = newStore;
+    	interpolators.removeBelow(newStore.first());
+    }
+    
+    private static void copyPoints(SolutionStore from, SolutionStore to) {
+		double[] state = new double[from.dimension()];
+		for (int i = 0; i < from.size(); i++) {
+			from.copyState(i, state);
+			to.add(from.getTime(i), state);
+		}
+    }
+    
+    /**
+     * Keeps only the last few points, forgetting the older ones as new points are added.
+     * Points are then numbered from the oldest one kept, see WindowSolutionStore.
+     * @param numberOfPoints number of points to keep
+     */
+    public void keepLast(int numberOfPoints) {
+    	if (store == null) throw new IllegalStateException("The solution has no points yet");
+    	if (store instanceof WindowSolutionStore && ((WindowSolutionStore) store).getCapacity() == numberOfPoints)
+    		return;
+    	setStore(new WindowSolutionStore(getDimension(), numberOfPoints));
+    }
+    
+    /**
+     * Sets where the work done by this solution (evaluations to build interpolators) is counted.
+     * Methods share their own statistics with their solution.
+     * @param statistics
+     */
+    public void setStatistics(SolverStatistics statistics) {
+    	this.statistics = statistics;
+    }
+    
+    public SolverStatistics getStatistics() {
+    	return statistics;
     }
     
     /**
@@ -110,7 +237,7 @@ public class NumericalSolution implements StateFunction{
      * @return 
      */
     public Iterator<NumericalSolutionPoint> iterator() {
-        return pointList.iterator();
+        return new PointIterator(getFirstIndex());
     }
     
     /**
@@ -118,7 +245,7 @@ public class NumericalSolution implements StateFunction{
      * @param c
      */
     public void forEach(Consumer<NumericalSolutionPoint> c) {
-    	pointList.forEach(c);
+    	for (int i=getFirstIndex(); i<getSize(); i++) c.accept(get(i));
     }
     
     /**
@@ -127,64 +254,206 @@ public class NumericalSolution implements StateFunction{
      * @return 
      */
     public Iterator<NumericalSolutionPoint> iterator(int numberOfPoints) {
-        int size = pointList.size();
-        return pointList.subList(size-numberOfPoints, size).iterator();
+        return new PointIterator(getSize()-numberOfPoints);
+    }
+    
+    // Materializes the points one by one as they are requested
+    private class PointIterator implements Iterator<NumericalSolutionPoint> {
+    	private int next;
+    	
+    	PointIterator(int first) {
+    		next = first;
+    	}
+    	
+		@Override
+		public boolean hasNext() {
+			return next < getSize();
+		}
+
+		@Override
+		public NumericalSolutionPoint next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			return get(next++);
+		}
+    }
+    
+    /**
+     * Returns a cursor to walk through the whole list of points without
+     * creating point objects
+     * @return 
+     */
+    public SolutionCursor cursor() {
+    	return new SolutionCursor(this, getFirstIndex());
+    }
+    
+    /**
+     * Returns a cursor to walk through the last few points in the solution
+     * @param numberOfPoints int, number of points at the end
+     * @return 
+     */
+    public SolutionCursor cursor(int numberOfPoints) {
+    	return new SolutionCursor(this, getSize()-numberOfPoints);
+    }
+    
+    SolutionStore store() {
+    	return store;
     }
     
     /**
-     * @return size of the list of points calculated
+     * @return number of points kept, only the last ones if the solution keeps its last points
      */
     public int getSize() {
-    	return pointList.size();
+    	return store == null ? 0 : store.size();
+    }
+    
+    /**
+     * @return position of the oldest point that can be read, see SolutionStore.first;
+     * 0 also when the solution keeps its last points, which are numbered from the oldest
+     */
+    public int getFirstIndex() {
+    	return store == null ? 0 : store.first();
     }
     
     /**
-     * Creates an interpolator for the range [t_{index-1},t_index]
+     * @return length of the states of the solution
+     */
+    public int getDimension() {
+    	return store == null ? 0 : store.dimension();
+    }
+    
+    /**
+     * Creates an interpolator for the range [t_{index-1},t_index] and keeps it in the cache
      * @param index
+     * @return the interpolator
      */
-    private void putInterpolator(int index) {
-        // in case we don't have enough points. The worst case scenerio
-        // in this library is having 1 interpolator with worse precision
-        // in the very first interval, and only in methods with order>=4
-    	int nPoints = Math.min((order+2)/2, pointList.size());
-        int start;
-        if(index - (nPoints+1)/2 < 0) 
-            start = 0;
-        else if(index + nPoints/2 >= pointList.size())
-            start = pointList.size() - nPoints;
-        else
-            start = index - (nPoints+1)/2;
-        
-        HashMap<Double, double[][]> m = new HashMap<>();
-        for(int i=start, currentOrder=-1; i<start+nPoints; ++i) {
-            NumericalSolutionPoint p = pointList.get(i);
-            double time = p.getTime();
-            double[] state = p.getState();
-            if(currentOrder + 1 < order) {
-            	m.put(time, new double[][] {state, ivp.getDerivative(time,state)});
-            	currentOrder += 2;
-            } else {
-            	m.put(time, new double[][] {state});
-            	currentOrder += 1;
-            }
-        }
-        interpolators.put(index, new Interpolator(m));
+    private StateFunction putInterpolator(int index) {
+    	StateFunction interpolator = builder.build(index, statistics);
+    	interpolators.put(index, interpolator);
+    	return interpolator;
+    }
+    
+    // Builds interpolators reusing its own scratch arrays, one per thread.
+    // reuse gives the same interpolator each time, pointed at another interval.
+    private class InterpolatorBuilder {
+    	private double[] scratchTimes, scratchValues, scratchState, scratchDerivative;
+    	private double[] denseState, denseCoefficients;
+    	private DenseOutputInterpolator dense;
+    	private Interpolator hermite;
+    	
+    	StateFunction build(int index, SolverStatistics statistics) {
+    		statistics.addInterpolatorBuild();
+    		if (hasDenseOutput(index)) {
+    			double time = store.getTime(index-1);
+    			double[] state = new double[store.dimension()];
+    			store.copyState(index-1, state);
+    			double[] coefficients = new double[denseStore.dimension()];
+    			denseStore.copyState(index, coefficients);
+    			return new DenseOutputInterpolator(time, store.getTime(index)-time, state, coefficients);
+    		}
+    		int n = gather(index, statistics);
+    		return new Interpolator(n, scratchTimes, scratchValues, store.dimension());
+    	}
+    	
+    	StateFunction reuse(int index, SolverStatistics statistics) {
+    		statistics.addInterpolatorBuild();
+    		if (hasDenseOutput(index)) {
+    			if (dense == null) {
+    				denseState = new double[store.dimension()];
+    				denseCoefficients = new double[denseStore.dimension()];
+    				dense = new DenseOutputInterpolator(0, 1, denseState, denseCoefficients);
+    			}
+    			double time = store.getTime(index-1);
+    			store.copyState(index-1, denseState);
+    			denseStore.copyState(index, denseCoefficients);
+    			dense.setStep(time, store.getTime(index)-time);
+    			return dense;
+    		}
+    		int n = gather(index, statistics);
+    		if (hermite == null) hermite = new Interpolator(n, store.dimension());
+    		hermite.set(n, scratchTimes, scratchValues);
+    		return hermite;
+    	}
+    	
+    	private boolean hasDenseOutput(int index) {
+    		return denseStore != null && index > getFirstIndex() && index < getSize();
+    	}
+    	
+    	// Points and derivatives around the interval into the scratch arrays, returns how many
+    	private int gather(int index, SolverStatistics statistics) {
+    		// in case we don't have enough points. The worst case scenerio
+    		// in this library is having 1 interpolator with worse precision
+    		// in the very first interval, and only in methods with order>=4
+    		int size = getSize();
+    		int first = getFirstIndex();
+    		int nPoints = Math.min((order+2)/2, size - first);
+    		int start;
+    		if(index - (nPoints+1)/2 < first) 
+    			start = first;
+    		else if(index + nPoints/2 >= size)
+    			start = size - nPoints;
+    		else
+    			start = index - (nPoints+1)/2;
+    		
+    		int dim = store.dimension();
+    		if (scratchTimes == null || scratchTimes.length < 2*nPoints) {
+    			scratchTimes = new double[2*nPoints];
+    			scratchValues = new double[2*nPoints*dim];
+    			scratchState = new double[dim];
+    			scratchDerivative = new double[dim];
+    		}
+    		int n = 0;
+    		for(int i=start, currentOrder=-1; i<start+nPoints; ++i) {
+    			double time = store.getTime(i);
+    			store.copyState(i, scratchState);
+    			scratchTimes[n] = time;
+    			System.arraycopy(scratchState, 0, scratchValues, n*dim, dim);
+    			n++;
+    			if(currentOrder + 1 < order) {
+    				statistics.addInterpolationEvaluation();
+    				ivp.getDerivative(time, scratchState, scratchDerivative);
+    				scratchTimes[n] = time;
+    				System.arraycopy(scratchDerivative, 0, scratchValues, n*dim, dim);
+    				n++;
+    				currentOrder += 2;
+    			} else {
+    				currentOrder += 1;
+    			}
+    		}
+    		return n;
+    	}
     }
     
     /**
      * Gets the interpolator for range [t_{index-1},t_index], and creates
-     * it if it does not exist.
+     * it if it is not in the cache.
      * @param index
      * @return
      */
     public StateFunction getInterpolator(int index) {
-    	if(index < 0 || index > pointList.size())
+    	if(index < getFirstIndex() || index > getSize())
     		return null;
     	
-    	if(!interpolators.containsKey(index))
-    		putInterpolator(index);
+    	StateFunction interpolator = interpolators.get(index);
+    	if(interpolator == null)
+    		interpolator = putInterpolator(index);
     	
-    	return interpolators.get(index);
+    	return interpolator;
+    }
+    
+    /**
+     * Changes how many interpolators are kept. The least recently used ones
+     * (CLOCK policy) are rebuilt when needed again. The cache is emptied.
+     * @param capacity
+     */
+    public void setInterpolatorCacheCapacity(int capacity) {
+    	interpolators.setCapacity(capacity);
+    }
+    
+    /**
+     * @return the cache of interpolators, to check its hits, misses and evictions
+     */
+    public InterpolatorCache getInterpolatorCache() {
+    	return interpolators;
     }
     
     /*
@@ -197,42 +466,165 @@ public class NumericalSolution implements StateFunction{
 	 * Interpolates to get the value for t \in [a,b]
 	 */
 	public double[] getState(double t) {
-		if (pointList.isEmpty() || t < pointList.get(0).getTime() || t > pointList.get(pointList.size() - 1).getTime())
+		int size = getSize();
+		if (size == 0 || t < store.getTime(getFirstIndex()) || t > store.getTime(size - 1))
 			System.err.println("Evaluation out of bounds, precision not guaranteed.");
 
-		int l = 1, r = pointList.size() - 1;
-		while (l <= r) {
-			int m = (l + r) / 2;
-			if (pointList.get(m).getTime() <= t)
-				l = m + 1;
-			else
-				r = m - 1;
-		}
+		return getInterpolator(findInterval(t)).getState(t);
+	}
 
-		l = Math.min(l, pointList.size() - 1);
+	/**
+	 * Interpolates to get the value for t \in [a,b] into a given array
+	 */
+	@Override
+	public void getState(double t, double[] state) {
+		int size = getSize();
+		if (size == 0 || t < store.getTime(getFirstIndex()) || t > store.getTime(size - 1))
+			System.err.println("Evaluation out of bounds, precision not guaranteed.");
 
-		return getInterpolator(l).getState(t);
+		getInterpolator(findInterval(t)).getState(t, state);
 	}
 
 	/**
 	 * Interpolates to get the value of position index for t \in [a,b]
 	 */
 	public double getState(double t, int index) {
-		if (pointList.isEmpty() || t < pointList.get(0).getTime() || t > pointList.get(pointList.size() - 1).getTime())
+		int size = getSize();
+		if (size == 0 || t < store.getTime(getFirstIndex()) || t > store.getTime(size - 1))
 			throw new IllegalArgumentException("t is not the defined domain for this solution");
 
-		int l = 1, r = pointList.size() - 1;
+		return getInterpolator(findInterval(t)).getState(t, index);
+	}
+
+	// Index of the interval [t_{l-1},t_l] containing t
+	private int findInterval(double t) {
+		int size = getSize();
+		int l = getFirstIndex() + 1, r = size - 1;
 		while (l <= r) {
 			int m = (l + r) / 2;
-			if (pointList.get(m).getTime() <= t)
+			if (store.getTime(m) <= t)
 				l = m + 1;
 			else
 				r = m - 1;
 		}
 
-		l = Math.min(l, pointList.size() - 1);
+		return Math.min(l, size - 1);
+	}
+
+	/**
+	 * Interpolates the states at many times at once. The solution is swept once,
+	 * pointing one interpolator at each interval in turn and using it for all the
+	 * times in it, so no objects are created per time or per interval. Interpolators
+	 * already in the cache are used, but none are added to it.
+	 * @param times the times, in increasing order
+	 * @param states times.length arrays of the length of the state to write into
+	 * @return how many of the times are out of the range of the solution. Their
+	 * states are extrapolated from the first or last interval, with no precision guaranteed
+	 */
+	public int getStates(double[] times, double[][] states) {
+		return getStates(times, states, false);
+	}
+
+	/**
+	 * Interpolates the states at many times at once, see getStates(double[], double[][])
+	 * @param times the times, in increasing order
+	 * @param states array of length times.length*getDimension() to write the states one after the other
+	 * @return how many of the times are out of the range of the solution
+	 */
+	public int getStates(double[] times, double[] states) {
+		return getStates(times, states, false);
+	}
+
+	/**
+	 * Interpolates the states at many times at once, see getStates(double[], double[][]).
+	 * In parallel, the times are split in blocks swept by different threads. Each
+	 * block points an interpolator of its own at its intervals, without using the
+	 * cache, so the derivative of the problem may be evaluated from several threads at once.
+	 * @param times the times, in increasing order
+	 * @param states times.length arrays of the length of the state to write into
+	 * @param parallel whether to split the work among threads
+	 * @return how many of the times are out of the range of the solution
+	 */
+	public int getStates(double[] times, double[][] states, boolean parallel) {
+		return resample(times, null, states, parallel);
+	}
+
+	/**
+	 * Interpolates the states at many times at once, see getStates(double[], double[][], boolean)
+	 * @param times the times, in increasing order
+	 * @param states array of length times.length*getDimension() to write the states one after the other
+	 * @param parallel whether to split the work among threads
+	 * @return how many of the times are out of the range of the solution
+	 */
+	public int getStates(double[] times, double[] states, boolean parallel) {
+		return resample(times, states, null, parallel);
+	}
+
+	private int resample(double[] times, double[] flat, double[][] rows, boolean parallel) {
+		int m = times.length;
+		if (m == 0) return 0;
+		int size = getSize();
+		if (size == 0)
+			throw new IllegalStateException("The solution has no points");
+		double firstTime = store.getTime(getFirstIndex()), lastTime = store.getTime(size - 1);
+		int outOfRange = 0;
+		for (int q = 0; q < m && times[q] < firstTime; q++)
+			outOfRange++;
+		for (int q = m - 1; q >= outOfRange && times[q] > lastTime; q--)
+			outOfRange++;
+
+		int blocks = parallel ? Math.min(4 * Runtime.getRuntime().availableProcessors(), m / MIN_PARALLEL_BLOCK) : 1;
+		if (blocks <= 1) {
+			sweep(times, 0, m, flat, rows, true, statistics);
+			return outOfRange;
+		}
+		IntStream.range(0, blocks).parallel().forEach(b -> {
+			SolverStatistics blockStatistics = new SolverStatistics();
+			sweep(times, (int) ((long) m * b / blocks), (int) ((long) m * (b + 1) / blocks), flat, rows,
+					false, blockStatistics);
+			synchronized (statistics) {
+				statistics.merge(blockStatistics);
+			}
+		});
+		return outOfRange;
+	}
+
+	// Resamples times[from..to) moving forward through the intervals, with an
+	// interpolator of its own unless the cache, if it can be used, has one
+	private void sweep(double[] times, int from, int to, double[] flat, double[][] rows,
+			boolean useCache, SolverStatistics blockStatistics) {
+		int size = getSize();
+		int dim = getDimension();
+		InterpolatorBuilder blockBuilder = new InterpolatorBuilder();
+		double[] row = flat == null ? null : new double[dim];
+		int interval = findInterval(times[from]);
+		StateFunction interpolator = sweepInterpolator(interval, blockBuilder, useCache, blockStatistics);
+		double previous = times[from > 0 ? from - 1 : from];
+		for (int q = from; q < to; q++) {
+			double t = times[q];
+			if (t < previous)
+				throw new IllegalArgumentException("Times must be in increasing order: " + t + " after " + previous);
+			previous = t;
+			int next = interval;
+			while (next < size - 1 && store.getTime(next) <= t)
+				next++;
+			if (next != interval) {
+				interval = next;
+				interpolator = sweepInterpolator(interval, blockBuilder, useCache, blockStatistics);
+			}
+			if (rows != null) {
+				interpolator.getState(t, rows[q]);
+			} else {
+				interpolator.getState(t, row);
+				System.arraycopy(row, 0, flat, q * dim, dim);
+			}
+		}
+	}
 
-		return getInterpolator(l).getState(t, index);
+	private StateFunction sweepInterpolator(int index, InterpolatorBuilder blockBuilder, boolean useCache,
+			SolverStatistics blockStatistics) {
+		StateFunction interpolator = useCache ? interpolators.get(index) : null;
+		return interpolator != null ? interpolator : blockBuilder.reuse(index, blockStatistics);
 	}
    
 	/*
@@ -249,19 +641,16 @@ public class NumericalSolution implements StateFunction{
 	 * @return
 	 */
 	public double getMaxError(StateFunction analyticalSolution, int[] indexList) {
-		double err = pointList.stream()
-				.map(p -> {
-					double aux = 0.0;
-					double[] state = p.getState();
-					double t = p.getTime();
-					for (int i = 0; i < indexList.length; ++i) {
-						double diff = (state[indexList[i]] - analyticalSolution.getState(t, indexList[i]));
-						aux += diff * diff;
-					}
-					return aux;
-				})
-				.max(Double::compare)
-				.orElse(0.0);
+		double err = 0.0;
+		for (int p = getFirstIndex(); p < getSize(); ++p) {
+			double aux = 0.0;
+			double t = store.getTime(p);
+			for (int i = 0; i < indexList.length; ++i) {
+				double diff = (store.getState(p, indexList[i]) - analyticalSolution.getState(t, indexList[i]));
+				aux += diff * diff;
+			}
+			err = Math.max(err, aux);
+		}
 		return Math.sqrt(err);
 	}
    
@@ -271,9 +660,9 @@ public class NumericalSolution implements StateFunction{
      * @return
      */
     public double getMaxError(StateFunction analyticalSolution) {
-    	if(pointList.isEmpty()) return 0.;
+    	if(getSize() == 0) return 0.;
     	
-    	int dim = pointList.get(0).getState().length;
+    	int dim = store.dimension();
     	int[] indexes = IntStream.range(0, dim).toArray();
     	
     	return getMaxError(analyticalSolution, indexes);
@@ -283,9 +672,9 @@ public class NumericalSolution implements StateFunction{
      * @return list of steps used
      */
     public ArrayList<Double> getStepList() {
-    	ArrayList<Double> stepList = new ArrayList<>(pointList.size()-1);
-    	for(int i=0; i+1 < pointList.size(); ++i)
-    		stepList.add(pointList.get(i+1).getTime() - pointList.get(i).getTime());
+    	ArrayList<Double> stepList = new ArrayList<>(Math.max(getSize()-getFirstIndex()-1, 0));
+    	for(int i=getFirstIndex(); i+1 < getSize(); ++i)
+    		stepList.add(store.getTime(i+1) - store.getTime(i));
     	return stepList;
     }
 }
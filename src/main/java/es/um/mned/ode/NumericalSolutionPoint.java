@@ -19,6 +19,17 @@ public class NumericalSolutionPoint {
         mState = Arrays.copyOf(state,state.length);
     }
     
+    /**
+     * Materializes a point of a store
+     * @param store the store of the solution
+     * @param point position of the point in the store
+     */
+    NumericalSolutionPoint(SolutionStore store, int point) {
+        mTime = store.getTime(point);
+        mState = new double[store.dimension()];
+        store.copyState(point, mState);
+    }
+    
     /**
      * Get the time (independent variable) of the solution point
      * @return 
@@ -33,6 +44,23 @@ public class NumericalSolutionPoint {
         return Arrays.copyOf(mState,mState.length);
     }
     
+    /**
+     * Copies the state Y(t) of the point into a given array
+     * @param state array of length at least getDimension()
+     * @return the same array
+     */
+    public double[] copyState(double[] state) {
+        System.arraycopy(mState, 0, state, 0, mState.length);
+        return state;
+    }
+    
+    /**
+     * @return length of the state
+     */
+    public int getDimension() {
+        return mState.length;
+    }
+    
     /**
      * Get one of the components of the state array
      * @param index the index desired, from 0 to dimension-1
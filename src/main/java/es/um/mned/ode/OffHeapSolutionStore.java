@@ -0,0 +1,107 @@
+package es.um.mned.ode;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+
+/**
+ * Storage for the points of a NumericalSolution outside the Java heap.
+ * Points are written in chunks of direct buffers, each point as its time
+ * followed by its state. A chunk is allocated only when the previous one is
+ * full and nothing is ever copied, so very long trajectories cost a small
+ * heap and add nothing for the garbage collector to trace.
+ * The total memory is bounded by -XX:MaxDirectMemorySize, not by -Xmx.
+ * Memory is released when the store is no longer referenced.
+ */
+public class OffHeapSolutionStore implements SolutionStore {
+
+	private static final int DEFAULT_CHUNK_BITS = 16; // 65536 points per chunk
+
+	private final int dimension;
+	private final int stride; // doubles per point: time + state
+	private final int chunkBits;
+	private final int chunkMask;
+	private final ArrayList<DoubleBuffer> chunks = new ArrayList<>();
+	private int size;
+
+	/**
+	 * Creates an empty store with chunks of 65536 points
+	 * @param dimension length of the states to store
+	 */
+	public OffHeapSolutionStore(int dimension) {
+		this(dimension, DEFAULT_CHUNK_BITS);
+	}
+
+	/**
+	 * Creates an empty store
+	 * @param dimension length of the states to store
+	 * @param chunkBits each chunk holds 2^chunkBits points
+	 */
+	public OffHeapSolutionStore(int dimension, int chunkBits) {
+		if (chunkBits < 0 || ((long) (dimension + 1) << chunkBits) * Double.BYTES > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("A chunk of 2^" + chunkBits + " points does not fit in a direct buffer");
+		this.dimension = dimension;
+		this.stride = dimension + 1;
+		this.chunkBits = chunkBits;
+		this.chunkMask = (1 << chunkBits) - 1;
+		size = 0;
+	}
+
+	@Override
+	public void add(double time, double[] state) {
+		int offset = (size & chunkMask) * stride;
+		if (offset == 0) addChunk();
+		DoubleBuffer chunk = chunks.get(chunks.size() - 1);
+		chunk.put(offset, time);
+		for (int i = 0; i < dimension; i++)
+			chunk.put(offset + 1 + i, state[i]);
+		size++;
+	}
+
+	private void addChunk() {
+		int bytes = (stride << chunkBits) * Double.BYTES;
+		chunks.add(ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asDoubleBuffer());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int dimension() {
+		return dimension;
+	}
+
+	@Override
+	public double getTime(int point) {
+		return chunks.get(point >>> chunkBits).get((point & chunkMask) * stride);
+	}
+
+	@Override
+	public double getState(int point, int index) {
+		return chunks.get(point >>> chunkBits).get((point & chunkMask) * stride + 1 + index);
+	}
+
+	@Override
+	public void copyState(int point, double[] state) {
+		DoubleBuffer chunk = chunks.get(point >>> chunkBits);
+		int offset = (point & chunkMask) * stride + 1;
+		for (int i = 0; i < dimension; i++)
+			state[i] = chunk.get(offset + i);
+	}
+
+	@Override
+	public SolutionStore newStore(int dimension) {
+		return new OffHeapSolutionStore(dimension, chunkBits);
+	}
+
+	/**
+	 * @return bytes of direct memory reserved by this store
+	 */
+	public long getReservedBytes() {
+		return (long) chunks.size() * (stride << chunkBits) * Double.BYTES;
+	}
+
+}
@@ -0,0 +1,102 @@
+package es.um.mned.ode;
+
+/**
+ * Read-only view over the points of a NumericalSolution.
+ * The cursor is a flyweight: it reads the stored values in place and
+ * does not create any object while moving, so it can walk millions of
+ * points without allocating.
+ * Typical use:
+ * <pre>
+ * SolutionCursor cursor = solution.cursor();
+ * while (cursor.hasNext()) {
+ *     cursor.next();
+ *     ... cursor.time(), cursor.get(i) ...
+ * }
+ * </pre>
+ */
+public class SolutionCursor {
+	private final NumericalSolution solution;
+	private final int first;
+	private int index;
+
+	SolutionCursor(NumericalSolution solution, int first) {
+		this.solution = solution;
+		this.first = first;
+		index = first - 1;
+	}
+
+	/**
+	 * @return true if there are more points after the current one
+	 */
+	public boolean hasNext() {
+		return index + 1 < solution.getSize();
+	}
+
+	/**
+	 * Moves to the next point
+	 * @return this same cursor
+	 */
+	public SolutionCursor next() {
+		index++;
+		return this;
+	}
+
+	/**
+	 * Moves to a given point
+	 * @param index position of the point in the solution, from getFirstIndex() on
+	 * @return this same cursor
+	 */
+	public SolutionCursor moveTo(int index) {
+		if (index < solution.getFirstIndex() || index >= solution.getSize())
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+solution.getSize());
+		this.index = index;
+		return this;
+	}
+
+	/**
+	 * Moves back to where the cursor started
+	 */
+	public void reset() {
+		index = first - 1;
+	}
+
+	/**
+	 * @return position of the current point in the solution
+	 */
+	public int index() {
+		return index;
+	}
+
+	/**
+	 * @return time of the current point
+	 */
+	public double time() {
+		return solution.store().getTime(index);
+	}
+
+	/**
+	 * @param i component of the state
+	 * @return that component of the state of the current point
+	 */
+	public double get(int i) {
+		return solution.store().getState(index, i);
+	}
+
+	/**
+	 * @return length of the state
+	 */
+	public int dimension() {
+		return solution.store().dimension();
+	}
+
+	/**
+	 * Copies the state of the current point into a given array
+	 * @param state array of length at least dimension()
+	 * @return the same array
+	 */
+	public double[] copyInto(double[] state) {
+		solution.store().copyState(index, state);
+		return state;
+	}
+
+}
@@ -0,0 +1,16 @@
+package es.um.mned.ode;
+
+/**
+ * Receives the points of a solution as they are computed.
+ * The state array is reused by the method, copy it to keep it.
+ */
+@FunctionalInterface
+public interface SolutionSink {
+
+	/**
+	 * @param time the time of the point
+	 * @param state the state of the point, only valid during the call
+	 */
+	public void accept(double time, double[] state);
+
+}
@@ -0,0 +1,62 @@
+package es.um.mned.ode;
+
+/**
+ * Storage for the points of a NumericalSolution.
+ * Points are appended in increasing order of time and read by position.
+ */
+public interface SolutionStore {
+
+	/**
+	 * Appends a point. The state is copied.
+	 * @param time the time of the point
+	 * @param state the state of the point
+	 */
+	public void add(double time, double[] state);
+
+	/**
+	 * @return number of points stored
+	 */
+	public int size();
+
+	/**
+	 * @return position of the oldest point that can still be read,
+	 * 0 unless the store forgets old points
+	 */
+	public default int first() {
+		return 0;
+	}
+
+	/**
+	 * @return length of each state
+	 */
+	public int dimension();
+
+	/**
+	 * @param point position of the point, between 0 and size()-1
+	 * @return time of the point
+	 */
+	public double getTime(int point);
+
+	/**
+	 * @param point position of the point, between 0 and size()-1
+	 * @param index component of the state, between 0 and dimension()-1
+	 * @return that component of the state of the point
+	 */
+	public double getState(int point, int index);
+
+	/**
+	 * Copies the state of a point into a given array
+	 * @param point position of the point, between 0 and size()-1
+	 * @param state array of length at least dimension() to write into
+	 */
+	public void copyState(int point, double[] state);
+
+	/**
+	 * Creates an empty store of the same kind, for instance to keep other
+	 * values along with the points
+	 * @param dimension length of the states of the new store
+	 * @return the new store
+	 */
+	public SolutionStore newStore(int dimension);
+
+}
@@ -0,0 +1,128 @@
+package es.um.mned.ode;
+
+/**
+ * Counters of the work done by one solve.
+ * Each method owns its own instance and is the only one writing to it,
+ * so the counters are plain long fields: counting costs one field increment
+ * and problems shared by several threads do not mix their numbers.
+ * To add up the work of several solves, use merge.
+ */
+public class SolverStatistics {
+	private long stepEvaluations;
+	private long interpolationEvaluations;
+	private long jacobianEvaluations;
+	private long acceptedSteps;
+	private long rejectedSteps;
+	private long newtonIterations;
+	private long luDecompositions;
+	private long eventEvaluations;
+	private long interpolatorBuilds;
+
+	/*
+	 * ==================================================
+	 * Counting
+	 * ==================================================
+	 */
+
+	/**
+	 * Counts an evaluation of the derivative made to advance the solution
+	 */
+	public void addStepEvaluation() { stepEvaluations++; }
+
+	/**
+	 * Counts an evaluation of the derivative made to build an interpolator
+	 */
+	public void addInterpolationEvaluation() { interpolationEvaluations++; }
+
+	public void addJacobianEvaluation() { jacobianEvaluations++; }
+
+	public void addAcceptedStep() { acceptedSteps++; }
+
+	public void addRejectedStep() { rejectedSteps++; }
+
+	public void addNewtonIteration() { newtonIterations++; }
+
+	/**
+	 * Counts the LU decomposition of the matrix of a linear system
+	 */
+	public void addLUDecomposition() { luDecompositions++; }
+
+	/**
+	 * Counts an evaluation of the cross function of an event, including those
+	 * made while looking for its zero
+	 */
+	public void addEventEvaluation() { eventEvaluations++; }
+
+	public void addInterpolatorBuild() { interpolatorBuilds++; }
+
+	/*
+	 * ==================================================
+	 * Access
+	 * ==================================================
+	 */
+
+	public long getStepEvaluations() { return stepEvaluations; }
+
+	public long getInterpolationEvaluations() { return interpolationEvaluations; }
+
+	/**
+	 * @return total number of evaluations of the derivative, whatever the purpose
+	 */
+	public long getEvaluations() { return stepEvaluations + interpolationEvaluations; }
+
+	public long getJacobianEvaluations() { return jacobianEvaluations; }
+
+	public long getAcceptedSteps() { return acceptedSteps; }
+
+	public long getRejectedSteps() { return rejectedSteps; }
+
+	public long getNewtonIterations() { return newtonIterations; }
+
+	public long getLUDecompositions() { return luDecompositions; }
+
+	public long getEventEvaluations() { return eventEvaluations; }
+
+	public long getInterpolatorBuilds() { return interpolatorBuilds; }
+
+	/**
+	 * Adds the counters of another solve to these ones
+	 * @param other
+	 */
+	public void merge(SolverStatistics other) {
+		stepEvaluations += other.stepEvaluations;
+		interpolationEvaluations += other.interpolationEvaluations;
+		jacobianEvaluations += other.jacobianEvaluations;
+		acceptedSteps += other.acceptedSteps;
+		rejectedSteps += other.rejectedSteps;
+		newtonIterations += other.newtonIterations;
+		luDecompositions += other.luDecompositions;
+		eventEvaluations += other.eventEvaluations;
+		interpolatorBuilds += other.interpolatorBuilds;
+	}
+
+	public void reset() {
+		stepEvaluations = 0;
+		interpolationEvaluations = 0;
+		jacobianEvaluations = 0;
+		acceptedSteps = 0;
+		rejectedSteps = 0;
+		newtonIterations = 0;
+		luDecompositions = 0;
+		eventEvaluations = 0;
+		interpolatorBuilds = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Evaluations = " + getEvaluations()
+			+ " (step " + stepEvaluations + ", interpolation " + interpolationEvaluations + ")"
+			+ ", Jacobians = " + jacobianEvaluations
+			+ ", accepted steps = " + acceptedSteps
+			+ ", rejected steps = " + rejectedSteps
+			+ ", Newton iterations = " + newtonIterations
+			+ ", LU decompositions = " + luDecompositions
+			+ ", event evaluations = " + eventEvaluations
+			+ ", interpolators = " + interpolatorBuilds;
+	}
+
+}
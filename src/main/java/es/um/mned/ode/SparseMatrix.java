@@ -0,0 +1,125 @@
+package es.um.mned.ode;
+
+import java.util.Arrays;
+
+/**
+ * Square matrix stored in compressed sparse row (CSR) form, with room only for
+ * the entries of a SparsityPattern: the entries of row i are at positions
+ * getRowStart()[i] to getRowStart()[i+1]-1 of getColumns() and getValues(),
+ * in increasing order of column. Its memory grows with the non zeros, not
+ * with the square of the dimension, for the Jacobians of large sparse systems.
+ */
+public class SparseMatrix {
+
+	private final SparsityPattern mPattern;
+	private final int[] mRowStart;
+	private final int[] mColumns;
+	private final double[] mValues;
+
+	/**
+	 * Creates a matrix of zeros
+	 * @param pattern the entries that may be non zero
+	 */
+	public SparseMatrix(SparsityPattern pattern) {
+		mPattern = pattern;
+		int n = pattern.getDimension();
+		mRowStart = new int[n+1];
+		mColumns = new int[pattern.getNonZeros()];
+		mValues = new double[pattern.getNonZeros()];
+		for (int i=0; i<n; i++) {
+			int[] row = pattern.getRow(i);
+			System.arraycopy(row, 0, mColumns, mRowStart[i], row.length);
+			mRowStart[i+1] = mRowStart[i] + row.length;
+		}
+	}
+
+	public SparsityPattern getPattern() {
+		return mPattern;
+	}
+
+	public int getDimension() {
+		return mPattern.getDimension();
+	}
+
+	/**
+	 * @return where the entries of each row start, with one more element for the end of the last one.
+	 * The array must not be changed
+	 */
+	public int[] getRowStart() {
+		return mRowStart;
+	}
+
+	/**
+	 * @return the column of each entry. The array must not be changed
+	 */
+	public int[] getColumns() {
+		return mColumns;
+	}
+
+	/**
+	 * @return the value of each entry, which may be written directly
+	 */
+	public double[] getValues() {
+		return mValues;
+	}
+
+	/**
+	 * @return the position of an entry in getValues(), or -1 if it is not in the pattern
+	 */
+	public int indexOf(int row, int column) {
+		int index = Arrays.binarySearch(mColumns, mRowStart[row], mRowStart[row+1], column);
+		return index >= 0 ? index : -1;
+	}
+
+	/**
+	 * @return the value of an entry, 0 if it is not in the pattern
+	 */
+	public double get(int row, int column) {
+		int index = indexOf(row, column);
+		return index >= 0 ? mValues[index] : 0;
+	}
+
+	/**
+	 * Changes the value of an entry of the pattern
+	 * @throws IllegalArgumentException if the entry is not in the pattern
+	 */
+	public void set(int row, int column, double value) {
+		mValues[checkedIndexOf(row, column)] = value;
+	}
+
+	/**
+	 * Adds to the value of an entry of the pattern
+	 * @throws IllegalArgumentException if the entry is not in the pattern
+	 */
+	public void add(int row, int column, double value) {
+		mValues[checkedIndexOf(row, column)] += value;
+	}
+
+	private int checkedIndexOf(int row, int column) {
+		int index = indexOf(row, column);
+		if (index < 0)
+			throw new IllegalArgumentException("Entry (" + row + ", " + column + ") is not in the sparsity pattern");
+		return index;
+	}
+
+	/**
+	 * Sets all the entries to 0
+	 */
+	public void clear() {
+		Arrays.fill(mValues, 0);
+	}
+
+	/**
+	 * Computes y = A x
+	 * @param x the vector to multiply
+	 * @param y the array to write the product into, not x
+	 */
+	public void multiply(double[] x, double[] y) {
+		for (int i=0; i<y.length; i++) {
+			double sum = 0;
+			for (int k=mRowStart[i]; k<mRowStart[i+1]; k++) sum += mValues[k] * x[mColumns[k]];
+			y[i] = sum;
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package es.um.mned.ode;
+
+import java.util.Arrays;
+
+/**
+ * The positions of the entries of a Jacobian matrix that may be non zero. Besides
+ * describing the structure, it groups the columns so that no two columns of a
+ * group have a non zero in the same row (Curtis, Powell and Reid). All the columns
+ * of a group can then be approximated by finite differences with a single
+ * evaluation of the derivative, so a banded matrix of bandwidth w needs w
+ * evaluations instead of one per column.
+ * The groups are found by a greedy coloring of the columns, taking first those
+ * with more non zeros.
+ */
+public class SparsityPattern {
+
+	private final int mDimension;
+	private final int[][] mRows; // columns of the non zeros of each row, sorted
+	private final int[][] mColumns; // rows of the non zeros of each column, sorted
+	private final int mNonZeros;
+	private int[][] mGroups; // columns of each group, computed when first needed
+
+	/**
+	 * Creates a pattern from the non zeros of each row
+	 * @param dimension the number of rows and columns
+	 * @param rows rows[i] holds the columns of the non zeros of row i, in any order
+	 */
+	public SparsityPattern(int dimension, int[][] rows) {
+		if (rows.length != dimension)
+			throw new IllegalArgumentException("There must be one array of columns per row");
+		mDimension = dimension;
+		mRows = new int[dimension][];
+		int[] columnCount = new int[dimension];
+		int nonZeros = 0;
+		for (int i=0; i<dimension; i++) {
+			int[] row = rows[i].clone();
+			Arrays.sort(row);
+			for (int k=0; k<row.length; k++) {
+				if (row[k] < 0 || row[k] >= dimension)
+					throw new IllegalArgumentException("Column " + row[k] + " out of range in row " + i);
+				if (k > 0 && row[k] == row[k-1])
+					throw new IllegalArgumentException("Column " + row[k] + " repeated in row " + i);
+				columnCount[row[k]]++;
+			}
+			mRows[i] = row;
+			nonZeros += row.length;
+		}
+		mNonZeros = nonZeros;
+		mColumns = new int[dimension][];
+		for (int j=0; j<dimension; j++) mColumns[j] = new int[columnCount[j]];
+		int[] filled = new int[dimension];
+		for (int i=0; i<dimension; i++) { // rows in increasing order, so the columns come out sorted
+			for (int j : mRows[i]) mColumns[j][filled[j]++] = i;
+		}
+	}
+
+	/**
+	 * Pattern of a banded matrix
+	 * @param dimension the number of rows and columns
+	 * @param lower number of diagonals below the main one
+	 * @param upper number of diagonals above the main one
+	 * @return the pattern
+	 */
+	public static SparsityPattern banded(int dimension, int lower, int upper) {
+		int[][] rows = new int[dimension][];
+		for (int i=0; i<dimension; i++) {
+			int first = Math.max(0, i-lower), last = Math.min(dimension-1, i+upper);
+			rows[i] = new int[last-first+1];
+			for (int j=first; j<=last; j++) rows[i][j-first] = j;
+		}
+		return new SparsityPattern(dimension, rows);
+	}
+
+	public int getDimension() {
+		return mDimension;
+	}
+
+	/**
+	 * @return the number of entries that may be non zero
+	 */
+	public int getNonZeros() {
+		return mNonZeros;
+	}
+
+	/**
+	 * @param row the index of a row
+	 * @return the columns of the non zeros of the row, sorted. The array must not be changed
+	 */
+	public int[] getRow(int row) {
+		return mRows[row];
+	}
+
+	/**
+	 * @param column the index of a column
+	 * @return the rows of the non zeros of the column, sorted. The array must not be changed
+	 */
+	public int[] getColumn(int column) {
+		return mColumns[column];
+	}
+
+	/**
+	 * @return whether the entry at a row and column may be non zero
+	 */
+	public boolean contains(int row, int column) {
+		return Arrays.binarySearch(mRows[row], column) >= 0;
+	}
+
+	/**
+	 * @return the largest distance below the diagonal of a non zero, i - j
+	 */
+	public int getLowerBandwidth() {
+		int lower = 0;
+		for (int i=0; i<mDimension; i++) {
+			if (mRows[i].length > 0) lower = Math.max(lower, i - mRows[i][0]);
+		}
+		return lower;
+	}
+
+	/**
+	 * @return the largest distance above the diagonal of a non zero, j - i
+	 */
+	public int getUpperBandwidth() {
+		int upper = 0;
+		for (int i=0; i<mDimension; i++) {
+			if (mRows[i].length > 0) upper = Math.max(upper, mRows[i][mRows[i].length-1] - i);
+		}
+		return upper;
+	}
+
+	/**
+	 * The pattern of I + A, for A with this pattern
+	 * @return this pattern if it holds the whole diagonal, otherwise a new one with it added
+	 */
+	public SparsityPattern withDiagonal() {
+		boolean complete = true;
+		for (int i=0; i<mDimension && complete; i++) complete = contains(i, i);
+		if (complete) return this;
+		int[][] rows = new int[mDimension][];
+		for (int i=0; i<mDimension; i++) {
+			if (contains(i, i)) rows[i] = mRows[i];
+			else {
+				rows[i] = Arrays.copyOf(mRows[i], mRows[i].length+1);
+				rows[i][mRows[i].length] = i;
+			}
+		}
+		return new SparsityPattern(mDimension, rows);
+	}
+
+	/**
+	 * Groups of columns with no two of them having a non zero in the same row
+	 * @return the columns of each group. The arrays must not be changed
+	 */
+	public int[][] getColumnGroups() {
+		if (mGroups == null) mGroups = colorColumns();
+		return mGroups;
+	}
+
+	// Greedy coloring of the columns, those with more non zeros first
+	private int[][] colorColumns() {
+		int n = mDimension;
+		Integer[] order = new Integer[n];
+		for (int j=0; j<n; j++) order[j] = j;
+		Arrays.sort(order, (a, b) -> mColumns[b].length - mColumns[a].length);
+		int[] color = new int[n];
+		Arrays.fill(color, -1);
+		int[] forbidden = new int[n]; // forbidden[c] == j+1 if color c is taken by a neighbour of column j
+		int colors = 0;
+		for (int j : order) {
+			for (int i : mColumns[j]) {
+				for (int k : mRows[i]) {
+					if (color[k] >= 0) forbidden[color[k]] = j+1;
+				}
+			}
+			int c = 0;
+			while (forbidden[c] == j+1) c++;
+			color[j] = c;
+			colors = Math.max(colors, c+1);
+		}
+		int[] size = new int[colors];
+		for (int j=0; j<n; j++) size[color[j]]++;
+		int[][] groups = new int[colors][];
+		for (int c=0; c<colors; c++) groups[c] = new int[size[c]];
+		int[] filled = new int[colors];
+		for (int j=0; j<n; j++) groups[color[j]][filled[color[j]]++] = j;
+		return groups;
+	}
+
+	@Override
+	public String toString() {
+		return "Sparsity pattern of dimension " + mDimension + " with " + mNonZeros + " non zeros in "
+			+ getColumnGroups().length + " column groups";
+	}
+
+}
@@ -0,0 +1,95 @@
+package es.um.mned.ode;
+
+/**
+ * Storage that keeps only the last few points of a NumericalSolution.
+ * Points are numbered from the oldest one kept: after n points have been added,
+ * size() is the least of n and the capacity, and once the window is full each
+ * new point moves the others one position back. Memory stays constant, and no
+ * counter grows, however long the integration is.
+ */
+public class WindowSolutionStore implements SolutionStore {
+
+	private final int dimension;
+	private final int capacity;
+	private final double[] times;
+	private final double[] states;
+	private int next; // slot of the next point, cycling through the capacity
+	private int size; // number of points kept, at most the capacity
+	private boolean forgotten;
+
+	/**
+	 * Creates an empty store
+	 * @param dimension length of the states to store
+	 * @param capacity number of points kept
+	 */
+	public WindowSolutionStore(int dimension, int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("The window must keep at least one point");
+		this.dimension = dimension;
+		this.capacity = capacity;
+		times = new double[capacity];
+		states = new double[capacity * dimension];
+		next = 0;
+		size = 0;
+	}
+
+	@Override
+	public void add(double time, double[] state) {
+		times[next] = time;
+		System.arraycopy(state, 0, states, next * dimension, dimension);
+		next = next + 1 == capacity ? 0 : next + 1;
+		if (size < capacity) size++;
+		else forgotten = true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int dimension() {
+		return dimension;
+	}
+
+	/**
+	 * @return number of points kept
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return true if some point has been forgotten to make room for a new one
+	 */
+	public boolean hasForgottenPoints() {
+		return forgotten;
+	}
+
+	private int slot(int point) {
+		if (point < 0 || point >= size)
+			throw new IndexOutOfBoundsException("Point "+point+" is not kept, kept points: [0,"+size+")");
+		int slot = next - size + point;
+		return slot < 0 ? slot + capacity : slot;
+	}
+
+	@Override
+	public double getTime(int point) {
+		return times[slot(point)];
+	}
+
+	@Override
+	public double getState(int point, int index) {
+		return states[slot(point) * dimension + index];
+	}
+
+	@Override
+	public void copyState(int point, double[] state) {
+		System.arraycopy(states, slot(point) * dimension, state, 0, dimension);
+	}
+
+	@Override
+	public SolutionStore newStore(int dimension) {
+		return new WindowSolutionStore(dimension, capacity);
+	}
+
+}
@@ -23,15 +23,20 @@ public class ArenstorfOrbits extends InitialValueProblem {
 	}
     
     public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[4];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
     	super.addToEvaluationCounter();
         double D1 = Math.pow((x[0]+sMu)*(x[0]+sMu) + x[2]*x[2],1.5);
         double D2 = Math.pow((x[0]-sMuPrime)*(x[0]-sMuPrime) + x[2]*x[2],1.5);
-        return new double[] { 
-            x[1], 
-            x[0] + 2*x[3] - sMuPrime*(x[0]+sMu)/D1 - sMu*(x[0]-sMuPrime)/D2,
-            x[3], 
-            x[2] - 2*x[1] - sMuPrime*x[2]/D1 - sMu*x[2]/D2,
-        };
+        derivative[0] = x[1];
+        derivative[1] = x[0] + 2*x[3] - sMuPrime*(x[0]+sMu)/D1 - sMu*(x[0]-sMuPrime)/D2;
+        derivative[2] = x[3];
+        derivative[3] = x[2] - 2*x[1] - sMuPrime*x[2]/D1 - sMu*x[2]/D2;
     }
     
 }
@@ -0,0 +1,126 @@
+package es.um.mned.problems;
+
+import es.um.mned.ode.*;
+
+/**
+ * Brusselator reaction with diffusion in one dimension, discretized by lines at
+ * N interior points x_i = i/(N+1), a stiff problem of 2N components as in
+ * Hairer and Wanner:
+ * <pre>
+ *   u_i' = 1 + u_i^2*v_i - 4*u_i + alpha*(N+1)^2*(u_(i-1) - 2*u_i + u_(i+1))
+ *   v_i' = 3*u_i - u_i^2*v_i + alpha*(N+1)^2*(v_(i-1) - 2*v_i + v_(i+1))
+ * </pre>
+ * with u = 1 and v = 3 at both ends and alpha = 1/50. The state is ordered
+ * u_1, v_1, u_2, v_2, ... so that the Jacobian is banded, with two diagonals
+ * on each side.
+ */
+public class Brusselator1D extends ExtendedInitialValueProblem {
+
+    private static final double ALPHA = 1.0/50.0;
+    private static final double U_END = 1, V_END = 3;
+
+    private final int mPoints;
+    private final double mDiffusion;
+
+    // ------------------
+    // Implementation of ExtendedInitialValueProblem
+    // ------------------
+
+    /**
+     * The problem started at u_i = 1 + sin(2*pi*x_i), v_i = 3
+     * @param t0 the initial time
+     * @param points the number N of interior points
+     */
+    public Brusselator1D(double t0, int points) {
+    	this(t0, initialState(points));
+    }
+
+    public Brusselator1D(double t0, double[] x0) {
+		super(t0, x0);
+		mPoints = x0.length / 2;
+		mDiffusion = ALPHA * (mPoints+1) * (mPoints+1);
+	}
+
+    private static double[] initialState(int points) {
+    	double[] x0 = new double[2*points];
+    	for (int i=0; i<points; i++) {
+    		x0[2*i] = 1 + Math.sin(2*Math.PI*(i+1)/(points+1));
+    		x0[2*i+1] = 3;
+    	}
+    	return x0;
+    }
+    
+    public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[x.length];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
+    	super.addToEvaluationCounter();
+    	int n = mPoints;
+    	for (int i=0; i<n; i++) {
+    		double u = x[2*i], v = x[2*i+1];
+    		double uLeft  = (i == 0)   ? U_END : x[2*i-2];
+    		double vLeft  = (i == 0)   ? V_END : x[2*i-1];
+    		double uRight = (i == n-1) ? U_END : x[2*i+2];
+    		double vRight = (i == n-1) ? V_END : x[2*i+3];
+    		double uuv = u * u * v;
+    		derivative[2*i]   = 1 + uuv - 4*u + mDiffusion * (uLeft - 2*u + uRight);
+    		derivative[2*i+1] = 3*u - uuv + mDiffusion * (vLeft - 2*v + vRight);
+    	}
+    }
+    
+    @Override
+    public void getJacobian(double t, double[] x, double[][] jacobian) {
+    	int n = mPoints;
+    	for (double[] row : jacobian) java.util.Arrays.fill(row, 0);
+    	for (int i=0; i<n; i++) {
+    		double u = x[2*i], v = x[2*i+1];
+    		double[] rowU = jacobian[2*i], rowV = jacobian[2*i+1];
+    		rowU[2*i]   = 2*u*v - 4 - 2*mDiffusion;
+    		rowU[2*i+1] = u*u;
+    		rowV[2*i]   = 3 - 2*u*v;
+    		rowV[2*i+1] = -u*u - 2*mDiffusion;
+    		if (i > 0) {
+    			rowU[2*i-2] = mDiffusion;
+    			rowV[2*i-1] = mDiffusion;
+    		}
+    		if (i < n-1) {
+    			rowU[2*i+2] = mDiffusion;
+    			rowV[2*i+3] = mDiffusion;
+    		}
+    	}
+    }
+    
+    @Override
+    public void getJacobian(double t, double[] x, SparseMatrix jacobian) {
+    	int n = mPoints;
+    	for (int i=0; i<n; i++) {
+    		double u = x[2*i], v = x[2*i+1];
+    		jacobian.set(2*i, 2*i,     2*u*v - 4 - 2*mDiffusion);
+    		jacobian.set(2*i, 2*i+1,   u*u);
+    		jacobian.set(2*i+1, 2*i,   3 - 2*u*v);
+    		jacobian.set(2*i+1, 2*i+1, -u*u - 2*mDiffusion);
+    		if (i > 0) {
+    			jacobian.set(2*i, 2*i-2,   mDiffusion);
+    			jacobian.set(2*i+1, 2*i-1, mDiffusion);
+    		}
+    		if (i < n-1) {
+    			jacobian.set(2*i, 2*i+2,   mDiffusion);
+    			jacobian.set(2*i+1, 2*i+3, mDiffusion);
+    		}
+    	}
+    }
+    
+    @Override
+    public SparsityPattern getSparsityPattern() {
+    	return SparsityPattern.banded(2*mPoints, 2, 2);
+    }
+
+    // ------------------
+    // End of implementation of ExtendedInitialValueProblem
+    // ------------------
+
+}
@@ -25,14 +25,19 @@ public class ParabolicThrowWithFriction extends InitialValueProblem {
     // ------------------
 
     public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[4];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
     	super.addToEvaluationCounter();
         double speed = Math.sqrt(x[1]*x[1]+x[3]*x[3]);
-        return new double[] { 
-        		x[1],
-        		-constant * x[1] * speed, 
-                x[3],
-                -constant * x[3] * speed - mGravity
-                };
+        derivative[0] = x[1];
+        derivative[1] = -constant * x[1] * speed;
+        derivative[2] = x[3];
+        derivative[3] = -constant * x[3] * speed - mGravity;
     }
 
     // ------------------
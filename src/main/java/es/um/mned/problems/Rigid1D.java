@@ -23,16 +23,26 @@ public class Rigid1D extends ExtendedInitialValueProblem {
 	}
     
     public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[1];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
     	super.addToEvaluationCounter();
-        return new double[] { 
-        	5 * Math.exp(5*t) * (x[0]-t) * (x[0]-t) + 1
-        };
+    	derivative[0] = 5 * Math.exp(5*t) * (x[0]-t) * (x[0]-t) + 1;
     }
     
     public double[] getDerivativeDY(double t, double[] x) {
-    	return new double[] {
-    		10 * Math.exp(5*t) * (x[0] - t)
-    	};
+    	double[] derivative = new double[1];
+    	getDerivativeDY(t, x, derivative);
+    	return derivative;
+    }
+    
+    @Override
+    public void getDerivativeDY(double t, double[] x, double[] derivative) {
+    	derivative[0] = 10 * Math.exp(5*t) * (x[0] - t);
     }
 
     // ------------------
@@ -0,0 +1,59 @@
+package es.um.mned.problems;
+
+import es.um.mned.ode.*;
+
+/**
+ * Robertson's chemical reaction, a classic stiff problem of three components
+ * whose rate constants range from 0.04 to 3e7:
+ * <pre>
+ *   y1' = -0.04*y1 + 1e4*y2*y3
+ *   y2' =  0.04*y1 - 1e4*y2*y3 - 3e7*y2^2
+ *   y3' =  3e7*y2^2
+ * </pre>
+ * usually started at (1, 0, 0)
+ */
+public class Robertson extends ExtendedInitialValueProblem {
+
+    private static final double K1 = 0.04, K2 = 3.0e7, K3 = 1.0e4;
+
+    // ------------------
+    // Implementation of ExtendedInitialValueProblem
+    // ------------------
+
+    public Robertson(double t0, double[] x0) {
+		super(t0, x0);
+	}
+    
+    public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[3];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
+    	super.addToEvaluationCounter();
+    	double r1 = K1 * x[0], r2 = K2 * x[1] * x[1], r3 = K3 * x[1] * x[2];
+    	derivative[0] = -r1 + r3;
+    	derivative[1] = r1 - r3 - r2;
+    	derivative[2] = r2;
+    }
+    
+    @Override
+    public void getJacobian(double t, double[] x, double[][] jacobian) {
+    	jacobian[0][0] = -K1;
+    	jacobian[0][1] = K3 * x[2];
+    	jacobian[0][2] = K3 * x[1];
+    	jacobian[1][0] = K1;
+    	jacobian[1][1] = -K3 * x[2] - 2 * K2 * x[1];
+    	jacobian[1][2] = -K3 * x[1];
+    	jacobian[2][0] = 0;
+    	jacobian[2][1] = 2 * K2 * x[1];
+    	jacobian[2][2] = 0;
+    }
+
+    // ------------------
+    // End of implementation of ExtendedInitialValueProblem
+    // ------------------
+
+}
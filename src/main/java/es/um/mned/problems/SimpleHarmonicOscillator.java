@@ -43,10 +43,16 @@ public class SimpleHarmonicOscillator extends InitialValueProblem {
 
     
     public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[2];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
         super.addToEvaluationCounter();
-        return new double[] { x[1], 
-                              -k/m * (x[0]-l) - b/m*x[1] + force(t)/m, 
-                              };
+        derivative[0] = x[1];
+        derivative[1] = -k/m * (x[0]-l) - b/m*x[1] + force(t)/m;
     }
 
     
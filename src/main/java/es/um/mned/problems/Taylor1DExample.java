@@ -24,7 +24,14 @@ public class Taylor1DExample extends InitialValueProblem {
     // ------------------
     
     public double[] getDerivative(double t, double[] y) {
-        return new double[] { y[0]-t*t+1 };
+        double[] derivative = new double[1];
+        getDerivative(t, y, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] y, double[] derivative) {
+        derivative[0] = y[0]-t*t+1;
     }
     
     // ------------------
@@ -23,10 +23,19 @@ public class TwoBodyProblem extends InitialValueProblem {
 	}
     
     public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[4];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+    
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
     	super.addToEvaluationCounter();
         double div  = Math.pow(x[0]*x[0]+x[2]*x[2],1.5);
-        return new double[] { x[1], -mConstant * x[0] / div, 
-                              x[3], -mConstant * x[2] / div };
+        derivative[0] = x[1];
+        derivative[1] = -mConstant * x[0] / div;
+        derivative[2] = x[3];
+        derivative[3] = -mConstant * x[2] / div;
     }
 
     // ------------------
@@ -0,0 +1,53 @@
+package es.um.mned.problems;
+
+import es.um.mned.ode.*;
+
+/**
+ * Van der Pol oscillator with a large parameter mu:
+ * <pre>
+ *   y1' = y2
+ *   y2' = mu*(1 - y1^2)*y2 - y1
+ * </pre>
+ * usually started at (2, 0). For large mu the solution alternates slow stretches,
+ * which are stiff, with fast jumps, which are not.
+ */
+public class VanDerPol extends ExtendedInitialValueProblem {
+
+    private final double mMu;
+
+    // ------------------
+    // Implementation of ExtendedInitialValueProblem
+    // ------------------
+
+    public VanDerPol(double t0, double[] x0, double mu) {
+		super(t0, x0);
+		mMu = mu;
+	}
+
+    public double[] getDerivative(double t, double[] x) {
+        double[] derivative = new double[2];
+        getDerivative(t, x, derivative);
+        return derivative;
+    }
+
+    @Override
+    public void getDerivative(double t, double[] x, double[] derivative) {
+    	super.addToEvaluationCounter();
+    	double y1 = x[0], y2 = x[1];
+    	derivative[0] = y2;
+    	derivative[1] = mMu * (1 - y1*y1) * y2 - y1;
+    }
+
+    @Override
+    public void getJacobian(double t, double[] x, double[][] jacobian) {
+    	jacobian[0][0] = 0;
+    	jacobian[0][1] = 1;
+    	jacobian[1][0] = -2 * mMu * x[0] * x[1] - 1;
+    	jacobian[1][1] = mMu * (1 - x[0] * x[0]);
+    }
+
+    // ------------------
+    // End of implementation of ExtendedInitialValueProblem
+    // ------------------
+
+}
@@ -0,0 +1,86 @@
+package es.um.mned.scripts;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.InitialValueProblem;
+import es.um.mned.problems.ArenstorfOrbits;
+import es.um.mned.problems.TwoBodyProblem;
+
+/**
+ * Compares the evaluations needed for a given accuracy by the Adams method of
+ * variable order, the predictor-corrector of order 4, Dormand-Prince 5(4) and
+ * DOP853, with tolerances on the error of each step relative to the state. The
+ * error is measured at the end of one period against the initial state for the
+ * Arenstorf orbit, and against a much tighter DOP853 solve for the two body problem.
+ */
+public class AdamsBenchmark {
+
+	private interface MethodFactory {
+		AdaptiveStepMethod create(InitialValueProblem problem, double tolerance);
+	}
+
+	private interface ProblemFactory {
+		InitialValueProblem create();
+	}
+
+	public static void main(String[] args) {
+		double[] arenstorfState = { 0.994, 0.0, 0.0, -2.00158510637908252240537862224 };
+		double[] earthState = { 152.100533, 0.0, 0.0, 0.105444 }; // x,vx,y,vy
+		double[] tolerances = { 1e-6, 1e-8, 1e-10, 1e-12 };
+
+		System.out.println("Arenstorf orbit, one period");
+		benchmark(() -> new ArenstorfOrbits(0., Arrays.copyOf(arenstorfState, 4)),
+				arenstorfState, ArenstorfOrbits.PERIOD, 1e-3, tolerances);
+
+		double earthPeriod = 365.25 * 24; // hours
+		System.out.println("Two body problem, one year");
+		benchmark(() -> new TwoBodyProblem(0., Arrays.copyOf(earthState, 4)),
+				null, earthPeriod, 10, tolerances);
+	}
+
+	private static void benchmark(ProblemFactory problems, double[] exactFinalState,
+			double finalTime, double step, double[] tolerances) {
+		if (exactFinalState == null) {
+			AdaptiveStepDOP853Method reference = new AdaptiveStepDOP853Method(problems.create(), step,
+					Optional.of(1e-14), Optional.of(step * 1e-12), Optional.empty());
+			reference.setErrorNorm(new ErrorNorm(ErrorNorm.Type.RMS, 1e-15, 1e-15));
+			try {
+				exactFinalState = reference.solve(finalTime).getState(finalTime);
+			} catch (ConvergenceException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+		final double[] exact = exactFinalState;
+		String[] names = { "Adams", "PredictorCorrector4", "DormandPrince", "DOP853" };
+		MethodFactory[] methods = {
+				(p, tol) -> new AdaptiveStepAdamsMethod(p, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty()),
+				(p, tol) -> new AdaptiveStepPredictorCorrector4Method(p, step, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty()),
+				(p, tol) -> new AdaptiveStepDormandPrinceMethod(p, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty()),
+				(p, tol) -> new AdaptiveStepDOP853Method(p, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty()) };
+
+		System.out.printf("%-8s %-20s %10s %10s %12s%n", "tol", "method", "steps", "evals", "error");
+		for (double tolerance : tolerances) {
+			for (int m = 0; m < methods.length; m++) {
+				AdaptiveStepMethod method = methods[m].create(problems.create(), tolerance);
+				method.setErrorNorm(new ErrorNorm(ErrorNorm.Type.RMS, tolerance, tolerance));
+				try {
+					method.solve(finalTime);
+				} catch (ConvergenceException e) {
+					System.out.printf("%-8.0e %-20s did not converge%n", tolerance, names[m]);
+					continue;
+				}
+				double[] finalState = method.getSolution().getState(finalTime);
+				double error = 0;
+				for (int i = 0; i < finalState.length; i++)
+					error = Math.max(error, Math.abs(finalState[i] - exact[i]));
+				System.out.printf("%-8.0e %-20s %10d %10d %12.3e%n", tolerance, names[m],
+						method.getStatistics().getAcceptedSteps(), method.getStatistics().getEvaluations(), error);
+			}
+		}
+	}
+
+}
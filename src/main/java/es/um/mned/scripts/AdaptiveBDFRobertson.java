@@ -0,0 +1,41 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.*;
+import es.um.mned.problems.Robertson;
+
+/**
+ * Solves the Robertson problem with the BDF method of variable step and order,
+ * for several tolerances up to t = 40, and then up to t = 4e10 as in Hairer and Wanner
+ */
+public class AdaptiveBDFRobertson {
+
+	public static void main(String[] args) throws Exception {
+		double[] x0 = new double[] { 1, 0, 0 };
+		double[] reference = new double[] { 0.7158270687, 9.185534764e-6, 0.2841637457 };
+		double maxTime = 40;
+		for (double rtol : new double[] { 1e-4, 1e-6, 1e-8 }) {
+			AdaptiveStepBDFMethod method = new AdaptiveStepBDFMethod(new Robertson(0, x0), Optional.of(rtol), Optional.empty(), Optional.empty());
+			// y2 is of order 1e-5, so it needs a much smaller absolute tolerance
+			method.setErrorNorm(new ErrorNorm(ErrorNorm.Type.RMS, new double[] { rtol*1e-2, rtol*1e-6, rtol*1e-2 }, new double[] { rtol }));
+			method.solve(maxTime);
+			double[] state = method.getSolution().getState(maxTime);
+			double error = 0;
+			for (int i=0; i<state.length; i++) error = Math.max(error, Math.abs(state[i]-reference[i]) / reference[i]);
+			System.out.printf("rtol %.0e: relative error %.2e, order %d at the end%n", rtol, error, method.getOrder());
+			System.out.println("  " + method.getStatistics());
+		}
+
+		maxTime = 4e10;
+		AdaptiveStepBDFMethod method = new AdaptiveStepBDFMethod(new Robertson(0, x0), Optional.of(1e-6), Optional.empty(), Optional.empty());
+		method.setErrorNorm(new ErrorNorm(ErrorNorm.Type.RMS, new double[] { 1e-8, 1e-14, 1e-8 }, new double[] { 1e-6 }));
+		method.solve(maxTime);
+		NumericalSolutionPoint last = method.getSolution().getLastPoint();
+		double[] state = last.getState();
+		System.out.println("y(" + last.getTime() + ") = " + state[0] + ", " + state[1] + ", " + state[2]);
+		System.out.println("  " + method.getStatistics());
+		System.out.println("  " + method.getSimplifiedNewton());
+	}
+}
@@ -0,0 +1,48 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.*;
+import es.um.mned.problems.SimpleHarmonicOscillator;
+import es.um.mned.problems.VanDerPol;
+
+/**
+ * Solves the simple harmonic oscillator, whose exact solution is known, and the
+ * Van der Pol oscillator with mu = 1, against Radau IIA at a much tighter tolerance,
+ * with the BDF method and its default error norm, from loose to tight tolerances.
+ * The Jacobian of the oscillator is approximated by finite differences, the one
+ * of Van der Pol is analytic.
+ */
+public class AdaptiveBDFTolerances {
+
+	public static void main(String[] args) throws Exception {
+		double maxTime = 10;
+		AdaptiveStepRadauIIAMethod reference = new AdaptiveStepRadauIIAMethod(
+				new VanDerPol(0, new double[] { 2, 0 }, 1), Optional.of(1e-12), Optional.empty(), Optional.empty());
+		reference.solve(maxTime);
+		double[] vanDerPol = reference.getSolution().getState(maxTime);
+
+		for (double tol : new double[] { 1e-4, 1e-6, 1e-8, 1e-10 }) {
+			SimpleHarmonicOscillator oscillator = new SimpleHarmonicOscillator(0, new double[] { 1.5, 0 }, 1, 1, 1, 0, 0, 1.3);
+			report("oscillator", tol, oscillator, oscillator.getTrueSol().getState(maxTime), maxTime);
+			report("Van der Pol", tol, new VanDerPol(0, new double[] { 2, 0 }, 1), vanDerPol, maxTime);
+		}
+	}
+
+	private static void report(String name, double tol, InitialValueProblem problem, double[] exact, double maxTime) {
+		AdaptiveStepBDFMethod method = new AdaptiveStepBDFMethod(problem, Optional.of(tol), Optional.empty(), Optional.empty());
+		try {
+			method.solve(maxTime);
+		} catch (ConvergenceException e) {
+			System.out.printf("%-12s tol %.0e: failed at t = %g, %s%n", name, tol,
+					method.getSolution().getLastPoint().getTime(), e.getMessage());
+			return;
+		}
+		double[] state = method.getSolution().getState(maxTime);
+		double error = 0;
+		for (int i=0; i<state.length; i++) error = Math.max(error, Math.abs(state[i]-exact[i]));
+		System.out.printf("%-12s tol %.0e: error %.2e, order %d at the end%n", name, tol, error, method.getOrder());
+		System.out.println("  " + method.getStatistics());
+	}
+}
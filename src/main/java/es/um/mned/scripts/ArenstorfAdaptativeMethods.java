@@ -55,6 +55,8 @@ public class ArenstorfAdaptativeMethods {
 //        FixedStepMethod method = new AdaptiveStepPredictorCorrector4Method(problem,hStep, Optional.of(tolerance), Optional.empty(), Optional.of(yCross));
         FixedStepMethod method = new AdaptiveStepRKFehlbergMethod(problem,hStep, Optional.of(tolerance), Optional.empty(), Optional.of(yCross));
 //        FixedStepMethod method = new AdaptiveStepRK4Method(problem,hStep, Optional.of(tolerance), Optional.empty(), Optional.of(yCross));
+//        FixedStepMethod method = new AdaptiveStepDormandPrinceMethod(problem,hStep, Optional.of(tolerance), Optional.empty(), Optional.of(yCross));
+//        FixedStepMethod method = new AdaptiveStepExplicitRungeKuttaMethod(problem,hStep, ButcherTableau.DORMAND_PRINCE_54, Optional.of(tolerance), Optional.empty(), Optional.of(yCross));
 //        FixedStepMethod method = new FixedStepModifiedEulerMethod(problem, 1e-6, Optional.of(yCross));
         
         
@@ -0,0 +1,99 @@
+package es.um.mned.scripts;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.InitialValueProblem;
+import es.um.mned.problems.ArenstorfOrbits;
+import es.um.mned.problems.TwoBodyProblem;
+
+/**
+ * Compares the steps, evaluations and time taken by Runge-Kutta-Fehlberg,
+ * Dormand-Prince 5(4) and DOP853 at tight tolerances. The error is measured
+ * at the end of one period against the initial state for the Arenstorf orbit,
+ * and against a much tighter DOP853 solve for the two body problem.
+ */
+public class DOP853Benchmark {
+
+	private static final int REPETITIONS = 5; // the best time is reported
+
+	private interface MethodFactory {
+		AdaptiveStepMethod create(InitialValueProblem problem, double tolerance);
+	}
+
+	private interface ProblemFactory {
+		InitialValueProblem create();
+	}
+
+	public static void main(String[] args) {
+		double[] arenstorfState = { 0.994, 0.0, 0.0, -2.00158510637908252240537862224 };
+		double[] earthState = { 152.100533, 0.0, 0.0, 0.105444 }; // x,vx,y,vy
+		// Tighter tolerances are not reachable: the tolerance is on the error per unit
+		// step, and the round-off in the error estimates makes the steps collapse
+		double[] tolerances = { 1e-9, 1e-10, 1e-11, 1e-12 };
+
+		System.out.println("Arenstorf orbit, one period");
+		benchmark(() -> new ArenstorfOrbits(0., Arrays.copyOf(arenstorfState, 4)),
+				arenstorfState, ArenstorfOrbits.PERIOD, 1e-3, tolerances);
+
+		double earthPeriod = 365.25 * 24; // hours
+		System.out.println("Two body problem, one year");
+		benchmark(() -> new TwoBodyProblem(0., Arrays.copyOf(earthState, 4)),
+				null, earthPeriod, 10, tolerances);
+	}
+
+	private static void benchmark(ProblemFactory problems, double[] exactFinalState,
+			double finalTime, double step, double[] tolerances) {
+		if (exactFinalState == null) {
+			// Reference from DOP853 well below the tolerances compared
+			AdaptiveStepDOP853Method reference = new AdaptiveStepDOP853Method(problems.create(), step,
+					Optional.of(1e-14), Optional.of(step * 1e-12), Optional.empty());
+			try {
+				exactFinalState = reference.solve(finalTime).getState(finalTime);
+			} catch (ConvergenceException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+		final double[] exact = exactFinalState;
+		String[] names = { "RKFehlberg", "DormandPrince", "DOP853", "DOP853 (no dense)" };
+		MethodFactory[] methods = {
+				(p, tol) -> new AdaptiveStepRKFehlbergMethod(p, step, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty()),
+				(p, tol) -> new AdaptiveStepDormandPrinceMethod(p, step, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty()),
+				(p, tol) -> new AdaptiveStepDOP853Method(p, step, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty()),
+				(p, tol) -> {
+					AdaptiveStepDOP853Method method = new AdaptiveStepDOP853Method(p, step, Optional.of(tol), Optional.of(step * 1e-12), Optional.empty());
+					method.setDenseOutput(false);
+					return method;
+				} };
+
+		System.out.printf("%-8s %-18s %10s %10s %10s %12s%n", "tol", "method", "steps", "evals", "ms", "error");
+		for (double tolerance : tolerances) {
+			for (int m = 0; m < methods.length; m++) {
+				long best = Long.MAX_VALUE;
+				AdaptiveStepMethod method = null;
+				try {
+					for (int r = 0; r < REPETITIONS; r++) {
+						method = methods[m].create(problems.create(), tolerance);
+						long start = System.nanoTime();
+						method.solve(finalTime);
+						best = Math.min(best, System.nanoTime() - start);
+					}
+				} catch (ConvergenceException e) {
+					System.out.printf("%-8.0e %-18s did not converge%n", tolerance, names[m]);
+					continue;
+				}
+				double[] finalState = method.getSolution().getState(finalTime);
+				double error = 0;
+				for (int i = 0; i < finalState.length; i++)
+					error = Math.max(error, Math.abs(finalState[i] - exact[i]));
+				System.out.printf("%-8.0e %-18s %10d %10d %10.2f %12.3e%n", tolerance, names[m],
+						method.getStatistics().getAcceptedSteps(), method.getStatistics().getEvaluations(),
+						best / 1e6, error);
+			}
+		}
+	}
+
+}
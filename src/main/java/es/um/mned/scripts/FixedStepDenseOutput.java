@@ -0,0 +1,45 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.interpolation.StateFunction;
+import es.um.mned.methods.*;
+import es.um.mned.ode.*;
+import es.um.mned.problems.SimpleHarmonicOscillator;
+
+/**
+ * Compares the error of the dense output of the fixed step methods given by a
+ * Butcher tableau with their error at the steps, on the simple harmonic oscillator.
+ * Dormand-Prince uses its last stage, the derivative at the end of the step, in
+ * its dense output, so it checks that the stage of the step and not that of the
+ * previous one is used: both errors should be of the same order.
+ */
+public class FixedStepDenseOutput {
+
+	public static void main(String[] args) throws ConvergenceException {
+		double step = 0.1, maxTime = 10;
+		ButcherTableau[] tableaus = { ButcherTableau.RUNGE_KUTTA_4, ButcherTableau.DORMAND_PRINCE_54 };
+		for (ButcherTableau tableau : tableaus) {
+			SimpleHarmonicOscillator problem = new SimpleHarmonicOscillator(0, new double[] { 1.5, 0 }, 1, 1, 1, 0, 0, 1.3);
+			StateFunction exact = problem.getTrueSol();
+			FixedStepExplicitRungeKuttaMethod method = new FixedStepExplicitRungeKuttaMethod(problem, step, tableau, Optional.empty());
+			NumericalSolution solution = method.solve(maxTime);
+			double nodeError = 0, denseError = 0;
+			for (int n=0; n*step < maxTime; n++) {
+				nodeError = Math.max(nodeError, error(solution.getState(n*step), exact.getState(n*step)));
+				for (double theta : new double[] { 0.25, 0.5, 0.75 }) {
+					double time = (n+theta)*step;
+					denseError = Math.max(denseError, error(solution.getState(time), exact.getState(time)));
+				}
+			}
+			System.out.printf("%-28s error at the steps %.2e, of the dense output %.2e%n", tableau.getName(), nodeError, denseError);
+		}
+	}
+
+	private static double error(double[] state, double[] exact) {
+		double error = 0;
+		for (int i=0; i<state.length; i++) error = Math.max(error, Math.abs(state[i]-exact[i]));
+		return error;
+	}
+
+}
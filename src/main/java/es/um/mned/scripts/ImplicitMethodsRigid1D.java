@@ -21,9 +21,9 @@ public class ImplicitMethodsRigid1D {
         ExtendedInitialValueProblem problem = new Rigid1D(t0, x0);
         
         // Methods
-//        FixedStepBackwardsEulerNewton1DMethod method = new FixedStepBackwardsEulerNewton1DMethod(problem, hStep, Optional.empty());
-//        FixedStepTrapezoidalNewton1DMethod method = new FixedStepTrapezoidalNewton1DMethod(problem, hStep, Optional.empty());
-        FixedStepBDFNewton1DMethod method = new FixedStepBDFNewton1DMethod(problem, 3, hStep, Optional.empty());
+//        FixedStepBackwardsEulerNewtonMethod method = new FixedStepBackwardsEulerNewtonMethod(problem, hStep, Optional.empty());
+//        FixedStepTrapezoidalNewtonMethod method = new FixedStepTrapezoidalNewtonMethod(problem, hStep, Optional.empty());
+        FixedStepBDFNewtonMethod method = new FixedStepBDFNewtonMethod(problem, 3, hStep, Optional.empty());
 //        FixedStepMethod method = new FixedStepPredictorCorrector4Method(problem, hStep, Optional.empty());
 //        FixedStepMethod method = new AdaptiveStepRKFehlbergMethod(problem, hStep, Optional.of(tolerance), Optional.empty(), Optional.empty());
         
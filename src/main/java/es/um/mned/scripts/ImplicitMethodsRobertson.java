@@ -0,0 +1,47 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.*;
+import es.um.mned.problems.Robertson;
+
+public class ImplicitMethodsRobertson {
+
+	public static void main(String[] args) throws Exception {
+		// Params
+		double maxTime = 40;
+		double tolerance = 1e-10;
+		double hStep = 1e-2;
+		
+		double t0 = 0.;
+		double[] x0 = new double[] { 1, 0, 0 };
+		
+		// Problem
+        ExtendedInitialValueProblem problem = new Robertson(t0, x0);
+        
+        // Methods
+//        FixedStepBackwardsEulerNewtonMethod method = new FixedStepBackwardsEulerNewtonMethod(problem, hStep, Optional.empty());
+//        FixedStepTrapezoidalNewtonMethod method = new FixedStepTrapezoidalNewtonMethod(problem, hStep, Optional.empty());
+        FixedStepBDFNewtonMethod method = new FixedStepBDFNewtonMethod(problem, 3, hStep, Optional.empty());
+        
+        method.setNewtonTolerance(tolerance);
+//        method.setSimplifiedNewton(true); // keep the Jacobian and its factorization between steps
+//        method.setFiniteDifferenceJacobian(true); // approximate the Jacobian instead of using that of the problem
+        
+        try {
+			method.solve(maxTime);
+		} catch (ConvergenceException e) {
+			e.printStackTrace();
+			System.exit(0);
+		}
+
+        // Reference values at t = 40 from Hairer and Wanner
+        double[] state = method.getSolution().getState(maxTime);
+        System.out.println("y(40) = " + state[0] + ", " + state[1] + ", " + state[2]);
+        System.out.println("Reference 0.7158270687, 9.185534764e-6, 0.2841637457");
+        System.out.println("Sum = " + (state[0] + state[1] + state[2]));
+        System.out.println(method.getStatistics());
+        if (method.getSimplifiedNewton() != null) System.out.println(method.getSimplifiedNewton());
+	}
+}
@@ -0,0 +1,54 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.*;
+import es.um.mned.problems.Robertson;
+
+/**
+ * Compares the Radau IIA method of order 5 with RODAS4 and the BDF method of
+ * variable order on the Robertson problem up to t = 40, from moderate to
+ * stringent tolerances
+ */
+public class RadauRobertson {
+
+	public static void main(String[] args) throws ConvergenceException {
+		double[] x0 = new double[] { 1, 0, 0 };
+		double[] reference = new double[] { 0.7158270687, 9.185534764e-6, 0.2841637457 };
+		double maxTime = 40;
+		for (double rtol : new double[] { 1e-4, 1e-6, 1e-8 }) {
+			System.out.printf("rtol %.0e%n", rtol);
+			for (int k=0; k<3; k++) {
+				AdaptiveStepMethod method;
+				String name;
+				if (k == 0) {
+					method = new AdaptiveStepRadauIIAMethod(new Robertson(0, x0), Optional.of(rtol), Optional.empty(), Optional.empty());
+					name = "Radau5";
+				}
+				else if (k == 1) {
+					AdaptiveStepRosenbrockMethod rosenbrock = new AdaptiveStepRosenbrockMethod(new Robertson(0, x0), RosenbrockTableau.RODAS4, Optional.of(rtol), Optional.empty(), Optional.empty());
+					rosenbrock.setAutonomous(true);
+					method = rosenbrock;
+					name = "RODAS4";
+				}
+				else {
+					method = new AdaptiveStepBDFMethod(new Robertson(0, x0), Optional.of(rtol), Optional.empty(), Optional.empty());
+					name = "BDF";
+				}
+				method.setErrorNorm(new ErrorNorm(ErrorNorm.Type.RMS, new double[] { rtol*1e-2, rtol*1e-6, rtol*1e-2 }, new double[] { rtol }));
+				long start = System.nanoTime();
+				method.solve(maxTime);
+				long time = System.nanoTime() - start;
+				double[] state = method.getSolution().getState(maxTime);
+				double error = 0;
+				for (int i=0; i<state.length; i++) error = Math.max(error, Math.abs(state[i]-reference[i]) / reference[i]);
+				SolverStatistics statistics = method.getStatistics();
+				System.out.printf("  %-7s %7.1f ms, relative error %.2e, steps %5d, evaluations %6d, LU decompositions %5d%n",
+						name, time/1e6, error, statistics.getAcceptedSteps() + statistics.getRejectedSteps(),
+						statistics.getStepEvaluations(), statistics.getLUDecompositions());
+			}
+		}
+	}
+
+}
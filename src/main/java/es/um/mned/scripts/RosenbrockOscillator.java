@@ -0,0 +1,44 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.*;
+import es.um.mned.problems.SimpleHarmonicOscillator;
+
+/**
+ * Solves the simple harmonic oscillator, whose exact solution is known, with the
+ * Rosenbrock methods ROS3P and RODAS4 at several tolerances. On a linear problem
+ * an error estimate blind to it would let the step grow until the solution is lost,
+ * so the error should follow the tolerance and the largest step stay well below
+ * the period.
+ */
+public class RosenbrockOscillator {
+
+	public static void main(String[] args) throws ConvergenceException {
+		double maxTime = 20;
+		for (double tol : new double[] { 1e-4, 1e-6, 1e-8 }) {
+			System.out.printf("tol %.0e%n", tol);
+			for (RosenbrockTableau tableau : new RosenbrockTableau[] { RosenbrockTableau.ROS3P, RosenbrockTableau.RODAS4 }) {
+				SimpleHarmonicOscillator problem = new SimpleHarmonicOscillator(0, new double[] { 1.5, 0 }, 1, 1, 1, 0, 0, 1.3);
+				AdaptiveStepRosenbrockMethod method = new AdaptiveStepRosenbrockMethod(problem, tableau, Optional.of(tol), Optional.empty(), Optional.empty());
+				method.setAutonomous(true);
+				NumericalSolution solution = method.solve(maxTime);
+				double[] state = solution.getState(maxTime), exact = problem.getTrueSol().getState(maxTime);
+				double error = 0;
+				for (int i=0; i<state.length; i++) error = Math.max(error, Math.abs(state[i]-exact[i]));
+				double largestStep = 0, previous = 0;
+				SolutionCursor cursor = solution.cursor();
+				while (cursor.hasNext()) {
+					double time = cursor.next().time();
+					largestStep = Math.max(largestStep, time - previous);
+					previous = time;
+				}
+				System.out.printf("  %-7s error %.2e, largest step %.2e, accepted steps %5d, rejected steps %4d%n",
+						tableau.getName(), error, largestStep, method.getStatistics().getAcceptedSteps(),
+						method.getStatistics().getRejectedSteps());
+			}
+		}
+	}
+
+}
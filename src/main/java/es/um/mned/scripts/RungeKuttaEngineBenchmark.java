@@ -0,0 +1,144 @@
+package es.um.mned.scripts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.InitialValueProblem;
+import es.um.mned.problems.ArenstorfOrbits;
+
+/**
+ * Compares the time taken by the methods written stage by stage with the same
+ * methods stepped by the Butcher tableau engine, on one period of the Arenstorf
+ * orbit. The points are streamed to a sink that drops them, so only the stepping
+ * is timed. As JMH does, each version runs in a JVM of its own (a fork), so the
+ * compiler never sees the other one, and it is only timed after a warm up of some
+ * seconds. The forks of the two versions alternate, and the median of the runs
+ * of each is reported, with the range of the ratio over the pairs of forks.
+ */
+public class RungeKuttaEngineBenchmark {
+
+	private static final int FORKS = 5;
+	private static final long WARMUP_NANOS = 2_000_000_000L;
+	private static final int ITERATIONS = 20;
+
+	private static final double[] INITIAL_STATE = { 0.994, 0.0, 0.0, -2.00158510637908252240537862224 };
+	private static final double STEP = 1e-4;
+	private static final double TOLERANCE = 1e-12;
+	private static final String[] METHODS = { "Runge-Kutta 4", "Modified Euler", "Dormand-Prince 5(4)" };
+
+	private interface MethodFactory {
+		FixedStepMethod create(InitialValueProblem problem);
+	}
+
+	public static void main(String[] args) throws ConvergenceException, IOException, InterruptedException {
+		if (args.length == 2) {
+			fork(Integer.parseInt(args[0]), Boolean.parseBoolean(args[1]));
+			return;
+		}
+		System.out.printf("%-22s %12s %12s %10s %16s %12s%n", "method", "written ms", "tableau ms", "ratio",
+				"ratio range", "difference");
+		for (int m = 0; m < METHODS.length; m++) {
+			List<Double> written = new ArrayList<>(), tableau = new ArrayList<>();
+			double low = Double.POSITIVE_INFINITY, high = 0;
+			double[] writtenState = null, tableauState = null;
+			for (int f = 0; f < FORKS; f++) {
+				List<Double> writtenTimes = new ArrayList<>(), tableauTimes = new ArrayList<>();
+				writtenState = runFork(m, false, writtenTimes);
+				tableauState = runFork(m, true, tableauTimes);
+				written.addAll(writtenTimes);
+				tableau.addAll(tableauTimes);
+				double ratio = median(tableauTimes) / median(writtenTimes);
+				low = Math.min(low, ratio);
+				high = Math.max(high, ratio);
+			}
+			double difference = 0;
+			for (int i = 0; i < writtenState.length; i++)
+				difference = Math.max(difference, Math.abs(writtenState[i] - tableauState[i]));
+			double writtenMedian = median(written), tableauMedian = median(tableau);
+			System.out.printf("%-22s %12.2f %12.2f %10.3f %7.3f - %6.3f %12.3e%n", METHODS[m], writtenMedian,
+					tableauMedian, tableauMedian / writtenMedian, low, high, difference);
+		}
+	}
+
+	// Runs one version in a new JVM, adds its times in ms and returns its final state
+	private static double[] runFork(int method, boolean tableau, List<Double> times)
+			throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + "/bin/java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				RungeKuttaEngineBenchmark.class.getName(), Integer.toString(method), Boolean.toString(tableau));
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process process = builder.start();
+		double[] state = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.trim().split("\\s+");
+				if (fields[0].equals("time")) times.add(Double.parseDouble(fields[1]));
+				else if (fields[0].equals("state")) {
+					state = new double[fields.length - 1];
+					for (int i = 1; i < fields.length; i++) state[i - 1] = Double.parseDouble(fields[i]);
+				}
+			}
+		}
+		if (process.waitFor() != 0 || state == null)
+			throw new IllegalStateException("The fork for " + METHODS[method] + " failed");
+		return state;
+	}
+
+	// The work of a fork: warm up, then print the time of each run and the final state
+	private static void fork(int method, boolean tableau) throws ConvergenceException {
+		MethodFactory factory = factory(method, tableau);
+		double finalTime = ArenstorfOrbits.PERIOD;
+		long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+		while (System.nanoTime() < warmupEnd) run(factory, finalTime);
+		FixedStepMethod last = null;
+		for (int r = 0; r < ITERATIONS; r++) {
+			long start = System.nanoTime();
+			last = run(factory, finalTime);
+			System.out.println("time " + (System.nanoTime() - start) / 1e6);
+		}
+		StringBuilder state = new StringBuilder("state");
+		for (double value : last.getSolution().getState(finalTime)) state.append(' ').append(value);
+		System.out.println(state);
+	}
+
+	private static FixedStepMethod run(MethodFactory factory, double finalTime) throws ConvergenceException {
+		FixedStepMethod method = factory.create(new ArenstorfOrbits(0., Arrays.copyOf(INITIAL_STATE, 4)));
+		method.solve(finalTime, (t, y) -> { });
+		return method;
+	}
+
+	private static MethodFactory factory(int method, boolean tableau) {
+		switch (method) {
+		case 0:
+			return tableau ? p -> new FixedStepExplicitRungeKuttaMethod(p, STEP, ButcherTableau.RUNGE_KUTTA_4, Optional.empty())
+					: p -> new FixedStepRungeKutta4Method(p, STEP, Optional.empty());
+		case 1:
+			// The written one has no dense output, so neither does this one
+			ButcherTableau modifiedEuler = new ButcherTableau("Modified Euler", 2,
+					new double[] { 0, 1 }, new double[][] { {}, { 1 } }, new double[] { 0.5, 0.5 }, null, 0, null);
+			return tableau ? p -> new FixedStepExplicitRungeKuttaMethod(p, STEP/4, modifiedEuler, Optional.empty())
+					: p -> new FixedStepModifiedEulerMethod(p, STEP/4, Optional.empty());
+		default:
+			return tableau ? p -> new AdaptiveStepExplicitRungeKuttaMethod(p, 1e-3, ButcherTableau.DORMAND_PRINCE_54,
+							Optional.of(TOLERANCE), Optional.empty(), Optional.empty())
+					: p -> new AdaptiveStepDormandPrinceMethod(p, 1e-3, Optional.of(TOLERANCE), Optional.empty(), Optional.empty());
+		}
+	}
+
+	private static double median(List<Double> values) {
+		List<Double> sorted = new ArrayList<>(values);
+		Collections.sort(sorted);
+		int n = sorted.size();
+		return n % 2 == 1 ? sorted.get(n / 2) : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2;
+	}
+
+}
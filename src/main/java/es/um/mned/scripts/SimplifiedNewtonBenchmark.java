@@ -0,0 +1,59 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.problems.Brusselator1D;
+
+/**
+ * Compares full and simplified Newton in the implicit methods on the Brusselator
+ * with diffusion, a stiff problem of 2N components
+ */
+public class SimplifiedNewtonBenchmark {
+
+	private static final int REPETITIONS = 3;
+
+	public static void main(String[] args) throws ConvergenceException {
+		double maxTime = 10;
+		double hStep = 1e-2;
+		double tolerance = 1e-8;
+		for (int points : new int[] { 10, 50, 100, 250 }) {
+			System.out.println("Brusselator with " + 2*points + " components");
+			for (int order : new int[] { 1, 3 }) {
+				long full = Long.MAX_VALUE, simplified = Long.MAX_VALUE;
+				FixedStepImplicitMethod fullMethod = null, simplifiedMethod = null;
+				for (int rep=0; rep<REPETITIONS; rep++) {
+					fullMethod = create(points, order, hStep);
+					fullMethod.setNewtonTolerance(tolerance);
+					full = Math.min(full, time(fullMethod, maxTime));
+					simplifiedMethod = create(points, order, hStep);
+					simplifiedMethod.setNewtonTolerance(tolerance);
+					simplifiedMethod.setSimplifiedNewton(true);
+					simplified = Math.min(simplified, time(simplifiedMethod, maxTime));
+				}
+				double[] a = fullMethod.getSolution().getState(maxTime), b = simplifiedMethod.getSolution().getState(maxTime);
+				double difference = 0;
+				for (int i=0; i<a.length; i++) difference = Math.max(difference, Math.abs(a[i]-b[i]));
+				String name = order == 1 ? "Backwards Euler" : "BDF" + order;
+				System.out.printf("  %-16s full %8.1f ms, simplified %8.1f ms, speedup %5.1f, difference %.2e%n",
+						name, full/1e6, simplified/1e6, (double) full/simplified, difference);
+				System.out.println("    full:       " + fullMethod.getStatistics());
+				System.out.println("    simplified: " + simplifiedMethod.getSimplifiedNewton());
+			}
+		}
+	}
+
+	private static FixedStepImplicitMethod create(int points, int order, double hStep) {
+		Brusselator1D problem = new Brusselator1D(0, points);
+		if (order == 1) return new FixedStepBackwardsEulerNewtonMethod(problem, hStep, Optional.empty());
+		return new FixedStepBDFNewtonMethod(problem, order, hStep, Optional.empty());
+	}
+
+	private static long time(FixedStepImplicitMethod method, double maxTime) throws ConvergenceException {
+		long start = System.nanoTime();
+		method.solve(maxTime);
+		return System.nanoTime() - start;
+	}
+
+}
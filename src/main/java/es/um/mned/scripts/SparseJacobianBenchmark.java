@@ -0,0 +1,43 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.ConvergenceException;
+import es.um.mned.problems.Brusselator1D;
+
+/**
+ * Compares the dense, banded and sparse matrices of the implicit methods on the
+ * Brusselator with diffusion, whose Jacobian is banded. The dense matrices are
+ * only tried while they fit in memory
+ */
+public class SparseJacobianBenchmark {
+
+	private static final int MAX_DENSE_POINTS = 500;
+
+	public static void main(String[] args) throws ConvergenceException {
+		double maxTime = 1;
+		double hStep = 1e-2;
+		double tolerance = 1e-10;
+		for (int points : new int[] { 100, 500, 5000, 50000 }) {
+			System.out.println("Brusselator with " + 2*points + " components, BDF3 with simplified Newton");
+			double[] reference = null;
+			for (MatrixType type : MatrixType.values()) {
+				if (type == MatrixType.DENSE && points > MAX_DENSE_POINTS) continue;
+				FixedStepImplicitMethod method = new FixedStepBDFNewtonMethod(new Brusselator1D(0, points), 3, hStep, Optional.empty());
+				method.setMatrixType(type);
+				method.setNewtonTolerance(tolerance);
+				method.setSimplifiedNewton(true);
+				long start = System.nanoTime();
+				method.solve(maxTime);
+				long time = System.nanoTime() - start;
+				double[] state = method.getSolution().getState(maxTime);
+				if (reference == null) reference = state;
+				double difference = 0;
+				for (int i=0; i<state.length; i++) difference = Math.max(difference, Math.abs(state[i]-reference[i]));
+				System.out.printf("  %-6s %9.1f ms, difference %.2e%n", type, time/1e6, difference);
+			}
+		}
+	}
+
+}
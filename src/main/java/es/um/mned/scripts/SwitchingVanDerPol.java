@@ -0,0 +1,52 @@
+package es.um.mned.scripts;
+
+import java.util.Optional;
+
+import es.um.mned.methods.*;
+import es.um.mned.ode.*;
+import es.um.mned.problems.VanDerPol;
+
+/**
+ * Compares the method that switches on stiffness with Dormand-Prince and RODAS4
+ * alone on the Van der Pol oscillator, from a parameter for which it is not stiff
+ * to one for which its slow stretches are very stiff
+ */
+public class SwitchingVanDerPol {
+
+	public static void main(String[] args) throws ConvergenceException {
+		double[] x0 = new double[] { 2, 0 };
+		double rtol = 1e-6;
+		for (double mu : new double[] { 1, 100, 1000 }) {
+			double maxTime = mu < 10 ? 20 : 3*mu;
+			System.out.printf("mu %.0f, up to t = %.0f%n", mu, maxTime);
+			for (int k=0; k<3; k++) {
+				AdaptiveStepMethod method;
+				String name;
+				if (k == 0) {
+					method = new AdaptiveStepSwitchingMethod(new VanDerPol(0, x0, mu), Optional.of(rtol), Optional.empty(), Optional.empty());
+					name = "Switching";
+				}
+				else if (k == 1) {
+					method = new AdaptiveStepDormandPrinceMethod(new VanDerPol(0, x0, mu), Optional.of(rtol), Optional.empty(), Optional.empty());
+					name = "DOPRI5";
+				}
+				else {
+					method = new AdaptiveStepRosenbrockMethod(new VanDerPol(0, x0, mu), RosenbrockTableau.RODAS4, Optional.of(rtol), Optional.empty(), Optional.empty());
+					name = "RODAS4";
+				}
+				method.setErrorNorm(new ErrorNorm(ErrorNorm.Type.RMS, rtol*1e-2, rtol));
+				long start = System.nanoTime();
+				method.solve(maxTime, (time, state) -> { });
+				long time = System.nanoTime() - start;
+				SolverStatistics statistics = method.getStatistics();
+				String switches = method instanceof AdaptiveStepSwitchingMethod
+						? ", switches " + ((AdaptiveStepSwitchingMethod) method).getSwitches() : "";
+				System.out.printf("  %-9s %8.1f ms, steps %8d, evaluations %9d, Jacobians %5d, LU decompositions %5d%s%n",
+						name, time/1e6, statistics.getAcceptedSteps() + statistics.getRejectedSteps(),
+						statistics.getStepEvaluations(), statistics.getJacobianEvaluations(),
+						statistics.getLUDecompositions(), switches);
+			}
+		}
+	}
+
+}
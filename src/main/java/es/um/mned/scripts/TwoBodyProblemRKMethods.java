@@ -67,6 +67,9 @@ public class TwoBodyProblemRKMethods {
 //        FixedStepMethod method = new AdaptiveStepEulerMethod(problem, hStep, Optional.of(1e-5), Optional.empty(), Optional.of(yCross));
         FixedStepMethod method = new AdaptiveStepPredictorCorrector4Method(problem, hStep, Optional.of(tolerance), Optional.empty(), Optional.of(yCross));
 //        FixedStepMethod method = new AdaptiveStepRKFehlbergMethod(problem, hStep, Optional.of(tolerance), Optional.empty(), Optional.of(yCross));
+        // Tolerances per component, as positions are around 152 and velocities around 0.1
+//        ((AdaptiveStepMethod) method).setErrorNorm(new ErrorNorm(ErrorNorm.Type.RMS,
+//        		new double[] { 152*tolerance, 0.1*tolerance, 152*tolerance, 0.1*tolerance }, new double[] { tolerance }));
         
         
         
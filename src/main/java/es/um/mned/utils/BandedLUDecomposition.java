@@ -0,0 +1,162 @@
+package es.um.mned.utils;
+
+import java.util.Arrays;
+
+/**
+ * LU decomposition with partial pivoting of a banded matrix, with lower diagonals
+ * below the main one and upper above it, as those of one-dimensional problems
+ * discretized by lines (tridiagonal, pentadiagonal...). Only the band is stored,
+ * each row with room for the lower diagonals that pivoting adds to U, so memory
+ * and time grow with the dimension times the bandwidth instead of its square.
+ * The matrix is written with set and add, and factored in place as in LINPACK's
+ * dgbfa: the multipliers of step k stay where they were computed, and solving
+ * applies the row swaps and eliminations in the same order.
+ */
+public class BandedLUDecomposition {
+
+	private final int mDimension, mLower, mUpper;
+	private final double[][] mBand; // row i holds columns i-lower to i+lower+upper
+	private final int[] mPivot; // row swapped with row k at step k
+	private boolean mFactored;
+
+	/**
+	 * Creates a decomposition with all its entries 0
+	 * @param dimension the number of rows and columns
+	 * @param lower number of diagonals below the main one
+	 * @param upper number of diagonals above the main one
+	 */
+	public BandedLUDecomposition(int dimension, int lower, int upper) {
+		if (lower < 0 || upper < 0) throw new IllegalArgumentException("The bandwidths can not be negative");
+		mDimension = dimension;
+		mLower = lower;
+		mUpper = upper;
+		mBand = new double[dimension][2*lower + upper + 1];
+		mPivot = new int[dimension];
+	}
+
+	public int getDimension() {
+		return mDimension;
+	}
+
+	public int getLowerBandwidth() {
+		return mLower;
+	}
+
+	public int getUpperBandwidth() {
+		return mUpper;
+	}
+
+	/**
+	 * Sets all the entries to 0, to write a new matrix
+	 */
+	public void clear() {
+		for (double[] row : mBand) Arrays.fill(row, 0);
+		mFactored = false;
+	}
+
+	/**
+	 * Changes an entry of the matrix to factor
+	 * @throws IllegalArgumentException if it is outside the band
+	 */
+	public void set(int row, int column, double value) {
+		mBand[row][checkedOffset(row, column)] = value;
+		mFactored = false;
+	}
+
+	/**
+	 * Adds to an entry of the matrix to factor
+	 * @throws IllegalArgumentException if it is outside the band
+	 */
+	public void add(int row, int column, double value) {
+		mBand[row][checkedOffset(row, column)] += value;
+		mFactored = false;
+	}
+
+	private int checkedOffset(int row, int column) {
+		if (column < row - mLower || column > row + mUpper)
+			throw new IllegalArgumentException("Entry (" + row + ", " + column + ") is outside the band");
+		return column - row + mLower;
+	}
+
+	/**
+	 * Factors the matrix written, in place
+	 * @return false if the matrix is singular, and then it can not be used to solve
+	 */
+	public boolean factor() {
+		mFactored = false;
+		int n = mDimension, lower = mLower, width = lower + mUpper; // of U, with the fill of pivoting
+		for (int k=0; k<n; k++) {
+			// At step k rows k to k+lower only have entries in columns k to k+width
+			int last = Math.min(n-1, k+lower);
+			int pivot = k;
+			double max = Math.abs(mBand[k][lower]);
+			for (int i=k+1; i<=last; i++) {
+				double value = Math.abs(mBand[i][k-i+lower]);
+				if (value > max) {
+					max = value;
+					pivot = i;
+				}
+			}
+			if (max == 0) return false;
+			mPivot[k] = pivot;
+			int lastColumn = Math.min(n-1, k+width);
+			double[] rowK = mBand[k];
+			if (pivot != k) {
+				double[] rowP = mBand[pivot];
+				for (int j=k; j<=lastColumn; j++) {
+					double value = rowK[j-k+lower];
+					rowK[j-k+lower] = rowP[j-pivot+lower];
+					rowP[j-pivot+lower] = value;
+				}
+			}
+			double diagonal = rowK[lower];
+			for (int i=k+1; i<=last; i++) {
+				double[] rowI = mBand[i];
+				int offset = lower - i; // of column j in row i is j+offset
+				double multiplier = rowI[k+offset] / diagonal;
+				rowI[k+offset] = multiplier;
+				if (multiplier == 0) continue;
+				for (int j=k+1; j<=lastColumn; j++) {
+					rowI[j+offset] -= multiplier * rowK[j-k+lower];
+				}
+			}
+		}
+		mFactored = true;
+		return true;
+	}
+
+	/**
+	 * @return whether a non singular matrix has been factored
+	 */
+	public boolean isFactored() {
+		return mFactored;
+	}
+
+	/**
+	 * Solves A x = b with the matrix last factored
+	 * @param b the right hand side, overwritten with the solution x
+	 */
+	public void solve(double[] b) {
+		if (!mFactored) throw new IllegalStateException("No matrix has been factored");
+		int n = mDimension, lower = mLower, width = lower + mUpper;
+		for (int k=0; k<n; k++) {
+			int pivot = mPivot[k];
+			double value = b[pivot];
+			if (pivot != k) {
+				b[pivot] = b[k];
+				b[k] = value;
+			}
+			if (value == 0) continue;
+			int last = Math.min(n-1, k+lower);
+			for (int i=k+1; i<=last; i++) b[i] -= mBand[i][k-i+lower] * value;
+		}
+		for (int i=n-1; i>=0; i--) {
+			double[] row = mBand[i];
+			double sum = b[i];
+			int lastColumn = Math.min(n-1, i+width);
+			for (int j=i+1; j<=lastColumn; j++) sum -= row[j-i+lower] * b[j];
+			b[i] = sum / row[lower];
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package es.um.mned.utils;
+
+import java.util.Arrays;
+
+/**
+ * LU decomposition with partial pivoting of a complex banded matrix, given by
+ * its real and imaginary parts, stored and factored as BandedLUDecomposition
+ * does for real ones. The pivot is the entry of largest |re| + |im| in its column.
+ */
+public class ComplexBandedLUDecomposition {
+
+	private final int mDimension, mLower, mUpper;
+	private final double[][] mRe, mIm; // row i holds columns i-lower to i+lower+upper
+	private final int[] mPivot; // row swapped with row k at step k
+	private boolean mFactored;
+
+	/**
+	 * Creates a decomposition with all its entries 0
+	 * @param dimension the number of rows and columns
+	 * @param lower number of diagonals below the main one
+	 * @param upper number of diagonals above the main one
+	 */
+	public ComplexBandedLUDecomposition(int dimension, int lower, int upper) {
+		if (lower < 0 || upper < 0) throw new IllegalArgumentException("The bandwidths can not be negative");
+		mDimension = dimension;
+		mLower = lower;
+		mUpper = upper;
+		mRe = new double[dimension][2*lower + upper + 1];
+		mIm = new double[dimension][2*lower + upper + 1];
+		mPivot = new int[dimension];
+	}
+
+	public int getDimension() {
+		return mDimension;
+	}
+
+	/**
+	 * Sets all the entries to 0, to write a new matrix
+	 */
+	public void clear() {
+		for (double[] row : mRe) Arrays.fill(row, 0);
+		for (double[] row : mIm) Arrays.fill(row, 0);
+		mFactored = false;
+	}
+
+	/**
+	 * Changes an entry of the matrix to factor
+	 * @throws IllegalArgumentException if it is outside the band
+	 */
+	public void set(int row, int column, double re, double im) {
+		int offset = checkedOffset(row, column);
+		mRe[row][offset] = re;
+		mIm[row][offset] = im;
+		mFactored = false;
+	}
+
+	/**
+	 * Adds to an entry of the matrix to factor
+	 * @throws IllegalArgumentException if it is outside the band
+	 */
+	public void add(int row, int column, double re, double im) {
+		int offset = checkedOffset(row, column);
+		mRe[row][offset] += re;
+		mIm[row][offset] += im;
+		mFactored = false;
+	}
+
+	private int checkedOffset(int row, int column) {
+		if (column < row - mLower || column > row + mUpper)
+			throw new IllegalArgumentException("Entry (" + row + ", " + column + ") is outside the band");
+		return column - row + mLower;
+	}
+
+	/**
+	 * Factors the matrix written, in place
+	 * @return false if the matrix is singular, and then it can not be used to solve
+	 */
+	public boolean factor() {
+		mFactored = false;
+		int n = mDimension, lower = mLower, width = lower + mUpper; // of U, with the fill of pivoting
+		for (int k=0; k<n; k++) {
+			int last = Math.min(n-1, k+lower);
+			int pivot = k;
+			double max = Math.abs(mRe[k][lower]) + Math.abs(mIm[k][lower]);
+			for (int i=k+1; i<=last; i++) {
+				double value = Math.abs(mRe[i][k-i+lower]) + Math.abs(mIm[i][k-i+lower]);
+				if (value > max) {
+					max = value;
+					pivot = i;
+				}
+			}
+			if (max == 0) return false;
+			mPivot[k] = pivot;
+			int lastColumn = Math.min(n-1, k+width);
+			double[] reK = mRe[k], imK = mIm[k];
+			if (pivot != k) {
+				double[] reP = mRe[pivot], imP = mIm[pivot];
+				for (int j=k; j<=lastColumn; j++) {
+					double value = reK[j-k+lower];
+					reK[j-k+lower] = reP[j-pivot+lower];
+					reP[j-pivot+lower] = value;
+					value = imK[j-k+lower];
+					imK[j-k+lower] = imP[j-pivot+lower];
+					imP[j-pivot+lower] = value;
+				}
+			}
+			double size = reK[lower]*reK[lower] + imK[lower]*imK[lower];
+			double inverseRe = reK[lower] / size, inverseIm = -imK[lower] / size;
+			for (int i=k+1; i<=last; i++) {
+				double[] reI = mRe[i], imI = mIm[i];
+				int offset = lower - i; // of column j in row i is j+offset
+				double multiplierRe = reI[k+offset]*inverseRe - imI[k+offset]*inverseIm;
+				double multiplierIm = reI[k+offset]*inverseIm + imI[k+offset]*inverseRe;
+				reI[k+offset] = multiplierRe;
+				imI[k+offset] = multiplierIm;
+				if (multiplierRe == 0 && multiplierIm == 0) continue;
+				for (int j=k+1; j<=lastColumn; j++) {
+					double re = reK[j-k+lower], im = imK[j-k+lower];
+					reI[j+offset] -= multiplierRe*re - multiplierIm*im;
+					imI[j+offset] -= multiplierRe*im + multiplierIm*re;
+				}
+			}
+		}
+		mFactored = true;
+		return true;
+	}
+
+	/**
+	 * @return whether a non singular matrix has been factored
+	 */
+	public boolean isFactored() {
+		return mFactored;
+	}
+
+	/**
+	 * Solves A x = b with the matrix last factored
+	 * @param re the real part of b, overwritten with that of x
+	 * @param im the imaginary part of b, overwritten with that of x
+	 */
+	public void solve(double[] re, double[] im) {
+		if (!mFactored) throw new IllegalStateException("No matrix has been factored");
+		int n = mDimension, lower = mLower, width = lower + mUpper;
+		for (int k=0; k<n; k++) {
+			int pivot = mPivot[k];
+			double valueRe = re[pivot], valueIm = im[pivot];
+			if (pivot != k) {
+				re[pivot] = re[k];
+				re[k] = valueRe;
+				im[pivot] = im[k];
+				im[k] = valueIm;
+			}
+			if (valueRe == 0 && valueIm == 0) continue;
+			int last = Math.min(n-1, k+lower);
+			for (int i=k+1; i<=last; i++) {
+				double multiplierRe = mRe[i][k-i+lower], multiplierIm = mIm[i][k-i+lower];
+				re[i] -= multiplierRe*valueRe - multiplierIm*valueIm;
+				im[i] -= multiplierRe*valueIm + multiplierIm*valueRe;
+			}
+		}
+		for (int i=n-1; i>=0; i--) {
+			double[] rowRe = mRe[i], rowIm = mIm[i];
+			double sumRe = re[i], sumIm = im[i];
+			int lastColumn = Math.min(n-1, i+width);
+			for (int j=i+1; j<=lastColumn; j++) {
+				double aRe = rowRe[j-i+lower], aIm = rowIm[j-i+lower];
+				sumRe -= aRe*re[j] - aIm*im[j];
+				sumIm -= aRe*im[j] + aIm*re[j];
+			}
+			double dRe = rowRe[lower], dIm = rowIm[lower];
+			double size = dRe*dRe + dIm*dIm;
+			re[i] = (sumRe*dRe + sumIm*dIm) / size;
+			im[i] = (sumIm*dRe - sumRe*dIm) / size;
+		}
+	}
+
+}
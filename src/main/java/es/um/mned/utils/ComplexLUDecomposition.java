@@ -0,0 +1,131 @@
+package es.um.mned.utils;
+
+/**
+ * LU decomposition with partial pivoting of a complex square matrix, given by its
+ * real and imaginary parts, as LUDecomposition does for real ones. It solves the
+ * complex systems of the Radau IIA methods, whose matrices have complex shifts.
+ * The pivot is the entry of largest |re| + |im| in its column.
+ */
+public class ComplexLUDecomposition {
+
+	private final int mDimension;
+	private final int[] mPivot; // row swapped with row k at step k
+	private double[][] mRe, mIm;
+
+	/**
+	 * Creates a decomposition for matrices of a given dimension
+	 * @param dimension the number of rows and columns
+	 */
+	public ComplexLUDecomposition(int dimension) {
+		mDimension = dimension;
+		mPivot = new int[dimension];
+	}
+
+	public int getDimension() {
+		return mDimension;
+	}
+
+	/**
+	 * Factors a matrix in place. The matrix is kept by the decomposition and must
+	 * not be changed while it is used to solve.
+	 * @param re the real part, overwritten with that of the factors
+	 * @param im the imaginary part, overwritten with that of the factors
+	 * @return false if the matrix is singular, and then it can not be used to solve
+	 */
+	public boolean factor(double[][] re, double[][] im) {
+		mRe = mIm = null;
+		int n = mDimension;
+		for (int k=0; k<n; k++) {
+			int pivot = k;
+			double max = Math.abs(re[k][k]) + Math.abs(im[k][k]);
+			for (int i=k+1; i<n; i++) {
+				double value = Math.abs(re[i][k]) + Math.abs(im[i][k]);
+				if (value > max) {
+					max = value;
+					pivot = i;
+				}
+			}
+			if (max == 0) return false;
+			mPivot[k] = pivot;
+			if (pivot != k) {
+				double[] row = re[pivot];
+				re[pivot] = re[k];
+				re[k] = row;
+				row = im[pivot];
+				im[pivot] = im[k];
+				im[k] = row;
+			}
+			double[] reK = re[k], imK = im[k];
+			// 1/diagonal
+			double size = reK[k]*reK[k] + imK[k]*imK[k];
+			double inverseRe = reK[k] / size, inverseIm = -imK[k] / size;
+			for (int i=k+1; i<n; i++) {
+				double[] reI = re[i], imI = im[i];
+				double multiplierRe = reI[k]*inverseRe - imI[k]*inverseIm;
+				double multiplierIm = reI[k]*inverseIm + imI[k]*inverseRe;
+				reI[k] = multiplierRe;
+				imI[k] = multiplierIm;
+				if (multiplierRe == 0 && multiplierIm == 0) continue;
+				for (int j=k+1; j<n; j++) {
+					reI[j] -= multiplierRe*reK[j] - multiplierIm*imK[j];
+					imI[j] -= multiplierRe*imK[j] + multiplierIm*reK[j];
+				}
+			}
+		}
+		mRe = re;
+		mIm = im;
+		return true;
+	}
+
+	/**
+	 * @return whether a non singular matrix has been factored
+	 */
+	public boolean isFactored() {
+		return mRe != null;
+	}
+
+	/**
+	 * Solves A x = b with the matrix A last factored
+	 * @param re the real part of b, overwritten with that of x
+	 * @param im the imaginary part of b, overwritten with that of x
+	 */
+	public void solve(double[] re, double[] im) {
+		if (mRe == null) throw new IllegalStateException("No matrix has been factored");
+		int n = mDimension;
+		for (int k=0; k<n; k++) {
+			int pivot = mPivot[k];
+			if (pivot != k) {
+				double value = re[pivot];
+				re[pivot] = re[k];
+				re[k] = value;
+				value = im[pivot];
+				im[pivot] = im[k];
+				im[k] = value;
+			}
+		}
+		// L y = P b
+		for (int i=1; i<n; i++) {
+			double[] rowRe = mRe[i], rowIm = mIm[i];
+			double sumRe = re[i], sumIm = im[i];
+			for (int j=0; j<i; j++) {
+				sumRe -= rowRe[j]*re[j] - rowIm[j]*im[j];
+				sumIm -= rowRe[j]*im[j] + rowIm[j]*re[j];
+			}
+			re[i] = sumRe;
+			im[i] = sumIm;
+		}
+		// U x = y
+		for (int i=n-1; i>=0; i--) {
+			double[] rowRe = mRe[i], rowIm = mIm[i];
+			double sumRe = re[i], sumIm = im[i];
+			for (int j=i+1; j<n; j++) {
+				sumRe -= rowRe[j]*re[j] - rowIm[j]*im[j];
+				sumIm -= rowRe[j]*im[j] + rowIm[j]*re[j];
+			}
+			double size = rowRe[i]*rowRe[i] + rowIm[i]*rowIm[i];
+			re[i] = (sumRe*rowRe[i] + sumIm*rowIm[i]) / size;
+			im[i] = (sumIm*rowRe[i] - sumRe*rowIm[i]) / size;
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package es.um.mned.utils;
+
+import java.util.Arrays;
+
+import es.um.mned.ode.SparseMatrix;
+
+/**
+ * LU decomposition of complex sparse matrices, given by their real and imaginary
+ * parts, which share the SparsityPattern of a SparseLUDecomposition. The symbolic
+ * analysis of that decomposition, ordering and fill, is reused, so only the
+ * numeric factorization is done, with complex arithmetic and the same diagonal
+ * pivots. If a pivot is too small relative to its row, factor fails as if the
+ * matrix were singular.
+ */
+public class ComplexSparseLUDecomposition {
+
+	private static final double PIVOT_TOLERANCE = 1e-13;
+
+	private final SparseLUDecomposition mStructure;
+	private final double[] mRe, mIm, mWorkRe, mWorkIm;
+	private final int[] mPosition; // position in mRe of each column of the current row
+	private boolean mFactored;
+
+	/**
+	 * @param structure a decomposition of the pattern of the matrices to factor
+	 */
+	public ComplexSparseLUDecomposition(SparseLUDecomposition structure) {
+		mStructure = structure;
+		int n = structure.mDimension;
+		mRe = new double[structure.mColumns.length];
+		mIm = new double[structure.mColumns.length];
+		mWorkRe = new double[n];
+		mWorkIm = new double[n];
+		mPosition = new int[n];
+	}
+
+	public int getDimension() {
+		return mStructure.mDimension;
+	}
+
+	/**
+	 * Factors a matrix. The matrix is copied, so it may be changed afterwards
+	 * @param re the real part, with the pattern of the decomposition
+	 * @param im the imaginary part, with the pattern of the decomposition
+	 * @return false if a pivot is zero or too small, and then it can not be used to solve
+	 */
+	public boolean factor(SparseMatrix re, SparseMatrix im) {
+		SparseLUDecomposition s = mStructure;
+		if (re.getPattern() != s.mPattern || im.getPattern() != s.mPattern)
+			throw new IllegalArgumentException("The matrix must have the sparsity pattern of the decomposition");
+		mFactored = false;
+		double[] luRe = mRe, luIm = mIm;
+		Arrays.fill(luRe, 0);
+		Arrays.fill(luIm, 0);
+		double[] valuesRe = re.getValues(), valuesIm = im.getValues();
+		for (int k=0; k<valuesRe.length; k++) {
+			luRe[s.mEntryPosition[k]] += valuesRe[k];
+			luIm[s.mEntryPosition[k]] += valuesIm[k];
+		}
+		int[] columns = s.mColumns, rowStart = s.mRowStart, diagonals = s.mDiagonal;
+		for (int i=0; i<s.mDimension; i++) {
+			int start = rowStart[i], end = rowStart[i+1], diagonal = diagonals[i];
+			double size = 0;
+			for (int p=start; p<end; p++) {
+				mPosition[columns[p]] = p;
+				size = Math.max(size, Math.abs(luRe[p]) + Math.abs(luIm[p]));
+			}
+			// Eliminates the entries of L in order, with the rows of U above
+			for (int p=start; p<diagonal; p++) {
+				int k = columns[p], d = diagonals[k];
+				double dSize = luRe[d]*luRe[d] + luIm[d]*luIm[d];
+				double multiplierRe = (luRe[p]*luRe[d] + luIm[p]*luIm[d]) / dSize;
+				double multiplierIm = (luIm[p]*luRe[d] - luRe[p]*luIm[d]) / dSize;
+				luRe[p] = multiplierRe;
+				luIm[p] = multiplierIm;
+				if (multiplierRe == 0 && multiplierIm == 0) continue;
+				for (int q=d+1; q<rowStart[k+1]; q++) {
+					int target = mPosition[columns[q]];
+					luRe[target] -= multiplierRe*luRe[q] - multiplierIm*luIm[q];
+					luIm[target] -= multiplierRe*luIm[q] + multiplierIm*luRe[q];
+				}
+			}
+			double pivot = Math.abs(luRe[diagonal]) + Math.abs(luIm[diagonal]);
+			if (!(pivot > PIVOT_TOLERANCE * size)) return false;
+		}
+		mFactored = true;
+		return true;
+	}
+
+	/**
+	 * @return whether a non singular matrix has been factored
+	 */
+	public boolean isFactored() {
+		return mFactored;
+	}
+
+	/**
+	 * Solves A x = b with the matrix last factored
+	 * @param re the real part of b, overwritten with that of x
+	 * @param im the imaginary part of b, overwritten with that of x
+	 */
+	public void solve(double[] re, double[] im) {
+		if (!mFactored) throw new IllegalStateException("No matrix has been factored");
+		SparseLUDecomposition s = mStructure;
+		int n = s.mDimension;
+		double[] xRe = mWorkRe, xIm = mWorkIm, luRe = mRe, luIm = mIm;
+		int[] columns = s.mColumns, order = s.mOrder;
+		for (int k=0; k<n; k++) {
+			xRe[k] = re[order[k]];
+			xIm[k] = im[order[k]];
+		}
+		// L y = b
+		for (int i=0; i<n; i++) {
+			double sumRe = xRe[i], sumIm = xIm[i];
+			for (int p=s.mRowStart[i]; p<s.mDiagonal[i]; p++) {
+				int j = columns[p];
+				sumRe -= luRe[p]*xRe[j] - luIm[p]*xIm[j];
+				sumIm -= luRe[p]*xIm[j] + luIm[p]*xRe[j];
+			}
+			xRe[i] = sumRe;
+			xIm[i] = sumIm;
+		}
+		// U x = y
+		for (int i=n-1; i>=0; i--) {
+			double sumRe = xRe[i], sumIm = xIm[i];
+			int d = s.mDiagonal[i];
+			for (int p=d+1; p<s.mRowStart[i+1]; p++) {
+				int j = columns[p];
+				sumRe -= luRe[p]*xRe[j] - luIm[p]*xIm[j];
+				sumIm -= luRe[p]*xIm[j] + luIm[p]*xRe[j];
+			}
+			double size = luRe[d]*luRe[d] + luIm[d]*luIm[d];
+			xRe[i] = (sumRe*luRe[d] + sumIm*luIm[d]) / size;
+			xIm[i] = (sumIm*luRe[d] - sumRe*luIm[d]) / size;
+		}
+		for (int k=0; k<n; k++) {
+			re[order[k]] = xRe[k];
+			im[order[k]] = xIm[k];
+		}
+	}
+
+}
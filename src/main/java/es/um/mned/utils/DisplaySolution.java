@@ -5,7 +5,6 @@
  */
 package es.um.mned.utils;
 
-import java.util.Iterator;
 import java.util.stream.IntStream;
 
 import org.opensourcephysics.frames.PlotFrame; 
@@ -13,7 +12,7 @@ import org.opensourcephysics.controls.AbstractAnimation;
 import org.opensourcephysics.controls.AnimationControl;
 import javax.swing.JFrame;
 import es.um.mned.ode.NumericalSolution;
-import es.um.mned.ode.NumericalSolutionPoint;
+import es.um.mned.ode.SolutionCursor;
 import org.opensourcephysics.display.Dataset;
 
 
@@ -28,12 +27,12 @@ public class DisplaySolution {
 	 */
 
     static public void list(NumericalSolution solution, int[] indexes) {
-        Iterator<NumericalSolutionPoint> iterator = solution.iterator();
-        while (iterator.hasNext()) {
-            NumericalSolutionPoint point = iterator.next();
-            System.out.print("time="+point.getTime());
+        SolutionCursor cursor = solution.cursor();
+        while (cursor.hasNext()) {
+            cursor.next();
+            System.out.print("time="+cursor.time());
             for (int i=0; i<indexes.length;i++) {
-                System.out.println ("x["+i+"] = "+point.getState(indexes[i]));
+                System.out.println ("x["+i+"] = "+cursor.get(indexes[i]));
             }
             System.out.println();
         }
@@ -51,7 +50,7 @@ public class DisplaySolution {
     }
     
     static public void timePlot(NumericalSolution solution, int skip) {
-        int dimension = solution.get(0).getState().length;
+        int dimension = solution.getDimension();
         int[] indexes = IntStream.range(0, dimension).toArray();
         timePlot(solution, indexes,skip);
     }
@@ -65,14 +64,15 @@ public class DisplaySolution {
         PlotFrame frame = new PlotFrame ("time" , "x[*]" , "Time plot frame") ;
         frame.setConnected(true); // sets default to connect dataset points
         frame.setSize(800,600);
+        SolutionCursor cursor = solution.cursor();
         for (int i=0; i<indexes.length;i++) {
             frame.setMarkerShape(i, Dataset.NO_MARKER);
             //frame.setMarkerColor(0,java.awt.Color.RED);
             frame.setXYColumnNames (i , "time" ,"x["+i+"]") ; // sets names for each dataset
             
             for(int j=0; j < solution.getSize(); j += skip+1) {
-            	NumericalSolutionPoint point = solution.get(j);
-            	frame.append(i, point.getTime(), point.getState(indexes[i]));
+            	cursor.moveTo(j);
+            	frame.append(i, cursor.time(), cursor.get(indexes[i]));
             }
         }
         frame.setVisible ( true ) ;
@@ -98,9 +98,10 @@ public class DisplaySolution {
         frame.setMarkerColor(0,java.awt.Color.BLUE);
         frame.setXYColumnNames (0 , "x["+index1+"]" , "x["+index2+"]") ; // sets names for each dataset
         
+        SolutionCursor cursor = solution.cursor();
         for(int j=0; j < solution.getSize(); j += skip+1) {
-        	NumericalSolutionPoint point = solution.get(j);
-        	frame.append(0, point.getState(index1), point.getState(index2));
+        	cursor.moveTo(j);
+        	frame.append(0, cursor.get(index1), cursor.get(index2));
         }
         
         frame.setVisible ( true ) ;
@@ -121,7 +122,7 @@ public class DisplaySolution {
         NumericalSolution mSolution;
         int[] mIndexes;
         PlotFrame mFrame;
-        Iterator<NumericalSolutionPoint> mIterator;
+        SolutionCursor mCursor;
 
         
         public AnimateSequence(NumericalSolution solution, int[] indexes) {
@@ -139,23 +140,23 @@ public class DisplaySolution {
         public void initializeAnimation () {
 //            mIndex = 0;
 //            mFrame.append(0, mIndex, mSequence[mIndex]);
-            mIterator = mSolution.iterator();
+            mCursor = mSolution.cursor();
             doStep();
 
         }
         
         public void resetAnimation () {
-            mIterator = mSolution.iterator();
+            mCursor = mSolution.cursor();
             mFrame.clearData();
             super.resetAnimation();
         }
 
         public void doStep () { 
-            if (!mIterator.hasNext()) super.stopAnimation();
+            if (!mCursor.hasNext()) super.stopAnimation();
             else {
-                NumericalSolutionPoint point = mIterator.next();
+                mCursor.next();
                 for (int i=0; i<mIndexes.length;i++) {
-                    mFrame.append(i, point.getTime(), point.getState(mIndexes[i]));
+                    mFrame.append(i, mCursor.time(), mCursor.get(mIndexes[i]));
                 }
                 mFrame.repaint();
                 try { Thread.sleep (500) ; } catch(InterruptedException ie) {}
@@ -0,0 +1,110 @@
+package es.um.mned.utils;
+
+/**
+ * LU decomposition with partial pivoting of a square matrix, to solve the
+ * linear systems of Newton's method. The factorization is done in place on the
+ * matrix given, which ends up holding L below its diagonal (the unit diagonal of
+ * L is not stored) and U on and above it, with its rows permuted. Neither
+ * factoring nor solving creates arrays, so one decomposition can be reused for
+ * all the systems of a solve.
+ */
+public class LUDecomposition {
+
+	private final int mDimension;
+	private final int[] mPivot; // row swapped with row k at step k
+	private double[][] mLU;
+
+	/**
+	 * Creates a decomposition for matrices of a given dimension
+	 * @param dimension the number of rows and columns
+	 */
+	public LUDecomposition(int dimension) {
+		mDimension = dimension;
+		mPivot = new int[dimension];
+	}
+
+	public int getDimension() {
+		return mDimension;
+	}
+
+	/**
+	 * Factors a matrix in place. The matrix is kept by the decomposition and must
+	 * not be changed while it is used to solve.
+	 * @param matrix square matrix of the dimension of the decomposition, overwritten with its factors
+	 * @return false if the matrix is singular, and then it can not be used to solve
+	 */
+	public boolean factor(double[][] matrix) {
+		mLU = null;
+		int n = mDimension;
+		for (int k=0; k<n; k++) {
+			int pivot = k;
+			double max = Math.abs(matrix[k][k]);
+			for (int i=k+1; i<n; i++) {
+				double value = Math.abs(matrix[i][k]);
+				if (value > max) {
+					max = value;
+					pivot = i;
+				}
+			}
+			if (max == 0) return false;
+			mPivot[k] = pivot;
+			if (pivot != k) { // swapping the references swaps the rows of L too
+				double[] row = matrix[pivot];
+				matrix[pivot] = matrix[k];
+				matrix[k] = row;
+			}
+			double[] rowK = matrix[k];
+			double diagonal = rowK[k];
+			for (int i=k+1; i<n; i++) {
+				double[] rowI = matrix[i];
+				double multiplier = rowI[k] / diagonal;
+				rowI[k] = multiplier;
+				if (multiplier == 0) continue;
+				for (int j=k+1; j<n; j++) {
+					rowI[j] -= multiplier * rowK[j];
+				}
+			}
+		}
+		mLU = matrix;
+		return true;
+	}
+
+	/**
+	 * @return whether a non singular matrix has been factored
+	 */
+	public boolean isFactored() {
+		return mLU != null;
+	}
+
+	/**
+	 * Solves A x = b with the matrix A last factored
+	 * @param b the right hand side, overwritten with the solution x
+	 */
+	public void solve(double[] b) {
+		if (mLU == null) throw new IllegalStateException("No matrix has been factored");
+		int n = mDimension;
+		for (int k=0; k<n; k++) {
+			int pivot = mPivot[k];
+			if (pivot != k) {
+				double value = b[pivot];
+				b[pivot] = b[k];
+				b[k] = value;
+			}
+		}
+		// L y = P b
+		for (int i=1; i<n; i++) {
+			double[] row = mLU[i];
+			double sum = b[i];
+			for (int j=0; j<i; j++) sum -= row[j] * b[j];
+			b[i] = sum;
+		}
+		// U x = y
+		for (int i=n-1; i>=0; i--) {
+			double[] row = mLU[i];
+			double sum = b[i];
+			for (int j=i+1; j<n; j++) sum -= row[j] * b[j];
+			b[i] = sum / row[i];
+		}
+	}
+
+}
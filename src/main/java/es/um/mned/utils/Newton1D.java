@@ -2,6 +2,7 @@ package es.um.mned.utils;
 
 import es.um.mned.interpolation.ExtendedStateFunction;
 import es.um.mned.ode.ConvergenceException;
+import es.um.mned.ode.SolverStatistics;
 
 /*
  * This method assumes f is a one-dimensional state function
@@ -18,11 +19,24 @@ public class Newton1D {
 			double start,
 			double tol
 			) throws ConvergenceException {
+		return solve(f, start, tol, null);
+	}
+	
+	/**
+	 * Same as solve(f, start, tol), counting the iterations in the given statistics
+	 */
+	public static double solve(
+			ExtendedStateFunction f,
+			double start,
+			double tol,
+			SolverStatistics statistics
+			) throws ConvergenceException {
 		
 		double x = start;
 		if(tol == 0.0) tol = DEFAULT_TOL;
 		
 		for(int i = 0; i < MAX_IT; ++i) {
+			if(statistics != null) statistics.addNewtonIteration();
 			double next = x - f.getState(x, 0) / f.getDerivative(x, 0);
 			if(Math.abs(x - next) < tol)
 				return next;
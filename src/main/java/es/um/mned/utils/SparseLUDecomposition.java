@@ -0,0 +1,249 @@
+package es.um.mned.utils;
+
+import java.util.Arrays;
+
+import es.um.mned.ode.SparseMatrix;
+import es.um.mned.ode.SparsityPattern;
+
+/**
+ * LU decomposition of sparse matrices that all share one SparsityPattern, as the
+ * matrices I - gamma*J of the implicit methods do. The work that only depends on
+ * the pattern, the symbolic analysis, is done once when the decomposition is
+ * created:
+ * <ul>
+ * <li>the rows and columns are reordered with reverse Cuthill-McKee, which keeps
+ * the non zeros close to the diagonal and so limits the fill,</li>
+ * <li>the positions of the non zeros of L and U, fill included, are computed,
+ * as well as where each entry of the matrix goes in them.</li>
+ * </ul>
+ * Each factorization is then numeric only, row by row, and takes time and memory
+ * proportional to the non zeros of the factors.
+ * The pivots are taken on the diagonal, without pivoting, which suits matrices
+ * close to diagonally dominant such as I - gamma*J. If a pivot is too small
+ * relative to its row, factor fails as if the matrix were singular.
+ */
+public class SparseLUDecomposition {
+
+	private static final double PIVOT_TOLERANCE = 1e-13;
+
+	// The symbolic analysis, shared with ComplexSparseLUDecomposition
+	final SparsityPattern mPattern;
+	final int mDimension;
+	final int[] mOrder; // mOrder[k] is the original index at position k
+	final int[] mRowStart, mColumns, mDiagonal; // pattern of L+U, reordered
+	final int[] mEntryPosition; // where each entry of the matrix goes in mValues
+	private final double[] mValues, mWork;
+	private final int[] mPosition; // position in mValues of each column of the current row
+	private boolean mFactored;
+
+	/**
+	 * Analyzes the pattern of the matrices to factor
+	 * @param pattern the pattern of the matrices
+	 */
+	public SparseLUDecomposition(SparsityPattern pattern) {
+		mPattern = pattern;
+		int n = mDimension = pattern.getDimension();
+		mOrder = reverseCuthillMcKee(pattern);
+		int[] position = new int[n]; // of each original index
+		for (int k=0; k<n; k++) position[mOrder[k]] = k;
+		int[][] rows = symbolicFactorization(pattern, mOrder, position);
+		mRowStart = new int[n+1];
+		for (int i=0; i<n; i++) mRowStart[i+1] = mRowStart[i] + rows[i].length;
+		mColumns = new int[mRowStart[n]];
+		mDiagonal = new int[n];
+		for (int i=0; i<n; i++) {
+			System.arraycopy(rows[i], 0, mColumns, mRowStart[i], rows[i].length);
+			mDiagonal[i] = Arrays.binarySearch(mColumns, mRowStart[i], mRowStart[i+1], i);
+		}
+		mEntryPosition = new int[pattern.getNonZeros()];
+		int entry = 0;
+		for (int i=0; i<n; i++) { // in the order of the entries of a SparseMatrix
+			int row = position[i];
+			for (int j : pattern.getRow(i)) {
+				mEntryPosition[entry++] = Arrays.binarySearch(mColumns, mRowStart[row], mRowStart[row+1], position[j]);
+			}
+		}
+		mValues = new double[mColumns.length];
+		mWork = new double[n];
+		mPosition = new int[n];
+	}
+
+	public int getDimension() {
+		return mDimension;
+	}
+
+	/**
+	 * @return the number of non zeros of L and U together, fill included
+	 */
+	public int getFactorNonZeros() {
+		return mColumns.length;
+	}
+
+	/**
+	 * Factors a matrix. The matrix is copied, so it may be changed afterwards
+	 * @param matrix a matrix with the pattern of the decomposition
+	 * @return false if a pivot is zero or too small, and then it can not be used to solve
+	 */
+	public boolean factor(SparseMatrix matrix) {
+		if (matrix.getPattern() != mPattern)
+			throw new IllegalArgumentException("The matrix must have the sparsity pattern of the decomposition");
+		mFactored = false;
+		double[] lu = mValues;
+		Arrays.fill(lu, 0);
+		double[] values = matrix.getValues();
+		for (int k=0; k<values.length; k++) lu[mEntryPosition[k]] += values[k];
+		int[] columns = mColumns;
+		for (int i=0; i<mDimension; i++) {
+			int start = mRowStart[i], end = mRowStart[i+1], diagonal = mDiagonal[i];
+			double size = 0;
+			for (int p=start; p<end; p++) {
+				mPosition[columns[p]] = p;
+				size = Math.max(size, Math.abs(lu[p]));
+			}
+			// Eliminates the entries of L in order, with the rows of U above
+			for (int p=start; p<diagonal; p++) {
+				int k = columns[p];
+				double multiplier = lu[p] / lu[mDiagonal[k]];
+				lu[p] = multiplier;
+				if (multiplier == 0) continue;
+				for (int q=mDiagonal[k]+1; q<mRowStart[k+1]; q++) {
+					lu[mPosition[columns[q]]] -= multiplier * lu[q];
+				}
+			}
+			double pivot = Math.abs(lu[diagonal]);
+			if (!(pivot > PIVOT_TOLERANCE * size)) return false;
+		}
+		mFactored = true;
+		return true;
+	}
+
+	/**
+	 * @return whether a non singular matrix has been factored
+	 */
+	public boolean isFactored() {
+		return mFactored;
+	}
+
+	/**
+	 * Solves A x = b with the matrix last factored
+	 * @param b the right hand side, overwritten with the solution x
+	 */
+	public void solve(double[] b) {
+		if (!mFactored) throw new IllegalStateException("No matrix has been factored");
+		int n = mDimension;
+		double[] x = mWork, lu = mValues;
+		int[] columns = mColumns;
+		for (int k=0; k<n; k++) x[k] = b[mOrder[k]];
+		// L y = b
+		for (int i=0; i<n; i++) {
+			double sum = x[i];
+			for (int p=mRowStart[i]; p<mDiagonal[i]; p++) sum -= lu[p] * x[columns[p]];
+			x[i] = sum;
+		}
+		// U x = y
+		for (int i=n-1; i>=0; i--) {
+			double sum = x[i];
+			for (int p=mDiagonal[i]+1; p<mRowStart[i+1]; p++) sum -= lu[p] * x[columns[p]];
+			x[i] = sum / lu[mDiagonal[i]];
+		}
+		for (int k=0; k<n; k++) b[mOrder[k]] = x[k];
+	}
+
+	// Reverse Cuthill-McKee ordering of the graph of A + A^T, started in each
+	// connected component from a node of smallest degree
+	private static int[] reverseCuthillMcKee(SparsityPattern pattern) {
+		int n = pattern.getDimension();
+		int[][] neighbours = new int[n][];
+		for (int i=0; i<n; i++) {
+			int[] row = pattern.getRow(i), column = pattern.getColumn(i);
+			int[] merged = new int[row.length + column.length];
+			int count = 0, a = 0, b = 0;
+			while (a < row.length || b < column.length) { // both sorted
+				int next = b == column.length || (a < row.length && row[a] < column[b]) ? row[a++] : column[b++];
+				if (next != i && (count == 0 || merged[count-1] != next)) merged[count++] = next;
+			}
+			neighbours[i] = Arrays.copyOf(merged, count);
+		}
+		Integer[] byDegree = new Integer[n];
+		for (int i=0; i<n; i++) byDegree[i] = i;
+		Arrays.sort(byDegree, (a, b) -> neighbours[a].length - neighbours[b].length);
+		int[] order = new int[n];
+		boolean[] visited = new boolean[n];
+		int head = 0, tail = 0;
+		for (int start : byDegree) {
+			if (visited[start]) continue;
+			visited[start] = true;
+			order[tail++] = start;
+			while (head < tail) { // breadth first, neighbours of smaller degree first
+				int node = order[head++];
+				int first = tail;
+				for (int next : neighbours[node]) {
+					if (!visited[next]) {
+						visited[next] = true;
+						order[tail++] = next;
+					}
+				}
+				Integer[] added = new Integer[tail-first];
+				for (int k=first; k<tail; k++) added[k-first] = order[k];
+				Arrays.sort(added, (a, b) -> neighbours[a].length - neighbours[b].length);
+				for (int k=first; k<tail; k++) order[k] = added[k-first];
+			}
+		}
+		for (int k=0; k<n/2; k++) {
+			int value = order[k];
+			order[k] = order[n-1-k];
+			order[n-1-k] = value;
+		}
+		return order;
+	}
+
+	// Columns of the non zeros of each row of L+U for the reordered matrix, with
+	// the diagonal, found by merging into each row the rows of U it is eliminated with
+	private static int[][] symbolicFactorization(SparsityPattern pattern, int[] order, int[] position) {
+		int n = pattern.getDimension();
+		int[][] rows = new int[n][];
+		int[] next = new int[n+1]; // sorted linked list of the columns of the current row, n ends it
+		int[] mark = new int[n];
+		Arrays.fill(mark, -1);
+		int[] columns = new int[n];
+		for (int i=0; i<n; i++) {
+			int[] original = pattern.getRow(order[i]);
+			int count = 0;
+			for (int j : original) columns[count++] = position[j];
+			columns[count++] = i;
+			Arrays.sort(columns, 0, count);
+			int head = n; // first column of the list
+			for (int c=count-1; c>=0; c--) {
+				if (mark[columns[c]] == i) continue; // the diagonal may be repeated
+				mark[columns[c]] = i;
+				next[columns[c]] = head;
+				head = columns[c];
+			}
+			for (int k = head; k < i; k = next[k]) {
+				// add the columns of row k of U, all after k, keeping the list sorted
+				int previous = k;
+				int[] upper = rows[k];
+				for (int u = Arrays.binarySearch(upper, k) + 1; u < upper.length; u++) {
+					int j = upper[u];
+					if (mark[j] == i) {
+						previous = j;
+						continue;
+					}
+					while (next[previous] < j) previous = next[previous];
+					mark[j] = i;
+					next[j] = next[previous];
+					next[previous] = j;
+					previous = j;
+				}
+			}
+			int size = 0;
+			for (int k = head; k < n; k = next[k]) size++;
+			int[] row = new int[size];
+			size = 0;
+			for (int k = head; k < n; k = next[k]) row[size++] = k;
+			rows[i] = row;
+		}
+		return rows;
+	}
+
+}